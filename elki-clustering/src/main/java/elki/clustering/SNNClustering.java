@@ -141,7 +141,7 @@ public class SNNClustering<O> implements ClusteringAlgorithm<Clustering<Model>>
     IndefiniteProgress clusprog = LOG.isVerbose() ? new IndefiniteProgress("Number of clusters", LOG) : null;
     resultList = new ArrayList<>();
     noise = DBIDUtil.newHashSet();
-    processedIDs = DBIDUtil.newHashSet(relation.size());
+    processedIDs = DBIDUtil.newHashSet(relation.size(), relation.getDBIDs());
     if(relation.size() >= minpts) {
       for(DBIDIter id = relation.iterDBIDs(); id.valid(); id.advance()) {
         if(!processedIDs.contains(id)) {
@@ -22,8 +22,8 @@ package elki.clustering.affinitypropagation;
 
 import elki.data.type.TypeInformation;
 import elki.database.ids.ArrayDBIDs;
-import elki.database.ids.DBIDArrayIter;
 import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceMatrixBuilder;
 import elki.database.query.distance.DistanceQuery;
 import elki.database.relation.Relation;
 import elki.distance.Distance;
@@ -71,19 +71,18 @@ public class DistanceBasedInitializationWithMedian<O> implements AffinityPropaga
     DistanceQuery<O> dq = new QueryBuilder<>(relation, distance).distanceQuery();
     final int size = ids.size();
     double[][] mat = new double[size][size];
-    double[] flat = new double[(size * (size - 1)) >> 1];
-    DBIDArrayIter i1 = ids.iter(), i2 = ids.iter();
+    double[] flat = new double[DistanceMatrixBuilder.triangleSize(size)];
+    DistanceMatrixBuilder.build(dq, ids, flat);
     int j = 0;
-    for(int i = 0; i < size; i++, i1.advance()) {
+    for(int i = 0; i < size; i++) {
       double[] mati = mat[i];
-      i2.seek(i + 1);
-      for(int k = i + 1; k < size; k++, i2.advance()) {
-        mati[k] = -dq.distance(i1, i2);
+      for(int k = 0; k < i; k++) {
+        mati[k] = flat[j] = -flat[j];
         mat[k][i] = mati[k]; // symmetry.
-        flat[j++] = mati[k];
+        j++;
       }
     }
-    assert j == (size * (size - 1)) >>> 1;
+    assert j == flat.length;
     double median = QuickSelect.quantile(flat, quantile);
     // On the diagonal, we place the median
     for(int i = 0; i < size; i++) {
@@ -222,7 +222,7 @@ public class DBSCAN<O> implements ClusteringAlgorithm<Clustering<Model>> {
 
       resultList = new ArrayList<>();
       noise = DBIDUtil.newHashSet();
-      processedIDs = DBIDUtil.newHashSet(size);
+      processedIDs = DBIDUtil.newHashSet(size, relation.getDBIDs());
       ArrayModifiableDBIDs seeds = DBIDUtil.newArray();
       for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
         if(!processedIDs.contains(iditer)) {
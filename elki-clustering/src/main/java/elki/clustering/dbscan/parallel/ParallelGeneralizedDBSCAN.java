@@ -20,38 +20,36 @@
  */
 package elki.clustering.dbscan.parallel;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import elki.clustering.ClusteringAlgorithm;
 import elki.clustering.dbscan.predicates.CorePredicate;
 import elki.clustering.dbscan.predicates.EpsilonNeighborPredicate;
 import elki.clustering.dbscan.predicates.MinPtsCorePredicate;
 import elki.clustering.dbscan.predicates.NeighborPredicate;
-import elki.clustering.dbscan.util.Assignment;
-import elki.clustering.dbscan.util.Border;
-import elki.clustering.dbscan.util.Core;
-import elki.clustering.dbscan.util.MultiBorder;
 import elki.data.Cluster;
 import elki.data.Clustering;
 import elki.data.model.ClusterModel;
+import elki.data.model.CoreObjectsModel;
 import elki.data.model.Model;
 import elki.data.type.TypeInformation;
 import elki.data.type.TypeUtil;
 import elki.database.Database;
 import elki.database.datastore.DataStoreFactory;
 import elki.database.datastore.DataStoreUtil;
-import elki.database.datastore.WritableDataStore;
-import elki.database.ids.DBIDIter;
-import elki.database.ids.DBIDRef;
-import elki.database.ids.DBIDUtil;
-import elki.database.ids.DBIDs;
-import elki.database.ids.ModifiableDBIDs;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.*;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
 import elki.parallel.Executor;
+import elki.parallel.ParallelCore;
 import elki.parallel.ParallelExecutor;
 import elki.parallel.processor.Processor;
 import elki.result.Metadata;
+import elki.utilities.datastructures.unionfind.UnionFind;
+import elki.utilities.datastructures.unionfind.UnionFindUtil;
 import elki.utilities.documentation.Reference;
 import elki.utilities.exceptions.AbortException;
 import elki.utilities.optionhandling.OptionID;
@@ -68,10 +66,17 @@ import elki.utilities.optionhandling.parameters.ObjectParameter;
  * sequentially expand a cluster, but processes points in arbitrary order and
  * merges clusters when neighboring core points occur.
  * <p>
- * Because of synchronization when labeling points, the speedup will only be
- * sublinear in the number of cores. But in particular without an index and on
- * large data, the majority of the work is finding the neighbors; not in
- * labeling the points.
+ * The algorithm uses two parallel passes: the first pass evaluates the
+ * neighbor predicate for every point and determines the core points. The
+ * second pass merges neighboring core points using a lock-free union-find data
+ * structure; non-core neighbors are attached to one of their core points as
+ * border points. Each neighborhood is computed only once, but the
+ * neighborhoods of all core points are kept in memory until they have been
+ * linked, which needs memory linear in the total neighborhood size. No locks
+ * are held while evaluating the predicates, which in particular without an
+ * index and on large data is the majority of the work. If a border point is
+ * reachable from multiple clusters, it is assigned to one of them arbitrarily,
+ * as in the original DBSCAN.
  * <p>
  * Reference:
  * <p>
@@ -79,9 +84,8 @@ import elki.utilities.optionhandling.parameters.ObjectParameter;
  * <p>
  * Related is the following publication, whose "disjoint set data structure"
  * appears to be a similar union-find approach to ours, and whose DSDBSCAN
- * appears rather similar. The main benefit of our approach is that we avoid
- * using the union-find data structure for every object, but only use it for
- * merging clusters.
+ * appears rather similar. We only use the union-find data structure for the
+ * core points, border points only store a reference to a core point.
  * <p>
  * M. Patwary, D. Palsetia, A. Agrawal, W. K. Liao, F. Manne, A. Choudhary<br>
  * A new scalable parallel DBSCAN algorithm using the disjoint-set data
@@ -125,6 +129,11 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
    */
   protected boolean coremodel = false;
 
+  /**
+   * Parallel core to use.
+   */
+  protected ParallelCore core;
+
   /**
    * Constructor for parameterized algorithm.
    *
@@ -133,10 +142,23 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
    * @param coremodel Keep track of core points.
    */
   public ParallelGeneralizedDBSCAN(NeighborPredicate<?> npred, CorePredicate<?> corepred, boolean coremodel) {
+    this(npred, corepred, coremodel, ParallelCore.getCore());
+  }
+
+  /**
+   * Constructor for parameterized algorithm.
+   *
+   * @param npred Neighbor predicate.
+   * @param corepred Core point predicate.
+   * @param coremodel Keep track of core points.
+   * @param core Parallel core to use
+   */
+  public ParallelGeneralizedDBSCAN(NeighborPredicate<?> npred, CorePredicate<?> corepred, boolean coremodel, ParallelCore core) {
     super();
     this.npred = npred;
     this.corepred = corepred;
     this.coremodel = coremodel;
+    this.core = core;
     // Ignore the generic, we do a run-time test below:
     @SuppressWarnings("unchecked")
     CorePredicate<Object> cp = (CorePredicate<Object>) corepred;
@@ -158,7 +180,7 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
     if(!cp.acceptsType(npred.getOutputType())) {
       throw new AbortException("Predicates are not compatible.");
     }
-    return new Instance<>(database, npred, cp, coremodel).run();
+    return new Instance<>(database, npred, cp, coremodel, core).run();
   }
 
   /**
@@ -168,13 +190,10 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
    *
    * @composed - - - CorePredicate.Instance
    * @composed - - - NeighborPredicate.Instance
+   * @has - - - CoreMapper
+   * @has - - - LinkMapper
    */
-  public static class Instance<T> implements Processor {
-    /**
-     * The neighborhood predicate
-     */
-    protected final NeighborPredicate.Instance<T> npred;
-
+  public static class Instance<T> {
     /**
      * The core object property
      */
@@ -186,24 +205,40 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
     protected boolean coremodel = false;
 
     /**
-     * Cluster assignment storage.
+     * Object IDs to process.
      */
-    private WritableDataStore<Assignment> clusterids;
+    private ArrayDBIDs ids;
 
     /**
-     * Core objects (shared)
+     * Object ID range, if available.
      */
-    private Core[] cores;
+    private DBIDRange range;
 
     /**
-     * Border objects (shared)
+     * Index, to map DBID to offset, if not a range.
      */
-    private Border[] borders;
+    private WritableIntegerDataStore index;
 
     /**
-     * Next cluster number assigned.
+     * Offset of the core point each object is attached to. Core points
+     * reference themselves, -1 for noise.
      */
-    private int nextclus = 0;
+    private AtomicIntegerArray attached;
+
+    /**
+     * Neighborhoods of the core points, by offset, until linked.
+     */
+    private DBIDs[] neighbors;
+
+    /**
+     * Union-find structure to merge the core points.
+     */
+    private UnionFind uf;
+
+    /**
+     * Core points found in the first pass.
+     */
+    private ArrayModifiableDBIDs cores;
 
     /**
      * Database for cloning neighbor predicates.
@@ -220,6 +255,11 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
      */
     private FiniteProgress progress;
 
+    /**
+     * Parallel core to use.
+     */
+    private ParallelCore core;
+
     /**
      * Full Constructor
      *
@@ -227,17 +267,16 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
      * @param npreds Neighborhood predicate
      * @param corepred Core object predicate
      * @param coremodel Keep track of core points.
+     * @param core Parallel core to use
      */
-    public Instance(Database database, NeighborPredicate<T> npreds, CorePredicate<? super T> corepred, boolean coremodel) {
+    public Instance(Database database, NeighborPredicate<T> npreds, CorePredicate<? super T> corepred, boolean coremodel, ParallelCore core) {
       super();
-      this.npred = npreds.instantiate(database);
+      this.core = core;
       this.database = database;
       this.npreds = npreds;
+      this.ids = DBIDUtil.ensureArray(npreds.instantiate(database).getIDs());
       this.corepred = corepred.instantiate(database);
       this.coremodel = coremodel;
-      this.clusterids = DataStoreUtil.makeStorage(npred.getIDs(), DataStoreFactory.HINT_TEMP, Assignment.class);
-      this.cores = new Core[100];
-      this.borders = new Border[100];
     }
 
     /**
@@ -246,53 +285,93 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
      * @return Clustering result
      */
     public Clustering<Model> run() {
-      DBIDs ids = npred.getIDs();
-
-      progress = LOG.isVerbose() ? new FiniteProgress("DBSCAN clustering", ids.size(), LOG) : null;
-      // Do the majority of the work in parallel:
-      // (This will call "instantiate".)
-      ParallelExecutor.run(ids, this);
+      // Shared state is indexed by offset, as the data stores are not
+      // thread-safe for other DBIDs than ranges.
+      if(ids instanceof DBIDRange) {
+        range = (DBIDRange) ids;
+      }
+      else {
+        index = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+        for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+          index.put(it, it.getOffset());
+        }
+      }
+      attached = new AtomicIntegerArray(ids.size());
+      for(int i = 0; i < attached.length(); i++) {
+        attached.set(i, -1);
+      }
+      neighbors = new DBIDs[ids.size()];
+      cores = DBIDUtil.newArray();
+      // First pass: find the core points.
+      progress = LOG.isVerbose() ? new FiniteProgress("DBSCAN core points", ids.size(), LOG) : null;
+      ParallelExecutor.run(core, ids, new CoreProcessor());
+      LOG.ensureCompleted(progress);
+      // Second pass: connect the core points, attach border points.
+      uf = UnionFindUtil.makeConcurrent(DBIDUtil.makeUnmodifiable(ids));
+      cores.sort(); // For locality
+      progress = LOG.isVerbose() ? new FiniteProgress("DBSCAN clustering", cores.size(), LOG) : null;
+      ParallelExecutor.run(core, cores, new LinkProcessor());
       LOG.ensureCompleted(progress);
+      neighbors = null;
+      return buildResult();
+    }
+
+    /**
+     * Map an object to its offset.
+     *
+     * @param id Object
+     * @return Offset
+     */
+    private int offset(DBIDRef id) {
+      return range != null ? range.getOffset(id) : index.intValue(id);
+    }
 
-      // Build the final result
+    /**
+     * Build the final clustering result.
+     *
+     * @return Clustering result
+     */
+    private Clustering<Model> buildResult() {
       FiniteProgress pprog = LOG.isVerbose() ? new FiniteProgress("Building final result", ids.size(), LOG) : null;
-      ModifiableDBIDs[] clusters = new ModifiableDBIDs[nextclus];
+      // Map union-find roots to cluster numbers:
+      int[] clusternum = new int[ids.size()];
+      List<ModifiableDBIDs> clusters = new ArrayList<>();
+      List<ArrayModifiableDBIDs> corelists = coremodel ? new ArrayList<>() : null;
       ModifiableDBIDs noise = DBIDUtil.newArray();
-      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
-        Assignment cids = clusterids.get(it);
-        if(cids == null) {
+      DBIDArrayIter var = ids.iter();
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        final int a = attached.get(it.getOffset());
+        if(a < 0) {
           noise.add(it);
           LOG.incrementProcessed(pprog);
           continue;
         }
-        if(cids instanceof MultiBorder) {
-          cids = ((MultiBorder) cids).getCore();
-        }
-        else if(cids instanceof Border) {
-          cids = ((Border) cids).core;
-        }
-        assert (cids instanceof Core);
-        Core co = (Core) cids;
-        while(cores[co.num].num != co.num) {
-          co = cores[co.num = cores[co.num].num];
+        final int root = uf.find(var.seek(a));
+        int c = clusternum[root] - 1;
+        if(c < 0) {
+          clusternum[root] = (c = clusters.size()) + 1;
+          clusters.add(DBIDUtil.newArray());
+          if(coremodel) {
+            corelists.add(DBIDUtil.newArray());
+          }
         }
-        ModifiableDBIDs clu = clusters[co.num];
-        if(clu == null) {
-          clu = clusters[co.num] = DBIDUtil.newArray();
+        clusters.get(c).add(it);
+        if(coremodel && a == it.getOffset()) {
+          corelists.get(c).add(it);
         }
-        clu.add(it);
         LOG.incrementProcessed(pprog);
       }
       LOG.ensureCompleted(pprog);
-      clusterids.destroy();
+      if(index != null) {
+        index.destroy();
+      }
 
       // Wrap into final format
       Clustering<Model> result = new Clustering<>();
       Metadata.of(result).setLongName("Generalized DBSCAN Clustering");
-      for(int i = 0; i < clusters.length; i++) {
-        if(clusters[i] != null) {
-          result.addToplevelCluster(new Cluster<Model>(clusters[i], ClusterModel.CLUSTER));
-        }
+      for(int i = 0; i < clusters.size(); i++) {
+        Model m = coremodel ? new CoreObjectsModel(corelists.get(i)) : ClusterModel.CLUSTER;
+        result.addToplevelCluster(new Cluster<Model>(clusters.get(i), m));
       }
       if(noise.size() > 0) {
         result.addToplevelCluster(new Cluster<Model>(noise, true, ClusterModel.CLUSTER));
@@ -301,100 +380,145 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
     }
 
     /**
-     * Synchronize function to process the neighbors.
+     * Merge the core points found by a worker.
      *
-     * @param id Current point
-     * @param neighbors Neighbors
+     * @param found Core points
      */
-    protected void processNeighbors(DBIDRef id, T neighbors) {
-      if(!corepred.isCorePoint(id, neighbors)) {
-        LOG.incrementProcessed(progress);
-        return;
-      }
-      Core core = null;
-      // Find a possible cluster assignment
-      for(DBIDIter it = npred.iterDBIDs(neighbors); it.valid(); it.advance()) {
-        Assignment cand = clusterids.get(it);
-        if(cand instanceof Core) { // Another core point
-          core = (Core) cand;
-          break;
-        }
-      }
-      synchronized(this) {
-        // Make a new cluster
-        if(core == null) {
-          // Grow arrays when necessary:
-          if(nextclus == cores.length) {
-            cores = Arrays.copyOf(cores, cores.length + (cores.length >> 1));
-            borders = Arrays.copyOf(borders, cores.length);
-          }
-          core = cores[nextclus] = new Core(nextclus);
-          borders[nextclus] = new Border(core);
-          ++nextclus;
-        }
-        Border border = borders[core.num];
-        clusterids.put(id, core);
-        // Label neighbors, execute merges.
-        for(DBIDIter it = npred.iterDBIDs(neighbors); it.valid(); it.advance()) {
-          Assignment oclus = clusterids.get(it);
-          if(oclus == core) {
-            continue;
-          }
-          if(oclus == null) { // Neighbor is still noise:
-            clusterids.put(it, border);
-          }
-          else if(oclus instanceof Core) { // Core and core - merge!
-            core.mergeWith((Core) oclus);
-          }
-          else if(oclus instanceof Border) { // Border point -> MultiBorder
-            Border oborder = (Border) oclus;
-            if(border.core.num != oborder.core.num) {
-              clusterids.put(it, new MultiBorder(border, oborder));
-            }
-          }
-          else { // Point is already border for multiple clusters
-            assert (oclus instanceof MultiBorder);
-            clusterids.put(it, ((MultiBorder) oclus).update(border));
-          }
-        }
-      }
-      LOG.incrementProcessed(progress);
+    protected synchronized void addCores(DBIDs found) {
+      cores.addDBIDs(found);
     }
 
-    @Override
-    public Mapper instantiate(Executor executor) {
-      NeighborPredicate.Instance<? extends T> inst = npreds.instantiate(database);
-      return new Mapper(inst);
-    }
+    /**
+     * Processor to find the core points.
+     *
+     * @author Erich Schubert
+     */
+    private class CoreProcessor implements Processor {
+      @Override
+      public CoreMapper instantiate(Executor executor) {
+        return new CoreMapper<>(ParallelGeneralizedDBSCAN.Instance.this, npreds.instantiate(database));
+      }
 
-    @Override
-    public void cleanup(Processor.Instance inst) {
-      // Nothing to do.
+      @Override
+      public void cleanup(Processor.Instance inst) {
+        addCores(((CoreMapper<?>) inst).found);
+      }
     }
 
     /**
-     * Instance to process part of the data set, for a single iteration.
+     * Instance to find the core points of part of the data set.
      *
      * @author Erich Schubert
+     *
+     * @param <T> Neighborhood type
      */
-    private class Mapper implements Processor.Instance {
+    private static class CoreMapper<T> implements Processor.Instance {
+      /**
+       * Algorithm instance.
+       */
+      ParallelGeneralizedDBSCAN.Instance<T> outer;
+
       /**
        * Neighbor predicate.
        */
       NeighborPredicate.Instance<? extends T> predicate;
 
+      /**
+       * Core points found.
+       */
+      ArrayModifiableDBIDs found = DBIDUtil.newArray();
+
       /**
        * Constructor.
        *
+       * @param outer Algorithm instance
        * @param predicate Predicate to apply
        */
-      public Mapper(NeighborPredicate.Instance<? extends T> predicate) {
+      public CoreMapper(ParallelGeneralizedDBSCAN.Instance<T> outer, NeighborPredicate.Instance<? extends T> predicate) {
+        this.outer = outer;
         this.predicate = predicate;
       }
 
       @Override
       public void map(DBIDRef id) {
-        processNeighbors(id, predicate.getNeighbors(id));
+        map(id, predicate);
+        LOG.incrementProcessed(outer.progress);
+      }
+
+      /**
+       * Test for a core point, and keep its neighborhood.
+       *
+       * @param id Object
+       * @param predicate Neighbor predicate
+       * @param <N> Neighborhood type
+       */
+      private <N extends T> void map(DBIDRef id, NeighborPredicate.Instance<N> predicate) {
+        final N neighbors = predicate.getNeighbors(id);
+        if(outer.corepred.isCorePoint(id, neighbors)) {
+          final int off = outer.offset(id);
+          outer.attached.set(off, off);
+          outer.neighbors[off] = neighbors instanceof DBIDs ? (DBIDs) neighbors : copy(predicate.iterDBIDs(neighbors));
+          found.add(id);
+        }
+      }
+
+      /**
+       * Copy a neighborhood into an array.
+       *
+       * @param it Neighbor iterator
+       * @return Array of neighbors
+       */
+      private static DBIDs copy(DBIDIter it) {
+        ArrayModifiableDBIDs copy = DBIDUtil.newArray();
+        for(; it.valid(); it.advance()) {
+          copy.add(it);
+        }
+        return copy;
+      }
+    }
+
+    /**
+     * Processor to connect the core points.
+     *
+     * @author Erich Schubert
+     */
+    private class LinkProcessor implements Processor {
+      @Override
+      public LinkMapper instantiate(Executor executor) {
+        return new LinkMapper();
+      }
+
+      @Override
+      public void cleanup(Processor.Instance inst) {
+        // Nothing to do.
+      }
+    }
+
+    /**
+     * Instance to connect the core points of part of the data set.
+     *
+     * @author Erich Schubert
+     */
+    private class LinkMapper implements Processor.Instance {
+      @Override
+      public void map(DBIDRef id) {
+        final int off = offset(id);
+        for(DBIDIter it = neighbors[off].iter(); it.valid(); it.advance()) {
+          final int o = offset(it);
+          if(o == off) {
+            continue;
+          }
+          if(attached.get(o) == o) {
+            uf.union(id, it); // Core and core - merge!
+          }
+          else {
+            // Border point; only core points are written in this pass, and
+            // any of them is an acceptable choice.
+            attached.set(o, off);
+          }
+        }
+        neighbors[off] = null; // Release memory early
+        LOG.incrementProcessed(progress);
       }
     }
   }
@@ -438,6 +562,11 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
      */
     protected boolean coremodel = false;
 
+    /**
+     * Parallel core to use.
+     */
+    protected ParallelCore core;
+
     @Override
     public void configure(Parameterization config) {
       // Neighborhood predicate
@@ -455,11 +584,12 @@ public class ParallelGeneralizedDBSCAN implements ClusteringAlgorithm<Clustering
         }
       }
       new Flag(COREMODEL_ID).grab(config, x -> coremodel = x);
+      core = config.tryInstantiate(ParallelCore.class);
     }
 
     @Override
     public ParallelGeneralizedDBSCAN make() {
-      return new ParallelGeneralizedDBSCAN(npred, corepred, coremodel);
+      return new ParallelGeneralizedDBSCAN(npred, corepred, coremodel, core);
     }
   }
 }
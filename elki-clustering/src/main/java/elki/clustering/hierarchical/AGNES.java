@@ -31,6 +31,7 @@ import elki.database.ids.DBIDArrayIter;
 import elki.database.ids.DBIDUtil;
 import elki.database.ids.DBIDs;
 import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceMatrixBuilder;
 import elki.database.query.distance.DistanceQuery;
 import elki.database.relation.Relation;
 import elki.distance.Distance;
@@ -197,26 +198,14 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
    * @param linkage Linkage method
    */
   protected static void initializeDistanceMatrix(MatrixParadigm mat, DistanceQuery<?> dq, Linkage linkage) {
-    final DBIDArrayIter ix = mat.ix, iy = mat.iy;
     final double[] matrix = mat.matrix;
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Distance matrix computation", mat.size, LOG) : null;
+    DistanceMatrixBuilder.build(dq, mat.ids, matrix, null, prog, LOG);
+    LOG.ensureCompleted(prog);
     final boolean issquare = dq.getDistance().isSquared();
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Distance matrix computation", matrix.length, LOG) : null;
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
-      final int x = ix.getOffset();
-      assert (pos == MatrixParadigm.triangleSize(x));
-      for(iy.seek(0); iy.getOffset() < x; iy.advance()) {
-        matrix[pos++] = linkage.initial(dq.distance(ix, iy), issquare);
-      }
-      if(prog != null) {
-        prog.setProcessed(pos, LOG);
-      }
-    }
-    // Avoid logging errors in case scratch space was too large:
-    if(prog != null) {
-      prog.setProcessed(matrix.length, LOG);
+    for(int pos = 0, end = MatrixParadigm.triangleSize(mat.size); pos < end; pos++) {
+      matrix[pos] = linkage.initial(matrix[pos], issquare);
     }
-    LOG.ensureCompleted(prog);
   }
 
   /**
@@ -24,6 +24,7 @@ import elki.database.ids.ArrayDBIDs;
 import elki.database.ids.DBIDArrayIter;
 import elki.database.ids.DBIDUtil;
 import elki.database.ids.DBIDs;
+import elki.database.query.distance.DistanceMatrixBuilder;
 import elki.database.query.distance.DistanceQuery;
 import elki.utilities.exceptions.AbortException;
 
@@ -42,6 +43,11 @@ import elki.utilities.exceptions.AbortException;
  * @since 0.7.5
  */
 public class MatrixParadigm {
+  /**
+   * Objects, in matrix order.
+   */
+  public final ArrayDBIDs ids;
+
   /**
    * Two iterators to reference to objects.
    */
@@ -69,9 +75,9 @@ public class MatrixParadigm {
           0x10000 // = 65535
           + " instances (~16 GB RAM), at which point the Java maximum array size is reached.");
     }
-    ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
-    ix = aids.iter();
-    iy = aids.iter();
+    this.ids = DBIDUtil.ensureArray(ids);
+    ix = this.ids.iter();
+    iy = this.ids.iter();
     matrix = new double[triangleSize(size)];
   }
 
@@ -82,7 +88,7 @@ public class MatrixParadigm {
    * @return Size of complete triangle
    */
   public static int triangleSize(int x) {
-    return (x * (x - 1)) >>> 1;
+    return DistanceMatrixBuilder.triangleSize(x);
   }
 
   /**
@@ -106,16 +112,7 @@ public class MatrixParadigm {
    * @return this
    */
   public MatrixParadigm initializeWithDistances(DistanceQuery<?> dq) {
-    final DBIDArrayIter ix = this.ix, iy = this.iy;
-    final double[] matrix = this.matrix;
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
-      final int x = ix.getOffset();
-      assert pos == triangleSize(x);
-      for(iy.seek(0); iy.getOffset() < x; iy.advance()) {
-        matrix[pos++] = dq.distance(ix, iy);
-      }
-    }
+    DistanceMatrixBuilder.build(dq, ids, matrix);
     return this;
   }
 }
@@ -134,16 +134,14 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
    * @param dq The distance query
    */
   protected static <O> void initializeMatrices(MatrixParadigm mat, ArrayModifiableDBIDs prots, DistanceQuery<O> dq) {
+    mat.initializeWithDistances(dq);
     final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] distances = mat.matrix;
-    int pos = 0;
     for(ix.seek(0); ix.valid(); ix.advance()) {
       for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
-        distances[pos++] = dq.distance(ix, iy);
         prots.add(iy);
       }
     }
-    assert (prots.size() == pos);
+    assert (prots.size() == MatrixParadigm.triangleSize(mat.size));
   }
 
   /**
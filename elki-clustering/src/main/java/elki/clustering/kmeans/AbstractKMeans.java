@@ -44,6 +44,7 @@ import elki.database.ids.DBIDUtil;
 import elki.database.ids.DBIDs;
 import elki.database.ids.ModifiableDBIDs;
 import elki.database.relation.Relation;
+import elki.distance.ArrayKernels;
 import elki.distance.NumberVectorDistance;
 import elki.distance.PrimitiveDistance;
 import elki.distance.minkowski.EuclideanDistance;
@@ -343,7 +344,7 @@ public abstract class AbstractKMeans<V extends NumberVector, M extends Model> im
     /**
      * Cluster means.
      */
-    double[][] means;
+    protected double[][] means;
 
     /**
      * Store the elements per cluster.
@@ -447,6 +448,34 @@ public abstract class AbstractKMeans<V extends NumberVector, M extends Model> im
       return df.distance(x, DoubleVector.wrap(y));
     }
 
+    /**
+     * Compute the distances to all means (and count the distance
+     * computations).
+     *
+     * @param x Object
+     * @param means Cluster means
+     * @param out Output array for the distances
+     */
+    protected void distances(NumberVector x, double[][] means, double[] out) {
+      if(df.getClass() == SquaredEuclideanDistance.class) {
+        final double[] xa = ArrayKernels.doubleArray(x);
+        if(xa != null) {
+          final int dim = x.getDimensionality();
+          for(double[] m : means) {
+            if(m.length != dim) {
+              throw new IllegalArgumentException("Objects do not have the same dimensionality.");
+            }
+          }
+          diststat += means.length;
+          ArrayKernels.squaredEuclidean(xa, ArrayKernels.doubleOffset(x), means, out);
+          return;
+        }
+      }
+      for(int i = 0; i < means.length; i++) {
+        out[i] = distance(x, means[i]);
+      }
+    }
+
     /**
      * Compute the squared distance (and count the distance computations).
      *
@@ -587,12 +616,13 @@ public abstract class AbstractKMeans<V extends NumberVector, M extends Model> im
       for(ModifiableDBIDs cluster : clusters) {
         cluster.clear();
       }
+      final double[] dists = new double[k];
       for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
-        NumberVector fv = relation.get(iditer);
-        double mindist = distance(fv, means[0]);
+        distances(relation.get(iditer), means, dists);
+        double mindist = dists[0];
         int minIndex = 0;
         for(int i = 1; i < k; i++) {
-          double dist = distance(fv, means[i]);
+          double dist = dists[i];
           if(dist < mindist) {
             minIndex = i;
             mindist = dist;
@@ -753,7 +783,7 @@ public abstract class AbstractKMeans<V extends NumberVector, M extends Model> im
      *
      * @return Logger
      */
-    abstract Logging getLogger();
+    protected abstract Logging getLogger();
   }
 
   /**
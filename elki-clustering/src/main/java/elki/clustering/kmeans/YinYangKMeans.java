@@ -78,7 +78,7 @@ public class YinYangKMeans<V extends NumberVector> extends AbstractKMeans<V, KMe
   /**
    * Number of cluster center groups t
    */
-  private int t;
+  protected int t;
 
   /**
    * Constructor.
@@ -110,37 +110,37 @@ public class YinYangKMeans<V extends NumberVector> extends AbstractKMeans<V, KMe
     /**
      * Center list for each group
      */
-    int[][] groups;
+    protected int[][] groups;
 
     /**
      * Maximum distance moved within each group.
      */
-    double[] gdrift;
+    protected double[] gdrift;
 
     /**
      * Distance moved by each center.
      */
-    double[] cdrift;
+    protected double[] cdrift;
 
     /**
      * Current cluster sum.
      */
-    double[][] sums;
+    protected double[][] sums;
 
     /**
      * Group label of each mean
      */
-    int[] glabel = new int[k];
+    protected int[] glabel = new int[k];
 
     /**
      * Upper bound
      */
-    WritableDoubleDataStore upper;
+    protected WritableDoubleDataStore upper;
 
     /**
      * Lower bounds
      */
-    WritableDataStore<double[]> lower;
+    protected WritableDataStore<double[]> lower;
 
     /**
      * Constructor.
@@ -464,7 +464,7 @@ public class YinYangKMeans<V extends NumberVector> extends AbstractKMeans<V, KMe
     }
 
     @Override
-    Logging getLogger() {
+    protected Logging getLogger() {
       return LOG;
     }
   }
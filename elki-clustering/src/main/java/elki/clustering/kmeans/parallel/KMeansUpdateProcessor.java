@@ -0,0 +1,306 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans.parallel;
+
+import java.util.function.Supplier;
+
+import elki.clustering.kmeans.AbstractKMeans;
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDs;
+import elki.database.relation.Relation;
+import elki.distance.NumberVectorDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.parallel.Executor;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
+
+import net.jafama.FastMath;
+
+/**
+ * Processor for the assignment step of the bound-based k-means variants.
+ * <p>
+ * The bounds and the assignment are kept in data stores, and each object is
+ * only written by the thread processing it. The bounds are updated for the
+ * movement of the centers within the same parallel pass as the assignment, so
+ * each iteration needs only a single pass over the data. Every thread collects
+ * the changes to the cluster sums and sizes, the number of reassigned objects,
+ * and the number of distance computations; these are merged on cleanup.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - Worker
+ */
+public class KMeansUpdateProcessor implements Processor {
+  /**
+   * Cluster sums.
+   */
+  double[][] sums;
+
+  /**
+   * Cluster sizes.
+   */
+  int[] sizes;
+
+  /**
+   * Factory for the workers.
+   */
+  Supplier<? extends Worker> factory;
+
+  /**
+   * Number of reassigned objects.
+   */
+  int changed;
+
+  /**
+   * Number of distance computations.
+   */
+  long diststat;
+
+  /**
+   * Constructor.
+   *
+   * @param sums Cluster sums to update
+   * @param sizes Cluster sizes to update
+   * @param factory Factory for the workers
+   */
+  public KMeansUpdateProcessor(double[][] sums, int[] sizes, Supplier<? extends Worker> factory) {
+    super();
+    this.sums = sums;
+    this.sizes = sizes;
+    this.factory = factory;
+  }
+
+  /**
+   * Run one iteration on all objects.
+   *
+   * @param core Parallel core to use
+   * @param ids Objects to process
+   * @return Number of reassigned objects
+   */
+  public int run(ParallelCore core, DBIDs ids) {
+    changed = 0;
+    diststat = 0;
+    ParallelExecutor.run(core, ids, this);
+    return changed;
+  }
+
+  /**
+   * Get the number of distance computations in the last iteration.
+   *
+   * @return Number of distance computations
+   */
+  public long getDistanceComputations() {
+    return diststat;
+  }
+
+  @Override
+  public Worker instantiate(Executor executor) {
+    return factory.get();
+  }
+
+  @Override
+  public synchronized void cleanup(Processor.Instance inst) {
+    Worker worker = (Worker) inst;
+    changed += worker.changed;
+    diststat += worker.diststat;
+    for(int i = 0; i < sums.length; i++) {
+      if(worker.sums[i] != null) {
+        plusEquals(sums[i], worker.sums[i]);
+      }
+      sizes[i] += worker.sizes[i];
+    }
+  }
+
+  /**
+   * Add a vector to another.
+   *
+   * @param sum Sum to update
+   * @param delta Vector to add
+   */
+  private static void plusEquals(double[] sum, double[] delta) {
+    for(int d = 0; d < sum.length; d++) {
+      sum[d] += delta[d];
+    }
+  }
+
+  /**
+   * Worker processing a block of objects, for a single iteration.
+   *
+   * @author Erich Schubert
+   */
+  public abstract static class Worker implements Processor.Instance {
+    /**
+     * Data relation.
+     */
+    protected Relation<? extends NumberVector> relation;
+
+    /**
+     * Distance function.
+     */
+    private NumberVectorDistance<?> df;
+
+    /**
+     * Indicates whether the distance function is squared.
+     */
+    protected boolean isSquared;
+
+    /**
+     * Cluster assignment.
+     */
+    protected WritableIntegerDataStore assignment;
+
+    /**
+     * Changes to the cluster sums, allocated on demand.
+     */
+    double[][] sums;
+
+    /**
+     * Changes to the cluster sizes.
+     */
+    int[] sizes;
+
+    /**
+     * Dimensionality.
+     */
+    int dim;
+
+    /**
+     * Number of reassigned objects.
+     */
+    int changed;
+
+    /**
+     * Number of distance computations.
+     */
+    long diststat;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param df Distance function
+     * @param assignment Cluster assignment
+     * @param k Number of clusters
+     * @param dim Dimensionality
+     */
+    public Worker(Relation<? extends NumberVector> relation, NumberVectorDistance<?> df, WritableIntegerDataStore assignment, int k, int dim) {
+      super();
+      this.relation = relation;
+      this.df = df;
+      this.isSquared = df.isSquared();
+      this.assignment = assignment;
+      this.sums = new double[k][];
+      this.sizes = new int[k];
+      this.dim = dim;
+    }
+
+    /**
+     * Get the (on demand allocated) sum of a cluster.
+     *
+     * @param i Cluster number
+     * @return Sum array
+     */
+    private double[] sum(int i) {
+      return sums[i] != null ? sums[i] : (sums[i] = new double[dim]);
+    }
+
+    /**
+     * Initial assignment of an object to a cluster.
+     *
+     * @param id Object
+     * @param fv Object vector
+     * @param c Cluster
+     */
+    protected void assign(DBIDRef id, NumberVector fv, int c) {
+      assignment.putInt(id, c);
+      AbstractKMeans.plusEquals(sum(c), fv);
+      ++sizes[c];
+      ++changed;
+    }
+
+    /**
+     * Move an object to a different cluster.
+     *
+     * @param id Object
+     * @param fv Object vector
+     * @param from Previous cluster
+     * @param to New cluster
+     */
+    protected void reassign(DBIDRef id, NumberVector fv, int from, int to) {
+      assignment.putInt(id, to);
+      AbstractKMeans.plusMinusEquals(sum(to), sum(from), fv);
+      ++sizes[to];
+      --sizes[from];
+      ++changed;
+    }
+
+    /**
+     * Compute the distance (and count the distance computations).
+     *
+     * @param x First object
+     * @param y Second object
+     * @return Distance
+     */
+    protected double distance(NumberVector x, double[] y) {
+      ++diststat;
+      if(df.getClass() == SquaredEuclideanDistance.class) {
+        if(y.length != x.getDimensionality()) {
+          throw new IllegalArgumentException("Objects do not have the same dimensionality.");
+        }
+        double v = 0;
+        for(int i = 0; i < y.length; i++) {
+          double d = x.doubleValue(i) - y[i];
+          v += d * d;
+        }
+        return v;
+      }
+      return df.distance(x, DoubleVector.wrap(y));
+    }
+
+    /**
+     * Compute the distance (and count the distance computations). If the
+     * distance is squared, also compute the square root.
+     *
+     * @param x First object
+     * @param y Second object
+     * @return Distance
+     */
+    protected double sqrtdistance(NumberVector x, double[] y) {
+      final double d = distance(x, y);
+      return isSquared ? FastMath.sqrt(d) : d;
+    }
+
+    /**
+     * Take the square root of a distance, if the distance is squared.
+     *
+     * @param d Distance
+     * @return Non-squared distance
+     */
+    protected double sqrt(double d) {
+      return isSquared ? FastMath.sqrt(d) : d;
+    }
+  }
+}
@@ -0,0 +1,280 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans.parallel;
+
+import java.util.Arrays;
+
+import elki.clustering.kmeans.AnnulusKMeans;
+import elki.clustering.kmeans.initialization.KMeansInitialization;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.model.KMeansModel;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.DBIDRef;
+import elki.database.relation.Relation;
+import elki.distance.NumberVectorDistance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.logging.Logging;
+import elki.math.linearalgebra.VMath;
+import elki.parallel.ParallelCore;
+import elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+
+/**
+ * Parallel implementation of the Annulus k-means algorithm.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - KMeansUpdateProcessor
+ *
+ * @param <V> vector datatype
+ */
+public class ParallelAnnulusKMeans<V extends NumberVector> extends AnnulusKMeans<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelAnnulusKMeans.class);
+
+  /**
+   * Parallel core to use.
+   */
+  protected ParallelCore core;
+
+  /**
+   * Constructor.
+   *
+   * @param distance distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param varstat Compute the variance statistic
+   * @param core Parallel core to use
+   */
+  public ParallelAnnulusKMeans(NumberVectorDistance<? super V> distance, int k, int maxiter, KMeansInitialization initializer, boolean varstat, ParallelCore core) {
+    super(distance, k, maxiter, initializer, varstat);
+    this.core = core;
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Relation<V> relation) {
+    Instance instance = new Instance(relation, distance, initialMeans(relation), core);
+    instance.run(maxiter);
+    return instance.buildResult(varstat, relation);
+  }
+
+  /**
+   * Inner instance, storing state for a single data set.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Instance extends ParallelHamerlyKMeans.Instance {
+    /**
+     * Second nearest cluster.
+     */
+    WritableIntegerDataStore second;
+
+    /**
+     * Norms of the cluster centers.
+     */
+    double[] cnorm;
+
+    /**
+     * Centers sorted by norm
+     */
+    int[] cnum;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Relation
+     * @param df Distance function
+     * @param means Initial means
+     * @param core Parallel core to use
+     */
+    public Instance(Relation<? extends NumberVector> relation, NumberVectorDistance<?> df, double[][] means, ParallelCore core) {
+      super(relation, df, means, core);
+      second = DataStoreUtil.makeIntegerStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+      cnorm = new double[k];
+      cnum = new int[k];
+    }
+
+    @Override
+    protected void initialAssignToNearestCluster(Worker w, DBIDRef it) {
+      NumberVector fv = relation.get(it);
+      // Find closest center, and distance to two closest centers
+      double min1 = w.distance(fv, means[0]), min2 = w.distance(fv, means[1]);
+      int minIndex = 0, secIndex = 1;
+      if(min2 < min1) {
+        double tmp = min1;
+        min1 = min2;
+        min2 = tmp;
+        minIndex = 1;
+        secIndex = 0;
+      }
+      for(int i = 2; i < k; i++) {
+        if(min2 > cdist[minIndex][i]) {
+          double dist = w.distance(fv, means[i]);
+          if(dist < min1) {
+            secIndex = minIndex;
+            minIndex = i;
+            min2 = min1;
+            min1 = dist;
+          }
+          else if(dist < min2) {
+            secIndex = i;
+            min2 = dist;
+          }
+        }
+      }
+      // Assign to nearest cluster.
+      w.assign(it, fv, minIndex);
+      second.putInt(it, secIndex);
+      upper.putDouble(it, w.sqrt(min1));
+      lower.putDouble(it, w.sqrt(min2));
+    }
+
+    /**
+     * Recompute the separation of cluster means, and order them by norm.
+     */
+    @Override
+    protected void recomputeSeperation() {
+      Arrays.fill(sep, Double.POSITIVE_INFINITY);
+      for(int i = 0; i < k; i++) {
+        double[] mi = means[i];
+        cnorm[i] = VMath.euclideanLength(mi);
+        cnum[i] = i;
+        for(int j = 0; j < i; j++) {
+          double halfd = 0.5 * sqrtdistance(mi, means[j]);
+          sep[i] = halfd < sep[i] ? halfd : sep[i];
+          sep[j] = halfd < sep[j] ? halfd : sep[j];
+        }
+      }
+      DoubleIntegerArrayQuickSort.sort(cnorm, cnum, k);
+    }
+
+    @Override
+    protected void assignToNearestCluster(Worker w, DBIDRef it) {
+      final int cur = assignment.intValue(it);
+      // Update the bounds for the movement of the means:
+      final double z = lower.doubleValue(it) - delta;
+      final double sa = sep[cur];
+      double u = upper.doubleValue(it) + move[cur];
+      if(u <= z || u <= sa) {
+        upper.putDouble(it, u);
+        lower.putDouble(it, z);
+        return;
+      }
+      // Update the upper bound
+      NumberVector fv = relation.get(it);
+      double curd2 = w.distance(fv, means[cur]);
+      u = w.sqrt(curd2);
+      upper.putDouble(it, u);
+      if(u <= z || u <= sa) {
+        lower.putDouble(it, z);
+        return;
+      }
+      final int sec = second.intValue(it);
+      double secd2 = w.distance(fv, means[sec]);
+      double secd = w.sqrt(secd2);
+      double r = u > secd ? u : secd;
+      final double norm = EuclideanDistance.STATIC.norm(fv);
+      // Find closest center, and distance to two closest centers
+      double min1 = curd2, min2 = secd2;
+      int minIndex = cur, secIndex = sec;
+      if(curd2 > secd2) {
+        min1 = secd2;
+        min2 = curd2;
+        minIndex = sec;
+        secIndex = cur;
+      }
+      for(int i = 0; i < k; i++) {
+        int c = cnum[i];
+        if(c == cur || c == sec) {
+          continue;
+        }
+        double d = cnorm[i] - norm;
+        if(-d > r) {
+          continue; // Not yet a candidate
+        }
+        if(d > r) {
+          break; // No longer a candidate
+        }
+        double dist = w.distance(fv, means[c]);
+        if(dist < min1) {
+          secIndex = minIndex;
+          minIndex = c;
+          min2 = min1;
+          min1 = dist;
+        }
+        else if(dist < min2) {
+          secIndex = c;
+          min2 = dist;
+        }
+      }
+      if(minIndex != cur) {
+        w.reassign(it, fv, cur, minIndex);
+        second.putInt(it, secIndex);
+        upper.putDouble(it, min1 == curd2 ? u : w.sqrt(min1));
+      }
+      lower.putDouble(it, min2 == curd2 ? u : w.sqrt(min2));
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <V> Vector type
+   */
+  public static class Par<V extends NumberVector> extends AnnulusKMeans.Par<V> {
+    /**
+     * Parallel core to use.
+     */
+    protected ParallelCore core;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      core = config.tryInstantiate(ParallelCore.class);
+    }
+
+    @Override
+    public ParallelAnnulusKMeans<V> make() {
+      return new ParallelAnnulusKMeans<>(distance, k, maxiter, initializer, varstat, core);
+    }
+  }
+}
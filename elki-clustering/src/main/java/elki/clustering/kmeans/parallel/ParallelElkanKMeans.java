@@ -0,0 +1,360 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans.parallel;
+
+import elki.clustering.kmeans.AbstractKMeans;
+import elki.clustering.kmeans.ElkanKMeans;
+import elki.clustering.kmeans.initialization.KMeansInitialization;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.model.KMeansModel;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.ModifiableDBIDs;
+import elki.database.relation.Relation;
+import elki.distance.NumberVectorDistance;
+import elki.logging.Logging;
+import elki.math.linearalgebra.VMath;
+import elki.parallel.ParallelCore;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+
+/**
+ * Parallel implementation of Elkan's fast k-means.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - KMeansUpdateProcessor
+ *
+ * @param <V> vector datatype
+ */
+public class ParallelElkanKMeans<V extends NumberVector> extends ElkanKMeans<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelElkanKMeans.class);
+
+  /**
+   * Parallel core to use.
+   */
+  protected ParallelCore core;
+
+  /**
+   * Constructor.
+   *
+   * @param distance distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param varstat Compute the variance statistic
+   * @param core Parallel core to use
+   */
+  public ParallelElkanKMeans(NumberVectorDistance<? super V> distance, int k, int maxiter, KMeansInitialization initializer, boolean varstat, ParallelCore core) {
+    super(distance, k, maxiter, initializer, varstat);
+    this.core = core;
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Relation<V> relation) {
+    Instance instance = new Instance(relation, distance, initialMeans(relation), core);
+    instance.run(maxiter);
+    return instance.buildResult(varstat, relation);
+  }
+
+  /**
+   * Inner instance, storing state for a single data set.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Instance extends AbstractKMeans.Instance {
+    /**
+     * Parallel core to use.
+     */
+    protected ParallelCore core;
+
+    /**
+     * Distance function.
+     */
+    protected NumberVectorDistance<?> df;
+
+    /**
+     * Sum aggregate for the new mean.
+     */
+    protected double[][] sums;
+
+    /**
+     * Cluster sizes.
+     */
+    protected int[] sizes;
+
+    /**
+     * Temporary storage for the new means.
+     */
+    protected double[][] newmeans;
+
+    /**
+     * Separation of means.
+     */
+    protected double[] sep;
+
+    /**
+     * Distance moved by each mean.
+     */
+    protected double[] move;
+
+    /**
+     * Cluster center distances (half the distance).
+     */
+    protected double[][] cdist;
+
+    /**
+     * Upper bounding distance
+     */
+    protected WritableDoubleDataStore upper;
+
+    /**
+     * Lower bounding distances
+     */
+    protected WritableDataStore<double[]> lower;
+
+    /**
+     * Flag for the initial assignment.
+     */
+    protected boolean initial;
+
+    /**
+     * Processor for the assignment step.
+     */
+    protected KMeansUpdateProcessor proc;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Relation
+     * @param df Distance function
+     * @param means Initial means
+     * @param core Parallel core to use
+     */
+    public Instance(Relation<? extends NumberVector> relation, NumberVectorDistance<?> df, double[][] means, ParallelCore core) {
+      super(relation, df, means);
+      this.core = core;
+      this.df = df;
+      upper = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, Double.POSITIVE_INFINITY);
+      lower = DataStoreUtil.makeStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, double[].class);
+      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+        lower.put(it, new double[k]); // Filled with 0.
+      }
+      final int dim = means[0].length;
+      sums = new double[k][dim];
+      sizes = new int[k];
+      newmeans = new double[k][dim];
+      sep = new double[k];
+      move = new double[k];
+      cdist = new double[k][k];
+      proc = new KMeansUpdateProcessor(sums, sizes, () -> new Worker());
+    }
+
+    @Override
+    protected void run(int maxiter) {
+      super.run(maxiter);
+      // Materialize the final clusters from the assignment.
+      for(ModifiableDBIDs cluster : clusters) {
+        cluster.clear();
+      }
+      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+        clusters.get(assignment.intValue(it)).add(it);
+      }
+    }
+
+    @Override
+    protected Clustering<KMeansModel> buildResult(boolean varstat, Relation<? extends NumberVector> relation) {
+      return super.buildResult(varstat, relation); // Make accessible
+    }
+
+    @Override
+    protected int iterate(int iteration) {
+      if(iteration == 1) {
+        initialSeperation(cdist);
+        initial = true;
+      }
+      else {
+        meansFromSums(newmeans, sums);
+        movedDistance(means, newmeans, move);
+        copyMeans(newmeans, means);
+        recomputeSeperation(sep, cdist);
+        initial = false;
+      }
+      final int changed = proc.run(core, relation.getDBIDs());
+      diststat += proc.getDistanceComputations();
+      return changed;
+    }
+
+    @Override
+    protected void meansFromSums(double[][] dst, double[][] sums) {
+      for(int i = 0; i < k; i++) {
+        VMath.overwriteTimes(dst[i], sums[i], 1. / sizes[i]);
+      }
+    }
+
+    /**
+     * Perform the initial cluster assignment of a single object.
+     *
+     * @param w Worker
+     * @param it Object
+     */
+    protected void initialAssignToNearestCluster(Worker w, DBIDRef it) {
+      NumberVector fv = relation.get(it);
+      double[] l = lower.get(it);
+      // Check all (other) means:
+      double best = l[0] = w.sqrtdistance(fv, means[0]);
+      int minIndex = 0;
+      for(int j = 1; j < k; j++) {
+        if(best > cdist[minIndex][j]) {
+          double dist = l[j] = w.sqrtdistance(fv, means[j]);
+          if(dist < best) {
+            minIndex = j;
+            best = dist;
+          }
+        }
+      }
+      for(int j = 1; j < k; j++) {
+        if(l[j] == 0. && j != minIndex) {
+          l[j] = 2 * cdist[minIndex][j] - best;
+        }
+      }
+      // Assign to nearest cluster.
+      w.assign(it, fv, minIndex);
+      upper.putDouble(it, best);
+    }
+
+    /**
+     * Update the bounds and the cluster assignment of a single object.
+     *
+     * @param w Worker
+     * @param it Object
+     */
+    protected void assignToNearestCluster(Worker w, DBIDRef it) {
+      final int orig = assignment.intValue(it);
+      // Update the bounds for the movement of the means:
+      double u = upper.doubleValue(it) + move[orig];
+      upper.putDouble(it, u);
+      double[] l = lower.get(it);
+      VMath.minusEquals(l, move);
+      // Upper bound check (#2):
+      if(u <= sep[orig]) {
+        return;
+      }
+      boolean recompute_u = true; // Elkan's r(x)
+      NumberVector fv = relation.get(it);
+      // Check all (other) means:
+      int cur = orig;
+      for(int j = 0; j < k; j++) {
+        if(orig == j || u <= l[j] || u <= cdist[cur][j]) {
+          continue; // Condition #3 i-iii not satisfied
+        }
+        if(recompute_u) { // Need to update bound? #3a
+          u = w.sqrtdistance(fv, means[cur]);
+          upper.putDouble(it, u);
+          recompute_u = false; // Once only
+          if(u <= l[j] || u <= cdist[cur][j]) { // #3b
+            continue;
+          }
+        }
+        double dist = w.sqrtdistance(fv, means[j]);
+        l[j] = dist;
+        if(dist < u) {
+          cur = j;
+          u = dist;
+        }
+      }
+      // Object is to be reassigned.
+      if(cur != orig) {
+        upper.putDouble(it, u); // Remember bound.
+        w.reassign(it, fv, orig, cur);
+      }
+    }
+
+    /**
+     * Worker for a block of objects.
+     *
+     * @author Erich Schubert
+     */
+    protected class Worker extends KMeansUpdateProcessor.Worker {
+      /**
+       * Constructor.
+       */
+      protected Worker() {
+        super(Instance.this.relation, df, Instance.this.assignment, k, means[0].length);
+      }
+
+      @Override
+      public void map(DBIDRef id) {
+        if(initial) {
+          initialAssignToNearestCluster(this, id);
+        }
+        else {
+          assignToNearestCluster(this, id);
+        }
+      }
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <V> Vector type
+   */
+  public static class Par<V extends NumberVector> extends ElkanKMeans.Par<V> {
+    /**
+     * Parallel core to use.
+     */
+    protected ParallelCore core;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      core = config.tryInstantiate(ParallelCore.class);
+    }
+
+    @Override
+    public ParallelElkanKMeans<V> make() {
+      return new ParallelElkanKMeans<>(distance, k, maxiter, initializer, varstat, core);
+    }
+  }
+}
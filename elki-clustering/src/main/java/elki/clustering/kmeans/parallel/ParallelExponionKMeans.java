@@ -0,0 +1,192 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans.parallel;
+
+import elki.clustering.kmeans.ExponionKMeans;
+import elki.clustering.kmeans.initialization.KMeansInitialization;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.model.KMeansModel;
+import elki.database.ids.DBIDRef;
+import elki.database.relation.Relation;
+import elki.distance.NumberVectorDistance;
+import elki.logging.Logging;
+import elki.parallel.ParallelCore;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+
+/**
+ * Parallel implementation of Newling's exponion k-means algorithm.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - KMeansUpdateProcessor
+ *
+ * @param <V> vector datatype
+ */
+public class ParallelExponionKMeans<V extends NumberVector> extends ExponionKMeans<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelExponionKMeans.class);
+
+  /**
+   * Parallel core to use.
+   */
+  protected ParallelCore core;
+
+  /**
+   * Constructor.
+   *
+   * @param distance distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param varstat Compute the variance statistic
+   * @param core Parallel core to use
+   */
+  public ParallelExponionKMeans(NumberVectorDistance<? super V> distance, int k, int maxiter, KMeansInitialization initializer, boolean varstat, ParallelCore core) {
+    super(distance, k, maxiter, initializer, varstat);
+    this.core = core;
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Relation<V> relation) {
+    Instance instance = new Instance(relation, distance, initialMeans(relation), core);
+    instance.run(maxiter);
+    return instance.buildResult(varstat, relation);
+  }
+
+  /**
+   * Inner instance, storing state for a single data set.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Instance extends ParallelHamerlyKMeans.Instance {
+    /**
+     * Sorted neighbors
+     */
+    int[][] cnum;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Relation
+     * @param df Distance function
+     * @param means Initial means
+     * @param core Parallel core to use
+     */
+    public Instance(Relation<? extends NumberVector> relation, NumberVectorDistance<?> df, double[][] means, ParallelCore core) {
+      super(relation, df, means, core);
+      cnum = new int[k][k - 1];
+    }
+
+    @Override
+    protected void recomputeSeperation() {
+      recomputeSeperation(sep, cdist);
+      nearestMeans(cdist, cnum);
+    }
+
+    @Override
+    protected void assignToNearestCluster(Worker w, DBIDRef it) {
+      final int cur = assignment.intValue(it);
+      // Update the bounds for the movement of the means:
+      final double z = lower.doubleValue(it) - delta;
+      final double sa = sep[cur];
+      double u = upper.doubleValue(it) + move[cur];
+      if(u <= z || u <= sa) {
+        upper.putDouble(it, u);
+        lower.putDouble(it, z);
+        return;
+      }
+      // Update the upper bound
+      NumberVector fv = relation.get(it);
+      double curd2 = w.distance(fv, means[cur]);
+      u = w.sqrt(curd2);
+      upper.putDouble(it, u);
+      if(u <= z || u <= sa) {
+        lower.putDouble(it, z);
+        return;
+      }
+      double r = u + 0.5 * sa; // Our cdist are scaled 0.5
+      // Find closest center, and distance to two closest centers
+      double min1 = curd2, min2 = Double.POSITIVE_INFINITY;
+      int minIndex = cur;
+      for(int i = 0; i < k - 1; i++) {
+        int c = cnum[cur][i];
+        if(cdist[cur][c] > r) {
+          break;
+        }
+        double dist = w.distance(fv, means[c]);
+        if(dist < min1) {
+          minIndex = c;
+          min2 = min1;
+          min1 = dist;
+        }
+        else if(dist < min2) {
+          min2 = dist;
+        }
+      }
+      if(minIndex != cur) {
+        w.reassign(it, fv, cur, minIndex);
+        upper.putDouble(it, min1 == curd2 ? u : w.sqrt(min1));
+      }
+      lower.putDouble(it, min2 == curd2 ? u : w.sqrt(min2));
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <V> Vector type
+   */
+  public static class Par<V extends NumberVector> extends ExponionKMeans.Par<V> {
+    /**
+     * Parallel core to use.
+     */
+    protected ParallelCore core;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      core = config.tryInstantiate(ParallelCore.class);
+    }
+
+    @Override
+    public ParallelExponionKMeans<V> make() {
+      return new ParallelExponionKMeans<>(distance, k, maxiter, initializer, varstat, core);
+    }
+  }
+}
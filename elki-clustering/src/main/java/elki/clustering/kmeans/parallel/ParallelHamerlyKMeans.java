@@ -0,0 +1,392 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans.parallel;
+
+import java.util.Arrays;
+
+import elki.clustering.kmeans.AbstractKMeans;
+import elki.clustering.kmeans.HamerlyKMeans;
+import elki.clustering.kmeans.initialization.KMeansInitialization;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.model.KMeansModel;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.ModifiableDBIDs;
+import elki.database.relation.Relation;
+import elki.distance.NumberVectorDistance;
+import elki.logging.Logging;
+import elki.math.linearalgebra.VMath;
+import elki.parallel.ParallelCore;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+
+import net.jafama.FastMath;
+
+/**
+ * Parallel implementation of Hamerly's fast k-means.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - KMeansUpdateProcessor
+ *
+ * @param <V> vector datatype
+ */
+public class ParallelHamerlyKMeans<V extends NumberVector> extends HamerlyKMeans<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelHamerlyKMeans.class);
+
+  /**
+   * Parallel core to use.
+   */
+  protected ParallelCore core;
+
+  /**
+   * Constructor.
+   *
+   * @param distance distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param varstat Compute the variance statistic
+   * @param core Parallel core to use
+   */
+  public ParallelHamerlyKMeans(NumberVectorDistance<? super V> distance, int k, int maxiter, KMeansInitialization initializer, boolean varstat, ParallelCore core) {
+    super(distance, k, maxiter, initializer, varstat);
+    this.core = core;
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Relation<V> relation) {
+    Instance instance = new Instance(relation, distance, initialMeans(relation), core);
+    instance.run(maxiter);
+    return instance.buildResult(varstat, relation);
+  }
+
+  /**
+   * Inner instance, storing state for a single data set.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Instance extends AbstractKMeans.Instance {
+    /**
+     * Parallel core to use.
+     */
+    protected ParallelCore core;
+
+    /**
+     * Distance function.
+     */
+    protected NumberVectorDistance<?> df;
+
+    /**
+     * Sum aggregate for the new mean.
+     */
+    protected double[][] sums;
+
+    /**
+     * Cluster sizes.
+     */
+    protected int[] sizes;
+
+    /**
+     * Temporary storage for the new means.
+     */
+    protected double[][] newmeans;
+
+    /**
+     * Separation of means.
+     */
+    protected double[] sep;
+
+    /**
+     * Distance moved by each mean.
+     */
+    protected double[] move;
+
+    /**
+     * Maximum distance moved.
+     */
+    protected double delta;
+
+    /**
+     * Pairwise separation of the means.
+     */
+    protected double[][] cdist;
+
+    /**
+     * Upper bounding distance
+     */
+    protected WritableDoubleDataStore upper;
+
+    /**
+     * Lower bounding distance
+     */
+    protected WritableDoubleDataStore lower;
+
+    /**
+     * Flag for the initial assignment.
+     */
+    protected boolean initial;
+
+    /**
+     * Processor for the assignment step.
+     */
+    protected KMeansUpdateProcessor proc;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Relation
+     * @param df Distance function
+     * @param means Initial means
+     * @param core Parallel core to use
+     */
+    public Instance(Relation<? extends NumberVector> relation, NumberVectorDistance<?> df, double[][] means, ParallelCore core) {
+      super(relation, df, means);
+      this.core = core;
+      this.df = df;
+      upper = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, Double.POSITIVE_INFINITY);
+      lower = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, 0.);
+      final int dim = means[0].length;
+      sums = new double[k][dim];
+      sizes = new int[k];
+      newmeans = new double[k][dim];
+      sep = new double[k];
+      move = new double[k];
+      cdist = new double[k][k];
+      proc = new KMeansUpdateProcessor(sums, sizes, () -> new Worker());
+    }
+
+    @Override
+    protected void run(int maxiter) {
+      super.run(maxiter);
+      // Materialize the final clusters from the assignment.
+      for(ModifiableDBIDs cluster : clusters) {
+        cluster.clear();
+      }
+      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+        clusters.get(assignment.intValue(it)).add(it);
+      }
+    }
+
+    @Override
+    protected Clustering<KMeansModel> buildResult(boolean varstat, Relation<? extends NumberVector> relation) {
+      return super.buildResult(varstat, relation); // Make accessible
+    }
+
+    @Override
+    protected int iterate(int iteration) {
+      if(iteration == 1) {
+        computeSquaredSeparation(cdist);
+        initial = true;
+      }
+      else {
+        meansFromSums(newmeans, sums);
+        delta = movedDistance(means, newmeans, move);
+        copyMeans(newmeans, means);
+        recomputeSeperation();
+        initial = false;
+      }
+      final int changed = proc.run(core, relation.getDBIDs());
+      diststat += proc.getDistanceComputations();
+      return changed;
+    }
+
+    @Override
+    protected void meansFromSums(double[][] dst, double[][] sums) {
+      for(int i = 0; i < k; i++) {
+        VMath.overwriteTimes(dst[i], sums[i], 1. / sizes[i]);
+      }
+    }
+
+    /**
+     * Recompute the separation of cluster means.
+     */
+    protected void recomputeSeperation() {
+      Arrays.fill(sep, Double.POSITIVE_INFINITY);
+      for(int i = 1; i < k; i++) {
+        double[] m1 = means[i];
+        for(int j = 0; j < i; j++) {
+          double d = distance(m1, means[j]);
+          sep[i] = (d < sep[i]) ? d : sep[i];
+          sep[j] = (d < sep[j]) ? d : sep[j];
+        }
+      }
+      // We need half the Euclidean distance
+      for(int i = 0; i < k; i++) {
+        sep[i] = .5 * (isSquared ? FastMath.sqrt(sep[i]) : sep[i]);
+      }
+    }
+
+    /**
+     * Perform the initial cluster assignment of a single object.
+     *
+     * @param w Worker
+     * @param it Object
+     */
+    protected void initialAssignToNearestCluster(Worker w, DBIDRef it) {
+      NumberVector fv = relation.get(it);
+      // Find closest center, and distance to two closest centers
+      double min1 = w.distance(fv, means[0]), min2 = w.distance(fv, means[1]);
+      int minIndex = 0;
+      if(min2 < min1) {
+        double tmp = min1;
+        min1 = min2;
+        min2 = tmp;
+        minIndex = 1;
+      }
+      for(int i = 2; i < k; i++) {
+        if(min2 > cdist[minIndex][i]) {
+          double dist = w.distance(fv, means[i]);
+          if(dist < min1) {
+            minIndex = i;
+            min2 = min1;
+            min1 = dist;
+          }
+          else if(dist < min2) {
+            min2 = dist;
+          }
+        }
+      }
+      // Assign to nearest cluster.
+      w.assign(it, fv, minIndex);
+      upper.putDouble(it, w.sqrt(min1));
+      lower.putDouble(it, w.sqrt(min2));
+    }
+
+    /**
+     * Update the bounds and the cluster assignment of a single object.
+     *
+     * @param w Worker
+     * @param it Object
+     */
+    protected void assignToNearestCluster(Worker w, DBIDRef it) {
+      final int cur = assignment.intValue(it);
+      // Update the bounds for the movement of the means:
+      final double z = lower.doubleValue(it) - delta;
+      final double sa = sep[cur];
+      double u = upper.doubleValue(it) + move[cur];
+      if(u <= z || u <= sa) {
+        upper.putDouble(it, u);
+        lower.putDouble(it, z);
+        return;
+      }
+      // Update the upper bound
+      NumberVector fv = relation.get(it);
+      double curd2 = w.distance(fv, means[cur]);
+      u = w.sqrt(curd2);
+      upper.putDouble(it, u);
+      if(u <= z || u <= sa) {
+        lower.putDouble(it, z);
+        return;
+      }
+      // Find closest center, and distance to two closest centers
+      double min1 = curd2, min2 = Double.POSITIVE_INFINITY;
+      int minIndex = cur;
+      for(int i = 0; i < k; i++) {
+        if(i == cur) {
+          continue;
+        }
+        double dist = w.distance(fv, means[i]);
+        if(dist < min1) {
+          minIndex = i;
+          min2 = min1;
+          min1 = dist;
+        }
+        else if(dist < min2) {
+          min2 = dist;
+        }
+      }
+      if(minIndex != cur) {
+        w.reassign(it, fv, cur, minIndex);
+        upper.putDouble(it, min1 == curd2 ? u : w.sqrt(min1));
+      }
+      lower.putDouble(it, min2 == curd2 ? u : w.sqrt(min2));
+    }
+
+    /**
+     * Worker for a block of objects.
+     *
+     * @author Erich Schubert
+     */
+    protected class Worker extends KMeansUpdateProcessor.Worker {
+      /**
+       * Constructor.
+       */
+      protected Worker() {
+        super(Instance.this.relation, df, Instance.this.assignment, k, means[0].length);
+      }
+
+      @Override
+      public void map(DBIDRef id) {
+        if(initial) {
+          initialAssignToNearestCluster(this, id);
+        }
+        else {
+          assignToNearestCluster(this, id);
+        }
+      }
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <V> Vector type
+   */
+  public static class Par<V extends NumberVector> extends HamerlyKMeans.Par<V> {
+    /**
+     * Parallel core to use.
+     */
+    protected ParallelCore core;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      core = config.tryInstantiate(ParallelCore.class);
+    }
+
+    @Override
+    public ParallelHamerlyKMeans<V> make() {
+      return new ParallelHamerlyKMeans<>(distance, k, maxiter, initializer, varstat, core);
+    }
+  }
+}
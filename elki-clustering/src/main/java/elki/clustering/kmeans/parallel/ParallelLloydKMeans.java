@@ -38,8 +38,10 @@ import elki.database.relation.Relation;
 import elki.distance.NumberVectorDistance;
 import elki.logging.Logging;
 import elki.logging.progress.IndefiniteProgress;
+import elki.parallel.ParallelCore;
 import elki.parallel.ParallelExecutor;
 import elki.result.Metadata;
+import elki.utilities.optionhandling.parameterization.Parameterization;
 
 /**
  * Parallel implementation of k-Means clustering.
@@ -52,6 +54,11 @@ import elki.result.Metadata;
  * @param <V> Vector type
  */
 public class ParallelLloydKMeans<V extends NumberVector> extends AbstractKMeans<V, KMeansModel> {
+  /**
+   * Parallel core to use.
+   */
+  protected ParallelCore core;
+
   /**
    * Constructor.
    *
@@ -59,7 +66,21 @@ public class ParallelLloydKMeans<V extends NumberVector> extends AbstractKMeans<
    * @param k K parameter
    */
   public ParallelLloydKMeans(NumberVectorDistance<? super V> distance, int k, int maxiter, KMeansInitialization initializer) {
+    this(distance, k, maxiter, initializer, ParallelCore.getCore());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param k K parameter
+   * @param maxiter Maximum number of iterations
+   * @param initializer Initialization method
+   * @param core Parallel core to use
+   */
+  public ParallelLloydKMeans(NumberVectorDistance<? super V> distance, int k, int maxiter, KMeansInitialization initializer, ParallelCore core) {
     super(distance, k, maxiter, initializer);
+    this.core = core;
   }
 
   /**
@@ -86,7 +107,7 @@ public class ParallelLloydKMeans<V extends NumberVector> extends AbstractKMeans<
     for(int iteration = 0; maxiter <= 0 || iteration < maxiter; iteration++) {
       LOG.incrementProcessed(prog);
       kmm.nextIteration(means);
-      ParallelExecutor.run(ids, kmm);
+      ParallelExecutor.run(core, ids, kmm);
       // Stop if no cluster assignment changed.
       if(!kmm.changed()) {
         break;
@@ -125,9 +146,20 @@ public class ParallelLloydKMeans<V extends NumberVector> extends AbstractKMeans<
    * @param <V> Vector type
    */
   public static class Par<V extends NumberVector> extends AbstractKMeans.Par<V> {
+    /**
+     * Parallel core to use.
+     */
+    protected ParallelCore core;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      core = config.tryInstantiate(ParallelCore.class);
+    }
+
     @Override
     public ParallelLloydKMeans<V> make() {
-      return new ParallelLloydKMeans<>(distance, k, maxiter, initializer);
+      return new ParallelLloydKMeans<>(distance, k, maxiter, initializer, core);
     }
   }
 }
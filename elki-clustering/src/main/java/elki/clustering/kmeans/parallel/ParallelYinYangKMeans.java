@@ -0,0 +1,358 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.kmeans.parallel;
+
+import elki.clustering.kmeans.YinYangKMeans;
+import elki.clustering.kmeans.initialization.KMeansInitialization;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.model.KMeansModel;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.ModifiableDBIDs;
+import elki.database.relation.Relation;
+import elki.distance.NumberVectorDistance;
+import elki.logging.Logging;
+import elki.math.linearalgebra.VMath;
+import elki.parallel.ParallelCore;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+
+/**
+ * Parallel implementation of Yin-Yang k-means.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - KMeansUpdateProcessor
+ *
+ * @param <V> vector datatype
+ */
+public class ParallelYinYangKMeans<V extends NumberVector> extends YinYangKMeans<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelYinYangKMeans.class);
+
+  /**
+   * Parallel core to use.
+   */
+  protected ParallelCore core;
+
+  /**
+   * Constructor.
+   *
+   * @param k Number of clusters
+   * @param maxiter Maximum number of iterations
+   * @param initializer Initialization method
+   * @param t Number of cluster center groups for pruning
+   * @param core Parallel core to use
+   */
+  public ParallelYinYangKMeans(int k, int maxiter, KMeansInitialization initializer, int t, ParallelCore core) {
+    super(k, maxiter, initializer, t);
+    this.core = core;
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Relation<V> rel) {
+    Instance instance = new Instance(rel, getDistance(), initialMeans(rel), t, core);
+    instance.run(maxiter);
+    return instance.buildResult();
+  }
+
+  /**
+   * Inner instance, storing state for a single data set.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Instance extends YinYangKMeans.Instance {
+    /**
+     * Parallel core to use.
+     */
+    protected ParallelCore core;
+
+    /**
+     * Distance function.
+     */
+    protected NumberVectorDistance<?> df;
+
+    /**
+     * Cluster sizes.
+     */
+    protected int[] sizes;
+
+    /**
+     * Flag for the initial assignment.
+     */
+    protected boolean initial;
+
+    /**
+     * Processor for the assignment step.
+     */
+    protected KMeansUpdateProcessor proc;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param df Distance function
+     * @param means Initial means
+     * @param t Number of groups to use
+     * @param core Parallel core to use
+     */
+    public Instance(Relation<? extends NumberVector> relation, NumberVectorDistance<?> df, double[][] means, int t, ParallelCore core) {
+      super(relation, df, means, t);
+      this.core = core;
+      this.df = df;
+      sizes = new int[k];
+      proc = new KMeansUpdateProcessor(sums, sizes, () -> new Worker());
+    }
+
+    @Override
+    protected void run(int maxiter) {
+      super.run(maxiter);
+      // Materialize the final clusters from the assignment.
+      for(ModifiableDBIDs cluster : clusters) {
+        cluster.clear();
+      }
+      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+        clusters.get(assignment.intValue(it)).add(it);
+      }
+    }
+
+    @Override
+    protected Clustering<KMeansModel> buildResult() {
+      return super.buildResult(); // Make accessible
+    }
+
+    @Override
+    protected int iterate(int iteration) {
+      if(iteration == 1) {
+        initial = true;
+      }
+      else {
+        updateMeans();
+        initial = false;
+      }
+      final int changed = proc.run(core, relation.getDBIDs());
+      diststat += proc.getDistanceComputations();
+      return changed;
+    }
+
+    /**
+     * Update the means, and how much they moved.
+     */
+    protected void updateMeans() {
+      final int dim = means[0].length;
+      double[] oldmean = new double[dim];
+      for(int g = 0; g < groups.length; g++) {
+        double gd = 0;
+        for(int i : groups[g]) {
+          if(sizes[i] > 0) {
+            double[] mean = means[i];
+            System.arraycopy(mean, 0, oldmean, 0, dim);
+            VMath.overwriteTimes(mean, sums[i], 1. / sizes[i]);
+            final double d = cdrift[i] = sqrtdistance(mean, oldmean);
+            gd = d > gd ? d : gd; // max group drift
+          }
+        }
+        gdrift[g] = gd;
+      }
+    }
+
+    /**
+     * Perform the initial cluster assignment of a single object.
+     *
+     * @param w Worker
+     * @param it Object
+     */
+    protected void initialAssignToNearestCluster(Worker w, DBIDRef it) {
+      NumberVector fv = relation.get(it);
+      double[] lbs = lower.get(it);
+      double min = Double.POSITIVE_INFINITY;
+      int globalindex = 0;
+      for(int g = 0; g < groups.length; g++) {
+        final int[] group = groups[g];
+        if(group.length == 0) {
+          continue;
+        }
+        // First center in group
+        double min1 = w.distance(fv, means[group[0]]);
+        double min2 = Double.POSITIVE_INFINITY;
+        int best = group[0];
+        // remaining centers in group
+        for(int c = 1; c < group.length; c++) {
+          final int center = group[c];
+          final double dist = w.distance(fv, means[center]);
+          if(dist < min1) {
+            min2 = min1;
+            best = center;
+            min1 = dist;
+          }
+          else if(dist < min2) {
+            min2 = dist;
+          }
+        }
+        // For the triangle inequality, we need Euclidean not squared
+        min1 = w.sqrt(min1);
+        min2 = min2 < Double.POSITIVE_INFINITY ? w.sqrt(min2) : min1;
+        if(min1 < min) {
+          lbs[glabel[globalindex]] = min;
+          min = min1;
+          globalindex = best;
+          lbs[g] = min2;
+        }
+        else {
+          lbs[g] = min1;
+        }
+      }
+      w.assign(it, fv, globalindex);
+      upper.putDouble(it, min);
+    }
+
+    /**
+     * Update the bounds and the cluster assignment of a single object.
+     *
+     * @param w Worker
+     * @param it Object
+     */
+    protected void assignToNearestCluster(Worker w, DBIDRef it) {
+      final int t = gdrift.length;
+      final int prev = assignment.intValue(it);
+      final double[] lbs = lower.get(it), prevlb = w.prevlb;
+      System.arraycopy(lbs, 0, prevlb, 0, t);
+      // Update the bounds with the maximum distance moved within each group
+      double ub = upper.doubleValue(it) + cdrift[prev];
+      double minlb = Double.POSITIVE_INFINITY;
+      for(int g = 0; g < t; g++) {
+        final double lb = lbs[g] -= gdrift[g];
+        minlb = lb < minlb ? lb : minlb;
+      }
+      // Global filter
+      if(minlb >= ub) {
+        upper.putDouble(it, ub);
+        return;
+      }
+      // tighten ub(x) and check again
+      NumberVector fv = relation.get(it);
+      upper.putDouble(it, ub = w.sqrtdistance(fv, means[prev]));
+      if(minlb >= ub) {
+        return;
+      }
+      int best = prev;
+      for(int g = 0; g < t; ++g) {
+        // Group filter
+        if(lbs[g] >= ub) {
+          continue;
+        }
+        final double plb = prevlb[g];
+        double sc = Double.POSITIVE_INFINITY;
+        for(int i : groups[g]) {
+          // Local filter
+          if(i == prev || sc < plb - cdrift[i]) {
+            continue;
+          }
+          final double di = w.sqrtdistance(fv, means[i]);
+          if(di < sc) { // at least second closest
+            if(di < ub) { // closest
+              sc = ub; // previous closest is now second
+              ub = di;
+              best = i;
+            }
+            else {
+              sc = di;
+            }
+          }
+        }
+        lbs[g] = sc;
+      }
+      if(prev != best) {
+        upper.putDouble(it, ub);
+        w.reassign(it, fv, prev, best);
+      }
+    }
+
+    /**
+     * Worker for a block of objects.
+     *
+     * @author Erich Schubert
+     */
+    protected class Worker extends KMeansUpdateProcessor.Worker {
+      /**
+       * Previous lower bounds of the current object.
+       */
+      protected double[] prevlb = new double[gdrift.length];
+
+      /**
+       * Constructor.
+       */
+      protected Worker() {
+        super(Instance.this.relation, df, Instance.this.assignment, k, means[0].length);
+      }
+
+      @Override
+      public void map(DBIDRef id) {
+        if(initial) {
+          initialAssignToNearestCluster(this, id);
+        }
+        else {
+          assignToNearestCluster(this, id);
+        }
+      }
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <V> Vector type
+   */
+  public static class Par<V extends NumberVector> extends YinYangKMeans.Par<V> {
+    /**
+     * Parallel core to use.
+     */
+    protected ParallelCore core;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      core = config.tryInstantiate(ParallelCore.class);
+    }
+
+    @Override
+    public ParallelYinYangKMeans<V> make() {
+      return new ParallelYinYangKMeans<>(k, maxiter, initializer, t, core);
+    }
+  }
+}
@@ -155,7 +155,7 @@ public class FastOPTICS<V extends NumberVector> implements OPTICSTypeAlgorithm {
 
     // compute ordering as for OPTICS
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("FastOPTICS clustering", ids.size(), LOG) : null;
-    processed = DBIDUtil.newHashSet(ids.size());
+    processed = DBIDUtil.newHashSet(ids.size(), ids);
     order = new ClusterOrder(ids);
     Metadata.of(order).setLongName("FastOPTICS Cluster Order");
     for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
@@ -92,7 +92,7 @@ public abstract interface GeneralizedOPTICS extends OPTICSTypeAlgorithm {
      */
     public Instance(DBIDs ids) {
       this.ids = ids;
-      processedIDs = DBIDUtil.newHashSet(ids.size());
+      processedIDs = DBIDUtil.newHashSet(ids.size(), ids);
       candidates = DBIDUtil.newArray();
       predecessor = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_HOT);
       reachability = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_DB | DataStoreFactory.HINT_HOT, Double.POSITIVE_INFINITY);
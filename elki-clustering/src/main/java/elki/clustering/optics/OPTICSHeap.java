@@ -134,7 +134,7 @@ public class OPTICSHeap<O> extends AbstractOPTICS<O> {
      */
     public Instance(Relation<O> relation) {
       ids = relation.getDBIDs();
-      processedIDs = DBIDUtil.newHashSet(ids.size());
+      processedIDs = DBIDUtil.newHashSet(ids.size(), ids);
       clusterOrder = new ClusterOrder(ids);
       Metadata.of(clusterOrder).setLongName("OPTICS Clusterorder");
       progress = LOG.isVerbose() ? new FiniteProgress("OPTICS", ids.size(), LOG) : null;
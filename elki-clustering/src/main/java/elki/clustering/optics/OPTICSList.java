@@ -151,7 +151,7 @@ public class OPTICSList<O> extends AbstractOPTICS<O> {
      */
     public Instance(Relation<O> relation) {
       ids = relation.getDBIDs();
-      processedIDs = DBIDUtil.newHashSet(ids.size());
+      processedIDs = DBIDUtil.newHashSet(ids.size(), ids);
       candidates = DBIDUtil.newArray();
       predecessor = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_HOT);
       reachability = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_DB | DataStoreFactory.HINT_HOT, Double.POSITIVE_INFINITY);
@@ -27,6 +27,9 @@ import elki.clustering.dbscan.DBSCAN;
 import elki.data.Clustering;
 import elki.data.model.Model;
 import elki.database.Database;
+import elki.database.HashmapDatabase;
+import elki.datasource.FileBasedDatabaseConnection;
+import elki.parallel.ParallelCore;
 import elki.utilities.ELKIBuilder;
 
 /**
@@ -68,4 +71,38 @@ public class ParallelGeneralizedDBSCANTest extends AbstractClusterAlgorithmTest
     assertFMeasure(db, result, 0.954382);
     assertClusterSizes(result, new int[] { 11, 200, 203, 224 });
   }
+
+  /**
+   * Run Generalized DBSCAN with a work-stealing executor of three threads.
+   */
+  @Test
+  public void testDBSCANWorkStealing() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Clustering<Model> result = new ELKIBuilder<>(ParallelGeneralizedDBSCAN.class) //
+        .with(DBSCAN.Par.EPSILON_ID, 11.5) //
+        .with(DBSCAN.Par.MINPTS_ID, 120) //
+        .with(ParallelCore.Par.WORKSTEALING_ID) //
+        .with(ParallelCore.Par.THREADS_ID, 3) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.954382);
+    assertClusterSizes(result, new int[] { 11, 200, 203, 224 });
+  }
+
+  /**
+   * Run Generalized DBSCAN on a database without a DBID range.
+   */
+  @Test
+  public void testDBSCANHashmapDatabase() {
+    Database db = new ELKIBuilder<>(HashmapDatabase.class) //
+        .with(FileBasedDatabaseConnection.Par.INPUT_ID, getClass().getClassLoader().getResource(UNITTEST + "single-link-effect.ascii")) //
+        .build();
+    db.initialize();
+    Clustering<Model> result = new ELKIBuilder<>(ParallelGeneralizedDBSCAN.class) //
+        .with(DBSCAN.Par.EPSILON_ID, 11.5) //
+        .with(DBSCAN.Par.MINPTS_ID, 120) //
+        .with(ParallelCore.Par.THREADS_ID, 3) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.954382);
+    assertClusterSizes(result, new int[] { 11, 200, 203, 224 });
+  }
 }
@@ -27,6 +27,7 @@ import elki.clustering.kmeans.KMeans;
 import elki.data.Clustering;
 import elki.data.DoubleVector;
 import elki.database.Database;
+import elki.parallel.ParallelCore;
 import elki.utilities.ELKIBuilder;
 
 /**
@@ -54,4 +55,20 @@ public class ParallelLloydKMeansTest extends AbstractClusterAlgorithmTest {
     assertFMeasure(db, result, 0.998005);
     assertClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
   }
+
+  /**
+   * Run KMeans with a work-stealing executor of three threads.
+   */
+  @Test
+  public void testParallelKMeansLloydWorkStealing() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Clustering<?> result = new ELKIBuilder<ParallelLloydKMeans<DoubleVector>>(ParallelLloydKMeans.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(KMeans.SEED_ID, 7) //
+        .with(ParallelCore.Par.WORKSTEALING_ID) //
+        .with(ParallelCore.Par.THREADS_ID, 3) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.998005);
+    assertClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
 }
@@ -0,0 +1,33 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.query;
+
+/**
+ * Marker interface for queries answered from precomputed results, such as a
+ * materialized kNN preprocessor or a distance matrix. These are not cached
+ * again by {@code QueryResultCache}.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public interface PrecomputedQuery {
+  // Empty marker interface
+}
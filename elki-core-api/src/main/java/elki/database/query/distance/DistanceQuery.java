@@ -72,6 +72,54 @@ public interface DistanceQuery<O> {
    */
   double distance(O o1, O o2);
 
+  /**
+   * Returns the distance between the two objects, if it does not exceed the
+   * threshold.
+   * <p>
+   * If the distance exceeds the threshold, the computation may stop early and
+   * return any value larger than the threshold instead.
+   * 
+   * @param id1 first object id
+   * @param id2 second object id
+   * @param threshold distance threshold
+   * @return the distance, or a value larger than the threshold
+   */
+  default double distance(DBIDRef id1, DBIDRef id2, double threshold) {
+    return distance(id1, id2);
+  }
+
+  /**
+   * Returns the distance between the two objects, if it does not exceed the
+   * threshold.
+   * <p>
+   * If the distance exceeds the threshold, the computation may stop early and
+   * return any value larger than the threshold instead.
+   * 
+   * @param o1 first object
+   * @param id2 second object id
+   * @param threshold distance threshold
+   * @return the distance, or a value larger than the threshold
+   */
+  default double distance(O o1, DBIDRef id2, double threshold) {
+    return distance(o1, id2);
+  }
+
+  /**
+   * Returns the distance between the two objects, if it does not exceed the
+   * threshold.
+   * <p>
+   * If the distance exceeds the threshold, the computation may stop early and
+   * return any value larger than the threshold instead.
+   * 
+   * @param id1 first object id
+   * @param o2 second object
+   * @param threshold distance threshold
+   * @return the distance, or a value larger than the threshold
+   */
+  default double distance(DBIDRef id1, O o2, double threshold) {
+    return distance(id1, o2);
+  }
+
   /**
    * Get the inner distance function.
    * 
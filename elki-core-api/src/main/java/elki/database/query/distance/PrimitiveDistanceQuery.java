@@ -20,8 +20,13 @@
  */
 package elki.database.query.distance;
 
+import elki.data.NumberVector;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDIter;
 import elki.database.ids.DBIDRef;
 import elki.database.relation.Relation;
+import elki.distance.BoundedDistance;
+import elki.distance.NumberVectorDistance;
 import elki.distance.PrimitiveDistance;
 
 /**
@@ -46,16 +51,23 @@ public class PrimitiveDistanceQuery<O> implements DistanceQuery<O> {
    */
   protected final PrimitiveDistance<? super O> distanceFunction;
 
+  /**
+   * The distance function, if it can stop early; {@code null} otherwise.
+   */
+  private final BoundedDistance<? super O> bounded;
+
   /**
    * Constructor.
    * 
    * @param relation Representation to use.
    * @param distanceFunction Our distance function
    */
+  @SuppressWarnings("unchecked")
   public PrimitiveDistanceQuery(Relation<? extends O> relation, PrimitiveDistance<? super O> distanceFunction) {
     super();
     this.relation = relation;
     this.distanceFunction = distanceFunction;
+    this.bounded = distanceFunction instanceof BoundedDistance ? (BoundedDistance<? super O>) distanceFunction : null;
   }
 
   @Override
@@ -78,6 +90,56 @@ public class PrimitiveDistanceQuery<O> implements DistanceQuery<O> {
     return distanceFunction.distance(o1, o2);
   }
 
+  @Override
+  public final double distance(DBIDRef id1, DBIDRef id2, double threshold) {
+    return distance(relation.get(id1), relation.get(id2), threshold);
+  }
+
+  @Override
+  public final double distance(O o1, DBIDRef id2, double threshold) {
+    return distance(o1, relation.get(id2), threshold);
+  }
+
+  @Override
+  public final double distance(DBIDRef id1, O o2, double threshold) {
+    return distance(relation.get(id1), o2, threshold);
+  }
+
+  /**
+   * Compute the distance of two objects, which may stop early if the distance
+   * function is a {@link BoundedDistance}.
+   *
+   * @param o1 First object
+   * @param o2 Second object
+   * @param threshold Distance threshold
+   * @return Distance, or a value larger than the threshold
+   */
+  public double distance(O o1, O o2, double threshold) {
+    return bounded != null ? bounded.distance(o1, o2, threshold) : distance(o1, o2);
+  }
+
+  /**
+   * Compute the distances of one query object to many candidates.
+   * <p>
+   * For distances on number vectors, this uses the batch implementation of
+   * {@link NumberVectorDistance#distances}.
+   *
+   * @param query Query object
+   * @param candidates Candidates
+   * @param out Output array, of at least the size of the candidates
+   */
+  @SuppressWarnings("unchecked")
+  public void distances(O query, ArrayDBIDs candidates, double[] out) {
+    if(distanceFunction instanceof NumberVectorDistance && query instanceof NumberVector) {
+      ((NumberVectorDistance<?>) distanceFunction).distances((NumberVector) query, (Relation<? extends NumberVector>) relation, candidates, out);
+      return;
+    }
+    int i = 0;
+    for(DBIDIter it = candidates.iter(); it.valid(); it.advance(), i++) {
+      out[i] = distanceFunction.distance(query, relation.get(it));
+    }
+  }
+
   @Override
   public Relation<? extends O> getRelation() {
     return relation;
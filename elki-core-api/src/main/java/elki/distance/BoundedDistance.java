@@ -0,0 +1,50 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.distance;
+
+/**
+ * Primitive distance function that can stop the computation early, once the
+ * distance is known to exceed a threshold.
+ * <p>
+ * This is useful for kNN and range searches, where only distances up to the
+ * current kNN distance or the query radius are of interest.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <O> input object type
+ */
+public interface BoundedDistance<O> extends PrimitiveDistance<O> {
+  /**
+   * Computes the distance between two objects, if it is at most the given
+   * threshold.
+   * <p>
+   * If the distance is at most the threshold, the exact distance must be
+   * returned. Otherwise, any value larger than the threshold may be returned,
+   * e.g., positive infinity.
+   *
+   * @param o1 first object
+   * @param o2 second object
+   * @param threshold distance threshold
+   * @return the distance, or a value larger than the threshold
+   */
+  double distance(O o1, O o2, double threshold);
+}
@@ -21,6 +21,9 @@
 package elki.distance;
 
 import elki.data.NumberVector;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDIter;
+import elki.database.relation.Relation;
 
 /**
  * Base interface for the common case of distance functions defined on numerical
@@ -44,4 +47,23 @@ public interface NumberVectorDistance<O> extends PrimitiveDistance<O> {
    *         function
    */
   double distance(NumberVector o1, NumberVector o2);
+
+  /**
+   * Computes the distances of one query vector to many candidates.
+   * <p>
+   * This is equivalent to calling {@link #distance} for every candidate, but
+   * implementations can avoid the per-pair overhead, and precompute values
+   * that only depend on the query.
+   *
+   * @param query Query vector
+   * @param relation Relation containing the candidates
+   * @param candidates Candidates
+   * @param out Output array, of at least the size of the candidates
+   */
+  default void distances(NumberVector query, Relation<? extends NumberVector> relation, ArrayDBIDs candidates, double[] out) {
+    int i = 0;
+    for(DBIDIter it = candidates.iter(); it.valid(); it.advance(), i++) {
+      out[i] = distance(query, relation.get(it));
+    }
+  }
 }
@@ -74,6 +74,14 @@ public class DoubleVector implements NumberVector {
     this.values = nocopy ? values : values.clone();
   }
 
+  /**
+   * Constructor for subclasses that provide their own storage, such as views
+   * into a larger array. These must override all accessor methods.
+   */
+  protected DoubleVector() {
+    this.values = null;
+  }
+
   /**
    * Create a DoubleVector consisting of the given double values.
    *
@@ -83,6 +91,28 @@ public class DoubleVector implements NumberVector {
     this.values = values.clone();
   }
 
+  /**
+   * Get the backing array, without copying, for performance critical code.
+   * The array must not be modified. Subclasses with a different storage return
+   * {@code null}. Views into a shared array return the entire array, and the
+   * vector starts at {@link #getRawOffset()}.
+   *
+   * @return backing array, or {@code null}
+   */
+  public double[] getRawValues() {
+    return values;
+  }
+
+  /**
+   * Get the offset of this vector in the array returned by
+   * {@link #getRawValues()}.
+   *
+   * @return offset of the first value
+   */
+  public int getRawOffset() {
+    return 0;
+  }
+
   @Override
   public int getDimensionality() {
     return values.length;
@@ -219,17 +249,17 @@ public class DoubleVector implements NumberVector {
 
     @Override
     public void toByteBuffer(ByteBuffer buffer, DoubleVector vec) throws IOException {
-      assert (vec.values.length < Byte.MAX_VALUE) : "This serializer only supports a maximum dimensionality of " + Byte.MAX_VALUE + "!";
-      assert (buffer.remaining() >= ByteArrayUtil.SIZE_DOUBLE * vec.values.length) : "Not enough space remaining in buffer to write " + vec.values.length + " doubles";
-      buffer.put((byte) vec.values.length);
-      for(int i = 0; i < vec.values.length; i++) {
-        buffer.putDouble(vec.values[i]);
+      assert (vec.getDimensionality() < Byte.MAX_VALUE) : "This serializer only supports a maximum dimensionality of " + Byte.MAX_VALUE + "!";
+      assert (buffer.remaining() >= ByteArrayUtil.SIZE_DOUBLE * vec.getDimensionality()) : "Not enough space remaining in buffer to write " + vec.getDimensionality() + " doubles";
+      buffer.put((byte) vec.getDimensionality());
+      for(int i = 0, dim = vec.getDimensionality(); i < dim; i++) {
+        buffer.putDouble(vec.doubleValue(i));
       }
     }
 
     @Override
     public int getByteSize(DoubleVector vec) {
-      assert (vec.values.length < Byte.MAX_VALUE) : "This serializer only supports a maximum dimensionality of " + Byte.MAX_VALUE + "!";
+      assert (vec.getDimensionality() < Byte.MAX_VALUE) : "This serializer only supports a maximum dimensionality of " + Byte.MAX_VALUE + "!";
       return ByteArrayUtil.SIZE_BYTE + ByteArrayUtil.SIZE_DOUBLE * vec.getDimensionality();
     }
   }
@@ -258,17 +288,17 @@ public class DoubleVector implements NumberVector {
 
     @Override
     public void toByteBuffer(ByteBuffer buffer, DoubleVector vec) throws IOException {
-      assert (vec.values.length < Short.MAX_VALUE) : "This serializer only supports a maximum dimensionality of " + Short.MAX_VALUE + "!";
-      assert (buffer.remaining() >= ByteArrayUtil.SIZE_DOUBLE * vec.values.length) : "Not enough space remaining in buffer to write " + vec.values.length + " doubles";
-      buffer.putShort((short) vec.values.length);
-      for(int i = 0; i < vec.values.length; i++) {
-        buffer.putDouble(vec.values[i]);
+      assert (vec.getDimensionality() < Short.MAX_VALUE) : "This serializer only supports a maximum dimensionality of " + Short.MAX_VALUE + "!";
+      assert (buffer.remaining() >= ByteArrayUtil.SIZE_DOUBLE * vec.getDimensionality()) : "Not enough space remaining in buffer to write " + vec.getDimensionality() + " doubles";
+      buffer.putShort((short) vec.getDimensionality());
+      for(int i = 0, dim = vec.getDimensionality(); i < dim; i++) {
+        buffer.putDouble(vec.doubleValue(i));
       }
     }
 
     @Override
     public int getByteSize(DoubleVector vec) {
-      assert (vec.values.length < Short.MAX_VALUE) : "This serializer only supports a maximum dimensionality of " + Short.MAX_VALUE + "!";
+      assert (vec.getDimensionality() < Short.MAX_VALUE) : "This serializer only supports a maximum dimensionality of " + Short.MAX_VALUE + "!";
       return ByteArrayUtil.SIZE_SHORT + ByteArrayUtil.SIZE_DOUBLE * vec.getDimensionality();
     }
   }
@@ -294,16 +324,16 @@ public class DoubleVector implements NumberVector {
 
     @Override
     public void toByteBuffer(ByteBuffer buffer, DoubleVector vec) throws IOException {
-      assert (buffer.remaining() >= ByteArrayUtil.SIZE_DOUBLE * vec.values.length) : "Not enough space remaining in buffer to write " + vec.values.length + " doubles";
-      ByteArrayUtil.writeUnsignedVarint(buffer, vec.values.length);
-      for(int i = 0; i < vec.values.length; i++) {
-        buffer.putDouble(vec.values[i]);
+      assert (buffer.remaining() >= ByteArrayUtil.SIZE_DOUBLE * vec.getDimensionality()) : "Not enough space remaining in buffer to write " + vec.getDimensionality() + " doubles";
+      ByteArrayUtil.writeUnsignedVarint(buffer, vec.getDimensionality());
+      for(int i = 0, dim = vec.getDimensionality(); i < dim; i++) {
+        buffer.putDouble(vec.doubleValue(i));
       }
     }
 
     @Override
     public int getByteSize(DoubleVector vec) {
-      return ByteArrayUtil.getUnsignedVarintSize(vec.values.length) + ByteArrayUtil.SIZE_DOUBLE * vec.values.length;
+      return ByteArrayUtil.getUnsignedVarintSize(vec.getDimensionality()) + ByteArrayUtil.SIZE_DOUBLE * vec.getDimensionality();
     }
   }
 }
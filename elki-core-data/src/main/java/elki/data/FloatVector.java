@@ -81,6 +81,16 @@ public class FloatVector implements NumberVector {
     this.values = values.clone();
   }
 
+  /**
+   * Get the backing array, without copying, for performance critical code.
+   * The array must not be modified.
+   *
+   * @return backing array
+   */
+  public float[] getRawValues() {
+    return values;
+  }
+
   @Override
   public int getDimensionality() {
     return values.length;
@@ -172,6 +172,26 @@ public class SparseDoubleVector implements SparseNumberVector {
     }
   }
 
+  /**
+   * Get the backing array of indexes, without copying, for performance
+   * critical code. The array must not be modified.
+   *
+   * @return sorted indexes of the stored values
+   */
+  public int[] getRawIndexes() {
+    return indexes;
+  }
+
+  /**
+   * Get the backing array of values, without copying, for performance critical
+   * code. The array must not be modified.
+   *
+   * @return stored values, in the order of {@link #getRawIndexes()}
+   */
+  public double[] getRawValues() {
+    return values;
+  }
+
   @Override
   public int getDimensionality() {
     return dimensionality;
@@ -36,6 +36,7 @@ import elki.utilities.io.FixedSizeByteBufferSerializer;
  * @navassoc - create - IntegerDBIDPair
  * @navassoc - create - IntegerDBIDRange
  * @navassoc - create - TroveHashSetModifiableDBIDs
+ * @navassoc - create - BitmapHashSetModifiableDBIDs
  * @navassoc - create - IntegerArrayDBIDs
  */
 abstract class AbstractIntegerDBIDFactory implements DBIDFactory {
@@ -105,9 +106,141 @@ abstract class AbstractIntegerDBIDFactory implements DBIDFactory {
 
   @Override
   public HashSetModifiableDBIDs newHashSet(DBIDs existing) {
+    // Note: we do not use bitmaps for copies of ranges, as some algorithms
+    // currently depend on the iteration order of hash sets.
+    if(existing instanceof BitmapHashSetModifiableDBIDs) {
+      return new BitmapHashSetModifiableDBIDs((BitmapHashSetModifiableDBIDs) existing);
+    }
     return new FastutilIntOpenHashSetModifiableDBIDs(existing);
   }
 
+  @Override
+  public HashSetModifiableDBIDs newHashSet(int size, DBIDs domain) {
+    // A bitmap uses one bit per range element, a hash set about 8 bytes per
+    // stored element.
+    return domain instanceof IntegerDBIDRange && size >= (domain.size() >>> 6) ? //
+        new BitmapHashSetModifiableDBIDs((IntegerDBIDRange) domain) : //
+        new FastutilIntOpenHashSetModifiableDBIDs(size);
+  }
+
+  @Override
+  public ModifiableDBIDs intersection(DBIDs first, DBIDs second) {
+    // Sorted arrays: merge or gallop, without hashing.
+    if(isSortedPair(first, second)) {
+      ModifiableDBIDs inter = newHashSet(Math.min(first.size(), second.size()));
+      IntegerDBIDSetOperations.intersection((IntegerArrayDBIDs) first, (IntegerArrayDBIDs) second, inter);
+      return inter;
+    }
+    // If exactly one is a Set, use it as second parameter.
+    if(second instanceof SetDBIDs) {
+      if(!(first instanceof SetDBIDs)) {
+        return internalIntersection(first, second);
+      }
+    }
+    else if(first instanceof SetDBIDs) {
+      return internalIntersection(second, first);
+    }
+    // Both are the same type: both set or both non set.
+    // Smaller goes first.
+    return first.size() <= second.size() ? internalIntersection(first, second) : internalIntersection(second, first);
+  }
+
+  /**
+   * Compute the set intersection of two sets.
+   *
+   * @param first First set
+   * @param second Second set
+   * @return result.
+   */
+  private ModifiableDBIDs internalIntersection(DBIDs first, DBIDs second) {
+    second = second.size() > 16 && !(second instanceof SetDBIDs) ? newHashSet(second) : second;
+    ModifiableDBIDs inter = newHashSet(first.size());
+    for(DBIDIter it = first.iter(); it.valid(); it.advance()) {
+      if(second.contains(it)) {
+        inter.add(it);
+      }
+    }
+    return inter;
+  }
+
+  @Override
+  public int intersectionSize(DBIDs first, DBIDs second) {
+    // Sorted arrays: merge or gallop, without hashing.
+    if(isSortedPair(first, second)) {
+      return IntegerDBIDSetOperations.intersection((IntegerArrayDBIDs) first, (IntegerArrayDBIDs) second, null);
+    }
+    // If exactly one is a Set, use it as second parameter.
+    if(second instanceof SetDBIDs) {
+      if(!(first instanceof SetDBIDs)) {
+        return internalIntersectionSize(first, second);
+      }
+    }
+    else if(first instanceof SetDBIDs) {
+      return internalIntersectionSize(second, first);
+    }
+    // Both are the same type: both set or both non set.
+    // Smaller goes first.
+    return first.size() <= second.size() ? internalIntersectionSize(first, second) : internalIntersectionSize(second, first);
+  }
+
+  /**
+   * Compute the set intersection size of two sets.
+   *
+   * @param first First set
+   * @param second Second set
+   * @return size
+   */
+  private int internalIntersectionSize(DBIDs first, DBIDs second) {
+    second = second.size() > 16 && !(second instanceof SetDBIDs) ? newHashSet(second) : second;
+    int c = 0;
+    for(DBIDIter it = first.iter(); it.valid(); it.advance()) {
+      if(second.contains(it)) {
+        c++;
+      }
+    }
+    return c;
+  }
+
+  @Override
+  public ModifiableDBIDs union(DBIDs first, DBIDs second) {
+    ModifiableDBIDs result = newHashSet(Math.max(first.size(), second.size()));
+    // Sorted arrays: merge, to skip the duplicates of the second set.
+    if(isSortedPair(first, second)) {
+      IntegerDBIDSetOperations.union((IntegerArrayDBIDs) first, (IntegerArrayDBIDs) second, result);
+      return result;
+    }
+    result.addDBIDs(first);
+    result.addDBIDs(second);
+    return result;
+  }
+
+  @Override
+  public ModifiableDBIDs difference(DBIDs first, DBIDs second) {
+    // Sorted arrays: merge or gallop, to add only the remaining objects.
+    if(isSortedPair(first, second)) {
+      ModifiableDBIDs result = newHashSet(first.size());
+      IntegerDBIDSetOperations.difference((IntegerArrayDBIDs) first, (IntegerArrayDBIDs) second, result);
+      return result;
+    }
+    ModifiableDBIDs result = newHashSet(first);
+    result.removeDBIDs(second);
+    return result;
+  }
+
+  /**
+   * Test if both are sorted integer arrays, for which we can intersect without
+   * hashing. Verifying the order is a cheap linear scan.
+   *
+   * @param first First set
+   * @param second Second set
+   * @return {@code true} if both are sorted integer arrays
+   */
+  private static boolean isSortedPair(DBIDs first, DBIDs second) {
+    return first instanceof IntegerArrayDBIDs && second instanceof IntegerArrayDBIDs //
+        && IntegerDBIDSetOperations.isSorted((IntegerArrayDBIDs) first) //
+        && IntegerDBIDSetOperations.isSorted((IntegerArrayDBIDs) second);
+  }
+
   @Override
   public DBIDPair newPair(DBIDRef first, DBIDRef second) {
     return new IntegerDBIDPair(first.internalGetIndex(), second.internalGetIndex());
@@ -80,16 +80,7 @@ class ArrayModifiableIntegerDBIDs implements ArrayModifiableDBIDs, IntegerArrayD
    */
   protected ArrayModifiableIntegerDBIDs(DBIDs existing) {
     this(existing.size());
-    if(existing instanceof IntegerDBIDRange) {
-      IntegerDBIDRange range = (IntegerDBIDRange) existing;
-      for(int i = 0, s = range.start, l = range.len; i < l; i++) {
-        store[i] = s + i;
-      }
-      size = range.len;
-    }
-    else {
-      this.addDBIDs(existing);
-    }
+    this.addDBIDs(existing);
   }
 
   @Override
@@ -139,6 +130,26 @@ class ArrayModifiableIntegerDBIDs implements ArrayModifiableDBIDs, IntegerArrayD
   @Override
   public boolean addDBIDs(DBIDs ids) {
     ensureSize(size + ids.size());
+    // Bulk copy from primitive storage:
+    if(ids instanceof ArrayModifiableIntegerDBIDs) {
+      ArrayModifiableIntegerDBIDs other = (ArrayModifiableIntegerDBIDs) ids;
+      System.arraycopy(other.store, 0, store, size, other.size);
+      size += other.size;
+      return true;
+    }
+    if(ids instanceof ArrayStaticIntegerDBIDs) {
+      int[] other = ((ArrayStaticIntegerDBIDs) ids).store;
+      System.arraycopy(other, 0, store, size, other.length);
+      size += other.length;
+      return true;
+    }
+    if(ids instanceof IntegerDBIDRange) {
+      IntegerDBIDRange range = (IntegerDBIDRange) ids;
+      for(int i = 0, s = range.start, l = range.len; i < l; i++) {
+        store[size++] = s + i;
+      }
+      return true;
+    }
     for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
       store[size++] = iter.internalGetIndex();
     }
@@ -0,0 +1,409 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.ids.integer;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDMIter;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DBIDVar;
+import elki.database.ids.DBIDs;
+import elki.database.ids.HashSetModifiableDBIDs;
+import elki.utilities.datastructures.BitsUtil;
+
+/**
+ * Set of DBIDs using a bitmap over a range of DBIDs.
+ * <p>
+ * This uses one bit per DBID of the range, independent of the number of
+ * elements stored, and is used for large subsets of a {@link IntegerDBIDRange}
+ * where a hash set would need several bytes per element. DBIDs outside of the
+ * range are stored in an additional hash set, which is only allocated when
+ * needed.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - Itr
+ */
+class BitmapHashSetModifiableDBIDs implements HashSetModifiableDBIDs, IntegerDBIDs {
+  /**
+   * First DBID of the bitmap range.
+   */
+  private final int start;
+
+  /**
+   * Length of the bitmap range.
+   */
+  private final int len;
+
+  /**
+   * Bitmap of the range.
+   */
+  private final long[] bits;
+
+  /**
+   * Number of bits set.
+   */
+  private int count;
+
+  /**
+   * DBIDs outside of the range, may be {@code null}.
+   */
+  private FastutilIntOpenHashSetModifiableDBIDs overflow;
+
+  /**
+   * Bit position to continue {@link #pop} from.
+   */
+  private int poppos;
+
+  /**
+   * Constructor.
+   *
+   * @param range Range of DBIDs to cover with the bitmap
+   */
+  protected BitmapHashSetModifiableDBIDs(IntegerDBIDRange range) {
+    super();
+    this.start = range.start;
+    this.len = range.len;
+    this.bits = BitsUtil.zero(len);
+    this.poppos = len - 1;
+  }
+
+  /**
+   * Copy constructor.
+   *
+   * @param other Existing set
+   */
+  protected BitmapHashSetModifiableDBIDs(BitmapHashSetModifiableDBIDs other) {
+    super();
+    this.start = other.start;
+    this.len = other.len;
+    this.bits = other.bits.clone();
+    this.count = other.count;
+    this.overflow = other.overflow != null && !other.overflow.isEmpty() ? //
+        new FastutilIntOpenHashSetModifiableDBIDs(other.overflow) : null;
+    this.poppos = len - 1;
+  }
+
+  /**
+   * Get the bit position of a DBID.
+   *
+   * @param id DBID
+   * @return Bit position, or -1 if not in the range
+   */
+  private int offset(DBIDRef id) {
+    final long off = (long) id.internalGetIndex() - start;
+    return off >= 0 && off < len ? (int) off : -1;
+  }
+
+  /**
+   * Test if the other set uses a bitmap over the same range.
+   *
+   * @param ids Other set
+   * @return {@code true} if the bitmaps are compatible
+   */
+  private boolean sameRange(DBIDs ids) {
+    if(!(ids instanceof BitmapHashSetModifiableDBIDs)) {
+      return false;
+    }
+    BitmapHashSetModifiableDBIDs other = (BitmapHashSetModifiableDBIDs) ids;
+    return other.start == start && other.len == len;
+  }
+
+  @Override
+  public boolean add(DBIDRef e) {
+    final int off = offset(e);
+    if(off < 0) {
+      overflow = overflow != null ? overflow : new FastutilIntOpenHashSetModifiableDBIDs();
+      return overflow.add(e);
+    }
+    final int w = off >>> 6;
+    final long m = 1L << off, old = bits[w];
+    if((old & m) != 0) {
+      return false;
+    }
+    bits[w] = old | m;
+    ++count;
+    return true;
+  }
+
+  @Override
+  public boolean remove(DBIDRef o) {
+    final int off = offset(o);
+    if(off < 0) {
+      return overflow != null && overflow.remove(o);
+    }
+    final int w = off >>> 6;
+    final long m = 1L << off, old = bits[w];
+    if((old & m) == 0) {
+      return false;
+    }
+    bits[w] = old & ~m;
+    --count;
+    return true;
+  }
+
+  @Override
+  public boolean contains(DBIDRef o) {
+    final int off = offset(o);
+    return off >= 0 ? (bits[off >>> 6] & (1L << off)) != 0 : //
+        overflow != null && overflow.contains(o);
+  }
+
+  @Override
+  public boolean addDBIDs(DBIDs ids) {
+    if(sameRange(ids)) {
+      BitmapHashSetModifiableDBIDs other = (BitmapHashSetModifiableDBIDs) ids;
+      BitsUtil.orI(bits, other.bits);
+      final int before = count;
+      count = BitsUtil.cardinality(bits);
+      return (other.overflow != null && addOverflow(other.overflow)) | count != before;
+    }
+    if(ids instanceof IntegerDBIDRange) {
+      IntegerDBIDRange range = (IntegerDBIDRange) ids;
+      if(range.start >= start && range.start - start + range.len <= len) {
+        final int before = count;
+        setRange(range.start - start, range.start - start + range.len);
+        count = BitsUtil.cardinality(bits);
+        return count != before;
+      }
+    }
+    boolean success = false;
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      success |= add(iter);
+    }
+    return success;
+  }
+
+  /**
+   * Add DBIDs to the overflow set.
+   *
+   * @param ids DBIDs outside of the range
+   * @return {@code true} if the set changed
+   */
+  private boolean addOverflow(DBIDs ids) {
+    if(ids.isEmpty()) {
+      return false;
+    }
+    overflow = overflow != null ? overflow : new FastutilIntOpenHashSetModifiableDBIDs(ids.size());
+    return overflow.addDBIDs(ids);
+  }
+
+  /**
+   * Set all bits in the given range.
+   *
+   * @param from First bit, inclusive
+   * @param to Last bit, exclusive
+   */
+  private void setRange(int from, int to) {
+    if(from >= to) {
+      return;
+    }
+    final int fw = from >>> 6, lw = (to - 1) >>> 6;
+    final long fm = -1L << from, lm = -1L >>> -to;
+    if(fw == lw) {
+      bits[fw] |= fm & lm;
+      return;
+    }
+    bits[fw] |= fm;
+    Arrays.fill(bits, fw + 1, lw, -1L);
+    bits[lw] |= lm;
+  }
+
+  @Override
+  public boolean removeDBIDs(DBIDs ids) {
+    if(sameRange(ids)) {
+      BitmapHashSetModifiableDBIDs other = (BitmapHashSetModifiableDBIDs) ids;
+      final int before = count;
+      for(int i = 0; i < bits.length; i++) {
+        bits[i] &= ~other.bits[i];
+      }
+      count = BitsUtil.cardinality(bits);
+      return (overflow != null && other.overflow != null && overflow.removeDBIDs(other.overflow)) | count != before;
+    }
+    boolean success = false;
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      success |= remove(iter);
+    }
+    return success;
+  }
+
+  @Override
+  public boolean retainAll(DBIDs set) {
+    if(sameRange(set)) {
+      BitmapHashSetModifiableDBIDs other = (BitmapHashSetModifiableDBIDs) set;
+      final int before = count;
+      BitsUtil.andI(bits, other.bits);
+      count = BitsUtil.cardinality(bits);
+      boolean modified = count != before;
+      if(overflow != null) {
+        modified |= other.overflow != null ? overflow.retainAll(other.overflow) : !overflow.isEmpty();
+        overflow = other.overflow != null ? overflow : null;
+      }
+      return modified;
+    }
+    boolean modified = false;
+    for(DBIDMIter it = iter(); it.valid(); it.advance()) {
+      if(!set.contains(it)) {
+        it.remove();
+        modified = true;
+      }
+    }
+    return modified;
+  }
+
+  @Override
+  public int size() {
+    return overflow != null ? count + overflow.size() : count;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return count == 0 && (overflow == null || overflow.isEmpty());
+  }
+
+  @Override
+  public BitmapHashSetModifiableDBIDs clear() {
+    Arrays.fill(bits, 0L);
+    count = 0;
+    overflow = null;
+    poppos = len - 1;
+    return this;
+  }
+
+  @Override
+  public DBIDVar pop(DBIDVar outvar) {
+    if(overflow != null && !overflow.isEmpty()) {
+      return overflow.pop(outvar);
+    }
+    if(count == 0) {
+      throw new NoSuchElementException("Cannot pop() from an empty set.");
+    }
+    int off = BitsUtil.previousSetBit(bits, poppos);
+    off = off >= 0 ? off : BitsUtil.previousSetBit(bits, len - 1);
+    BitsUtil.clearI(bits, off);
+    --count;
+    poppos = off;
+    if(outvar instanceof IntegerDBIDVar) {
+      ((IntegerDBIDVar) outvar).internalSetIndex(start + off);
+    }
+    else { // Fallback, should not happen (more expensive).
+      outvar.set(DBIDUtil.importInteger(start + off));
+    }
+    return outvar;
+  }
+
+  @Override
+  public Itr iter() {
+    return new Itr();
+  }
+
+  @Override
+  public String toString() {
+    if(isEmpty()) {
+      return "[]";
+    }
+    StringBuilder buf = new StringBuilder(size() * 5).append('[');
+    for(DBIDIter iter = iter(); iter.valid(); iter.advance()) {
+      buf.append(iter.toString()).append(", ");
+    }
+    buf.setLength(buf.length() - 2);
+    return buf.append(']').toString();
+  }
+
+  /**
+   * Iterator over the bitmap, then the overflow set.
+   *
+   * @author Erich Schubert
+   */
+  protected class Itr implements IntegerDBIDMIter {
+    /**
+     * Current bit position, -1 when in the overflow set.
+     */
+    int pos;
+
+    /**
+     * Iterator of the overflow set, may be {@code null}.
+     */
+    IntegerDBIDMIter oiter;
+
+    /**
+     * Constructor.
+     */
+    public Itr() {
+      super();
+      pos = BitsUtil.nextSetBit(bits, 0);
+      if(pos < 0) {
+        startOverflow();
+      }
+    }
+
+    /**
+     * Continue with the overflow set.
+     */
+    private void startOverflow() {
+      oiter = overflow != null ? overflow.iter() : null;
+    }
+
+    @Override
+    public boolean valid() {
+      return pos >= 0 || (oiter != null && oiter.valid());
+    }
+
+    @Override
+    public Itr advance() {
+      if(pos >= 0) {
+        if(++pos >= len || (pos = BitsUtil.nextSetBit(bits, pos)) < 0) {
+          pos = -1;
+          startOverflow();
+        }
+      }
+      else if(oiter != null) {
+        oiter.advance();
+      }
+      return this;
+    }
+
+    @Override
+    public int internalGetIndex() {
+      return pos >= 0 ? start + pos : oiter.internalGetIndex();
+    }
+
+    @Override
+    public void remove() {
+      if(pos >= 0) {
+        BitsUtil.clearI(bits, pos);
+        --count;
+      }
+      else {
+        oiter.remove();
+      }
+    }
+
+    @Override
+    public String toString() {
+      return Integer.toString(internalGetIndex());
+    }
+  }
+}
@@ -0,0 +1,279 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.ids.integer;
+
+import elki.database.ids.ModifiableDBIDs;
+import elki.utilities.documentation.Reference;
+
+/**
+ * Set operations on sorted integer DBID arrays.
+ * <p>
+ * For arrays of similar size, a merge is used. If one array is much larger
+ * than the other, we use galloping (exponential) search in the larger array,
+ * which needs only logarithmically many comparisons per element of the
+ * smaller array. Unions always need a full merge.
+ * <p>
+ * Reference:
+ * <p>
+ * J. L. Bentley, A. C.-C. Yao<br>
+ * An almost optimal algorithm for unbounded searching<br>
+ * Information Processing Letters 5(3)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @assoc - - - IntegerArrayDBIDs
+ */
+@Reference(authors = "J. L. Bentley, A. C.-C. Yao", //
+    title = "An almost optimal algorithm for unbounded searching", //
+    booktitle = "Information Processing Letters 5(3)", //
+    url = "https://doi.org/10.1016/0020-0190(76)90071-5", //
+    bibkey = "DBLP:journals/ipl/BentleyY76")
+final class IntegerDBIDSetOperations {
+  /**
+   * Private constructor. Static methods only.
+   */
+  private IntegerDBIDSetOperations() {
+    // Do not use.
+  }
+
+  /**
+   * Size ratio above which we use galloping search instead of merging.
+   */
+  private static final int GALLOP_RATIO = 16;
+
+  /**
+   * Test whether an array is sorted in strictly ascending order, i.e., it can
+   * be used with the set operations of this class.
+   *
+   * @param ids IDs
+   * @return {@code true} when sorted and free of duplicates
+   */
+  static boolean isSorted(IntegerArrayDBIDs ids) {
+    IntegerDBIDArrayIter it = ids.iter();
+    if(!it.valid()) {
+      return true;
+    }
+    int prev = it.internalGetIndex();
+    for(it.advance(); it.valid(); it.advance()) {
+      final int cur = it.internalGetIndex();
+      if(cur <= prev) {
+        return false;
+      }
+      prev = cur;
+    }
+    return true;
+  }
+
+  /**
+   * Intersect two sorted arrays.
+   *
+   * @param first First array, sorted
+   * @param second Second array, sorted
+   * @param out Output collection, may be {@code null} to only count
+   * @return Size of the intersection
+   */
+  static int intersection(IntegerArrayDBIDs first, IntegerArrayDBIDs second, ModifiableDBIDs out) {
+    if(first.size() > second.size()) {
+      return intersection(second, first, out);
+    }
+    return second.size() > GALLOP_RATIO * first.size() ? //
+        gallopingIntersection(first, second, out) : mergeIntersection(first, second, out);
+  }
+
+  /**
+   * Intersect two sorted arrays by merging.
+   *
+   * @param first First array, sorted
+   * @param second Second array, sorted
+   * @param out Output collection, may be {@code null} to only count
+   * @return Size of the intersection
+   */
+  private static int mergeIntersection(IntegerArrayDBIDs first, IntegerArrayDBIDs second, ModifiableDBIDs out) {
+    IntegerDBIDArrayIter i1 = first.iter(), i2 = second.iter();
+    int c = 0;
+    while(i1.valid() && i2.valid()) {
+      final int v1 = i1.internalGetIndex(), v2 = i2.internalGetIndex();
+      if(v1 < v2) {
+        i1.advance();
+      }
+      else if(v1 > v2) {
+        i2.advance();
+      }
+      else {
+        if(out != null) {
+          out.add(i1);
+        }
+        ++c;
+        i1.advance();
+        i2.advance();
+      }
+    }
+    return c;
+  }
+
+  /**
+   * Union of two sorted arrays. The first array is added completely, then the
+   * objects of the second not in the first are found by merging. This inserts
+   * in the same order as adding both arrays, so a hash set result iterates in
+   * the same order.
+   *
+   * @param first First array, sorted
+   * @param second Second array, sorted
+   * @param out Output collection
+   */
+  static void union(IntegerArrayDBIDs first, IntegerArrayDBIDs second, ModifiableDBIDs out) {
+    out.addDBIDs(first);
+    IntegerDBIDArrayIter i1 = first.iter(), i2 = second.iter();
+    while(i1.valid() && i2.valid()) {
+      final int v1 = i1.internalGetIndex(), v2 = i2.internalGetIndex();
+      if(v1 < v2) {
+        i1.advance();
+      }
+      else {
+        if(v1 > v2) {
+          out.add(i2);
+        }
+        else {
+          i1.advance();
+        }
+        i2.advance();
+      }
+    }
+    for(; i2.valid(); i2.advance()) {
+      out.add(i2);
+    }
+  }
+
+  /**
+   * Difference of two sorted arrays.
+   *
+   * @param first First array, sorted
+   * @param second Second array, sorted, to remove
+   * @param out Output collection
+   */
+  static void difference(IntegerArrayDBIDs first, IntegerArrayDBIDs second, ModifiableDBIDs out) {
+    if(second.size() > GALLOP_RATIO * first.size()) {
+      gallopingDifference(first, second, out);
+      return;
+    }
+    IntegerDBIDArrayIter i1 = first.iter(), i2 = second.iter();
+    while(i1.valid() && i2.valid()) {
+      final int v1 = i1.internalGetIndex(), v2 = i2.internalGetIndex();
+      if(v1 < v2) {
+        out.add(i1);
+        i1.advance();
+      }
+      else {
+        i2.advance();
+        if(v1 == v2) {
+          i1.advance();
+        }
+      }
+    }
+    for(; i1.valid(); i1.advance()) {
+      out.add(i1);
+    }
+  }
+
+  /**
+   * Difference of a small sorted array and a large sorted array, using
+   * galloping search in the larger array.
+   *
+   * @param small Smaller array, sorted
+   * @param large Larger array, sorted, to remove
+   * @param out Output collection
+   */
+  private static void gallopingDifference(IntegerArrayDBIDs small, IntegerArrayDBIDs large, ModifiableDBIDs out) {
+    IntegerDBIDArrayIter i1 = small.iter(), i2 = large.iter();
+    final int n = large.size();
+    int lo = 0;
+    for(; i1.valid() && lo < n; i1.advance()) {
+      lo = gallop(i2, lo, n, i1.internalGetIndex());
+      if(lo < n && i2.seek(lo).internalGetIndex() == i1.internalGetIndex()) {
+        ++lo;
+        continue;
+      }
+      out.add(i1);
+    }
+    for(; i1.valid(); i1.advance()) {
+      out.add(i1);
+    }
+  }
+
+  /**
+   * Find the first position of a value that is not smaller than the query, by
+   * exponential search followed by binary search.
+   *
+   * @param it Iterator of the sorted array
+   * @param lo Start position, all values before are smaller
+   * @param n Array size
+   * @param v Query value
+   * @return First position with a value not smaller, or n
+   */
+  private static int gallop(IntegerDBIDArrayIter it, int lo, int n, int v) {
+    // Exponential search for an upper bound, all before lo are smaller:
+    int hi = lo;
+    for(int step = 1; hi < n && it.seek(hi).internalGetIndex() < v; step <<= 1) {
+      lo = hi + 1;
+      hi += step;
+    }
+    // Binary search for the first element >= v in [lo, hi):
+    hi = hi < n ? hi : n;
+    while(lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if(it.seek(mid).internalGetIndex() < v) {
+        lo = mid + 1;
+      }
+      else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Intersect a small sorted array with a large sorted array, using galloping
+   * search in the larger array.
+   *
+   * @param small Smaller array, sorted
+   * @param large Larger array, sorted
+   * @param out Output collection, may be {@code null} to only count
+   * @return Size of the intersection
+   */
+  private static int gallopingIntersection(IntegerArrayDBIDs small, IntegerArrayDBIDs large, ModifiableDBIDs out) {
+    IntegerDBIDArrayIter i1 = small.iter(), i2 = large.iter();
+    final int n = large.size();
+    int c = 0, lo = 0;
+    for(; i1.valid() && lo < n; i1.advance()) {
+      final int v = i1.internalGetIndex();
+      lo = gallop(i2, lo, n, v);
+      if(lo < n && i2.seek(lo).internalGetIndex() == v) {
+        if(out != null) {
+          out.add(i1);
+        }
+        ++c;
+        ++lo;
+      }
+    }
+    return c;
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.datastore.offheap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.WritableDBIDDataStore;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRange;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DBIDVar;
+
+/**
+ * Unit test for off-heap data stores.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class OffHeapDataStoreTest {
+  @Test
+  public void testDirect() {
+    checkStores(new OffHeapDataStoreFactory(10, 1000, null));
+  }
+
+  @Test
+  public void testMapped() {
+    checkStores(new OffHeapDataStoreFactory(10, 1000, new File(System.getProperty("java.io.tmpdir"))));
+  }
+
+  @Test
+  public void testThreshold() {
+    OffHeapDataStoreFactory factory = new OffHeapDataStoreFactory(10, 1000, null);
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(100);
+    assertTrue(factory.makeDoubleStorage(ids, DataStoreFactory.HINT_TEMP) instanceof OffHeapDoubleStore);
+    assertFalse(factory.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT) instanceof OffHeapDoubleStore);
+    assertFalse(factory.makeDoubleStorage(DBIDUtil.newArray(ids), DataStoreFactory.HINT_TEMP) instanceof OffHeapDoubleStore);
+    assertTrue(factory.makeIntegerStorage(DBIDUtil.generateStaticDBIDRange(1000), DataStoreFactory.HINT_HOT) instanceof OffHeapIntegerStore);
+  }
+
+  /**
+   * Exercise the stores of a factory.
+   *
+   * @param factory Factory
+   */
+  private void checkStores(DataStoreFactory factory) {
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(100);
+    WritableDoubleDataStore dbl = factory.makeDoubleStorage(ids, DataStoreFactory.HINT_TEMP, 1.5);
+    WritableIntegerDataStore integer = factory.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP, -1);
+    WritableDBIDDataStore dbid = factory.makeDBIDStorage(ids, DataStoreFactory.HINT_TEMP);
+    assertTrue(dbl instanceof OffHeapDoubleStore);
+    assertTrue(integer instanceof OffHeapIntegerStore);
+    assertTrue(dbid instanceof OffHeapDBIDStore);
+    DBIDVar var = DBIDUtil.newVar();
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      assertEquals(1.5, dbl.doubleValue(it), 0.);
+      assertEquals(-1, integer.intValue(it));
+      assertTrue(DBIDUtil.equal(DBIDUtil.invalid(), dbid.assignVar(it, var)));
+    }
+    int i = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      assertEquals(1.5, dbl.putDouble(it, i * 0.5), 0.);
+      dbl.increment(it, 1.);
+      assertEquals(-1, integer.putInt(it, i));
+      integer.increment(it, 2);
+      dbid.putDBID(it, ids.assignVar(ids.size() - 1 - i, var));
+    }
+    i = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      assertEquals(i * 0.5 + 1., dbl.doubleValue(it), 0.);
+      assertEquals(i + 2, integer.intValue(it));
+      assertEquals(ids.size() - 1 - i, ids.getOffset(dbid.assignVar(it, var)));
+    }
+    dbl.clear();
+    integer.clear();
+    dbid.clear();
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      assertEquals(1.5, dbl.doubleValue(it), 0.);
+      assertEquals(-1, integer.intValue(it));
+      assertTrue(DBIDUtil.equal(DBIDUtil.invalid(), dbid.assignVar(it, var)));
+    }
+    dbl.destroy();
+    integer.destroy();
+    dbid.destroy();
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.ids;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test the bitmap sets used for subsets of DBID ranges, against the regular
+ * hash sets.
+ *
+ * @author Erich Schubert
+ */
+public class BitmapHashSetTest {
+  @Test
+  public void testOperations() {
+    DBIDRange range = DBIDFactory.FACTORY.generateStaticDBIDRange(1000);
+    DBIDRange other = DBIDFactory.FACTORY.generateStaticDBIDRange(100);
+    HashSetModifiableDBIDs bitmap = DBIDUtil.newHashSet(range.size(), range);
+    HashSetModifiableDBIDs hash = DBIDUtil.newHashSet();
+    Random r = new Random(0L);
+    DBIDVar var = DBIDUtil.newVar();
+    for(int i = 0; i < 5000; i++) {
+      // Mostly from the range, sometimes outside:
+      DBIDRange src = r.nextInt(10) == 0 ? other : range;
+      src.assignVar(r.nextInt(src.size()), var);
+      if(r.nextInt(3) == 0) {
+        assertEquals("remove", hash.remove(var), bitmap.remove(var));
+      }
+      else {
+        assertEquals("add", hash.add(var), bitmap.add(var));
+      }
+      assertEquals("size", hash.size(), bitmap.size());
+    }
+    assertSameSet(hash, bitmap);
+    // Remove through the iterator:
+    for(DBIDMIter it = bitmap.iter(); it.valid(); it.advance()) {
+      if(r.nextBoolean()) {
+        hash.remove(it);
+        it.remove();
+      }
+    }
+    assertSameSet(hash, bitmap);
+    // Bulk operations on bitmaps of the same range:
+    HashSetModifiableDBIDs full = DBIDUtil.newHashSet(range.size(), range);
+    full.addDBIDs(range);
+    assertEquals(range.size(), full.size());
+    HashSetModifiableDBIDs copy = DBIDUtil.newHashSet(bitmap);
+    copy.retainAll(full);
+    hash.retainAll(range);
+    assertSameSet(hash, copy);
+    full.removeDBIDs(bitmap);
+    assertEquals(range.size() - copy.size(), full.size());
+    full.addDBIDs(bitmap);
+    assertEquals(range.size() + bitmap.size() - copy.size(), full.size());
+    // Pop all:
+    for(int s = bitmap.size(); s > 0; s--) {
+      bitmap.pop(var);
+      assertFalse(bitmap.contains(var));
+      assertEquals(s - 1, bitmap.size());
+    }
+    assertTrue(bitmap.isEmpty());
+  }
+
+  /**
+   * Compare two sets.
+   *
+   * @param expected Expected set
+   * @param actual Actual set
+   */
+  private static void assertSameSet(DBIDs expected, DBIDs actual) {
+    assertEquals("size", expected.size(), actual.size());
+    int c = 0;
+    for(DBIDIter it = actual.iter(); it.valid(); it.advance(), c++) {
+      assertTrue("contains", expected.contains(it));
+    }
+    assertEquals("iterator", expected.size(), c);
+    for(DBIDIter it = expected.iter(); it.valid(); it.advance()) {
+      assertTrue("contains", actual.contains(it));
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.ids;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test the set operations of {@link DBIDUtil}, including the fast paths for
+ * sorted arrays.
+ *
+ * @author Erich Schubert
+ */
+public class DBIDSetOperationsTest {
+  @Test
+  public void testIntersection() {
+    DBIDRange range = DBIDFactory.FACTORY.generateStaticDBIDRange(10000);
+    Random r = new Random(0L);
+    // Similar sizes (merge), and very different sizes (galloping):
+    assertIntersection(sample(range, 0.3, r), sample(range, 0.5, r));
+    assertIntersection(sample(range, 0.002, r), sample(range, 0.7, r));
+    assertIntersection(sample(range, 0.9, r), sample(range, 0.001, r));
+    assertIntersection(sample(range, 0., r), sample(range, 0.5, r));
+    assertIntersection(range, sample(range, 0.5, r));
+  }
+
+  @Test
+  public void testUnionDifference() {
+    DBIDRange range = DBIDFactory.FACTORY.generateStaticDBIDRange(10000);
+    Random r = new Random(0L);
+    // Similar sizes (merge), and very different sizes (galloping):
+    assertUnionDifference(sample(range, 0.3, r), sample(range, 0.5, r));
+    assertUnionDifference(sample(range, 0.002, r), sample(range, 0.7, r));
+    assertUnionDifference(sample(range, 0.9, r), sample(range, 0.001, r));
+    assertUnionDifference(sample(range, 0., r), sample(range, 0.5, r));
+    assertUnionDifference(range, sample(range, 0.5, r));
+    ArrayModifiableDBIDs a = sample(range, 0.3, r);
+    DBIDUtil.randomShuffle(a, r);
+    assertUnionDifference(a, sample(range, 0.4, r));
+  }
+
+  @Test
+  public void testUnsorted() {
+    DBIDRange range = DBIDFactory.FACTORY.generateStaticDBIDRange(1000);
+    Random r = new Random(0L);
+    ArrayModifiableDBIDs a = sample(range, 0.3, r), b = sample(range, 0.4, r);
+    DBIDUtil.randomShuffle(a, r);
+    assertIntersection(a, b);
+    assertIntersection(a, DBIDUtil.newHashSet(b));
+  }
+
+  @Test
+  public void testAddDBIDs() {
+    DBIDRange range = DBIDFactory.FACTORY.generateStaticDBIDRange(100);
+    Random r = new Random(0L);
+    ArrayModifiableDBIDs a = sample(range, 0.3, r), b = sample(range, 0.4, r);
+    ArrayModifiableDBIDs c = DBIDUtil.newArray(a);
+    c.addDBIDs(b);
+    c.addDBIDs(range);
+    c.addDBIDs(c);
+    assertEquals(2 * (a.size() + b.size() + range.size()), c.size());
+    DBIDArrayIter it = c.iter();
+    for(DBIDs part : new DBIDs[] { a, b, range, a, b, range }) {
+      for(DBIDIter it2 = part.iter(); it2.valid(); it2.advance(), it.advance()) {
+        assertTrue(DBIDUtil.equal(it, it2));
+      }
+    }
+  }
+
+  /**
+   * Sample a sorted subset of a range.
+   *
+   * @param range Range
+   * @param p Probability
+   * @param r Random generator
+   * @return Sorted sample
+   */
+  private static ArrayModifiableDBIDs sample(DBIDRange range, double p, Random r) {
+    ArrayModifiableDBIDs ids = DBIDUtil.newArray();
+    for(DBIDIter it = range.iter(); it.valid(); it.advance()) {
+      if(r.nextDouble() < p) {
+        ids.add(it);
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * Compare union and difference to a naive computation.
+   *
+   * @param a First set
+   * @param b Second set
+   */
+  private static void assertUnionDifference(DBIDs a, DBIDs b) {
+    HashSetModifiableDBIDs ha = DBIDUtil.newHashSet(a), hb = DBIDUtil.newHashSet(b);
+    ModifiableDBIDs union = DBIDUtil.union(a, b);
+    assertEquals("Union size", ha.size() + hb.size() - DBIDUtil.intersectionSize(ha, hb), union.size());
+    for(DBIDIter it = union.iter(); it.valid(); it.advance()) {
+      assertTrue("Not in either set", ha.contains(it) || hb.contains(it));
+    }
+    for(DBIDs[] pair : new DBIDs[][] { { a, b }, { b, a } }) {
+      HashSetModifiableDBIDs expected = DBIDUtil.newHashSet(pair[0]);
+      expected.removeDBIDs(pair[1]);
+      ModifiableDBIDs diff = DBIDUtil.difference(pair[0], pair[1]);
+      assertEquals("Difference size", expected.size(), diff.size());
+      for(DBIDIter it = diff.iter(); it.valid(); it.advance()) {
+        assertTrue("Not in difference", expected.contains(it));
+      }
+    }
+  }
+
+  /**
+   * Compare the intersection to a naive computation.
+   *
+   * @param a First set
+   * @param b Second set
+   */
+  private static void assertIntersection(DBIDs a, DBIDs b) {
+    int expected = 0;
+    for(DBIDIter it = a.iter(); it.valid(); it.advance()) {
+      for(DBIDIter it2 = b.iter(); it2.valid(); it2.advance()) {
+        if(DBIDUtil.equal(it, it2)) {
+          ++expected;
+          break;
+        }
+      }
+    }
+    assertEquals("Intersection size", expected, DBIDUtil.intersectionSize(a, b));
+    assertEquals("Intersection size", expected, DBIDUtil.intersectionSize(b, a));
+    ModifiableDBIDs inter = DBIDUtil.intersection(a, b);
+    assertEquals("Intersection", expected, inter.size());
+    for(DBIDIter it = inter.iter(); it.valid(); it.advance()) {
+      assertTrue("Not in first set", a.contains(it));
+      assertTrue("Not in second set", b.contains(it));
+    }
+  }
+}
@@ -20,7 +20,7 @@
  */
 package elki.database.datastore;
 
-import elki.database.datastore.memory.MemoryDataStoreFactory;
+import elki.database.datastore.offheap.OffHeapDataStoreFactory;
 import elki.database.ids.DBIDs;
 
 /**
@@ -40,9 +40,10 @@ import elki.database.ids.DBIDs;
  */
 public interface DataStoreFactory {
   /**
-   * Static storage factory
+   * Static storage factory. Large stores can be moved off-heap by setting
+   * system properties, see {@link OffHeapDataStoreFactory}.
    */
-  DataStoreFactory FACTORY = new MemoryDataStoreFactory();
+  DataStoreFactory FACTORY = OffHeapDataStoreFactory.fromSystemProperties();
 
   /**
    * Storage will be used only temporary.
@@ -0,0 +1,127 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.datastore.offheap;
+
+import java.nio.IntBuffer;
+
+import elki.database.datastore.DataStoreIDMap;
+import elki.database.datastore.WritableDBIDDataStore;
+import elki.database.ids.DBID;
+import elki.database.ids.DBIDFactory;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DBIDVar;
+
+/**
+ * DBID storage in off-heap buffers, storing the integer representation of the
+ * DBIDs.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @composed - - - elki.database.datastore.DataStoreIDMap
+ */
+public class OffHeapDBIDStore implements WritableDBIDDataStore {
+  /**
+   * Data buffers, of {@code 1 << CHUNK_SHIFT} entries each.
+   */
+  private IntBuffer[] data;
+
+  /**
+   * DBID to index map
+   */
+  private DataStoreIDMap idmap;
+
+  /**
+   * Constructor.
+   *
+   * @param data Data buffers
+   * @param idmap ID map
+   */
+  public OffHeapDBIDStore(IntBuffer[] data, DataStoreIDMap idmap) {
+    super();
+    this.data = data;
+    this.idmap = idmap;
+    clear();
+  }
+
+  /**
+   * Get the integer representation stored for an object.
+   *
+   * @param id Object
+   * @return Stored value
+   */
+  private int getInt(DBIDRef id) {
+    final int off = idmap.mapDBIDToOffset(id);
+    return data[off >>> OffHeapDataStoreFactory.CHUNK_SHIFT].get(off & ((1 << OffHeapDataStoreFactory.CHUNK_SHIFT) - 1));
+  }
+
+  @Override
+  @Deprecated
+  public DBID get(DBIDRef id) {
+    return DBIDUtil.importInteger(getInt(id));
+  }
+
+  @Override
+  public DBIDVar assignVar(DBIDRef id, DBIDVar var) {
+    return DBIDFactory.FACTORY.assignVar(var, getInt(id));
+  }
+
+  @Override
+  @Deprecated
+  public DBID put(DBIDRef id, DBID value) {
+    DBID ret = get(id);
+    putDBID(id, value);
+    return ret;
+  }
+
+  @Override
+  public void putDBID(DBIDRef id, DBIDRef value) {
+    final int off = idmap.mapDBIDToOffset(id);
+    data[off >>> OffHeapDataStoreFactory.CHUNK_SHIFT].put(off & ((1 << OffHeapDataStoreFactory.CHUNK_SHIFT) - 1), DBIDUtil.asInteger(value));
+  }
+
+  @Override
+  public void put(DBIDRef id, DBIDRef value) {
+    putDBID(id, value);
+  }
+
+  @Override
+  public void destroy() {
+    data = null;
+    idmap = null;
+  }
+
+  @Override
+  public void clear() {
+    final int inv = DBIDUtil.asInteger(DBIDUtil.invalid());
+    for(IntBuffer chunk : data) {
+      for(int i = 0, l = chunk.capacity(); i < l; i++) {
+        chunk.put(i, inv);
+      }
+    }
+  }
+
+  @Override
+  public void delete(DBIDRef id) {
+    putDBID(id, DBIDUtil.invalid());
+  }
+}
@@ -0,0 +1,242 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.datastore.offheap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.WritableDBIDDataStore;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.datastore.memory.MemoryDataStoreFactory;
+import elki.database.ids.DBIDRange;
+import elki.database.ids.DBIDs;
+import elki.utilities.exceptions.AbortException;
+
+/**
+ * Storage factory that places large primitive data stores outside of the Java
+ * heap, either in direct byte buffers or in memory-mapped temporary files.
+ * <p>
+ * Double, integer and DBID stores on a DBID range are stored off-heap if they
+ * are marked {@link DataStoreFactory#HINT_TEMP} and have at least
+ * {@code tempThreshold} entries, or if they have at least {@code threshold}
+ * entries. Everything else is stored as in {@link MemoryDataStoreFactory}.
+ * Off-heap stores do not need to be scanned or copied by the garbage
+ * collector, but their memory is only released once the buffer objects have
+ * been collected.
+ * <p>
+ * This factory is used as {@link DataStoreFactory#FACTORY} if the system
+ * property {@code elki.datastore.offheap} is set to the minimum size of
+ * temporary stores; {@code elki.datastore.offheap.threshold} sets the minimum
+ * size of other stores (default: 16 times as large), and
+ * {@code elki.datastore.offheap.dir} a directory for memory-mapped files.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @stereotype factory
+ * @navhas - create - OffHeapDoubleStore
+ * @navhas - create - OffHeapIntegerStore
+ * @navhas - create - OffHeapDBIDStore
+ */
+public class OffHeapDataStoreFactory extends MemoryDataStoreFactory {
+  /**
+   * System property to enable off-heap storage.
+   */
+  public static final String TEMP_THRESHOLD_PROPERTY = "elki.datastore.offheap";
+
+  /**
+   * System property for the threshold of non-temporary stores.
+   */
+  public static final String THRESHOLD_PROPERTY = "elki.datastore.offheap.threshold";
+
+  /**
+   * System property for the directory for memory-mapped files.
+   */
+  public static final String DIRECTORY_PROPERTY = "elki.datastore.offheap.dir";
+
+  /**
+   * Number of entries per buffer, as power of two.
+   */
+  protected static final int CHUNK_SHIFT = 27;
+
+  /**
+   * Minimum size of temporary stores to place off-heap.
+   */
+  private int tempThreshold;
+
+  /**
+   * Minimum size of other stores to place off-heap.
+   */
+  private int threshold;
+
+  /**
+   * Directory for memory-mapped files, or {@code null} for direct buffers.
+   */
+  private File directory;
+
+  /**
+   * Constructor.
+   *
+   * @param tempThreshold Minimum size of temporary stores to place off-heap
+   * @param threshold Minimum size of other stores to place off-heap
+   * @param directory Directory for memory-mapped files, {@code null} for
+   *        direct buffers
+   */
+  public OffHeapDataStoreFactory(int tempThreshold, int threshold, File directory) {
+    super();
+    this.tempThreshold = tempThreshold;
+    this.threshold = threshold;
+    this.directory = directory;
+  }
+
+  /**
+   * Get the default storage factory, as configured by the system properties.
+   *
+   * @return Storage factory
+   */
+  public static DataStoreFactory fromSystemProperties() {
+    String temp = System.getProperty(TEMP_THRESHOLD_PROPERTY);
+    if(temp == null) {
+      return new MemoryDataStoreFactory();
+    }
+    final int tempThreshold = Integer.parseInt(temp);
+    String other = System.getProperty(THRESHOLD_PROPERTY);
+    String dir = System.getProperty(DIRECTORY_PROPERTY);
+    return new OffHeapDataStoreFactory(tempThreshold, //
+        other != null ? Integer.parseInt(other) : (int) Math.min(Integer.MAX_VALUE, tempThreshold * 16L), //
+        dir != null ? new File(dir) : null);
+  }
+
+  /**
+   * Test whether to store data off-heap.
+   *
+   * @param ids DBIDs to store data for
+   * @param hints Hints for the storage manager
+   * @return {@code true} to use off-heap storage
+   */
+  protected boolean useOffHeap(DBIDs ids, int hints) {
+    return ids instanceof DBIDRange && ids.size() >= ((hints & HINT_TEMP) != 0 ? tempThreshold : threshold);
+  }
+
+  @Override
+  public WritableDBIDDataStore makeDBIDStorage(DBIDs ids, int hints) {
+    if(!useOffHeap(ids, hints)) {
+      return super.makeDBIDStorage(ids, hints);
+    }
+    return new OffHeapDBIDStore(intBuffers(ids.size()), (DBIDRange) ids);
+  }
+
+  @Override
+  public WritableDoubleDataStore makeDoubleStorage(DBIDs ids, int hints) {
+    return makeDoubleStorage(ids, hints, Double.NaN);
+  }
+
+  @Override
+  public WritableDoubleDataStore makeDoubleStorage(DBIDs ids, int hints, double def) {
+    if(!useOffHeap(ids, hints)) {
+      return super.makeDoubleStorage(ids, hints, def);
+    }
+    ByteBuffer[] buffers = allocate(ids.size(), Double.BYTES);
+    DoubleBuffer[] chunks = new DoubleBuffer[buffers.length];
+    for(int i = 0; i < buffers.length; i++) {
+      chunks[i] = buffers[i].asDoubleBuffer();
+    }
+    return new OffHeapDoubleStore(chunks, (DBIDRange) ids, def);
+  }
+
+  @Override
+  public WritableIntegerDataStore makeIntegerStorage(DBIDs ids, int hints) {
+    return makeIntegerStorage(ids, hints, 0);
+  }
+
+  @Override
+  public WritableIntegerDataStore makeIntegerStorage(DBIDs ids, int hints, int def) {
+    if(!useOffHeap(ids, hints)) {
+      return super.makeIntegerStorage(ids, hints, def);
+    }
+    return new OffHeapIntegerStore(intBuffers(ids.size()), (DBIDRange) ids, def);
+  }
+
+  /**
+   * Allocate integer buffers.
+   *
+   * @param size Number of entries
+   * @return Buffers
+   */
+  private IntBuffer[] intBuffers(int size) {
+    ByteBuffer[] buffers = allocate(size, Integer.BYTES);
+    IntBuffer[] chunks = new IntBuffer[buffers.length];
+    for(int i = 0; i < buffers.length; i++) {
+      chunks[i] = buffers[i].asIntBuffer();
+    }
+    return chunks;
+  }
+
+  /**
+   * Allocate off-heap buffers, of at most {@code 1 << CHUNK_SHIFT} entries
+   * each.
+   *
+   * @param size Number of entries
+   * @param width Bytes per entry
+   * @return Buffers
+   */
+  private ByteBuffer[] allocate(int size, int width) {
+    final int chunk = 1 << CHUNK_SHIFT;
+    ByteBuffer[] buffers = new ByteBuffer[Math.max(1, (size + chunk - 1) >>> CHUNK_SHIFT)];
+    if(directory == null) {
+      for(int i = 0, rem = size; i < buffers.length; i++, rem -= chunk) {
+        buffers[i] = ByteBuffer.allocateDirect(Math.min(rem, chunk) * width).order(ByteOrder.nativeOrder());
+      }
+      return buffers;
+    }
+    File file = null;
+    try {
+      file = File.createTempFile("elki-", ".store", directory);
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); //
+          FileChannel channel = raf.getChannel()) {
+        long pos = 0;
+        for(int i = 0, rem = size; i < buffers.length; i++, rem -= chunk) {
+          final long len = Math.min(rem, chunk) * (long) width;
+          buffers[i] = channel.map(FileChannel.MapMode.READ_WRITE, pos, len).order(ByteOrder.nativeOrder());
+          pos += len;
+        }
+      }
+      return buffers;
+    }
+    catch(IOException e) {
+      throw new AbortException("Could not map temporary storage file.", e);
+    }
+    finally {
+      // The mapping remains valid after deleting the file (except on Windows)
+      if(file != null && !file.delete()) {
+        file.deleteOnExit();
+      }
+    }
+  }
+}
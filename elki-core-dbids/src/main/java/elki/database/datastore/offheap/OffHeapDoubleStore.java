@@ -0,0 +1,130 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.datastore.offheap;
+
+import java.nio.DoubleBuffer;
+
+import elki.database.datastore.DataStoreIDMap;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.DBIDRef;
+
+/**
+ * Double storage in off-heap buffers.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @composed - - - elki.database.datastore.DataStoreIDMap
+ */
+public class OffHeapDoubleStore implements WritableDoubleDataStore {
+  /**
+   * Data buffers, of {@code 1 << CHUNK_SHIFT} entries each.
+   */
+  private DoubleBuffer[] data;
+
+  /**
+   * Default value.
+   */
+  private double def;
+
+  /**
+   * DBID to index map
+   */
+  private DataStoreIDMap idmap;
+
+  /**
+   * Constructor.
+   *
+   * @param data Data buffers
+   * @param idmap ID map
+   * @param def Default value
+   */
+  public OffHeapDoubleStore(DoubleBuffer[] data, DataStoreIDMap idmap, double def) {
+    super();
+    this.data = data;
+    this.def = def;
+    this.idmap = idmap;
+    if(def != 0) {
+      clear();
+    }
+  }
+
+  @Override
+  @Deprecated
+  public Double get(DBIDRef id) {
+    return Double.valueOf(doubleValue(id));
+  }
+
+  @Override
+  @Deprecated
+  public Double put(DBIDRef id, Double value) {
+    return Double.valueOf(putDouble(id, value.doubleValue()));
+  }
+
+  @Override
+  public double doubleValue(DBIDRef id) {
+    final int off = idmap.mapDBIDToOffset(id);
+    return data[off >>> OffHeapDataStoreFactory.CHUNK_SHIFT].get(off & ((1 << OffHeapDataStoreFactory.CHUNK_SHIFT) - 1));
+  }
+
+  @Override
+  public double putDouble(DBIDRef id, double value) {
+    final int off = idmap.mapDBIDToOffset(id);
+    final DoubleBuffer chunk = data[off >>> OffHeapDataStoreFactory.CHUNK_SHIFT];
+    final int pos = off & ((1 << OffHeapDataStoreFactory.CHUNK_SHIFT) - 1);
+    final double ret = chunk.get(pos);
+    chunk.put(pos, value);
+    return ret;
+  }
+
+  @Override
+  public double put(DBIDRef id, double value) {
+    return putDouble(id, value);
+  }
+
+  @Override
+  public void increment(DBIDRef id, double value) {
+    final int off = idmap.mapDBIDToOffset(id);
+    final DoubleBuffer chunk = data[off >>> OffHeapDataStoreFactory.CHUNK_SHIFT];
+    final int pos = off & ((1 << OffHeapDataStoreFactory.CHUNK_SHIFT) - 1);
+    chunk.put(pos, chunk.get(pos) + value);
+  }
+
+  @Override
+  public void clear() {
+    for(DoubleBuffer chunk : data) {
+      for(int i = 0, l = chunk.capacity(); i < l; i++) {
+        chunk.put(i, def);
+      }
+    }
+  }
+
+  @Override
+  public void destroy() {
+    data = null;
+    idmap = null;
+  }
+
+  @Override
+  public void delete(DBIDRef id) {
+    throw new UnsupportedOperationException("Can't delete from a static array storage.");
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.datastore.offheap;
+
+import java.nio.IntBuffer;
+
+import elki.database.datastore.DataStoreIDMap;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.DBIDRef;
+
+/**
+ * Integer storage in off-heap buffers.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @composed - - - elki.database.datastore.DataStoreIDMap
+ */
+public class OffHeapIntegerStore implements WritableIntegerDataStore {
+  /**
+   * Data buffers, of {@code 1 << CHUNK_SHIFT} entries each.
+   */
+  private IntBuffer[] data;
+
+  /**
+   * Default value.
+   */
+  private int def;
+
+  /**
+   * DBID to index map
+   */
+  private DataStoreIDMap idmap;
+
+  /**
+   * Constructor.
+   *
+   * @param data Data buffers
+   * @param idmap ID map
+   * @param def Default value
+   */
+  public OffHeapIntegerStore(IntBuffer[] data, DataStoreIDMap idmap, int def) {
+    super();
+    this.data = data;
+    this.def = def;
+    this.idmap = idmap;
+    if(def != 0) {
+      clear();
+    }
+  }
+
+  @Override
+  @Deprecated
+  public Integer get(DBIDRef id) {
+    return Integer.valueOf(intValue(id));
+  }
+
+  @Override
+  @Deprecated
+  public Integer put(DBIDRef id, Integer value) {
+    return Integer.valueOf(putInt(id, value.intValue()));
+  }
+
+  @Override
+  public int intValue(DBIDRef id) {
+    final int off = idmap.mapDBIDToOffset(id);
+    return data[off >>> OffHeapDataStoreFactory.CHUNK_SHIFT].get(off & ((1 << OffHeapDataStoreFactory.CHUNK_SHIFT) - 1));
+  }
+
+  @Override
+  public int putInt(DBIDRef id, int value) {
+    final int off = idmap.mapDBIDToOffset(id);
+    final IntBuffer chunk = data[off >>> OffHeapDataStoreFactory.CHUNK_SHIFT];
+    final int pos = off & ((1 << OffHeapDataStoreFactory.CHUNK_SHIFT) - 1);
+    final int ret = chunk.get(pos);
+    chunk.put(pos, value);
+    return ret;
+  }
+
+  @Override
+  public int put(DBIDRef id, int value) {
+    return putInt(id, value);
+  }
+
+  @Override
+  public void increment(DBIDRef id, int adjust) {
+    final int off = idmap.mapDBIDToOffset(id);
+    final IntBuffer chunk = data[off >>> OffHeapDataStoreFactory.CHUNK_SHIFT];
+    final int pos = off & ((1 << OffHeapDataStoreFactory.CHUNK_SHIFT) - 1);
+    chunk.put(pos, chunk.get(pos) + adjust);
+  }
+
+  @Override
+  public void clear() {
+    for(IntBuffer chunk : data) {
+      for(int i = 0, l = chunk.capacity(); i < l; i++) {
+        chunk.put(i, def);
+      }
+    }
+  }
+
+  @Override
+  public void destroy() {
+    data = null;
+    idmap = null;
+  }
+
+  @Override
+  public void delete(DBIDRef id) {
+    throw new UnsupportedOperationException("Can't delete from a static array storage.");
+  }
+}
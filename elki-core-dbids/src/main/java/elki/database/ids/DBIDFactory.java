@@ -178,6 +178,53 @@ public interface DBIDFactory {
    */
   HashSetModifiableDBIDs newHashSet(DBIDs existing);
 
+  /**
+   * Make a new (modifiable) hash set for a subset of the given DBIDs. If the
+   * domain is a range, and the expected size is a large fraction of it, the
+   * set may use a bitmap representation.
+   *
+   * @param size Size hint
+   * @param domain DBIDs the set is a subset of
+   * @return New hash set
+   */
+  HashSetModifiableDBIDs newHashSet(int size, DBIDs domain);
+
+  /**
+   * Compute the set intersection of two sets.
+   *
+   * @param first First set
+   * @param second Second set
+   * @return intersection
+   */
+  ModifiableDBIDs intersection(DBIDs first, DBIDs second);
+
+  /**
+   * Compute the set intersection size of two sets.
+   *
+   * @param first First set
+   * @param second Second set
+   * @return size
+   */
+  int intersectionSize(DBIDs first, DBIDs second);
+
+  /**
+   * Compute the set union of two sets.
+   *
+   * @param first First set
+   * @param second Second set
+   * @return union, without duplicates
+   */
+  ModifiableDBIDs union(DBIDs first, DBIDs second);
+
+  /**
+   * Compute the set difference of two sets.
+   *
+   * @param first First set
+   * @param second Second set
+   * @return difference, first minus second
+   */
+  ModifiableDBIDs difference(DBIDs first, DBIDs second);
+
   /**
    * Create a min heap.
    *
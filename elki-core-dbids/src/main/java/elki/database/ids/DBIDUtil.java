@@ -283,25 +283,16 @@ public final class DBIDUtil {
   }
 
   /**
-   * Compute the set intersection of two sets.
+   * Make a new (modifiable) hash set for a subset of the given DBIDs. If the
+   * domain is a range, and the expected size is a large fraction of it, the
+   * set may use a bitmap representation.
    *
-   * @param first First set
-   * @param second Second set
-   * @return intersection
+   * @param size Size hint
+   * @param domain DBIDs the set is a subset of
+   * @return New hash set
    */
-  public static ModifiableDBIDs intersection(DBIDs first, DBIDs second) {
-    // If exactly one is a Set, use it as second parameter.
-    if(second instanceof SetDBIDs) {
-      if(!(first instanceof SetDBIDs)) {
-        return internalIntersection(first, second);
-      }
-    }
-    else if(first instanceof SetDBIDs) {
-      return internalIntersection(second, first);
-    }
-    // Both are the same type: both set or both non set.
-    // Smaller goes first.
-    return first.size() <= second.size() ? internalIntersection(first, second) : internalIntersection(second, first);
+  public static HashSetModifiableDBIDs newHashSet(int size, DBIDs domain) {
+    return DBIDFactory.FACTORY.newHashSet(size, domain);
   }
 
   /**
@@ -309,17 +300,10 @@ public final class DBIDUtil {
    *
    * @param first First set
    * @param second Second set
-   * @return result.
+   * @return intersection
    */
-  private static ModifiableDBIDs internalIntersection(DBIDs first, DBIDs second) {
-    second = second.size() > 16 && !(second instanceof SetDBIDs) ? newHashSet(second) : second;
-    ModifiableDBIDs inter = newHashSet(first.size());
-    for(DBIDIter it = first.iter(); it.valid(); it.advance()) {
-      if(second.contains(it)) {
-        inter.add(it);
-      }
-    }
-    return inter;
+  public static ModifiableDBIDs intersection(DBIDs first, DBIDs second) {
+    return DBIDFactory.FACTORY.intersection(first, second);
   }
 
   /**
@@ -330,36 +314,7 @@ public final class DBIDUtil {
    * @return size
    */
   public static int intersectionSize(DBIDs first, DBIDs second) {
-    // If exactly one is a Set, use it as second parameter.
-    if(second instanceof SetDBIDs) {
-      if(!(first instanceof SetDBIDs)) {
-        return internalIntersectionSize(first, second);
-      }
-    }
-    else if(first instanceof SetDBIDs) {
-      return internalIntersectionSize(second, first);
-    }
-    // Both are the same type: both set or both non set.
-    // Smaller goes first.
-    return first.size() <= second.size() ? internalIntersectionSize(first, second) : internalIntersectionSize(second, first);
-  }
-
-  /**
-   * Compute the set intersection size of two sets.
-   *
-   * @param first First set
-   * @param second Second set
-   * @return size
-   */
-  private static int internalIntersectionSize(DBIDs first, DBIDs second) {
-    second = second.size() > 16 && !(second instanceof SetDBIDs) ? newHashSet(second) : second;
-    int c = 0;
-    for(DBIDIter it = first.iter(); it.valid(); it.advance()) {
-      if(second.contains(it)) {
-        c++;
-      }
-    }
-    return c;
+    return DBIDFactory.FACTORY.intersectionSize(first, second);
   }
 
   /**
@@ -396,10 +351,7 @@ public final class DBIDUtil {
    * @return the union of ids1 and ids2 without duplicates
    */
   public static ModifiableDBIDs union(DBIDs ids1, DBIDs ids2) {
-    ModifiableDBIDs result = DBIDUtil.newHashSet(Math.max(ids1.size(), ids2.size()));
-    result.addDBIDs(ids1);
-    result.addDBIDs(ids2);
-    return result;
+    return DBIDFactory.FACTORY.union(ids1, ids2);
   }
 
   /**
@@ -410,9 +362,7 @@ public final class DBIDUtil {
    * @return the difference of ids1 minus ids2
    */
   public static ModifiableDBIDs difference(DBIDs ids1, DBIDs ids2) {
-    ModifiableDBIDs result = DBIDUtil.newHashSet(ids1);
-    result.removeDBIDs(ids2);
-    return result;
+    return DBIDFactory.FACTORY.difference(ids1, ids2);
   }
 
   /**
@@ -0,0 +1,757 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.distance;
+
+import elki.data.DoubleVector;
+import elki.data.FloatVector;
+import elki.data.NumberVector;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDIter;
+import elki.database.relation.Relation;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.ManhattanDistance;
+import elki.distance.minkowski.MaximumDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+
+import net.jafama.FastMath;
+
+/**
+ * Distance kernels operating directly on the arrays of array-backed vectors.
+ * <p>
+ * The distance functions use these when both vectors are
+ * {@link DoubleVector}s or both are {@link FloatVector}s. Double vectors may
+ * also be views into a larger shared array, as used by the dense vector
+ * relation, hence the kernels take an offset into each array. The tight loops over
+ * primitive arrays avoid the megamorphic {@link NumberVector#doubleValue}
+ * calls, which prevent inlining when the data is accessed through different
+ * vector types. The summation order is the same as in the generic code, so
+ * the results are identical.
+ * <p>
+ * For batches of one query and many candidates, the block kernels process
+ * {@link #BLOCKSIZE} candidates at once, such that every query value is loaded
+ * only once per block, and the independent accumulators can be pipelined.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public final class ArrayKernels {
+  /**
+   * Number of candidates processed at once by the block kernels.
+   */
+  public static final int BLOCKSIZE = 4;
+
+  /**
+   * Private constructor. Static methods only.
+   */
+  private ArrayKernels() {
+    // Do not use.
+  }
+
+  /**
+   * Get the backing array of a double vector. This array may be shared by
+   * several vectors, see {@link #doubleOffset}.
+   *
+   * @param v Vector
+   * @return Array, or {@code null} if not backed by a double array
+   */
+  public static double[] doubleArray(NumberVector v) {
+    return v instanceof DoubleVector ? ((DoubleVector) v).getRawValues() : null;
+  }
+
+  /**
+   * Get the offset of a double vector in its backing array.
+   *
+   * @param v Vector, with a backing array
+   * @return Offset of the first value
+   */
+  public static int doubleOffset(NumberVector v) {
+    return ((DoubleVector) v).getRawOffset();
+  }
+
+  /**
+   * Get the backing array of a float vector.
+   *
+   * @param v Vector
+   * @return Array, or {@code null} if not backed by a float array
+   */
+  public static float[] floatArray(NumberVector v) {
+    return v instanceof FloatVector ? ((FloatVector) v).getRawValues() : null;
+  }
+
+  /**
+   * Get the array kernel equivalent to a distance function.
+   *
+   * @param df Distance function
+   * @return Kernel, or {@code null} if not available
+   */
+  public static Kernel kernel(NumberVectorDistance<?> df) {
+    final Class<?> c = df.getClass();
+    return c == SquaredEuclideanDistance.class ? ArrayKernels::squaredEuclidean : //
+        c == EuclideanDistance.class ? (v1, v2) -> FastMath.sqrt(squaredEuclidean(v1, v2)) : //
+            c == ManhattanDistance.class ? ArrayKernels::manhattan : //
+                c == MaximumDistance.class ? ArrayKernels::maximum : //
+                    c == CosineDistance.class ? (v1, v2) -> {
+                      final double d = cosAngle(v1, v2);
+                      return (d <= 1) ? 1 - d : 0;
+                    } : null;
+  }
+
+  /**
+   * Compute the distances of a query to many candidates, using a block kernel
+   * where the query and the candidates are array-backed. All other candidates
+   * use the regular distance function.
+   *
+   * @param df Distance function
+   * @param query Query vector
+   * @param relation Relation containing the candidates
+   * @param candidates Candidates
+   * @param out Output array
+   * @param kernel Block kernel
+   */
+  public static void distances(NumberVectorDistance<?> df, NumberVector query, Relation<? extends NumberVector> relation, ArrayDBIDs candidates, double[] out, BlockKernel kernel) {
+    final double[] q = doubleArray(query) != null ? query.toArray() : null;
+    final double[][] block = new double[BLOCKSIZE][];
+    final int[] off = new int[BLOCKSIZE], pos = new int[BLOCKSIZE];
+    int i = 0, n = 0;
+    for(DBIDIter it = candidates.iter(); it.valid(); it.advance(), i++) {
+      final NumberVector v = relation.get(it);
+      final double[] a = q != null ? doubleArray(v) : null;
+      if(a == null || v.getDimensionality() != q.length) {
+        out[i] = df.distance(query, v);
+        continue;
+      }
+      block[n] = a;
+      off[n] = doubleOffset(v);
+      pos[n++] = i;
+      if(n == BLOCKSIZE) {
+        kernel.apply(q, block, off, pos, n, out);
+        n = 0;
+      }
+    }
+    if(n > 0) {
+      kernel.apply(q, block, off, pos, n, out);
+    }
+  }
+
+  /**
+   * Squared Euclidean distance.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector, of the same length
+   * @return Squared Euclidean distance
+   */
+  public static double squaredEuclidean(double[] v1, double[] v2) {
+    return squaredEuclidean(v1, 0, v2, 0, v1.length);
+  }
+
+  /**
+   * Squared Euclidean distance.
+   *
+   * @param v1 First array
+   * @param o1 Offset of the first vector
+   * @param v2 Second array
+   * @param o2 Offset of the second vector
+   * @param dim Dimensionality
+   * @return Squared Euclidean distance
+   */
+  public static double squaredEuclidean(double[] v1, int o1, double[] v2, int o2, int dim) {
+    double agg = 0.;
+    for(int d = 0; d < dim; d++) {
+      final double delta = v1[o1 + d] - v2[o2 + d];
+      agg += delta * delta;
+    }
+    return agg;
+  }
+
+  /**
+   * Squared Euclidean distance.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector, of the same length
+   * @return Squared Euclidean distance
+   */
+  public static double squaredEuclidean(float[] v1, float[] v2) {
+    double agg = 0.;
+    for(int d = 0; d < v1.length; d++) {
+      final double delta = (double) v1[d] - v2[d];
+      agg += delta * delta;
+    }
+    return agg;
+  }
+
+  /**
+   * Squared Euclidean distance, with early abandoning.
+   * <p>
+   * Stops as soon as the partial aggregate exceeds the limit, and then returns
+   * this partial value instead of the full distance.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector, of the same length
+   * @param limit Limit
+   * @return Squared Euclidean distance, or a partial value larger than the limit
+   */
+  public static double squaredEuclidean(double[] v1, double[] v2, double limit) {
+    return squaredEuclidean(v1, 0, v2, 0, v1.length, limit);
+  }
+
+  /**
+   * Squared Euclidean distance, with early abandoning.
+   *
+   * @param v1 First array
+   * @param o1 Offset of the first vector
+   * @param v2 Second array
+   * @param o2 Offset of the second vector
+   * @param dim Dimensionality
+   * @param limit Limit
+   * @return Squared Euclidean distance, or a partial value larger than the limit
+   */
+  public static double squaredEuclidean(double[] v1, int o1, double[] v2, int o2, int dim, double limit) {
+    double agg = 0.;
+    for(int d = 0; d < dim; d++) {
+      final double delta = v1[o1 + d] - v2[o2 + d];
+      agg += delta * delta;
+      if(agg > limit) {
+        return agg;
+      }
+    }
+    return agg;
+  }
+
+  /**
+   * Squared Euclidean distance, with early abandoning.
+   * <p>
+   * Stops as soon as the partial aggregate exceeds the limit, and then returns
+   * this partial value instead of the full distance.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector, of the same length
+   * @param limit Limit
+   * @return Squared Euclidean distance, or a partial value larger than the limit
+   */
+  public static double squaredEuclidean(float[] v1, float[] v2, double limit) {
+    double agg = 0.;
+    for(int d = 0; d < v1.length; d++) {
+      final double delta = (double) v1[d] - v2[d];
+      agg += delta * delta;
+      if(agg > limit) {
+        return agg;
+      }
+    }
+    return agg;
+  }
+
+  /**
+   * Squared Euclidean distances of a query to a block of candidates.
+   *
+   * @param q Query vector
+   * @param c Arrays containing the candidate vectors
+   * @param off Offsets of the candidate vectors, of the same length as the
+   *        query
+   * @param pos Output positions of the candidates
+   * @param n Number of candidates in the block
+   * @param out Output array
+   */
+  public static void squaredEuclidean(double[] q, double[][] c, int[] off, int[] pos, int n, double[] out) {
+    if(n < BLOCKSIZE) {
+      for(int j = 0; j < n; j++) {
+        out[pos[j]] = squaredEuclidean(q, 0, c[j], off[j], q.length);
+      }
+      return;
+    }
+    final double[] c0 = c[0], c1 = c[1], c2 = c[2], c3 = c[3];
+    final int o0 = off[0], o1 = off[1], o2 = off[2], o3 = off[3];
+    double a0 = 0., a1 = 0., a2 = 0., a3 = 0.;
+    for(int d = 0; d < q.length; d++) {
+      final double qd = q[d];
+      final double d0 = qd - c0[o0 + d], d1 = qd - c1[o1 + d], d2 = qd - c2[o2 + d], d3 = qd - c3[o3 + d];
+      a0 += d0 * d0;
+      a1 += d1 * d1;
+      a2 += d2 * d2;
+      a3 += d3 * d3;
+    }
+    out[pos[0]] = a0;
+    out[pos[1]] = a1;
+    out[pos[2]] = a2;
+    out[pos[3]] = a3;
+  }
+
+  /**
+   * Squared Euclidean distances of a query to all candidates, e.g., to all
+   * cluster centers.
+   *
+   * @param x Array containing the query vector
+   * @param off Offset of the query vector
+   * @param c Candidate vectors, all of the same length
+   * @param out Output array
+   */
+  public static void squaredEuclidean(double[] x, int off, double[][] c, double[] out) {
+    int i = 0;
+    for(; i + BLOCKSIZE <= c.length; i += BLOCKSIZE) {
+      final double[] c0 = c[i], c1 = c[i + 1], c2 = c[i + 2], c3 = c[i + 3];
+      double a0 = 0., a1 = 0., a2 = 0., a3 = 0.;
+      for(int d = 0; d < c0.length; d++) {
+        final double qd = x[off + d];
+        final double d0 = qd - c0[d], d1 = qd - c1[d], d2 = qd - c2[d], d3 = qd - c3[d];
+        a0 += d0 * d0;
+        a1 += d1 * d1;
+        a2 += d2 * d2;
+        a3 += d3 * d3;
+      }
+      out[i] = a0;
+      out[i + 1] = a1;
+      out[i + 2] = a2;
+      out[i + 3] = a3;
+    }
+    for(; i < c.length; i++) {
+      out[i] = squaredEuclidean(x, off, c[i], 0, c[i].length);
+    }
+  }
+
+  /**
+   * Manhattan distance.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector, of the same length
+   * @return Manhattan distance
+   */
+  public static double manhattan(double[] v1, double[] v2) {
+    return manhattan(v1, 0, v2, 0, v1.length);
+  }
+
+  /**
+   * Manhattan distance.
+   *
+   * @param v1 First array
+   * @param o1 Offset of the first vector
+   * @param v2 Second array
+   * @param o2 Offset of the second vector
+   * @param dim Dimensionality
+   * @return Manhattan distance
+   */
+  public static double manhattan(double[] v1, int o1, double[] v2, int o2, int dim) {
+    double agg = 0.;
+    for(int d = 0; d < dim; d++) {
+      final double xd = v1[o1 + d], yd = v2[o2 + d];
+      agg += xd >= yd ? xd - yd : yd - xd;
+    }
+    return agg;
+  }
+
+  /**
+   * Manhattan distance.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector, of the same length
+   * @return Manhattan distance
+   */
+  public static double manhattan(float[] v1, float[] v2) {
+    double agg = 0.;
+    for(int d = 0; d < v1.length; d++) {
+      final double xd = v1[d], yd = v2[d];
+      agg += xd >= yd ? xd - yd : yd - xd;
+    }
+    return agg;
+  }
+
+  /**
+   * Manhattan distance, with early abandoning.
+   * <p>
+   * Stops as soon as the partial aggregate exceeds the limit, and then returns
+   * this partial value instead of the full distance.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector, of the same length
+   * @param limit Limit
+   * @return Manhattan distance, or a partial value larger than the limit
+   */
+  public static double manhattan(double[] v1, double[] v2, double limit) {
+    return manhattan(v1, 0, v2, 0, v1.length, limit);
+  }
+
+  /**
+   * Manhattan distance, with early abandoning.
+   *
+   * @param v1 First array
+   * @param o1 Offset of the first vector
+   * @param v2 Second array
+   * @param o2 Offset of the second vector
+   * @param dim Dimensionality
+   * @param limit Limit
+   * @return Manhattan distance, or a partial value larger than the limit
+   */
+  public static double manhattan(double[] v1, int o1, double[] v2, int o2, int dim, double limit) {
+    double agg = 0.;
+    for(int d = 0; d < dim; d++) {
+      final double xd = v1[o1 + d], yd = v2[o2 + d];
+      agg += xd >= yd ? xd - yd : yd - xd;
+      if(agg > limit) {
+        return agg;
+      }
+    }
+    return agg;
+  }
+
+  /**
+   * Manhattan distance, with early abandoning.
+   * <p>
+   * Stops as soon as the partial aggregate exceeds the limit, and then returns
+   * this partial value instead of the full distance.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector, of the same length
+   * @param limit Limit
+   * @return Manhattan distance, or a partial value larger than the limit
+   */
+  public static double manhattan(float[] v1, float[] v2, double limit) {
+    double agg = 0.;
+    for(int d = 0; d < v1.length; d++) {
+      final double xd = v1[d], yd = v2[d];
+      agg += xd >= yd ? xd - yd : yd - xd;
+      if(agg > limit) {
+        return agg;
+      }
+    }
+    return agg;
+  }
+
+  /**
+   * Manhattan distances of a query to a block of candidates.
+   *
+   * @param q Query vector
+   * @param c Arrays containing the candidate vectors
+   * @param off Offsets of the candidate vectors, of the same length as the
+   *        query
+   * @param pos Output positions of the candidates
+   * @param n Number of candidates in the block
+   * @param out Output array
+   */
+  public static void manhattan(double[] q, double[][] c, int[] off, int[] pos, int n, double[] out) {
+    if(n < BLOCKSIZE) {
+      for(int j = 0; j < n; j++) {
+        out[pos[j]] = manhattan(q, 0, c[j], off[j], q.length);
+      }
+      return;
+    }
+    final double[] c0 = c[0], c1 = c[1], c2 = c[2], c3 = c[3];
+    final int o0 = off[0], o1 = off[1], o2 = off[2], o3 = off[3];
+    double a0 = 0., a1 = 0., a2 = 0., a3 = 0.;
+    for(int d = 0; d < q.length; d++) {
+      final double qd = q[d], y0 = c0[o0 + d], y1 = c1[o1 + d], y2 = c2[o2 + d], y3 = c3[o3 + d];
+      a0 += qd >= y0 ? qd - y0 : y0 - qd;
+      a1 += qd >= y1 ? qd - y1 : y1 - qd;
+      a2 += qd >= y2 ? qd - y2 : y2 - qd;
+      a3 += qd >= y3 ? qd - y3 : y3 - qd;
+    }
+    out[pos[0]] = a0;
+    out[pos[1]] = a1;
+    out[pos[2]] = a2;
+    out[pos[3]] = a3;
+  }
+
+  /**
+   * Maximum distance.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector, of the same length
+   * @return Maximum distance
+   */
+  public static double maximum(double[] v1, double[] v2) {
+    return maximum(v1, 0, v2, 0, v1.length);
+  }
+
+  /**
+   * Maximum distance.
+   *
+   * @param v1 First array
+   * @param o1 Offset of the first vector
+   * @param v2 Second array
+   * @param o2 Offset of the second vector
+   * @param dim Dimensionality
+   * @return Maximum distance
+   */
+  public static double maximum(double[] v1, int o1, double[] v2, int o2, int dim) {
+    double agg = 0.;
+    for(int d = 0; d < dim; d++) {
+      final double xd = v1[o1 + d], yd = v2[o2 + d];
+      final double delta = xd >= yd ? xd - yd : yd - xd;
+      agg = delta >= agg ? delta : agg;
+    }
+    return agg;
+  }
+
+  /**
+   * Maximum distance.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector, of the same length
+   * @return Maximum distance
+   */
+  public static double maximum(float[] v1, float[] v2) {
+    double agg = 0.;
+    for(int d = 0; d < v1.length; d++) {
+      final double xd = v1[d], yd = v2[d];
+      final double delta = xd >= yd ? xd - yd : yd - xd;
+      agg = delta >= agg ? delta : agg;
+    }
+    return agg;
+  }
+
+  /**
+   * Maximum distance, with early abandoning.
+   * <p>
+   * Stops as soon as the partial aggregate exceeds the limit, and then returns
+   * this partial value instead of the full distance.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector, of the same length
+   * @param limit Limit
+   * @return Maximum distance, or a partial value larger than the limit
+   */
+  public static double maximum(double[] v1, double[] v2, double limit) {
+    return maximum(v1, 0, v2, 0, v1.length, limit);
+  }
+
+  /**
+   * Maximum distance, with early abandoning.
+   *
+   * @param v1 First array
+   * @param o1 Offset of the first vector
+   * @param v2 Second array
+   * @param o2 Offset of the second vector
+   * @param dim Dimensionality
+   * @param limit Limit
+   * @return Maximum distance, or a partial value larger than the limit
+   */
+  public static double maximum(double[] v1, int o1, double[] v2, int o2, int dim, double limit) {
+    double agg = 0.;
+    for(int d = 0; d < dim; d++) {
+      final double xd = v1[o1 + d], yd = v2[o2 + d];
+      final double delta = xd >= yd ? xd - yd : yd - xd;
+      agg = delta >= agg ? delta : agg;
+      if(agg > limit) {
+        return agg;
+      }
+    }
+    return agg;
+  }
+
+  /**
+   * Maximum distance, with early abandoning.
+   * <p>
+   * Stops as soon as the partial aggregate exceeds the limit, and then returns
+   * this partial value instead of the full distance.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector, of the same length
+   * @param limit Limit
+   * @return Maximum distance, or a partial value larger than the limit
+   */
+  public static double maximum(float[] v1, float[] v2, double limit) {
+    double agg = 0.;
+    for(int d = 0; d < v1.length; d++) {
+      final double xd = v1[d], yd = v2[d];
+      final double delta = xd >= yd ? xd - yd : yd - xd;
+      agg = delta >= agg ? delta : agg;
+      if(agg > limit) {
+        return agg;
+      }
+    }
+    return agg;
+  }
+
+  /**
+   * Maximum distances of a query to a block of candidates.
+   *
+   * @param q Query vector
+   * @param c Arrays containing the candidate vectors
+   * @param off Offsets of the candidate vectors, of the same length as the
+   *        query
+   * @param pos Output positions of the candidates
+   * @param n Number of candidates in the block
+   * @param out Output array
+   */
+  public static void maximum(double[] q, double[][] c, int[] off, int[] pos, int n, double[] out) {
+    if(n < BLOCKSIZE) {
+      for(int j = 0; j < n; j++) {
+        out[pos[j]] = maximum(q, 0, c[j], off[j], q.length);
+      }
+      return;
+    }
+    final double[] c0 = c[0], c1 = c[1], c2 = c[2], c3 = c[3];
+    final int o0 = off[0], o1 = off[1], o2 = off[2], o3 = off[3];
+    double a0 = 0., a1 = 0., a2 = 0., a3 = 0.;
+    for(int d = 0; d < q.length; d++) {
+      final double qd = q[d], y0 = c0[o0 + d], y1 = c1[o1 + d], y2 = c2[o2 + d], y3 = c3[o3 + d];
+      final double d0 = qd >= y0 ? qd - y0 : y0 - qd, d1 = qd >= y1 ? qd - y1 : y1 - qd;
+      final double d2 = qd >= y2 ? qd - y2 : y2 - qd, d3 = qd >= y3 ? qd - y3 : y3 - qd;
+      a0 = d0 >= a0 ? d0 : a0;
+      a1 = d1 >= a1 ? d1 : a1;
+      a2 = d2 >= a2 ? d2 : a2;
+      a3 = d3 >= a3 ? d3 : a3;
+    }
+    out[pos[0]] = a0;
+    out[pos[1]] = a1;
+    out[pos[2]] = a2;
+    out[pos[3]] = a3;
+  }
+
+  /**
+   * Cosine of the angle between two vectors.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector, of the same length
+   * @return Cosine similarity
+   */
+  public static double cosAngle(double[] v1, double[] v2) {
+    return cosAngle(v1, 0, v2, 0, v1.length);
+  }
+
+  /**
+   * Cosine of the angle between two vectors.
+   *
+   * @param v1 First array
+   * @param o1 Offset of the first vector
+   * @param v2 Second array
+   * @param o2 Offset of the second vector
+   * @param dim Dimensionality
+   * @return Cosine similarity
+   */
+  public static double cosAngle(double[] v1, int o1, double[] v2, int o2, int dim) {
+    double cross = 0, l1 = 0, l2 = 0;
+    for(int k = 0; k < dim; k++) {
+      final double r1 = v1[o1 + k], r2 = v2[o2 + k];
+      cross += r1 * r2;
+      l1 += r1 * r1;
+      l2 += r2 * r2;
+    }
+    return cosAngle(cross, l1, l2);
+  }
+
+  /**
+   * Cosine of the angle between two vectors.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector, of the same length
+   * @return Cosine similarity
+   */
+  public static double cosAngle(float[] v1, float[] v2) {
+    double cross = 0, l1 = 0, l2 = 0;
+    for(int k = 0; k < v1.length; k++) {
+      final double r1 = v1[k], r2 = v2[k];
+      cross += r1 * r2;
+      l1 += r1 * r1;
+      l2 += r2 * r2;
+    }
+    return cosAngle(cross, l1, l2);
+  }
+
+  /**
+   * Cosine similarities of a query to a block of candidates.
+   *
+   * @param q Query vector
+   * @param c Arrays containing the candidate vectors
+   * @param off Offsets of the candidate vectors, of the same length as the
+   *        query
+   * @param pos Output positions of the candidates
+   * @param n Number of candidates in the block
+   * @param out Output array
+   */
+  public static void cosAngle(double[] q, double[][] c, int[] off, int[] pos, int n, double[] out) {
+    if(n < BLOCKSIZE) {
+      for(int j = 0; j < n; j++) {
+        out[pos[j]] = cosAngle(q, 0, c[j], off[j], q.length);
+      }
+      return;
+    }
+    final double[] c0 = c[0], c1 = c[1], c2 = c[2], c3 = c[3];
+    final int o0 = off[0], o1 = off[1], o2 = off[2], o3 = off[3];
+    double ql = 0., x0 = 0., x1 = 0., x2 = 0., x3 = 0., l0 = 0., l1 = 0., l2 = 0., l3 = 0.;
+    for(int d = 0; d < q.length; d++) {
+      final double qd = q[d], y0 = c0[o0 + d], y1 = c1[o1 + d], y2 = c2[o2 + d], y3 = c3[o3 + d];
+      ql += qd * qd;
+      x0 += qd * y0;
+      x1 += qd * y1;
+      x2 += qd * y2;
+      x3 += qd * y3;
+      l0 += y0 * y0;
+      l1 += y1 * y1;
+      l2 += y2 * y2;
+      l3 += y3 * y3;
+    }
+    out[pos[0]] = cosAngle(x0, ql, l0);
+    out[pos[1]] = cosAngle(x1, ql, l1);
+    out[pos[2]] = cosAngle(x2, ql, l2);
+    out[pos[3]] = cosAngle(x3, ql, l3);
+  }
+
+  /**
+   * Cosine from the scalar product and the squared lengths.
+   *
+   * @param cross Scalar product
+   * @param l1 Squared length of the first vector
+   * @param l2 Squared length of the second vector
+   * @return Cosine similarity
+   */
+  private static double cosAngle(double cross, double l1, double l2) {
+    final double a = (cross == 0.) ? 0. : //
+        (l1 == 0. || l2 == 0.) ? 1. : //
+            FastMath.sqrt((cross / l1) * (cross / l2));
+    return (a < 1.) ? a : 1.;
+  }
+
+  /**
+   * Kernel computing the distances of a query to a block of candidates.
+   *
+   * @author Erich Schubert
+   */
+  @FunctionalInterface
+  public interface BlockKernel {
+    /**
+     * Compute the distances of a query to a block of candidates.
+     *
+     * @param q Query vector
+     * @param c Arrays containing the candidate vectors
+     * @param off Offsets of the candidate vectors, of the same length as the
+     *        query
+     * @param pos Output positions of the candidates
+     * @param n Number of candidates, at most {@link ArrayKernels#BLOCKSIZE}
+     * @param out Output array
+     */
+    void apply(double[] q, double[][] c, int[] off, int[] pos, int n, double[] out);
+  }
+
+  /**
+   * Kernel computing the distance of two arrays.
+   *
+   * @author Erich Schubert
+   */
+  @FunctionalInterface
+  public interface Kernel {
+    /**
+     * Compute the distance of two arrays.
+     *
+     * @param v1 First vector
+     * @param v2 Second vector, of the same length
+     * @return Distance
+     */
+    double distance(double[] v1, double[] v2);
+  }
+}
@@ -21,9 +21,14 @@
 package elki.distance;
 
 import elki.data.NumberVector;
+import elki.data.SparseDoubleVector;
+import elki.data.SparseFloatVector;
+import elki.data.SparseNumberVector;
 import elki.data.VectorUtil;
 import elki.data.spatial.SpatialComparable;
 import elki.data.type.SimpleTypeInformation;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.relation.Relation;
 import elki.utilities.Alias;
 import elki.utilities.Priority;
 import elki.utilities.optionhandling.Parameterizer;
@@ -75,10 +80,53 @@ public class CosineDistance implements SpatialPrimitiveDistance<NumberVector>, N
    */
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
-    double d = VectorUtil.cosAngle(v1, v2);
+    final double[] a1 = ArrayKernels.doubleArray(v1), a2 = a1 != null ? ArrayKernels.doubleArray(v2) : null;
+    final float[] f1 = a2 == null ? ArrayKernels.floatArray(v1) : null, f2 = f1 != null ? ArrayKernels.floatArray(v2) : null;
+    final int dim = v1.getDimensionality();
+    double d = a2 != null && dim == v2.getDimensionality() ? ArrayKernels.cosAngle(a1, ArrayKernels.doubleOffset(v1), a2, ArrayKernels.doubleOffset(v2), dim) : //
+        f2 != null && f1.length == f2.length ? ArrayKernels.cosAngle(f1, f2) : //
+            v1 instanceof SparseNumberVector ? sparseCosAngle((SparseNumberVector) v1, v2) : VectorUtil.cosAngle(v1, v2);
     return (d <= 1) ? 1 - d : 0;
   }
 
+  /**
+   * Cosine of the angle, using the sparse kernels if possible.
+   *
+   * @param v1 first vector, sparse
+   * @param v2 second vector
+   * @return cosine of the angle
+   */
+  private static double sparseCosAngle(SparseNumberVector v1, NumberVector v2) {
+    if(v1 instanceof SparseDoubleVector && v2 instanceof SparseDoubleVector) {
+      final SparseDoubleVector d1 = (SparseDoubleVector) v1, d2 = (SparseDoubleVector) v2;
+      return SparseKernels.cosAngle(d1.getRawIndexes(), d1.getRawValues(), d2.getRawIndexes(), d2.getRawValues());
+    }
+    if(v1 instanceof SparseFloatVector && v2 instanceof SparseFloatVector) {
+      final SparseFloatVector f1 = (SparseFloatVector) v1, f2 = (SparseFloatVector) v2;
+      return SparseKernels.cosAngle(f1.getRawIndexes(), f1.getRawValues(), f2.getRawIndexes(), f2.getRawValues());
+    }
+    return VectorUtil.cosAngle(v1, v2);
+  }
+
+  @Override
+  public void distances(NumberVector query, Relation<? extends NumberVector> relation, ArrayDBIDs candidates, double[] out) {
+    if(query instanceof SparseNumberVector) {
+      SparseKernels.cosAngles((SparseNumberVector) query, relation, candidates, out);
+      for(int i = 0, n = candidates.size(); i < n; i++) {
+        final double d = out[i];
+        out[i] = (d <= 1) ? 1 - d : 0;
+      }
+      return;
+    }
+    ArrayKernels.distances(this, query, relation, candidates, out, (q, c, off, pos, n, o) -> {
+      ArrayKernels.cosAngle(q, c, off, pos, n, o);
+      for(int j = 0; j < n; j++) {
+        final double d = o[pos[j]];
+        o[pos[j]] = (d <= 1) ? 1 - d : 0;
+      }
+    });
+  }
+
   @Override
   public double minDist(SpatialComparable mbr1, SpatialComparable mbr2) {
     double d = VectorUtil.minCosAngle(mbr1, mbr2);
@@ -21,6 +21,8 @@
 package elki.distance;
 
 import elki.data.NumberVector;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.relation.Relation;
 import elki.utilities.documentation.Reference;
 import net.jafama.FastMath;
 
@@ -67,6 +69,14 @@ public class MahalanobisDistance extends MatrixWeightedQuadraticDistance {
     return FastMath.sqrt(super.distance(o1, o2));
   }
 
+  @Override
+  public void distances(NumberVector query, Relation<? extends NumberVector> relation, ArrayDBIDs candidates, double[] out) {
+    super.distances(query, relation, candidates, out);
+    for(int i = 0, e = candidates.size(); i < e; i++) {
+      out[i] = FastMath.sqrt(out[i]);
+    }
+  }
+
   @Override
   public double norm(NumberVector obj) {
     return Math.sqrt(super.norm(obj));
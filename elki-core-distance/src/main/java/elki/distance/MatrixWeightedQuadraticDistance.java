@@ -26,6 +26,9 @@ import java.util.Arrays;
 
 import elki.data.NumberVector;
 import elki.data.type.VectorFieldTypeInformation;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDIter;
+import elki.database.relation.Relation;
 import elki.math.linearalgebra.VMath;
 
 /**
@@ -69,6 +72,20 @@ public class MatrixWeightedQuadraticDistance extends AbstractNumberVectorDistanc
     return transposeTimesTimes(tmp, weightMatrix, tmp);
   }
 
+  @Override
+  public void distances(NumberVector query, Relation<? extends NumberVector> relation, ArrayDBIDs candidates, double[] out) {
+    final double[] q = query.toArray(), tmp = new double[weightMatrix.length];
+    int i = 0;
+    for(DBIDIter it = candidates.iter(); it.valid(); it.advance(), i++) {
+      final NumberVector v = relation.get(it);
+      final int dim = dimensionality(query, v, weightMatrix.length);
+      for(int d = 0; d < dim; d++) {
+        tmp[d] = q[d] - v.doubleValue(d);
+      }
+      out[i] = transposeTimesTimes(tmp, weightMatrix, tmp);
+    }
+  }
+
   @Override
   public boolean isSquared() {
     return true;
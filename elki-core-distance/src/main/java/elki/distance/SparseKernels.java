@@ -0,0 +1,450 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.distance;
+
+import elki.data.NumberVector;
+import elki.data.SparseDoubleVector;
+import elki.data.SparseFloatVector;
+import elki.data.SparseNumberVector;
+import elki.data.VectorUtil;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDIter;
+import elki.database.relation.Relation;
+
+import net.jafama.FastMath;
+
+/**
+ * Distance kernels operating directly on the index and value arrays of sparse
+ * vectors.
+ * <p>
+ * The sparse distance functions use these when both vectors are
+ * {@link SparseDoubleVector}s or both are {@link SparseFloatVector}s. The
+ * merge joins over the primitive arrays avoid the interface calls of the
+ * {@link SparseNumberVector} iterator API. The summation order is the same as
+ * in the generic code, so the results are identical.
+ * <p>
+ * For one query and many candidates, the query arrays and the squared norm of
+ * the query are obtained only once.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public final class SparseKernels {
+  /**
+   * Private constructor. Static methods only.
+   */
+  private SparseKernels() {
+    // Do not use.
+  }
+
+  /**
+   * Squared Euclidean norm of a sparse vector.
+   *
+   * @param v Values of the vector
+   * @return Squared norm
+   */
+  public static double squaredNorm(double[] v) {
+    double accu = 0.;
+    for(int k = 0; k < v.length; k++) {
+      final double val = v[k];
+      accu += val * val;
+    }
+    return accu;
+  }
+
+  /**
+   * Squared Euclidean norm of a sparse vector.
+   *
+   * @param v Values of the vector
+   * @return Squared norm
+   */
+  public static double squaredNorm(float[] v) {
+    double accu = 0.;
+    for(int k = 0; k < v.length; k++) {
+      final double val = v[k];
+      accu += val * val;
+    }
+    return accu;
+  }
+
+  /**
+   * Squared Euclidean distance of two sparse vectors.
+   *
+   * @param i1 Indexes of the first vector
+   * @param v1 Values of the first vector
+   * @param i2 Indexes of the second vector
+   * @param v2 Values of the second vector
+   * @return Squared Euclidean distance
+   */
+  public static double squaredEuclidean(int[] i1, double[] v1, int[] i2, double[] v2) {
+    double accu = 0.;
+    final int l1 = i1.length, l2 = i2.length;
+    int k1 = 0, k2 = 0;
+    while(k1 < l1 && k2 < l2) {
+      final int d1 = i1[k1], d2 = i2[k2];
+      if(d1 < d2) {
+        final double val = v1[k1];
+        accu += val * val;
+        k1++;
+      }
+      else if(d2 < d1) {
+        final double val = v2[k2];
+        accu += val * val;
+        k2++;
+      }
+      else {
+        final double val = v1[k1] - v2[k2];
+        accu += val * val;
+        k1++;
+        k2++;
+      }
+    }
+    for(; k1 < l1; k1++) {
+      final double val = v1[k1];
+      accu += val * val;
+    }
+    for(; k2 < l2; k2++) {
+      final double val = v2[k2];
+      accu += val * val;
+    }
+    return accu;
+  }
+
+  /**
+   * Squared Euclidean distance of two sparse vectors.
+   *
+   * @param i1 Indexes of the first vector
+   * @param v1 Values of the first vector
+   * @param i2 Indexes of the second vector
+   * @param v2 Values of the second vector
+   * @return Squared Euclidean distance
+   */
+  public static double squaredEuclidean(int[] i1, float[] v1, int[] i2, float[] v2) {
+    double accu = 0.;
+    final int l1 = i1.length, l2 = i2.length;
+    int k1 = 0, k2 = 0;
+    while(k1 < l1 && k2 < l2) {
+      final int d1 = i1[k1], d2 = i2[k2];
+      if(d1 < d2) {
+        final double val = v1[k1];
+        accu += val * val;
+        k1++;
+      }
+      else if(d2 < d1) {
+        final double val = v2[k2];
+        accu += val * val;
+        k2++;
+      }
+      else {
+        final double val = (double) v1[k1] - v2[k2];
+        accu += val * val;
+        k1++;
+        k2++;
+      }
+    }
+    for(; k1 < l1; k1++) {
+      final double val = v1[k1];
+      accu += val * val;
+    }
+    for(; k2 < l2; k2++) {
+      final double val = v2[k2];
+      accu += val * val;
+    }
+    return accu;
+  }
+
+  /**
+   * Manhattan distance of two sparse vectors.
+   *
+   * @param i1 Indexes of the first vector
+   * @param v1 Values of the first vector
+   * @param i2 Indexes of the second vector
+   * @param v2 Values of the second vector
+   * @return Manhattan distance
+   */
+  public static double manhattan(int[] i1, double[] v1, int[] i2, double[] v2) {
+    double accu = 0.;
+    final int l1 = i1.length, l2 = i2.length;
+    int k1 = 0, k2 = 0;
+    while(k1 < l1 && k2 < l2) {
+      final int d1 = i1[k1], d2 = i2[k2];
+      if(d1 < d2) {
+        accu += Math.abs(v1[k1]);
+        k1++;
+      }
+      else if(d2 < d1) {
+        accu += Math.abs(v2[k2]);
+        k2++;
+      }
+      else {
+        accu += Math.abs(v1[k1] - v2[k2]);
+        k1++;
+        k2++;
+      }
+    }
+    for(; k1 < l1; k1++) {
+      accu += Math.abs(v1[k1]);
+    }
+    for(; k2 < l2; k2++) {
+      accu += Math.abs(v2[k2]);
+    }
+    return accu;
+  }
+
+  /**
+   * Manhattan distance of two sparse vectors.
+   *
+   * @param i1 Indexes of the first vector
+   * @param v1 Values of the first vector
+   * @param i2 Indexes of the second vector
+   * @param v2 Values of the second vector
+   * @return Manhattan distance
+   */
+  public static double manhattan(int[] i1, float[] v1, int[] i2, float[] v2) {
+    double accu = 0.;
+    final int l1 = i1.length, l2 = i2.length;
+    int k1 = 0, k2 = 0;
+    while(k1 < l1 && k2 < l2) {
+      final int d1 = i1[k1], d2 = i2[k2];
+      if(d1 < d2) {
+        accu += Math.abs((double) v1[k1]);
+        k1++;
+      }
+      else if(d2 < d1) {
+        accu += Math.abs((double) v2[k2]);
+        k2++;
+      }
+      else {
+        accu += Math.abs((double) v1[k1] - v2[k2]);
+        k1++;
+        k2++;
+      }
+    }
+    for(; k1 < l1; k1++) {
+      accu += Math.abs((double) v1[k1]);
+    }
+    for(; k2 < l2; k2++) {
+      accu += Math.abs((double) v2[k2]);
+    }
+    return accu;
+  }
+
+  /**
+   * Dot product of two sparse vectors.
+   *
+   * @param i1 Indexes of the first vector
+   * @param v1 Values of the first vector
+   * @param i2 Indexes of the second vector
+   * @param v2 Values of the second vector
+   * @return Dot product
+   */
+  public static double dot(int[] i1, double[] v1, int[] i2, double[] v2) {
+    double accu = 0.;
+    final int l1 = i1.length, l2 = i2.length;
+    int k1 = 0, k2 = 0;
+    while(k1 < l1 && k2 < l2) {
+      final int d1 = i1[k1], d2 = i2[k2];
+      if(d1 < d2) {
+        // In first only
+        k1++;
+      }
+      else if(d2 < d1) {
+        // In second only
+        k2++;
+      }
+      else {
+        accu += v1[k1] * v2[k2];
+        k1++;
+        k2++;
+      }
+    }
+    return accu;
+  }
+
+  /**
+   * Dot product of two sparse vectors.
+   *
+   * @param i1 Indexes of the first vector
+   * @param v1 Values of the first vector
+   * @param i2 Indexes of the second vector
+   * @param v2 Values of the second vector
+   * @return Dot product
+   */
+  public static double dot(int[] i1, float[] v1, int[] i2, float[] v2) {
+    double accu = 0.;
+    final int l1 = i1.length, l2 = i2.length;
+    int k1 = 0, k2 = 0;
+    while(k1 < l1 && k2 < l2) {
+      final int d1 = i1[k1], d2 = i2[k2];
+      if(d1 < d2) {
+        // In first only
+        k1++;
+      }
+      else if(d2 < d1) {
+        // In second only
+        k2++;
+      }
+      else {
+        accu += (double) v1[k1] * v2[k2];
+        k1++;
+        k2++;
+      }
+    }
+    return accu;
+  }
+
+  /**
+   * Cosine of the angle of two sparse vectors.
+   *
+   * @param i1 Indexes of the first vector
+   * @param v1 Values of the first vector
+   * @param i2 Indexes of the second vector
+   * @param v2 Values of the second vector
+   * @return Cosine of the angle
+   */
+  public static double cosAngle(int[] i1, double[] v1, int[] i2, double[] v2) {
+    double s1 = 0., s2 = 0., cross = 0.;
+    final int l1 = i1.length, l2 = i2.length;
+    int k1 = 0, k2 = 0;
+    while(k1 < l1 && k2 < l2) {
+      final int d1 = i1[k1], d2 = i2[k2];
+      if(d1 < d2) {
+        final double val = v1[k1];
+        s1 += val * val;
+        k1++;
+      }
+      else if(d2 < d1) {
+        final double val = v2[k2];
+        s2 += val * val;
+        k2++;
+      }
+      else {
+        final double val1 = v1[k1], val2 = v2[k2];
+        s1 += val1 * val1;
+        s2 += val2 * val2;
+        cross += val1 * val2;
+        k1++;
+        k2++;
+      }
+    }
+    for(; k1 < l1; k1++) {
+      final double val = v1[k1];
+      s1 += val * val;
+    }
+    for(; k2 < l2; k2++) {
+      final double val = v2[k2];
+      s2 += val * val;
+    }
+    return cosAngle(cross, s1, s2);
+  }
+
+  /**
+   * Cosine of the angle of two sparse vectors.
+   *
+   * @param i1 Indexes of the first vector
+   * @param v1 Values of the first vector
+   * @param i2 Indexes of the second vector
+   * @param v2 Values of the second vector
+   * @return Cosine of the angle
+   */
+  public static double cosAngle(int[] i1, float[] v1, int[] i2, float[] v2) {
+    double s1 = 0., s2 = 0., cross = 0.;
+    final int l1 = i1.length, l2 = i2.length;
+    int k1 = 0, k2 = 0;
+    while(k1 < l1 && k2 < l2) {
+      final int d1 = i1[k1], d2 = i2[k2];
+      if(d1 < d2) {
+        final double val = v1[k1];
+        s1 += val * val;
+        k1++;
+      }
+      else if(d2 < d1) {
+        final double val = v2[k2];
+        s2 += val * val;
+        k2++;
+      }
+      else {
+        final double val1 = v1[k1], val2 = v2[k2];
+        s1 += val1 * val1;
+        s2 += val2 * val2;
+        cross += val1 * val2;
+        k1++;
+        k2++;
+      }
+    }
+    for(; k1 < l1; k1++) {
+      final double val = v1[k1];
+      s1 += val * val;
+    }
+    for(; k2 < l2; k2++) {
+      final double val = v2[k2];
+      s2 += val * val;
+    }
+    return cosAngle(cross, s1, s2);
+  }
+
+  /**
+   * Cosine of the angle of a sparse query to many candidates.
+   * <p>
+   * Candidates that are not sparse vectors of the same type as the query use
+   * {@link VectorUtil#cosAngle}.
+   *
+   * @param query Query vector
+   * @param relation Data relation
+   * @param candidates Candidates
+   * @param out Output array, of at least the size of the candidates
+   */
+  public static void cosAngles(SparseNumberVector query, Relation<? extends NumberVector> relation, ArrayDBIDs candidates, double[] out) {
+    final SparseDoubleVector qd = query instanceof SparseDoubleVector ? (SparseDoubleVector) query : null;
+    final SparseFloatVector qf = query instanceof SparseFloatVector ? (SparseFloatVector) query : null;
+    final double qlen = qd != null ? squaredNorm(qd.getRawValues()) : qf != null ? squaredNorm(qf.getRawValues()) : 0.;
+    int i = 0;
+    for(DBIDIter it = candidates.iter(); it.valid(); it.advance(), i++) {
+      final NumberVector v = relation.get(it);
+      if(qd != null && v instanceof SparseDoubleVector) {
+        final SparseDoubleVector vd = (SparseDoubleVector) v;
+        out[i] = cosAngle(dot(qd.getRawIndexes(), qd.getRawValues(), vd.getRawIndexes(), vd.getRawValues()), qlen, squaredNorm(vd.getRawValues()));
+        continue;
+      }
+      if(qf != null && v instanceof SparseFloatVector) {
+        final SparseFloatVector vf = (SparseFloatVector) v;
+        out[i] = cosAngle(dot(qf.getRawIndexes(), qf.getRawValues(), vf.getRawIndexes(), vf.getRawValues()), qlen, squaredNorm(vf.getRawValues()));
+        continue;
+      }
+      out[i] = VectorUtil.cosAngle(query, v);
+    }
+  }
+
+  /**
+   * Cosine of the angle from the dot product and the squared norms.
+   *
+   * @param cross Dot product
+   * @param l1 Squared norm of the first vector
+   * @param l2 Squared norm of the second vector
+   * @return Cosine of the angle
+   */
+  public static double cosAngle(double cross, double l1, double l2) {
+    final double a = (cross == 0.) ? 0. : //
+        (l1 == 0. || l2 == 0.) ? 1. : //
+            FastMath.sqrt((cross / l1) * (cross / l2));
+    return (a < 1.) ? a : 1.;
+  }
+}
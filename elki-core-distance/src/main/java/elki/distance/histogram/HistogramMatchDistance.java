@@ -23,6 +23,7 @@ package elki.distance.histogram;
 import elki.data.NumberVector;
 import elki.data.spatial.SpatialComparable;
 import elki.distance.AbstractNumberVectorDistance;
+import elki.distance.BoundedDistance;
 import elki.distance.SpatialPrimitiveDistance;
 import elki.distance.minkowski.ManhattanDistance;
 import elki.utilities.documentation.Reference;
@@ -58,7 +59,7 @@ import elki.utilities.optionhandling.Parameterizer;
     booktitle = "Problemy Peredachi Informatsii 5.3 / Problems of Information Transmission, 5:3", //
     url = "http://mi.mathnet.ru/eng/ppi1811", //
     bibkey = "journals/misc/Vaserstein69")
-public class HistogramMatchDistance extends AbstractNumberVectorDistance implements SpatialPrimitiveDistance<NumberVector> {
+public class HistogramMatchDistance extends AbstractNumberVectorDistance implements SpatialPrimitiveDistance<NumberVector>, BoundedDistance<NumberVector> {
   /**
    * Static instance. Use this!
    */
@@ -76,6 +77,11 @@ public class HistogramMatchDistance extends AbstractNumberVectorDistance impleme
 
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    return distance(v1, v2, Double.POSITIVE_INFINITY);
+  }
+
+  @Override
+  public double distance(NumberVector v1, NumberVector v2, double threshold) {
     final int dim = dimensionality(v1, v2);
     double xs = 0., ys = 0., agg = 0.;
     for(int i = 0; i < dim; i++) {
@@ -87,6 +93,9 @@ public class HistogramMatchDistance extends AbstractNumberVectorDistance impleme
     double fx = xs > 0 ? 1. / xs : 1, fy = ys > 0 ? 1. / ys : 1;
     for(int i = 0; i < dim; i++) {
       agg += Math.abs(v1.doubleValue(i) * fx - v2.doubleValue(i) * fy);
+      if(agg > threshold) {
+        return agg;
+      }
     }
     return agg;
   }
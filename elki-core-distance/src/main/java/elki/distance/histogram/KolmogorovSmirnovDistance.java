@@ -22,6 +22,7 @@ package elki.distance.histogram;
 
 import elki.data.NumberVector;
 import elki.distance.AbstractNumberVectorDistance;
+import elki.distance.BoundedDistance;
 import elki.utilities.optionhandling.Parameterizer;
 
 /**
@@ -40,7 +41,7 @@ import elki.utilities.optionhandling.Parameterizer;
  * @author Erich Schubert
  * @since 0.6.0
  */
-public class KolmogorovSmirnovDistance extends AbstractNumberVectorDistance {
+public class KolmogorovSmirnovDistance extends AbstractNumberVectorDistance implements BoundedDistance<NumberVector> {
   /**
    * Static instance. Use this!
    */
@@ -58,6 +59,11 @@ public class KolmogorovSmirnovDistance extends AbstractNumberVectorDistance {
 
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    return distance(v1, v2, Double.POSITIVE_INFINITY);
+  }
+
+  @Override
+  public double distance(NumberVector v1, NumberVector v2, double threshold) {
     final int dim = dimensionality(v1, v2);
     double xs = 0., ys = 0., agg = 0.;
     for(int i = 0; i < dim; i++) {
@@ -74,6 +80,9 @@ public class KolmogorovSmirnovDistance extends AbstractNumberVectorDistance {
       ys += v2.doubleValue(i);
       double diff = Math.abs(xs * fx - ys * fy);
       agg = diff < agg ? agg : diff;
+      if(agg > threshold) {
+        return agg;
+      }
     }
     return agg;
   }
@@ -22,6 +22,9 @@ package elki.distance.minkowski;
 
 import elki.data.NumberVector;
 import elki.data.spatial.SpatialComparable;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.relation.Relation;
+import elki.distance.ArrayKernels;
 import elki.utilities.Alias;
 import elki.utilities.Priority;
 import elki.utilities.optionhandling.Parameterizer;
@@ -63,6 +66,18 @@ public class EuclideanDistance extends LPIntegerNormDistance {
     return agg;
   }
 
+  private double preDistance(NumberVector v1, NumberVector v2, int start, int end, double limit) {
+    double agg = 0.;
+    for(int d = start; d < end; d++) {
+      final double delta = v1.doubleValue(d) - v2.doubleValue(d);
+      agg += delta * delta;
+      if(agg > limit) {
+        return agg;
+      }
+    }
+    return agg;
+  }
+
   private double preDistanceVM(NumberVector v, SpatialComparable mbr, int start, int end) {
     double agg = 0.;
     for(int d = start; d < end; d++) {
@@ -111,6 +126,15 @@ public class EuclideanDistance extends LPIntegerNormDistance {
 
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    final double[] a1 = ArrayKernels.doubleArray(v1), a2 = a1 != null ? ArrayKernels.doubleArray(v2) : null;
+    final int dim = v1.getDimensionality();
+    if(a2 != null && dim == v2.getDimensionality()) {
+      return FastMath.sqrt(ArrayKernels.squaredEuclidean(a1, ArrayKernels.doubleOffset(v1), a2, ArrayKernels.doubleOffset(v2), dim));
+    }
+    final float[] f1 = ArrayKernels.floatArray(v1), f2 = f1 != null ? ArrayKernels.floatArray(v2) : null;
+    if(f2 != null && f1.length == f2.length) {
+      return FastMath.sqrt(ArrayKernels.squaredEuclidean(f1, f2));
+    }
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
     final int mindim = dim1 < dim2 ? dim1 : dim2;
     double agg = preDistance(v1, v2, 0, mindim);
@@ -123,6 +147,46 @@ public class EuclideanDistance extends LPIntegerNormDistance {
     return FastMath.sqrt(agg);
   }
 
+  @Override
+  public double distance(NumberVector v1, NumberVector v2, double threshold) {
+    final double limit = threshold * threshold;
+    final double[] a1 = ArrayKernels.doubleArray(v1), a2 = a1 != null ? ArrayKernels.doubleArray(v2) : null;
+    final int dim = v1.getDimensionality();
+    if(a2 != null && dim == v2.getDimensionality()) {
+      final double agg = ArrayKernels.squaredEuclidean(a1, ArrayKernels.doubleOffset(v1), a2, ArrayKernels.doubleOffset(v2), dim, limit), d = FastMath.sqrt(agg);
+      return agg <= limit || d > threshold ? d : distance(v1, v2);
+    }
+    final float[] f1 = ArrayKernels.floatArray(v1), f2 = f1 != null ? ArrayKernels.floatArray(v2) : null;
+    if(f2 != null && f1.length == f2.length) {
+      final double agg = ArrayKernels.squaredEuclidean(f1, f2, limit), d = FastMath.sqrt(agg);
+      return agg <= limit || d > threshold ? d : distance(v1, v2);
+    }
+    final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
+    final int mindim = dim1 < dim2 ? dim1 : dim2;
+    double agg = preDistance(v1, v2, 0, mindim, limit);
+    if(agg > limit) {
+      final double d = FastMath.sqrt(agg);
+      return d > threshold ? d : distance(v1, v2);
+    }
+    if(dim1 > mindim) {
+      agg += preNorm(v1, mindim, dim1);
+    }
+    else if(dim2 > mindim) {
+      agg += preNorm(v2, mindim, dim2);
+    }
+    return FastMath.sqrt(agg);
+  }
+
+  @Override
+  public void distances(NumberVector query, Relation<? extends NumberVector> relation, ArrayDBIDs candidates, double[] out) {
+    ArrayKernels.distances(this, query, relation, candidates, out, (q, c, off, pos, n, o) -> {
+      ArrayKernels.squaredEuclidean(q, c, off, pos, n, o);
+      for(int j = 0; j < n; j++) {
+        o[pos[j]] = FastMath.sqrt(o[pos[j]]);
+      }
+    });
+  }
+
   @Override
   public double norm(NumberVector v) {
     return FastMath.sqrt(preNorm(v, 0, v.getDimensionality()));
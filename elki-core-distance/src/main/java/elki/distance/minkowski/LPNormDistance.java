@@ -23,6 +23,7 @@ package elki.distance.minkowski;
 import elki.data.NumberVector;
 import elki.data.spatial.SpatialComparable;
 import elki.data.type.SimpleTypeInformation;
+import elki.distance.BoundedDistance;
 import elki.distance.Norm;
 import elki.distance.NumberVectorDistance;
 import elki.distance.SpatialPrimitiveDistance;
@@ -54,7 +55,7 @@ import net.jafama.FastMath;
  */
 @Priority(Priority.RECOMMENDED)
 @Alias({ "lp", "minkowski", "p" })
-public class LPNormDistance implements SpatialPrimitiveDistance<NumberVector>, NumberVectorDistance<NumberVector>, Norm<NumberVector> {
+public class LPNormDistance implements SpatialPrimitiveDistance<NumberVector>, NumberVectorDistance<NumberVector>, BoundedDistance<NumberVector>, Norm<NumberVector> {
   /**
    * p parameter and its inverse.
    */
@@ -90,6 +91,30 @@ public class LPNormDistance implements SpatialPrimitiveDistance<NumberVector>, N
     return agg;
   }
 
+  /**
+   * Compute unscaled distance in a range of dimensions, stopping early once
+   * the limit is exceeded.
+   * 
+   * @param v1 First object
+   * @param v2 Second object
+   * @param start First dimension
+   * @param end Exclusive last dimension
+   * @param limit Limit for stopping early
+   * @return Aggregated values, or a partial aggregate larger than the limit.
+   */
+  private double preDistance(NumberVector v1, NumberVector v2, final int start, final int end, double limit) {
+    double agg = 0.;
+    for(int d = start; d < end; d++) {
+      final double xd = v1.doubleValue(d), yd = v2.doubleValue(d);
+      final double delta = xd >= yd ? xd - yd : yd - xd;
+      agg += FastMath.pow(delta, p);
+      if(agg > limit) {
+        return agg;
+      }
+    }
+    return agg;
+  }
+
   /**
    * Compute unscaled distance in a range of dimensions.
    * 
@@ -185,6 +210,25 @@ public class LPNormDistance implements SpatialPrimitiveDistance<NumberVector>, N
     return FastMath.pow(agg, invp);
   }
 
+  @Override
+  public double distance(NumberVector v1, NumberVector v2, double threshold) {
+    final double limit = FastMath.pow(threshold, p);
+    final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
+    final int mindim = dim1 < dim2 ? dim1 : dim2;
+    double agg = preDistance(v1, v2, 0, mindim, limit);
+    if(agg > limit) {
+      final double d = FastMath.pow(agg, invp);
+      return d > threshold ? d : distance(v1, v2);
+    }
+    if(dim1 > mindim) {
+      agg += preNorm(v1, mindim, dim1);
+    }
+    else if(dim2 > mindim) {
+      agg += preNorm(v2, mindim, dim2);
+    }
+    return FastMath.pow(agg, invp);
+  }
+
   @Override
   public double norm(NumberVector v) {
     return FastMath.pow(preNorm(v, 0, v.getDimensionality()), invp);
@@ -22,6 +22,9 @@ package elki.distance.minkowski;
 
 import elki.data.NumberVector;
 import elki.data.spatial.SpatialComparable;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.relation.Relation;
+import elki.distance.ArrayKernels;
 import elki.utilities.Alias;
 import elki.utilities.optionhandling.Parameterizer;
 
@@ -63,6 +66,19 @@ public class MaximumDistance extends LPNormDistance {
     return agg;
   }
 
+  private double preDistance(NumberVector v1, NumberVector v2, int start, int end, double limit) {
+    double agg = 0.;
+    for(int d = start; d < end; d++) {
+      final double xd = v1.doubleValue(d), yd = v2.doubleValue(d);
+      final double delta = xd >= yd ? xd - yd : yd - xd;
+      agg = delta >= agg ? delta : agg;
+      if(agg > limit) {
+        return agg;
+      }
+    }
+    return agg;
+  }
+
   private double preDistanceVM(NumberVector v, SpatialComparable mbr, int start, int end) {
     double agg = 0.;
     for(int d = start; d < end; d++) {
@@ -106,6 +122,15 @@ public class MaximumDistance extends LPNormDistance {
 
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    final double[] a1 = ArrayKernels.doubleArray(v1), a2 = a1 != null ? ArrayKernels.doubleArray(v2) : null;
+    final int dim = v1.getDimensionality();
+    if(a2 != null && dim == v2.getDimensionality()) {
+      return ArrayKernels.maximum(a1, ArrayKernels.doubleOffset(v1), a2, ArrayKernels.doubleOffset(v2), dim);
+    }
+    final float[] f1 = ArrayKernels.floatArray(v1), f2 = f1 != null ? ArrayKernels.floatArray(v2) : null;
+    if(f2 != null && f1.length == f2.length) {
+      return ArrayKernels.maximum(f1, f2);
+    }
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
     final int mindim = dim1 < dim2 ? dim1 : dim2;
     double agg = preDistance(v1, v2, 0, mindim);
@@ -120,6 +145,39 @@ public class MaximumDistance extends LPNormDistance {
     return agg;
   }
 
+  @Override
+  public double distance(NumberVector v1, NumberVector v2, double threshold) {
+    final double[] a1 = ArrayKernels.doubleArray(v1), a2 = a1 != null ? ArrayKernels.doubleArray(v2) : null;
+    final int dim = v1.getDimensionality();
+    if(a2 != null && dim == v2.getDimensionality()) {
+      return ArrayKernels.maximum(a1, ArrayKernels.doubleOffset(v1), a2, ArrayKernels.doubleOffset(v2), dim, threshold);
+    }
+    final float[] f1 = ArrayKernels.floatArray(v1), f2 = f1 != null ? ArrayKernels.floatArray(v2) : null;
+    if(f2 != null && f1.length == f2.length) {
+      return ArrayKernels.maximum(f1, f2, threshold);
+    }
+    final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
+    final int mindim = dim1 < dim2 ? dim1 : dim2;
+    double agg = preDistance(v1, v2, 0, mindim, threshold);
+    if(agg > threshold) {
+      return agg;
+    }
+    if(dim1 > mindim) {
+      double b = preNorm(v1, mindim, dim1);
+      agg = agg >= b ? agg : b;
+    }
+    else if(dim2 > mindim) {
+      double b = preNorm(v2, mindim, dim2);
+      agg = agg >= b ? agg : b;
+    }
+    return agg;
+  }
+
+  @Override
+  public void distances(NumberVector query, Relation<? extends NumberVector> relation, ArrayDBIDs candidates, double[] out) {
+    ArrayKernels.distances(this, query, relation, candidates, out, ArrayKernels::maximum);
+  }
+
   @Override
   public double norm(NumberVector v) {
     return preNorm(v, 0, v.getDimensionality());
@@ -20,10 +20,13 @@
  */
 package elki.distance.minkowski;
 
+import elki.data.SparseDoubleVector;
+import elki.data.SparseFloatVector;
 import elki.data.SparseNumberVector;
 import elki.data.type.SimpleTypeInformation;
 import elki.distance.Norm;
 import elki.distance.PrimitiveDistance;
+import elki.distance.SparseKernels;
 import elki.utilities.optionhandling.Parameterizer;
 
 /**
@@ -56,6 +59,14 @@ public class SparseSquaredEuclideanDistance implements PrimitiveDistance<SparseN
 
   @Override
   public double distance(SparseNumberVector v1, SparseNumberVector v2) {
+    if(v1 instanceof SparseDoubleVector && v2 instanceof SparseDoubleVector) {
+      final SparseDoubleVector d1 = (SparseDoubleVector) v1, d2 = (SparseDoubleVector) v2;
+      return SparseKernels.squaredEuclidean(d1.getRawIndexes(), d1.getRawValues(), d2.getRawIndexes(), d2.getRawValues());
+    }
+    if(v1 instanceof SparseFloatVector && v2 instanceof SparseFloatVector) {
+      final SparseFloatVector f1 = (SparseFloatVector) v1, f2 = (SparseFloatVector) v2;
+      return SparseKernels.squaredEuclidean(f1.getRawIndexes(), f1.getRawValues(), f2.getRawIndexes(), f2.getRawValues());
+    }
     // Get the bit masks
     double accu = 0.;
     int i1 = v1.iter(), i2 = v2.iter();
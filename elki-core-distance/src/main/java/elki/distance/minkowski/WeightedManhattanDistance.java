@@ -55,6 +55,19 @@ public class WeightedManhattanDistance extends WeightedLPNormDistance {
     return agg;
   }
 
+  private double preDistance(NumberVector v1, NumberVector v2, final int start, final int end, double limit) {
+    double agg = 0.;
+    for(int d = start; d < end; d++) {
+      final double xd = v1.doubleValue(d), yd = v2.doubleValue(d);
+      final double delta = xd >= yd ? xd - yd : yd - xd;
+      agg += delta * weights[d];
+      if(agg > limit) {
+        return agg;
+      }
+    }
+    return agg;
+  }
+
   private double preDistanceVM(NumberVector v, SpatialComparable mbr, final int start, final int end) {
     double agg = 0.;
     for(int d = start; d < end; d++) {
@@ -116,6 +129,23 @@ public class WeightedManhattanDistance extends WeightedLPNormDistance {
     return agg;
   }
 
+  @Override
+  public double distance(NumberVector v1, NumberVector v2, double threshold) {
+    final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
+    final int mindim = dim1 < dim2 ? dim1 : dim2;
+    double agg = preDistance(v1, v2, 0, mindim, threshold);
+    if(agg > threshold) {
+      return agg;
+    }
+    if(dim1 > mindim) {
+      agg += preNorm(v1, mindim, dim1);
+    }
+    else if(dim2 > mindim) {
+      agg += preNorm(v2, mindim, dim2);
+    }
+    return agg;
+  }
+
   @Override
   public double norm(NumberVector v) {
     return preNorm(v, 0, v.getDimensionality());
@@ -24,6 +24,7 @@ import elki.data.BitVector;
 import elki.data.FeatureVector;
 import elki.data.NumberVector;
 import elki.data.type.SimpleTypeInformation;
+import elki.distance.BoundedDistance;
 import elki.distance.NumberVectorDistance;
 import elki.utilities.documentation.Reference;
 import elki.utilities.optionhandling.Parameterizer;
@@ -48,7 +49,7 @@ import elki.utilities.optionhandling.Parameterizer;
     booktitle = "Bell System technical journal, 29(2)", //
     url = "https://doi.org/10.1002/j.1538-7305.1950.tb00463.x", //
     bibkey = "doi:10.1002/j.1538-7305.1950.tb00463.x")
-public class HammingDistance extends AbstractSetDistance<FeatureVector<?>> implements NumberVectorDistance<FeatureVector<?>> {
+public class HammingDistance extends AbstractSetDistance<FeatureVector<?>> implements NumberVectorDistance<FeatureVector<?>>, BoundedDistance<FeatureVector<?>> {
   /**
    * Static instance.
    */
@@ -65,7 +66,7 @@ public class HammingDistance extends AbstractSetDistance<FeatureVector<?>> imple
       return ((BitVector) o1).hammingDistance((BitVector) o2);
     }
     if(o1 instanceof NumberVector && o2 instanceof NumberVector) {
-      return hammingDistanceNumberVector((NumberVector) o1, (NumberVector) o2);
+      return hammingDistanceNumberVector((NumberVector) o1, (NumberVector) o2, Double.POSITIVE_INFINITY);
     }
     final int d1 = o1.getDimensionality(), d2 = o2.getDimensionality();
     int differences = 0;
@@ -108,12 +109,20 @@ public class HammingDistance extends AbstractSetDistance<FeatureVector<?>> imple
     return differences;
   }
 
+  @Override
+  public double distance(FeatureVector<?> o1, FeatureVector<?> o2, double threshold) {
+    if(o1 instanceof NumberVector && o2 instanceof NumberVector && !(o1 instanceof BitVector && o2 instanceof BitVector)) {
+      return hammingDistanceNumberVector((NumberVector) o1, (NumberVector) o2, threshold);
+    }
+    return distance(o1, o2);
+  }
+
   @Override
   public double distance(NumberVector o1, NumberVector o2) {
     if(o1 instanceof BitVector && o2 instanceof BitVector) {
       return ((BitVector) o1).hammingDistance((BitVector) o2);
     }
-    return hammingDistanceNumberVector(o1, o2);
+    return hammingDistanceNumberVector(o1, o2, Double.POSITIVE_INFINITY);
   }
 
   /**
@@ -121,9 +130,10 @@ public class HammingDistance extends AbstractSetDistance<FeatureVector<?>> imple
    * 
    * @param o1 First vector
    * @param o2 Second vector
-   * @return hamming distance
+   * @param threshold Threshold for stopping early
+   * @return hamming distance, or a partial count larger than the threshold
    */
-  private double hammingDistanceNumberVector(NumberVector o1, NumberVector o2) {
+  private double hammingDistanceNumberVector(NumberVector o1, NumberVector o2, double threshold) {
     final int d1 = o1.getDimensionality(), d2 = o2.getDimensionality();
     int differences = 0;
     int d = 0;
@@ -132,8 +142,8 @@ public class HammingDistance extends AbstractSetDistance<FeatureVector<?>> imple
       if(v1 != v1 || v2 != v2) { /* NaN */
         continue;
       }
-      if(v1 != v2) {
-        ++differences;
+      if(v1 != v2 && ++differences > threshold) {
+        return differences;
       }
     }
     for(; d < d1; d++) {
@@ -23,6 +23,7 @@ package elki.distance.timeseries;
 import java.util.Arrays;
 
 import elki.data.NumberVector;
+import elki.distance.BoundedDistance;
 import elki.utilities.documentation.Reference;
 import elki.utilities.documentation.Title;
 import net.jafama.FastMath;
@@ -38,6 +39,12 @@ import net.jafama.FastMath;
  * <p>
  * This implementation uses a buffer storing two rows.
  * <p>
+ * When used with a distance threshold, e.g., in kNN and range queries, the
+ * computation is cascaded as in the UCR suite: first the lower bound of Kim et
+ * al. using the first and last values, then the envelope-based lower bound of
+ * Keogh (for series of equal length), and finally the dynamic programming is
+ * abandoned once all cells of a row exceed the threshold.
+ * <p>
  * TODO: allow different one-dimensional distances
  * 
  * @author Thomas Bernecker
@@ -50,7 +57,27 @@ import net.jafama.FastMath;
     booktitle = "AAAI-94 Workshop on Knowledge Discovery in Databases, 1994", //
     url = "http://www.aaai.org/Papers/Workshops/1994/WS-94-03/WS94-03-031.pdf", //
     bibkey = "DBLP:conf/kdd/BerndtC94")
-public class DTWDistance extends AbstractEditDistance {
+@Reference(authors = "S.-W. Kim, S. Park, W. W. Chu", //
+    title = "An index-based approach for similarity search supporting time warping in large sequence databases", //
+    booktitle = "Proc. 17th Int. Conf. on Data Engineering (ICDE 2001)", //
+    url = "https://doi.org/10.1109/ICDE.2001.914875", //
+    bibkey = "DBLP:conf/icde/KimPC01")
+@Reference(authors = "E. Keogh, C. A. Ratanamahatana", //
+    title = "Exact indexing of dynamic time warping", //
+    booktitle = "Knowledge and Information Systems 7(3)", //
+    url = "https://doi.org/10.1007/s10115-004-0154-9", //
+    bibkey = "DBLP:journals/kais/KeoghR05")
+@Reference(authors = "T. Rakthanmanon, B. J. L. Campana, A. Mueen, G. E. A. P. A. Batista, M. B. Westover, Q. Zhu, J. Zakaria, E. J. Keogh", //
+    title = "Searching and mining trillions of time series subsequences under dynamic time warping", //
+    booktitle = "Proc. 18th ACM SIGKDD Int. Conf. on Knowledge Discovery and Data Mining (KDD 2012)", //
+    url = "https://doi.org/10.1145/2339530.2339576", //
+    bibkey = "DBLP:conf/kdd/RakthanmanonCMBWZZK12")
+public class DTWDistance extends AbstractEditDistance implements BoundedDistance<NumberVector> {
+  /**
+   * Envelope of the last query series, per thread.
+   */
+  private final ThreadLocal<Envelope> envelopes = ThreadLocal.withInitial(Envelope::new);
+
   /**
    * Constructor.
    */
@@ -69,6 +96,11 @@ public class DTWDistance extends AbstractEditDistance {
 
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    return distance(v1, v2, Double.POSITIVE_INFINITY);
+  }
+
+  @Override
+  public double distance(NumberVector v1, NumberVector v2, double threshold) {
     // Dimensionality, and last valid value in second vector:
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
     final int m2 = dim2 - 1;
@@ -79,6 +111,12 @@ public class DTWDistance extends AbstractEditDistance {
     if(Math.abs(dim1 - dim2) > band) {
       return Double.POSITIVE_INFINITY;
     }
+    // Lower bound cascade:
+    if(threshold < Double.POSITIVE_INFINITY && //
+        (exceeds(lowerBoundKim(v1, v2, dim1, dim2), threshold) || //
+            dim1 == dim2 && exceeds(lowerBoundKeogh(v1, v2, dim1, band, threshold), threshold))) {
+      return Double.POSITIVE_INFINITY;
+    }
     // Current and previous columns of the matrix
     double[] buf = new double[dim2 << 1];
     Arrays.fill(buf, Double.POSITIVE_INFINITY);
@@ -92,6 +130,7 @@ public class DTWDistance extends AbstractEditDistance {
     int i = 1, l = 0, r = Math.min(m2, i + band);
     while(i < dim1) {
       final double val1 = v1.doubleValue(i);
+      double rowmin = Double.POSITIVE_INFINITY;
       for(int j = l; j <= r; j++) {
         // Value in previous row (must exist, may be infinite):
         double min = buf[cur + j];
@@ -106,7 +145,12 @@ public class DTWDistance extends AbstractEditDistance {
           }
         }
         // Write:
-        buf[nxt + j] = min + delta(val1, v2.doubleValue(j));
+        final double v = buf[nxt + j] = min + delta(val1, v2.doubleValue(j));
+        rowmin = v < rowmin ? v : rowmin;
+      }
+      // Every warping path passes through this row:
+      if(exceeds(rowmin, threshold)) {
+        return Double.POSITIVE_INFINITY;
       }
       // Swap buffer positions:
       cur = dim2 - cur;
@@ -125,6 +169,150 @@ public class DTWDistance extends AbstractEditDistance {
     return FastMath.sqrt(buf[cur + dim2 - 1]);
   }
 
+  /**
+   * Test whether an accumulated value exceeds the distance threshold.
+   *
+   * @param agg Accumulated value (a lower bound of the final value)
+   * @param threshold Distance threshold
+   * @return {@code true} if the distance will exceed the threshold
+   */
+  protected boolean exceeds(double agg, double threshold) {
+    return agg > threshold * threshold && FastMath.sqrt(agg) > threshold;
+  }
+
+  /**
+   * Lower bound LB_Kim, using the first and the last values, which are always
+   * aligned with each other.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @param dim1 Dimensionality of first
+   * @param dim2 Dimensionality of second
+   * @return Lower bound of the accumulated value
+   */
+  protected double lowerBoundKim(NumberVector v1, NumberVector v2, int dim1, int dim2) {
+    final double first = delta(v1.doubleValue(0), v2.doubleValue(0));
+    return dim1 > 1 || dim2 > 1 ? first + delta(v1.doubleValue(dim1 - 1), v2.doubleValue(dim2 - 1)) : first;
+  }
+
+  /**
+   * Lower bound LB_Keogh, using the band envelope of the first series, for
+   * series of equal length. The computation stops as soon as the threshold is
+   * exceeded. The envelope is cached, as queries compare the same first series
+   * to many candidates.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @param dim Dimensionality of both
+   * @param band Band size
+   * @param threshold Distance threshold
+   * @return Lower bound of the accumulated value
+   */
+  protected double lowerBoundKeogh(NumberVector v1, NumberVector v2, int dim, int band, double threshold) {
+    final Envelope env = envelopes.get().of(v1, dim, band);
+    final double[] lower = env.lower, upper = env.upper;
+    double agg = 0.;
+    for(int i = 0; i < dim; i++) {
+      final double v = v2.doubleValue(i);
+      agg += v > upper[i] ? delta(v, upper[i]) : v < lower[i] ? delta(v, lower[i]) : 0.;
+      if(exceeds(agg, threshold)) {
+        break;
+      }
+    }
+    return agg;
+  }
+
+  /**
+   * Compute the lower and upper envelope of a series, using the streaming
+   * minimum and maximum algorithm of Lemire in linear time.
+   *
+   * @param v Series
+   * @param band Band size
+   * @param lower Output lower envelope
+   * @param upper Output upper envelope
+   */
+  protected static void envelope(double[] v, int band, double[] lower, double[] upper) {
+    final int n = v.length;
+    band = band < n ? band : n;
+    // Monotone queues of candidate positions:
+    final int[] qmax = new int[n], qmin = new int[n];
+    int hmax = 0, tmax = 0, hmin = 0, tmin = 0;
+    for(int j = 0, e = n + band; j < e; j++) {
+      if(j < n) {
+        final double vj = v[j];
+        while(tmax > hmax && v[qmax[tmax - 1]] <= vj) {
+          --tmax;
+        }
+        qmax[tmax++] = j;
+        while(tmin > hmin && v[qmin[tmin - 1]] >= vj) {
+          --tmin;
+        }
+        qmin[tmin++] = j;
+      }
+      // Window [i - band; i + band] is complete:
+      final int i = j - band;
+      if(i >= 0) {
+        while(qmax[hmax] < i - band) {
+          ++hmax;
+        }
+        while(qmin[hmin] < i - band) {
+          ++hmin;
+        }
+        upper[i] = v[qmax[hmax]];
+        lower[i] = v[qmin[hmin]];
+      }
+    }
+  }
+
+  /**
+   * Reusable buffer for the envelope of a series.
+   *
+   * @author Erich Schubert
+   */
+  private static class Envelope {
+    /**
+     * Series the envelope was computed for.
+     */
+    private NumberVector series;
+
+    /**
+     * Band size the envelope was computed for.
+     */
+    private int band;
+
+    /**
+     * Values of the series, lower and upper envelope.
+     */
+    private double[] values = new double[0], lower = values, upper = values;
+
+    /**
+     * Get the envelope of a series, recomputing it only if the series or the
+     * band size changed.
+     *
+     * @param v Series
+     * @param dim Dimensionality
+     * @param band Band size
+     * @return this
+     */
+    private Envelope of(NumberVector v, int dim, int band) {
+      if(v == series && band == this.band && dim == values.length) {
+        return this;
+      }
+      if(dim != values.length) {
+        values = new double[dim];
+        lower = new double[dim];
+        upper = new double[dim];
+      }
+      for(int i = 0; i < dim; i++) {
+        values[i] = v.doubleValue(i);
+      }
+      envelope(values, band, lower, upper);
+      this.series = v;
+      this.band = band;
+      return this;
+    }
+  }
+
   /**
    * Fill the first row.
    * 
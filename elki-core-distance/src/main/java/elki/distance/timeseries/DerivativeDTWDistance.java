@@ -63,7 +63,7 @@ public class DerivativeDTWDistance extends DTWDistance {
   }
 
   @Override
-  public double distance(NumberVector v1, NumberVector v2) {
+  public double distance(NumberVector v1, NumberVector v2, double threshold) {
     // Dimensionality, and last valid value in second vector:
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
     final int m2 = dim2 - 1;
@@ -87,6 +87,7 @@ public class DerivativeDTWDistance extends DTWDistance {
     int i = 1, l = 0, r = Math.min(m2, i + band);
     while(i < dim1) {
       final double val1 = derivative(i, v1);
+      double rowmin = Double.POSITIVE_INFINITY;
       for(int j = l; j <= r; j++) {
         // Value in previous row (must exist, may be infinite):
         double min = buf[cur + j];
@@ -101,7 +102,12 @@ public class DerivativeDTWDistance extends DTWDistance {
           }
         }
         // Write:
-        buf[nxt + j] = min + delta(val1, derivative(j, v2));
+        final double v = buf[nxt + j] = min + delta(val1, derivative(j, v2));
+        rowmin = v < rowmin ? v : rowmin;
+      }
+      // Every warping path passes through this row:
+      if(exceeds(rowmin, threshold)) {
+        return Double.POSITIVE_INFINITY;
       }
       // Swap buffer positions:
       cur = dim2 - cur;
@@ -66,7 +66,7 @@ public class EDRDistance extends DTWDistance {
   }
 
   @Override
-  public double distance(NumberVector v1, NumberVector v2) {
+  public double distance(NumberVector v1, NumberVector v2, double threshold) {
     // Dimensionality, and last valid value in second vector:
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
 
@@ -90,6 +90,7 @@ public class EDRDistance extends DTWDistance {
     int i = 1, l = 0, r = Math.min(m2, i + band);
     while(i < dim1) {
       final double val1 = v1.doubleValue(i);
+      double rowmin = Double.POSITIVE_INFINITY;
       for(int j = l; j <= r; j++) {
         // Value in previous row (must exist, may be infinite):
         double min = buf[cur + j];
@@ -104,7 +105,12 @@ public class EDRDistance extends DTWDistance {
           }
         }
         // Write:
-        buf[nxt + j] = min + delta(val1, v2.doubleValue(j));
+        final double v = buf[nxt + j] = min + delta(val1, v2.doubleValue(j));
+        rowmin = v < rowmin ? v : rowmin;
+      }
+      // Every warping path passes through this row:
+      if(exceeds(rowmin, threshold)) {
+        return Double.POSITIVE_INFINITY;
       }
       // Swap buffer positions:
       cur = dim2 - cur;
@@ -122,6 +128,11 @@ public class EDRDistance extends DTWDistance {
     return buf[cur + dim2 - 1];
   }
 
+  @Override
+  protected boolean exceeds(double agg, double threshold) {
+    return agg > threshold;
+  }
+
   @Override
   protected double delta(double val1, double val2) {
     return (Math.abs(val1 - val2) < delta) ? 0. : 1.;
@@ -23,6 +23,7 @@ package elki.distance.timeseries;
 import elki.data.NumberVector;
 import elki.data.type.VectorTypeInformation;
 import elki.distance.AbstractNumberVectorDistance;
+import elki.distance.BoundedDistance;
 import elki.utilities.documentation.Reference;
 import elki.utilities.documentation.Title;
 import elki.utilities.optionhandling.Parameterizer;
@@ -53,7 +54,7 @@ import elki.utilities.optionhandling.parameters.DoubleParameter;
     booktitle = "Proc. 9th ACM SIGKDD Int. Conf. on Knowledge Discovery and Data Mining", //
     url = "https://doi.org/10.1145/956750.956777", //
     bibkey = "DBLP:conf/kdd/VlachosHGK03")
-public class LCSSDistance extends AbstractNumberVectorDistance {
+public class LCSSDistance extends AbstractNumberVectorDistance implements BoundedDistance<NumberVector> {
   /**
    * Keeps the currently set pDelta.
    */
@@ -78,9 +79,14 @@ public class LCSSDistance extends AbstractNumberVectorDistance {
 
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    return distance(v1, v2, Double.POSITIVE_INFINITY);
+  }
+
+  @Override
+  public double distance(NumberVector v1, NumberVector v2, double threshold) {
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
     if(dim1 > dim2) {
-      return distance(v2, v1);
+      return distance(v2, v1, threshold);
     }
     final int delta = (int) Math.ceil(dim2 * pDelta);
 
@@ -88,13 +94,16 @@ public class LCSSDistance extends AbstractNumberVectorDistance {
     final double epsilon = getRange(v1, dim1, v2, dim2) * pEpsilon;
 
     double[] curr = new double[dim2 + 1], next = new double[dim2 + 1];
+    // Largest value in the buffers, to bound the final similarity:
+    double best = 0.;
 
     for(int i = 0; i < dim1; i++) {
       final double ai = v1.doubleValue(i);
       for(int j = Math.max(0, i - delta); j <= Math.min(dim2 - 1, i + delta); j++) {
         final double bj = v2.doubleValue(j);
         if((bj + epsilon) >= ai && (bj - epsilon) <= ai) { // match
-          next[j + 1] = curr[j] + 1;
+          final double v = next[j + 1] = curr[j] + 1;
+          best = v > best ? v : best;
         }
         else if(curr[j + 1] > next[j]) { // ins
           next[j + 1] = curr[j + 1];
@@ -103,6 +112,10 @@ public class LCSSDistance extends AbstractNumberVectorDistance {
           next[j + 1] = next[j];
         }
       }
+      // Each remaining row can increase the matches by at most one:
+      if(1. - Math.min(best + dim1 - 1 - i, dim1) / dim1 > threshold) {
+        return Double.POSITIVE_INFINITY;
+      }
       // Swap
       double[] tmp = curr;
       curr = next;
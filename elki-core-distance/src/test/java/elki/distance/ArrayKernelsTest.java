@@ -0,0 +1,99 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.distance;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.data.FloatVector;
+import elki.data.NumberVector;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.ManhattanDistance;
+import elki.distance.minkowski.MaximumDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+
+/**
+ * Test that the array kernels give the same results as the generic code.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ArrayKernelsTest {
+  /**
+   * Distances to test.
+   */
+  private static final NumberVectorDistance<?>[] DISTANCES = { //
+      EuclideanDistance.STATIC, SquaredEuclideanDistance.STATIC, //
+      ManhattanDistance.STATIC, MaximumDistance.STATIC, CosineDistance.STATIC };
+
+  @Test
+  public void testKernels() {
+    Random rnd = new Random(0L);
+    for(int i = 0; i < 100; i++) {
+      double[] a = new double[17], b = new double[17];
+      float[] fa = new float[17], fb = new float[17];
+      for(int d = 0; d < a.length; d++) {
+        fa[d] = (float) (a[d] = rnd.nextGaussian());
+        fb[d] = (float) (b[d] = rnd.nextGaussian());
+      }
+      DoubleVector va = new DoubleVector(a), vb = new DoubleVector(b);
+      FloatVector wa = new FloatVector(fa), wb = new FloatVector(fb);
+      for(NumberVectorDistance<?> dist : DISTANCES) {
+        assertEquals(dist.toString(), dist.distance(generic(va), generic(vb)), dist.distance(va, vb), 0.);
+        assertEquals(dist.toString(), dist.distance(generic(wa), generic(wb)), dist.distance(wa, wb), 0.);
+      }
+    }
+  }
+
+  /**
+   * Wrap a vector, to hide the array storage.
+   *
+   * @param v Vector
+   * @return Wrapped vector
+   */
+  private static NumberVector generic(NumberVector v) {
+    return new DoubleVector() {
+      @Override
+      public int getDimensionality() {
+        return v.getDimensionality();
+      }
+
+      @Override
+      public double doubleValue(int dimension) {
+        return v.doubleValue(dimension);
+      }
+
+      @Override
+      public long longValue(int dimension) {
+        return v.longValue(dimension);
+      }
+
+      @Override
+      public double[] toArray() {
+        return v.toArray();
+      }
+    };
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.distance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.data.FloatVector;
+import elki.data.NumberVector;
+import elki.distance.histogram.HistogramMatchDistance;
+import elki.distance.histogram.KolmogorovSmirnovDistance;
+import elki.distance.minkowski.*;
+import elki.distance.set.HammingDistance;
+
+/**
+ * Test that distances with early abandoning are exact up to the threshold.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class BoundedDistanceTest {
+  /**
+   * Dimensionality of the test data.
+   */
+  private static final int DIM = 17;
+
+  @Test
+  public void testBoundedDistances() {
+    double[] weights = new double[DIM];
+    Random rnd = new Random(0L);
+    for(int d = 0; d < DIM; d++) {
+      weights[d] = rnd.nextDouble() + .5;
+    }
+    @SuppressWarnings("unchecked")
+    BoundedDistance<? super NumberVector>[] distances = new BoundedDistance[] { //
+        EuclideanDistance.STATIC, SquaredEuclideanDistance.STATIC, //
+        ManhattanDistance.STATIC, MaximumDistance.STATIC, //
+        new LPNormDistance(.5), new LPNormDistance(2.5), new LPIntegerNormDistance(3), //
+        new WeightedEuclideanDistance(weights), new WeightedManhattanDistance(weights), //
+        new WeightedMaximumDistance(weights), new WeightedLPNormDistance(3., weights), //
+        KolmogorovSmirnovDistance.STATIC, HistogramMatchDistance.STATIC };
+    for(int i = 0; i < 100; i++) {
+      double[] a = new double[DIM], b = new double[DIM];
+      float[] fa = new float[DIM], fb = new float[DIM];
+      for(int d = 0; d < DIM; d++) {
+        fa[d] = (float) (a[d] = rnd.nextDouble());
+        fb[d] = (float) (b[d] = rnd.nextDouble());
+      }
+      for(BoundedDistance<? super NumberVector> dist : distances) {
+        assertBounded(dist, new DoubleVector(a), new DoubleVector(b));
+        assertBounded(dist, new FloatVector(fa), new FloatVector(fb));
+        assertBounded(dist, generic(new DoubleVector(a)), new DoubleVector(b));
+      }
+    }
+  }
+
+  @Test
+  public void testHamming() {
+    Random rnd = new Random(0L);
+    for(int i = 0; i < 100; i++) {
+      double[] a = new double[DIM], b = new double[DIM];
+      for(int d = 0; d < DIM; d++) {
+        a[d] = rnd.nextInt(3);
+        b[d] = rnd.nextInt(3);
+      }
+      assertBounded(HammingDistance.STATIC, new DoubleVector(a), new DoubleVector(b));
+    }
+  }
+
+  /**
+   * Check the bounded distance against the full distance.
+   *
+   * @param dist Distance
+   * @param a First vector
+   * @param b Second vector
+   */
+  private static <O> void assertBounded(BoundedDistance<O> dist, O a, O b) {
+    final double full = dist.distance(a, b);
+    for(double t : new double[] { 0., full * .5, Math.nextDown(full), full, full * 1.5, Double.POSITIVE_INFINITY }) {
+      final double d = dist.distance(a, b, t);
+      if(full <= t) {
+        assertEquals(dist.toString(), full, d, 0.);
+      }
+      else {
+        assertTrue(dist.toString() + " not above threshold: " + d + " <= " + t, d > t);
+      }
+    }
+  }
+
+  /**
+   * Wrap a vector, to hide the array storage.
+   *
+   * @param v Vector
+   * @return Wrapped vector
+   */
+  private static NumberVector generic(NumberVector v) {
+    return new DoubleVector() {
+      @Override
+      public int getDimensionality() {
+        return v.getDimensionality();
+      }
+
+      @Override
+      public double doubleValue(int dimension) {
+        return v.doubleValue(dimension);
+      }
+
+      @Override
+      public long longValue(int dimension) {
+        return v.longValue(dimension);
+      }
+
+      @Override
+      public double[] toArray() {
+        return v.toArray();
+      }
+    };
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.distance;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.data.SparseDoubleVector;
+import elki.data.SparseFloatVector;
+import elki.data.SparseNumberVector;
+import elki.distance.minkowski.SparseEuclideanDistance;
+import elki.distance.minkowski.SparseManhattanDistance;
+import elki.distance.minkowski.SparseSquaredEuclideanDistance;
+
+/**
+ * Test that the sparse kernels give the same results as the generic code.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class SparseKernelsTest {
+  /**
+   * Dimensionality of the test data.
+   */
+  private static final int DIM = 100;
+
+  @Test
+  public void testKernels() {
+    Random rnd = new Random(0L);
+    @SuppressWarnings("unchecked")
+    PrimitiveDistance<? super SparseNumberVector>[] distances = new PrimitiveDistance[] { //
+        SparseEuclideanDistance.STATIC, SparseSquaredEuclideanDistance.STATIC, //
+        SparseManhattanDistance.STATIC, CosineDistance.STATIC };
+    for(int i = 0; i < 100; i++) {
+      float[] a = randomSparse(rnd), b = randomSparse(rnd);
+      SparseDoubleVector da = new SparseDoubleVector(toDouble(a)), db = new SparseDoubleVector(toDouble(b));
+      SparseFloatVector fa = new SparseFloatVector(a), fb = new SparseFloatVector(b);
+      for(PrimitiveDistance<? super SparseNumberVector> dist : distances) {
+        // Mixed vector types use the generic code:
+        final double expect = dist.distance(da, fb);
+        assertEquals(dist.toString(), expect, dist.distance(da, db), 0.);
+        assertEquals(dist.toString(), expect, dist.distance(fa, fb), 0.);
+      }
+    }
+  }
+
+  /**
+   * Generate random sparse data.
+   *
+   * @param rnd Random generator
+   * @return Dense array with few nonzero values
+   */
+  private static float[] randomSparse(Random rnd) {
+    float[] v = new float[DIM];
+    for(int i = 0; i < 10; i++) {
+      v[rnd.nextInt(DIM)] = (float) rnd.nextGaussian();
+    }
+    return v;
+  }
+
+  /**
+   * Convert to a double array.
+   *
+   * @param v Float array
+   * @return Double array
+   */
+  private static double[] toDouble(float[] v) {
+    double[] d = new double[v.length];
+    for(int i = 0; i < v.length; i++) {
+      d[i] = v[i];
+    }
+    return d;
+  }
+}
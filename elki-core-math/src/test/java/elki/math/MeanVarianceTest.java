@@ -144,6 +144,22 @@ public class MeanVarianceTest {
     assertEquals("Fourth stddev", 4.8, m2.getSampleVariance(), 0);
   }
 
+  @Test
+  public void combineEmpty() {
+    MeanVariance m1 = new MeanVariance(), m2 = new MeanVariance();
+    m2.put(new double[] { 1, 2, 3 });
+    // Merge into an empty instance:
+    m1.put(m2);
+    assertEquals("Count wrong", 3, m1.getCount(), 0.);
+    assertEquals("Mean wrong", 2, m1.getMean(), 0.);
+    assertEquals("Variance wrong", 1, m1.getSampleVariance(), 0.);
+    // Merge an empty instance:
+    m1.put(new MeanVariance());
+    assertEquals("Count wrong", 3, m1.getCount(), 0.);
+    assertEquals("Mean wrong", 2, m1.getMean(), 0.);
+    assertEquals("Variance wrong", 1, m1.getSampleVariance(), 0.);
+  }
+
   @Test(expected = ArithmeticException.class)
   public void testEmpty() {
     new MeanVariance().put(new double[0]).getSampleVariance();
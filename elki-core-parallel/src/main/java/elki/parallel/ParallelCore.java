@@ -21,11 +21,29 @@
 package elki.parallel;
 
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.Flag;
+import elki.utilities.optionhandling.parameters.IntParameter;
 
 /**
- * Core for parallel processing in ELKI, based on {@link ThreadPoolExecutor}.
+ * Core for parallel processing in ELKI, based on {@link ThreadPoolExecutor}
+ * or, in work-stealing mode, on a {@link ForkJoinPool}.
+ * <p>
+ * In work-stealing mode, {@link ParallelExecutor} recursively splits the
+ * input into blocks, and idle workers steal the remaining blocks of busy
+ * workers. This balances skewed workloads much better, where some objects
+ * are much more expensive to process than others.
  * <p>
- * TODO: make configurable how many threads are used.
+ * When parameterized, every task gets its own pool instance with the
+ * configured number of threads, so that several jobs in the same JVM do not
+ * contend for one global queue. Worker threads are named after their pool
+ * and worker index (e.g. {@code elki-parallel-2-0}), so they can be
+ * identified for monitoring or CPU pinning.
  * 
  * @author Erich Schubert
  * @since 0.7.0
@@ -39,12 +57,22 @@ public class ParallelCore {
   /**
    * Static core
    */
-  private static final ParallelCore STATIC = new ParallelCore(ALL_PROCESSORS);
+  private static final ParallelCore STATIC = new ParallelCore("elki-parallel", ALL_PROCESSORS, false);
+
+  /**
+   * Static work-stealing core
+   */
+  private static final ParallelCore STATIC_WORKSTEALING = new ParallelCore("elki-parallel-ws", ALL_PROCESSORS, true);
+
+  /**
+   * Counter for naming pool instances.
+   */
+  private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
 
   /**
    * Executor service.
    */
-  private volatile ThreadPoolExecutor executor;
+  private volatile ExecutorService executor;
 
   /**
    * Number of connected submitters.
@@ -56,12 +84,43 @@ public class ParallelCore {
    */
   private int processors;
 
+  /**
+   * Use a work-stealing fork-join pool.
+   */
+  private boolean workstealing;
+
+  /**
+   * Name prefix for worker threads.
+   */
+  private String name;
+
+  /**
+   * Counter for naming worker threads.
+   */
+  private final AtomicInteger threadCounter = new AtomicInteger();
+
+  /**
+   * Constructor for a new, isolated pool.
+   *
+   * @param processors Number of processors to use
+   * @param workstealing Use a work-stealing fork-join pool
+   */
+  public ParallelCore(int processors, boolean workstealing) {
+    this("elki-parallel-" + POOL_COUNTER.incrementAndGet(), processors, workstealing);
+  }
+
   /**
    * Constructor.
+   *
+   * @param name Name prefix for worker threads
+   * @param processors Number of processors to use
+   * @param workstealing Use a work-stealing fork-join pool
    */
-  protected ParallelCore(int processors) {
+  protected ParallelCore(String name, int processors, boolean workstealing) {
     super();
+    this.name = name;
     this.processors = processors;
+    this.workstealing = workstealing;
   }
 
   /**
@@ -73,13 +132,34 @@ public class ParallelCore {
     return STATIC;
   }
 
+  /**
+   * Get the static core object.
+   *
+   * @param workstealing Use a work-stealing fork-join pool
+   * @return Core
+   */
+  public static ParallelCore getCore(boolean workstealing) {
+    return workstealing ? STATIC_WORKSTEALING : STATIC;
+  }
+
   /**
    * Get desired level of parallelism
    * 
    * @return Number of threads to run in parallel
    */
   public int getParallelism() {
-    return executor != null ? executor.getMaximumPoolSize() : processors;
+    final ExecutorService executor = this.executor;
+    return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getMaximumPoolSize() : //
+        executor instanceof ForkJoinPool ? ((ForkJoinPool) executor).getParallelism() : processors;
+  }
+
+  /**
+   * Test whether this core uses work stealing.
+   *
+   * @return {@code true} when backed by a {@link ForkJoinPool}.
+   */
+  public boolean isWorkStealing() {
+    return workstealing;
   }
 
   /**
@@ -93,17 +173,40 @@ public class ParallelCore {
     return executor.submit(task);
   }
 
+  /**
+   * Run a fork-join task on the work-stealing pool, and wait for completion.
+   *
+   * @param task Task to run
+   * @return Task result
+   */
+  public <T> T invoke(ForkJoinTask<T> task) {
+    if(!workstealing) {
+      throw new IllegalStateException("Fork-join tasks require a work-stealing core.");
+    }
+    return ((ForkJoinPool) executor).invoke(task);
+  }
+
   /**
    * Connect to the executor.
    */
   public synchronized void connect() {
+    if(workstealing) {
+      // Fork-join workers time out on their own when idle.
+      if(executor == null) {
+        executor = new ForkJoinPool(processors, this::newWorkerThread, null, false);
+      }
+      ++connected;
+      return;
+    }
     if(executor == null) {
-      executor = new ThreadPoolExecutor(0, processors, 10L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
-      executor.allowCoreThreadTimeOut(true);
+      ThreadPoolExecutor tpe = new ThreadPoolExecutor(0, processors, 10L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), this::newThread);
+      tpe.allowCoreThreadTimeOut(true);
+      executor = tpe;
     }
     if(++connected == 1) {
-      executor.allowCoreThreadTimeOut(false);
-      executor.setCorePoolSize(executor.getMaximumPoolSize());
+      ThreadPoolExecutor tpe = (ThreadPoolExecutor) executor;
+      tpe.allowCoreThreadTimeOut(false);
+      tpe.setCorePoolSize(tpe.getMaximumPoolSize());
     }
   }
 
@@ -111,9 +214,78 @@ public class ParallelCore {
    * Disconnect to the executor.
    */
   public synchronized void disconnect() {
-    if(--connected == 0) {
-      executor.allowCoreThreadTimeOut(true);
-      executor.setCorePoolSize(0);
+    if(--connected == 0 && !workstealing) {
+      ThreadPoolExecutor tpe = (ThreadPoolExecutor) executor;
+      tpe.allowCoreThreadTimeOut(true);
+      tpe.setCorePoolSize(0);
+    }
+  }
+
+  /**
+   * Create a named worker thread for the thread pool.
+   *
+   * @param r Runnable
+   * @return New thread
+   */
+  private Thread newThread(Runnable r) {
+    Thread t = new Thread(r, name + "-" + threadCounter.getAndIncrement());
+    t.setDaemon(true);
+    return t;
+  }
+
+  /**
+   * Create a named worker thread for the fork-join pool.
+   *
+   * @param pool Pool
+   * @return New thread
+   */
+  private ForkJoinWorkerThread newWorkerThread(ForkJoinPool pool) {
+    ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+    // Pool indexes are reused, and hence stable for a worker slot.
+    t.setName(name + "-" + t.getPoolIndex());
+    return t;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   */
+  public static class Par implements Parameterizer {
+    /**
+     * Flag to enable the work-stealing fork-join executor.
+     */
+    public static final OptionID WORKSTEALING_ID = new OptionID("parallel.workstealing", "Use a work-stealing fork-join pool, which recursively splits the data into blocks. This balances skewed workloads better than a fixed number of equal blocks.");
+
+    /**
+     * Option to limit the number of threads.
+     */
+    public static final OptionID THREADS_ID = new OptionID("parallel.threads", "Number of threads to use. Defaults to the number of available processors.");
+
+    /**
+     * Use a work-stealing fork-join pool.
+     */
+    protected boolean workstealing = false;
+
+    /**
+     * Number of threads.
+     */
+    protected int threads = ALL_PROCESSORS;
+
+    @Override
+    public void configure(Parameterization config) {
+      new IntParameter(THREADS_ID) //
+          .setOptional(true) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> threads = x);
+      new Flag(WORKSTEALING_ID).grab(config, x -> workstealing = x);
+    }
+
+    @Override
+    public ParallelCore make() {
+      return new ParallelCore(threads, workstealing);
     }
   }
 }
@@ -24,8 +24,10 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 
 import elki.database.ids.ArrayDBIDs;
 import elki.database.ids.DBIDArrayIter;
@@ -44,9 +46,20 @@ import elki.parallel.variables.SharedVariable.Instance;
  * @since 0.7.0
  *
  * @has - - - BlockArrayRunner
+ * @has - - - BlockArrayTask
  * @assoc - - - ParallelCore
  */
 public final class ParallelExecutor {
+  /**
+   * Minimum number of objects per block in work-stealing mode.
+   */
+  private static final int MIN_BLOCKSIZE = 16;
+
+  /**
+   * Number of blocks per thread in work-stealing mode to always split into.
+   */
+  private static final int BLOCKS_PER_THREAD = 8;
+
   /**
    * Private constructor. Static methods only.
    */
@@ -61,19 +74,39 @@ public final class ParallelExecutor {
    * @param procs Processors to run
    */
   public static void run(DBIDs ids, Processor... procs) {
-    ParallelCore core = ParallelCore.getCore();
+    run(ParallelCore.getCore(), ids, procs);
+  }
+
+  /**
+   * Run a task on all CPUs of the given core.
+   *
+   * @param core Parallel core to use
+   * @param ids IDs to process
+   * @param procs Processors to run
+   */
+  public static void run(ParallelCore core, DBIDs ids, Processor... procs) {
     core.connect();
     try {
-      // TODO: try different strategies anyway!
       ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
       final int size = aids.size();
       int numparts = core.getParallelism();
+      if(core.isWorkStealing()) {
+        // Always split into enough blocks to balance, split further on demand.
+        final int maxblock = Math.max(MIN_BLOCKSIZE, (size + numparts * BLOCKS_PER_THREAD - 1) / (numparts * BLOCKS_PER_THREAD));
+        // Processor instances are reused per worker thread, not per block:
+        ConcurrentHashMap<Thread, BlockArrayRunner> workers = new ConcurrentHashMap<>();
+        core.invoke(new BlockArrayTask(aids, 0, size, maxblock, procs, workers));
+        for(BlockArrayRunner runner : workers.values()) {
+          runner.cleanup();
+        }
+        return;
+      }
       // TODO: are there better heuristics for choosing this?
       numparts = (size > numparts * numparts * 16) ? numparts * Math.max(1, numparts - 1) : numparts;
 
       final int blocksize = (size + (numparts - 1)) / numparts;
       List<Future<ArrayDBIDs>> parts = new ArrayList<>(numparts);
-      for(int i = 0; i < numparts; i++) {
+      for(int i = 0; i < numparts && i * blocksize < size; i++) {
         final int start = i * blocksize;
         final int end = Math.min(start + blocksize, size);
         Callable<ArrayDBIDs> run = new BlockArrayRunner(aids, start, end, procs);
@@ -95,6 +128,114 @@ public final class ParallelExecutor {
     }
   }
 
+  /**
+   * Recursively splitting fork-join task for work stealing.
+   * <p>
+   * Blocks larger than the maximum block size are always split. Smaller blocks
+   * are only split further while other workers appear to be idle, down to a
+   * minimum block size, so that expensive blocks get subdivided. Because blocks
+   * can become small, each worker thread instantiates the processors only once
+   * and reuses the instances for all blocks it processes.
+   *
+   * @author Erich Schubert
+   *
+   * @has - - - BlockArrayRunner
+   */
+  protected static class BlockArrayTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Threshold of surplus queued tasks to stop splitting.
+     */
+    private static final int SURPLUS_THRESHOLD = 2;
+
+    /**
+     * Array IDs to process
+     */
+    private ArrayDBIDs ids;
+
+    /**
+     * Start position
+     */
+    private int start;
+
+    /**
+     * End position
+     */
+    private int end;
+
+    /**
+     * Block size above which we always split.
+     */
+    private int maxblock;
+
+    /**
+     * The processor masters that own the instances.
+     */
+    private Processor[] procs;
+
+    /**
+     * Per-worker processor instances.
+     */
+    private ConcurrentHashMap<Thread, BlockArrayRunner> workers;
+
+    /**
+     * Next forked sibling, for joining.
+     */
+    private BlockArrayTask next;
+
+    /**
+     * Constructor.
+     *
+     * @param ids IDs to process
+     * @param start Starting position
+     * @param end End position
+     * @param maxblock Block size above which we always split
+     * @param procs Processors to run
+     * @param workers Per-worker processor instances
+     */
+    protected BlockArrayTask(ArrayDBIDs ids, int start, int end, int maxblock, Processor[] procs, ConcurrentHashMap<Thread, BlockArrayRunner> workers) {
+      super();
+      this.ids = ids;
+      this.start = start;
+      this.end = end;
+      this.maxblock = maxblock;
+      this.procs = procs;
+      this.workers = workers;
+    }
+
+    @Override
+    protected void compute() {
+      int hi = end;
+      BlockArrayTask forked = null;
+      while(hi - start > MIN_BLOCKSIZE && //
+          (hi - start > maxblock || getSurplusQueuedTaskCount() <= SURPLUS_THRESHOLD)) {
+        final int mid = (start + hi) >>> 1;
+        BlockArrayTask right = new BlockArrayTask(ids, mid, hi, maxblock, procs, workers);
+        right.next = forked;
+        (forked = right).fork();
+        hi = mid;
+      }
+      BlockArrayRunner runner = workers.get(Thread.currentThread());
+      if(runner == null) {
+        // Only the current thread can add itself, so no race here.
+        workers.put(Thread.currentThread(), runner = new BlockArrayRunner(ids, start, hi, procs));
+      }
+      runner.process(start, hi);
+      for(; forked != null; forked = forked.next) {
+        if(forked.tryUnfork()) {
+          forked.compute();
+        }
+        else {
+          forked.join();
+        }
+      }
+    }
+  }
+
   /**
    * Run for an array part, without step size.
    *
@@ -123,6 +264,11 @@ public final class ParallelExecutor {
      */
     private Processor[] procs;
 
+    /**
+     * Processor instances, once instantiated.
+     */
+    private Processor.Instance[] instances;
+
     /**
      * Variables map.
      */
@@ -146,19 +292,41 @@ public final class ParallelExecutor {
 
     @Override
     public ArrayDBIDs call() {
-      Processor.Instance[] instances = new Processor.Instance[procs.length];
-      for(int i = 0; i < procs.length; i++) {
-        instances[i] = procs[i].instantiate(this);
+      process(start, end);
+      cleanup();
+      return ids;
+    }
+
+    /**
+     * Process a range of the array, instantiating the processors on first use.
+     *
+     * @param start Start position
+     * @param end End position
+     */
+    protected void process(int start, int end) {
+      if(instances == null) {
+        instances = new Processor.Instance[procs.length];
+        for(int i = 0; i < procs.length; i++) {
+          instances[i] = procs[i].instantiate(this);
+        }
       }
       for(DBIDArrayIter iter = ids.iter().seek(start); iter.valid() && iter.getOffset() < end; iter.advance()) {
         for(int i = 0; i < instances.length; i++) {
           instances[i].map(iter);
         }
       }
-      for(int i = 0; i < instances.length; i++) {
-        procs[i].cleanup(instances[i]);
+    }
+
+    /**
+     * Cleanup the processor instances.
+     */
+    protected void cleanup() {
+      if(instances != null) {
+        for(int i = 0; i < instances.length; i++) {
+          procs[i].cleanup(instances[i]);
+        }
+        instances = null;
       }
-      return ids;
     }
 
     @Override
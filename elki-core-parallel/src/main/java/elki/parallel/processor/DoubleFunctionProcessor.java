@@ -0,0 +1,89 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.parallel.processor;
+
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+import elki.database.ids.DBIDRef;
+import elki.parallel.Executor;
+import elki.parallel.variables.SharedDouble;
+
+/**
+ * Processor computing a double value for each object with a function.
+ * <p>
+ * Each thread obtains its own function from the supplier, so the function may
+ * keep thread-local state such as query objects or scratch buffers.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - Instance
+ */
+public class DoubleFunctionProcessor extends AbstractDoubleProcessor {
+  /**
+   * Function factory
+   */
+  private Supplier<? extends ToDoubleFunction<DBIDRef>> factory;
+
+  /**
+   * Constructor.
+   *
+   * @param factory Factory for per-thread functions
+   */
+  public DoubleFunctionProcessor(Supplier<? extends ToDoubleFunction<DBIDRef>> factory) {
+    super();
+    this.factory = factory;
+  }
+
+  @Override
+  public Instance instantiate(Executor executor) {
+    return new Instance(factory.get(), executor.getInstance(output));
+  }
+
+  /**
+   * Instance
+   *
+   * @author Erich Schubert
+   */
+  private static class Instance extends AbstractDoubleProcessor.Instance {
+    /**
+     * Function to apply
+     */
+    private ToDoubleFunction<DBIDRef> function;
+
+    /**
+     * Constructor.
+     *
+     * @param function Function to apply
+     * @param output Output variable
+     */
+    protected Instance(ToDoubleFunction<DBIDRef> function, SharedDouble.Instance output) {
+      super(output);
+      this.function = function;
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      output.set(function.applyAsDouble(id));
+    }
+  }
+}
@@ -39,12 +39,12 @@ public class DoubleMinMaxProcessor implements Processor {
   /**
    * The central data store.
    */
-  DoubleMinMax minmax = new DoubleMinMax();
+  protected DoubleMinMax minmax = new DoubleMinMax();
 
   /**
    * Input channel
    */
-  SharedDouble input;
+  protected SharedDouble input;
 
   /**
    * Constructor.
@@ -78,8 +78,7 @@ public class DoubleMinMaxProcessor implements Processor {
    * @param minmax Minmax value
    */
   protected synchronized void merge(DoubleMinMax minmax) {
-    this.minmax.put(minmax.getMin());
-    this.minmax.put(minmax.getMax());
+    this.minmax.put(minmax);
   }
 
   /**
@@ -96,23 +95,23 @@ public class DoubleMinMaxProcessor implements Processor {
    * 
    * @author Erich Schubert
    */
-  private static class Instance implements Processor.Instance {
+  protected static class Instance implements Processor.Instance {
     /**
      * The central data store.
      */
-    private DoubleMinMax minmax = new DoubleMinMax();
+    protected DoubleMinMax minmax = new DoubleMinMax();
 
     /**
      * Input channel instance
      */
-    private SharedDouble.Instance input;
+    protected SharedDouble.Instance input;
 
     /**
      * Constructor.
      * 
      * @param input Input channel instance.
      */
-    public Instance(SharedDouble.Instance input) {
+    protected Instance(SharedDouble.Instance input) {
       super();
       this.input = input;
     }
@@ -22,10 +22,16 @@ package elki.parallel.processor;
 
 import java.util.function.Supplier;
 
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
 import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDs;
 import elki.database.ids.KNNList;
 import elki.database.query.knn.KNNSearcher;
 import elki.parallel.Executor;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
 import elki.parallel.variables.SharedObject;
 
 /**
@@ -76,6 +82,29 @@ public class KNNProcessor implements Processor {
     this.out = output;
   }
 
+  /**
+   * Materialize the kNN of all objects in parallel.
+   * <p>
+   * This is the common first stage of many kNN-based algorithms, which can
+   * then process the stored lists with further processors.
+   *
+   * @param core Parallel core to use
+   * @param ids Objects to process
+   * @param k Number of neighbors (usually including the query point)
+   * @param knnq Factory for (per-thread) kNN searchers
+   * @return kNN lists
+   */
+  public static WritableDataStore<KNNList> materialize(ParallelCore core, DBIDs ids, int k, Supplier<KNNSearcher<DBIDRef>> knnq) {
+    WritableDataStore<KNNList> knns = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, KNNList.class);
+    KNNProcessor knnm = new KNNProcessor(k, knnq);
+    SharedObject<KNNList> knnv = new SharedObject<>();
+    WriteDataStoreProcessor<KNNList> storek = new WriteDataStoreProcessor<>(knns);
+    knnm.connectKNNOutput(knnv);
+    storek.connectInput(knnv);
+    ParallelExecutor.run(core, ids, knnm, storek);
+    return knns;
+  }
+
   @Override
   public Instance instantiate(Executor executor) {
     return new Instance(k, knnq.get(), executor.getInstance(out));
@@ -0,0 +1,170 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.parallel.variables;
+
+import elki.database.ids.DBIDRef;
+import elki.parallel.Executor;
+import elki.parallel.processor.DoubleMinMaxProcessor;
+import elki.parallel.processor.Processor;
+
+/**
+ * Sink collecting a histogram with a fixed number of equi-width bins, in
+ * addition to the minimum and maximum.
+ * <p>
+ * Values below the minimum or above the maximum are counted in the first and
+ * last bin, respectively; NaN values are not counted. Every processor
+ * instance counts into its own array, which is merged when the instance is
+ * cleaned up.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - Instance
+ */
+public class DoubleHistogramProcessor extends DoubleMinMaxProcessor {
+  /**
+   * Histogram counts.
+   */
+  protected long[] counts;
+
+  /**
+   * Lower end of the histogram range.
+   */
+  protected double min;
+
+  /**
+   * Bin width.
+   */
+  protected double width;
+
+  /**
+   * Constructor.
+   *
+   * @param bins Number of bins
+   * @param min Lower end of the histogram range
+   * @param max Upper end of the histogram range
+   */
+  public DoubleHistogramProcessor(int bins, double min, double max) {
+    super();
+    assert bins > 0 && min < max;
+    this.counts = new long[bins];
+    this.min = min;
+    this.width = (max - min) / bins;
+  }
+
+  @Override
+  public Instance instantiate(Executor executor) {
+    return new Instance(executor.getInstance(input), counts.length, min, width);
+  }
+
+  @Override
+  public void cleanup(Processor.Instance inst) {
+    super.cleanup(inst);
+    merge(((Instance) inst).counts);
+  }
+
+  /**
+   * Merge the result of an instance.
+   *
+   * @param counts Histogram counts
+   */
+  protected synchronized void merge(long[] counts) {
+    for(int i = 0; i < counts.length; i++) {
+      this.counts[i] += counts[i];
+    }
+  }
+
+  /**
+   * Get the histogram counts.
+   *
+   * @return Counts
+   */
+  public long[] getCounts() {
+    return counts;
+  }
+
+  /**
+   * Get the lower end of a histogram bin.
+   *
+   * @param bin Bin number
+   * @return Lower end of the bin
+   */
+  public double getBinStart(int bin) {
+    return min + bin * width;
+  }
+
+  /**
+   * Get the bin width.
+   *
+   * @return Bin width
+   */
+  public double getBinWidth() {
+    return width;
+  }
+
+  /**
+   * Instance for a particular sub-channel / part of the data set.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Instance extends DoubleMinMaxProcessor.Instance {
+    /**
+     * Histogram counts.
+     */
+    protected long[] counts;
+
+    /**
+     * Lower end of the histogram range.
+     */
+    protected double min;
+
+    /**
+     * Bin width.
+     */
+    protected double width;
+
+    /**
+     * Constructor.
+     *
+     * @param input Input channel instance.
+     * @param bins Number of bins
+     * @param min Lower end of the histogram range
+     * @param width Bin width
+     */
+    protected Instance(SharedDouble.Instance input, int bins, double min, double width) {
+      super(input);
+      this.counts = new long[bins];
+      this.min = min;
+      this.width = width;
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      final double v = input.doubleValue();
+      if(v != v) {
+        return; // NaN
+      }
+      minmax.put(v);
+      final int bin = (int) ((v - min) / width);
+      ++counts[bin < 0 ? 0 : bin >= counts.length ? counts.length - 1 : bin];
+    }
+  }
+}
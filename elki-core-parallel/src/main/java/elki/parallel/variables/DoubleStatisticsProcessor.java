@@ -0,0 +1,112 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.parallel.variables;
+
+import elki.database.ids.DBIDRef;
+import elki.math.MeanVariance;
+import elki.parallel.Executor;
+import elki.parallel.processor.DoubleMinMaxProcessor;
+import elki.parallel.processor.Processor;
+
+/**
+ * Sink collecting minimum, maximum, sum, mean and variance of values.
+ * <p>
+ * Every processor instance aggregates on its own, and the partial results are
+ * only merged when the instance is cleaned up, so reductions such as the
+ * maximum k-distance or a global normalization do not contend for shared
+ * state per object.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - Instance
+ * @has - - - MeanVariance
+ */
+public class DoubleStatisticsProcessor extends DoubleMinMaxProcessor {
+  /**
+   * Mean and variance aggregate.
+   */
+  protected MeanVariance mv = new MeanVariance();
+
+  /**
+   * Constructor.
+   */
+  public DoubleStatisticsProcessor() {
+    super();
+  }
+
+  @Override
+  public Instance instantiate(Executor executor) {
+    return new Instance(executor.getInstance(input));
+  }
+
+  @Override
+  public void cleanup(Processor.Instance inst) {
+    super.cleanup(inst);
+    merge(((Instance) inst).mv);
+  }
+
+  /**
+   * Merge the result of an instance.
+   *
+   * @param mv Mean and variance
+   */
+  protected synchronized void merge(MeanVariance mv) {
+    this.mv.put(mv);
+  }
+
+  /**
+   * Get the mean and variance aggregate.
+   *
+   * @return Mean and variance
+   */
+  public MeanVariance getMeanVariance() {
+    return mv;
+  }
+
+  /**
+   * Instance for a particular sub-channel / part of the data set.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Instance extends DoubleMinMaxProcessor.Instance {
+    /**
+     * Mean and variance aggregate.
+     */
+    protected MeanVariance mv = new MeanVariance();
+
+    /**
+     * Constructor.
+     *
+     * @param input Input channel instance.
+     */
+    protected Instance(SharedDouble.Instance input) {
+      super(input);
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      final double v = input.doubleValue();
+      minmax.put(v);
+      mv.put(v);
+    }
+  }
+}
@@ -1,6 +1,9 @@
 /**
  * Variables are instantiated for each thread, and allow passing values from
  * one processor to another within the same thread.
+ * <p>
+ * Accumulators reduce such values per thread (e.g., sum, minimum, maximum, or
+ * a histogram), and merge the partial results only once per instance.
  */
 /*
  * This file is part of ELKI:
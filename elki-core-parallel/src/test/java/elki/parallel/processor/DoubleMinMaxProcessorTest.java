@@ -0,0 +1,55 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.parallel.processor;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import elki.database.ids.DBIDRange;
+import elki.database.ids.DBIDUtil;
+import elki.math.DoubleMinMax;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.variables.SharedDouble;
+
+/**
+ * Test the parallel minimum and maximum reduction.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class DoubleMinMaxProcessorTest {
+  @Test
+  public void testMinMaxEmptyBlocks() {
+    // Fewer objects than threads produce empty partial results:
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(3);
+    DoubleFunctionProcessor input = new DoubleFunctionProcessor(() -> id -> ids.getOffset(id) + 1.);
+    DoubleMinMaxProcessor minmax = new DoubleMinMaxProcessor();
+    SharedDouble var = new SharedDouble();
+    input.connectOutput(var);
+    minmax.connectInput(var);
+    ParallelExecutor.run(new ParallelCore(8, true), ids, input, minmax);
+    minmax.merge(new DoubleMinMax());
+    assertEquals("Minimum wrong", 1., minmax.getMinMax().getMin(), 0.);
+    assertEquals("Maximum wrong", 3., minmax.getMinMax().getMax(), 0.);
+  }
+}
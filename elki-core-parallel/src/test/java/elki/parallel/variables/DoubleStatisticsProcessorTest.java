@@ -0,0 +1,88 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.parallel.variables;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import elki.database.ids.DBIDRange;
+import elki.database.ids.DBIDUtil;
+import elki.math.DoubleMinMax;
+import elki.math.MeanVariance;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.DoubleFunctionProcessor;
+
+/**
+ * Test the parallel reductions of double values.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class DoubleStatisticsProcessorTest {
+  /**
+   * Data set size, not a multiple of the number of threads.
+   */
+  private static final int SIZE = 1001;
+
+  @Test
+  public void testStatistics() {
+    for(boolean workstealing : new boolean[] { false, true }) {
+      DBIDRange ids = DBIDUtil.generateStaticDBIDRange(SIZE);
+      DoubleFunctionProcessor input = new DoubleFunctionProcessor(() -> id -> ids.getOffset(id));
+      DoubleStatisticsProcessor stats = new DoubleStatisticsProcessor();
+      SharedDouble var = new SharedDouble();
+      input.connectOutput(var);
+      stats.connectInput(var);
+      ParallelExecutor.run(new ParallelCore(4, workstealing), ids, input, stats);
+
+      DoubleMinMax minmax = stats.getMinMax();
+      assertEquals("Minimum wrong", 0., minmax.getMin(), 0.);
+      assertEquals("Maximum wrong", SIZE - 1, minmax.getMax(), 0.);
+      MeanVariance mv = stats.getMeanVariance();
+      assertEquals("Count wrong", SIZE, mv.getCount(), 0.);
+      assertEquals("Mean wrong", (SIZE - 1) * .5, mv.getMean(), 1e-10);
+      assertEquals("Variance wrong", (SIZE * (double) SIZE - 1) / 12., mv.getPopulationVariance(), 1e-8);
+    }
+  }
+
+  @Test
+  public void testHistogram() {
+    for(boolean workstealing : new boolean[] { false, true }) {
+      DBIDRange ids = DBIDUtil.generateStaticDBIDRange(SIZE);
+      DoubleFunctionProcessor input = new DoubleFunctionProcessor(() -> id -> ids.getOffset(id));
+      DoubleHistogramProcessor hist = new DoubleHistogramProcessor(10, 0., 1000.);
+      SharedDouble var = new SharedDouble();
+      input.connectOutput(var);
+      hist.connectInput(var);
+      ParallelExecutor.run(new ParallelCore(4, workstealing), ids, input, hist);
+
+      long[] counts = hist.getCounts();
+      assertEquals("Bin width wrong", 100., hist.getBinWidth(), 0.);
+      for(int i = 0; i < 9; i++) {
+        assertEquals("Bin " + i + " wrong", 100, counts[i]);
+      }
+      assertEquals("Last bin must include the maximum", 101, counts[9]);
+      assertEquals("Maximum wrong", SIZE - 1, hist.getMinMax().getMax(), 0.);
+    }
+  }
+}
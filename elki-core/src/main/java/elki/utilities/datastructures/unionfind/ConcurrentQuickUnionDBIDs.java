@@ -0,0 +1,182 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.utilities.datastructures.unionfind;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.*;
+import elki.utilities.documentation.Reference;
+
+/**
+ * Lock-free union-find for concurrent use by multiple threads.
+ * <p>
+ * To instantiate, use {@link UnionFindUtil#makeConcurrent}. This version is
+ * optimized for {@link DBIDRange}s, but also supports other static DBIDs.
+ * <p>
+ * Instead of weighting by count, which would require updating two entries
+ * atomically, components are linked by offset: the root with the larger
+ * offset is attached to the root with the smaller offset using a
+ * compare-and-swap operation, which is retried if another thread modified one
+ * of the two roots in the meantime. Paths are halved during find operations,
+ * which is safe because it only ever replaces a parent with one of its
+ * ancestors. The component ids returned are only stable once all concurrent
+ * union operations have finished.
+ * <p>
+ * Reference:
+ * <p>
+ * R. J. Anderson, H. Woll<br>
+ * Wait-free Parallel Algorithms for the Union-Find Problem<br>
+ * Proc. 23rd Annual ACM Symposium on Theory of Computing (STOC)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+@Reference(authors = "R. J. Anderson, H. Woll", //
+    title = "Wait-free Parallel Algorithms for the Union-Find Problem", //
+    booktitle = "Proc. 23rd Annual ACM Symposium on Theory of Computing (STOC)", //
+    url = "https://doi.org/10.1145/103418.103458", //
+    bibkey = "DBLP:conf/stoc/AndersonW91")
+public class ConcurrentQuickUnionDBIDs implements UnionFind {
+  /**
+   * Object IDs.
+   */
+  private ArrayDBIDs ids;
+
+  /**
+   * Object ID range, if available.
+   */
+  private DBIDRange range;
+
+  /**
+   * Index, to map DBID to offset, if not a range.
+   */
+  private WritableIntegerDataStore index;
+
+  /**
+   * Parent element
+   */
+  private AtomicIntegerArray parent;
+
+  /**
+   * Constructor (package private, use {@link UnionFindUtil#makeConcurrent}).
+   *
+   * @param ids IDs to use
+   */
+  ConcurrentQuickUnionDBIDs(StaticDBIDs ids) {
+    this.ids = DBIDUtil.ensureArray(ids);
+    if(ids instanceof DBIDRange) {
+      range = (DBIDRange) ids;
+    }
+    else {
+      index = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+      int j = 0;
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        index.put(iter, j++);
+      }
+    }
+    parent = new AtomicIntegerArray(ids.size());
+    for(int i = 0; i < parent.length(); i++) {
+      parent.set(i, i);
+    }
+  }
+
+  /**
+   * Map an object to its offset.
+   *
+   * @param element Element
+   * @return Offset
+   */
+  private int offset(DBIDRef element) {
+    final int off = range != null ? range.getOffset(element) : index.intValue(element);
+    assert (off >= 0 && off < parent.length());
+    return off;
+  }
+
+  @Override
+  public int find(DBIDRef element) {
+    return find(offset(element));
+  }
+
+  /**
+   * Find the current root of an offset.
+   *
+   * @param cur Offset
+   * @return Root offset
+   */
+  private int find(int cur) {
+    int p, gp;
+    while((p = parent.get(cur)) != cur) {
+      if((gp = parent.get(p)) == p) {
+        return p;
+      }
+      parent.compareAndSet(cur, p, gp); // Path halving, may fail.
+      cur = gp;
+    }
+    return cur;
+  }
+
+  @Override
+  public int union(DBIDRef first, DBIDRef second) {
+    int c1 = offset(first), c2 = offset(second);
+    while(true) {
+      c1 = find(c1);
+      c2 = find(c2);
+      if(c1 == c2) {
+        return c1;
+      }
+      // Attach the larger root to the smaller, if it still is a root.
+      if(c1 < c2 ? parent.compareAndSet(c2, c2, c1) : parent.compareAndSet(c1, c1, c2)) {
+        return c1 < c2 ? c1 : c2;
+      }
+    }
+  }
+
+  @Override
+  public boolean isConnected(DBIDRef first, DBIDRef second) {
+    int c1 = offset(first), c2 = offset(second);
+    while(true) {
+      c1 = find(c1);
+      c2 = find(c2);
+      if(c1 == c2) {
+        return true;
+      }
+      // Only trust the result if c1 was not attached in the meantime:
+      if(parent.get(c1) == c1) {
+        return false;
+      }
+    }
+  }
+
+  @Override
+  public DBIDs getRoots() {
+    ArrayModifiableDBIDs roots = DBIDUtil.newArray();
+    for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      // roots or one element in component
+      if(parent.get(iter.getOffset()) == iter.getOffset()) {
+        roots.add(iter);
+      }
+    }
+    return roots;
+  }
+}
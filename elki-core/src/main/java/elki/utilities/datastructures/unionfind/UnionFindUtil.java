@@ -49,4 +49,15 @@ public final class UnionFindUtil {
     }
     return new WeightedQuickUnionStaticDBIDs(ids);
   }
+
+  /**
+   * Make a new instance that supports concurrent union operations from
+   * multiple threads.
+   *
+   * @param ids ID set
+   * @return Union find algorithm
+   */
+  public static UnionFind makeConcurrent(StaticDBIDs ids) {
+    return new ConcurrentQuickUnionDBIDs(ids);
+  }
 }
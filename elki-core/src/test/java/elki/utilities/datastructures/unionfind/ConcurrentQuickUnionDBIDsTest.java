@@ -0,0 +1,130 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.utilities.datastructures.unionfind;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.database.ids.ArrayModifiableDBIDs;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDRange;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.StaticDBIDs;
+
+/**
+ * Unit test for the concurrent union find.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ConcurrentQuickUnionDBIDsTest {
+  @Test
+  public void testTree() {
+    DBIDRange range = DBIDUtil.generateStaticDBIDRange(8);
+    UnionFind uf = new ConcurrentQuickUnionDBIDs(range);
+    DBIDArrayIter i1 = range.iter(), i2 = range.iter();
+    assertFalse(uf.isConnected(i1.seek(0), i2.seek(7)));
+    uf.union(i1.seek(0), i2.seek(1));
+    assertTrue(uf.isConnected(i1.seek(0), i2.seek(1)));
+    uf.union(i1.seek(2), i2.seek(3));
+    assertFalse(uf.isConnected(i1.seek(0), i2.seek(2)));
+    uf.union(i1.seek(0), i2.seek(2));
+    assertTrue(uf.isConnected(i1.seek(3), i2.seek(1)));
+    uf.union(i1.seek(4), i2.seek(5));
+    uf.union(i1.seek(6), i2.seek(7));
+    uf.union(i1.seek(4), i2.seek(6));
+    assertFalse(uf.isConnected(i1.seek(0), i2.seek(4)));
+    assertEquals(2, uf.getRoots().size());
+    uf.union(i1.seek(0), i2.seek(4));
+    assertEquals(1, uf.getRoots().size());
+    for(int i = 0; i < 8; i++) {
+      for(int j = 0; j < 8; j++) {
+        assertTrue(uf.isConnected(i1.seek(i), i2.seek(j)));
+      }
+    }
+  }
+
+  @Test
+  public void testStaticDBIDs() {
+    DBIDRange range = DBIDUtil.generateStaticDBIDRange(8);
+    // Not a range anymore:
+    ArrayModifiableDBIDs ids = DBIDUtil.newArray(range);
+    ids.swap(0, 7);
+    StaticDBIDs sids = DBIDUtil.makeUnmodifiable(ids);
+    UnionFind uf = new ConcurrentQuickUnionDBIDs(sids);
+    DBIDArrayIter i1 = range.iter(), i2 = range.iter();
+    uf.union(i1.seek(0), i2.seek(1));
+    uf.union(i1.seek(7), i2.seek(6));
+    assertTrue(uf.isConnected(i1.seek(1), i2.seek(0)));
+    assertTrue(uf.isConnected(i1.seek(6), i2.seek(7)));
+    assertFalse(uf.isConnected(i1.seek(0), i2.seek(7)));
+    assertEquals(6, uf.getRoots().size());
+  }
+
+  @Test
+  public void testConcurrent() throws InterruptedException {
+    final int size = 10000, threads = 4;
+    DBIDRange range = DBIDUtil.generateStaticDBIDRange(size);
+    UnionFind uf = new ConcurrentQuickUnionDBIDs(range);
+    // Every thread links a random permutation of the chain 0-1-2-3-...
+    List<Thread> workers = new ArrayList<>();
+    for(int t = 0; t < threads; t++) {
+      final Random r = new Random(t);
+      workers.add(new Thread(() -> {
+        DBIDArrayIter i1 = range.iter(), i2 = range.iter();
+        int[] order = new int[size - 1];
+        for(int i = 0; i < order.length; i++) {
+          order[i] = i;
+        }
+        for(int i = order.length - 1; i > 0; i--) {
+          final int j = r.nextInt(i + 1), tmp = order[i];
+          order[i] = order[j];
+          order[j] = tmp;
+        }
+        for(int i : order) {
+          // Link even and odd elements separately:
+          if(i + 2 < size) {
+            uf.union(i1.seek(i), i2.seek(i + 2));
+          }
+        }
+      }));
+    }
+    for(Thread w : workers) {
+      w.start();
+    }
+    for(Thread w : workers) {
+      w.join();
+    }
+    DBIDArrayIter i1 = range.iter(), i2 = range.iter();
+    assertEquals(2, uf.getRoots().size());
+    for(int i = 0; i < size; i++) {
+      assertEquals(i & 1, uf.find(i1.seek(i)));
+    }
+    assertFalse(uf.isConnected(i1.seek(0), i2.seek(1)));
+  }
+}
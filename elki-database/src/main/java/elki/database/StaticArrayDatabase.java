@@ -21,6 +21,7 @@
 package elki.database;
 
 import java.util.Collection;
+import java.util.List;
 
 import elki.data.type.SimpleTypeInformation;
 import elki.database.datastore.DataStoreFactory;
@@ -28,13 +29,16 @@ import elki.database.datastore.DataStoreUtil;
 import elki.database.datastore.WritableDataStore;
 import elki.database.ids.ArrayStaticDBIDs;
 import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDRange;
 import elki.database.ids.DBIDUtil;
 import elki.database.ids.DBIDs;
 import elki.database.relation.DBIDView;
+import elki.database.relation.DenseVectorRelation;
 import elki.database.relation.MaterializedRelation;
 import elki.database.relation.Relation;
 import elki.datasource.DatabaseConnection;
 import elki.datasource.FileBasedDatabaseConnection;
+import elki.datasource.bundle.MappedVectorColumn;
 import elki.datasource.bundle.MultipleObjectsBundle;
 import elki.index.Index;
 import elki.index.IndexFactory;
@@ -42,7 +46,9 @@ import elki.logging.Logging;
 import elki.logging.statistics.Duration;
 import elki.result.Metadata;
 import elki.utilities.documentation.Description;
+import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.EnumParameter;
 import elki.utilities.optionhandling.parameters.ObjectListParameter;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
 
@@ -81,15 +87,22 @@ public class StaticArrayDatabase extends AbstractDatabase {
    */
   protected DatabaseConnection databaseConnection;
 
+  /**
+   * Storage precision for dense vector data.
+   */
+  protected DenseVectorRelation.Precision precision;
+
   /**
    * Constructor.
    *
    * @param databaseConnection Database connection to get the initial data from.
    * @param indexFactories Indexes to add
+   * @param precision Storage precision for dense vector data
    */
-  public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<? extends IndexFactory<?>> indexFactories) {
+  public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<? extends IndexFactory<?>> indexFactories, DenseVectorRelation.Precision precision) {
     super();
     this.databaseConnection = databaseConnection;
+    this.precision = precision;
     this.ids = null;
     this.idrep = null;
 
@@ -99,6 +112,16 @@ public class StaticArrayDatabase extends AbstractDatabase {
     }
   }
 
+  /**
+   * Constructor.
+   *
+   * @param databaseConnection Database connection to get the initial data from.
+   * @param indexFactories Indexes to add
+   */
+  public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<? extends IndexFactory<?>> indexFactories) {
+    this(databaseConnection, indexFactories, DenseVectorRelation.Precision.DOUBLE);
+  }
+
   /**
    * Constructor with no indexes.
    *
@@ -150,11 +173,26 @@ public class StaticArrayDatabase extends AbstractDatabase {
       SimpleTypeInformation<?> meta = bundle.meta(i);
       @SuppressWarnings("unchecked")
       SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
-      WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
-      for(it.seek(0); it.valid(); it.advance()) {
-        store.put(it, bundle.data(it.getOffset(), i));
+      final List<?> column = bundle.getColumn(i);
+      Relation<?> relation = null;
+      if(column instanceof MappedVectorColumn) {
+        // Read directly from the mapped file, if possible
+        if(ids instanceof DBIDRange) {
+          final DBIDRange range = (DBIDRange) ids;
+          relation = new MaterializedRelation<>(null, ometa, ids, id -> column.get(range.getOffset(id)));
+        }
+      }
+      else {
+        // Dense vectors are stored in contiguous arrays when possible:
+        relation = DenseVectorRelation.make(null, ometa, ids, column, precision);
+      }
+      if(relation == null) {
+        WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
+        for(it.seek(0); it.valid(); it.advance()) {
+          store.put(it, bundle.data(it.getOffset(), i));
+        }
+        relation = new MaterializedRelation<>(null, ometa, ids, store);
       }
-      Relation<?> relation = new MaterializedRelation<>(null, ometa, ids, store);
       relations.add(relation);
       Metadata.hierarchyOf(this).addChild(relation);
 
@@ -191,6 +229,11 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @author Erich Schubert
    */
   public static class Par extends AbstractDatabase.Par {
+    /**
+     * Storage precision for dense vectors.
+     */
+    public static final OptionID PRECISION_ID = new OptionID("db.precision", "Storage precision for dense vector data: double, float (32 bit), or byte (8 bit, quantized linearly for each dimension).");
+
     /**
      * Holds the database connection to get the initial data from.
      */
@@ -201,6 +244,11 @@ public class StaticArrayDatabase extends AbstractDatabase {
      */
     private Collection<? extends IndexFactory<?>> indexFactories;
 
+    /**
+     * Storage precision for dense vectors.
+     */
+    private DenseVectorRelation.Precision precision;
+
     @Override
     public void configure(Parameterization config) {
       super.configure(config);
@@ -211,11 +259,13 @@ public class StaticArrayDatabase extends AbstractDatabase {
       new ObjectListParameter<IndexFactory<?>>(INDEX_ID, IndexFactory.class) //
           .setOptional(true) //
           .grab(config, x -> indexFactories = x);
+      new EnumParameter<DenseVectorRelation.Precision>(PRECISION_ID, DenseVectorRelation.Precision.class, DenseVectorRelation.Precision.DOUBLE) //
+          .grab(config, x -> precision = x);
     }
 
     @Override
     public StaticArrayDatabase make() {
-      return new StaticArrayDatabase(databaseConnection, indexFactories);
+      return new StaticArrayDatabase(databaseConnection, indexFactories, precision);
     }
   }
 }
@@ -20,28 +20,48 @@
  */
 package elki.database.query;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
 
-import elki.data.type.FieldTypeInformation;
 import elki.data.type.TypeInformation;
 import elki.data.type.TypeUtil;
+import elki.database.ids.DBIDIter;
 import elki.database.ids.DBIDRange;
 import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DBIDs;
 import elki.database.query.distance.DistanceQuery;
 import elki.database.query.knn.KNNSearcher;
 import elki.database.query.range.RangeSearcher;
+import elki.database.relation.ProxyView;
 import elki.database.relation.Relation;
 import elki.distance.Distance;
 import elki.distance.minkowski.LPNormDistance;
 import elki.distance.minkowski.SquaredEuclideanDistance;
 import elki.index.*;
 import elki.logging.Logging;
+import elki.logging.statistics.DoubleStatistic;
+import elki.logging.statistics.StringStatistic;
 import elki.result.Metadata;
 import elki.utilities.Alias;
+import elki.utilities.random.RandomFactory;
 
 /**
  * Class to automatically add indexes to a database.
+ * <p>
+ * Whether to use a cover tree, a k-d-tree, or a linear scan is decided
+ * empirically: the candidate indexes are built on a random subsample, a small
+ * sample of queries is run against each of them and against a linear scan, and
+ * the option with the least extrapolated total cost (construction plus one
+ * query per object of the relation) is chosen. Only the chosen index is built
+ * on the full relation. The decision is cached for the relation, distance, and
+ * query parameter, and the estimated costs are logged as statistics. The built
+ * trees are cached weakly, and shared by all query parameters.
  *
  * @author Erich Schubert
  */
@@ -57,6 +77,41 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
    */
   private static final long MEGA = 1024 * 1024;
 
+  /**
+   * Number of sample queries used for calibration.
+   */
+  private static final int SAMPLE_SIZE = 20;
+
+  /**
+   * Number of neighbors used for calibration, if no maximum k is given.
+   */
+  private static final int SAMPLE_K = 10;
+
+  /**
+   * Subsample size used for calibration on large relations.
+   */
+  private static final int CALIBRATION_SIZE = 4096;
+
+  /**
+   * Decision: use a linear scan.
+   */
+  private static final String LINEAR = "linear";
+
+  /**
+   * Decision: use a cover tree.
+   */
+  private static final String COVER_TREE = "covertree";
+
+  /**
+   * Decision: use a k-d-tree.
+   */
+  private static final String KD_TREE = "kdtree";
+
+  /**
+   * Cached decisions and indexes, by relation.
+   */
+  private final Map<Relation<?>, Cache> caches = new WeakHashMap<>();
+
   /**
    * Distance matrix index class.
    */
@@ -141,9 +196,7 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
       @SuppressWarnings("unchecked")
       DistanceIndex<O> idx = (DistanceIndex<O>) makeMatrixIndex(relation, distance);
       if(idx != null) {
-        if((flags & QueryBuilder.FLAG_NO_CACHE) == 0) {
-          Metadata.hierarchyOf(relation).addWeakChild(idx);
-        }
+        attach(relation, idx, flags);
         return ((DistanceIndex<O>) idx).getDistanceQuery(distance);
       }
     }
@@ -153,14 +206,9 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
   @Override
   @SuppressWarnings("unchecked")
   public <O> KNNSearcher<O> kNNByObject(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, int maxk, int flags) {
-    KNNIndex<O> idx = makeCoverTree(relation, distanceQuery.getDistance());
-    if(idx == null) { // Try k-d-tree for squared Euclidean mostly
-      idx = makeKDTree(relation, distanceQuery.getDistance());
-    }
+    KNNIndex<O> idx = chooseIndex(relation, distanceQuery, maxk, Double.NaN, flags);
     if(idx != null) {
-      if((flags & QueryBuilder.FLAG_NO_CACHE) == 0) {
-        Metadata.hierarchyOf(relation).addWeakChild(idx);
-      }
+      attach(relation, idx, flags);
       // Precomputation can be useful additionally!
       if((flags & QueryBuilder.FLAG_PRECOMPUTE) == 0) {
         return idx.kNNByObject(distanceQuery, maxk, flags);
@@ -180,9 +228,7 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
       idx = (KNNIndex<O>) knnIndex.newInstance(relation, distanceQuery, maxk, true);
       LOG.verbose("Optimizer: Automatically adding a knn preprocessor.");
       idx.initialize();
-      if((flags & QueryBuilder.FLAG_NO_CACHE) == 0) {
-        Metadata.hierarchyOf(relation).addWeakChild(idx);
-      }
+      attach(relation, idx, flags);
       return idx.kNNByObject(distanceQuery, maxk, flags);
     }
     catch(InstantiationException | IllegalAccessException
@@ -195,17 +241,12 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
   @Override
   @SuppressWarnings("unchecked")
   public <O> KNNSearcher<DBIDRef> kNNByDBID(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, int maxk, int flags) {
-    KNNIndex<O> idx = makeCoverTree(relation, distanceQuery.getDistance());
-    if(idx == null) { // Try k-d-tree for squared Euclidean mostly
-      idx = makeKDTree(relation, distanceQuery.getDistance());
-    }
+    KNNIndex<O> idx = chooseIndex(relation, distanceQuery, maxk, Double.NaN, flags);
     if(idx == null && (flags & QueryBuilder.FLAG_PRECOMPUTE) != 0 && (relation.getDBIDs() instanceof DBIDRange)) {
       idx = makeMatrixIndex(relation, distanceQuery.getDistance());
     }
     if(idx != null) {
-      if((flags & QueryBuilder.FLAG_NO_CACHE) == 0) {
-        Metadata.hierarchyOf(relation).addWeakChild(idx);
-      }
+      attach(relation, idx, flags);
       // Precomputation can be useful additionally!
       if((flags & QueryBuilder.FLAG_PRECOMPUTE) == 0) {
         return idx.kNNByDBID(distanceQuery, maxk, flags);
@@ -225,9 +266,7 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
       idx = (KNNIndex<O>) knnIndex.newInstance(relation, distanceQuery, maxk, true);
       LOG.verbose("Optimizer: Automatically adding a knn preprocessor.");
       idx.initialize();
-      if((flags & QueryBuilder.FLAG_NO_CACHE) == 0) {
-        Metadata.hierarchyOf(relation).addWeakChild(idx);
-      }
+      attach(relation, idx, flags);
       return idx.kNNByDBID(distanceQuery, maxk, flags);
     }
     catch(InstantiationException | IllegalAccessException
@@ -239,68 +278,363 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
 
   @Override
   public <O> RangeSearcher<O> rangeByObject(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, double maxrange, int flags) {
-    RangeIndex<O> idx = makeCoverTree(relation, distanceQuery.getDistance());
-    if(idx == null) { // Try k-d-tree for squared Euclidean mostly
-      idx = makeKDTree(relation, distanceQuery.getDistance());
-    }
+    RangeIndex<O> idx = chooseIndex(relation, distanceQuery, 0, maxrange, flags);
     if(idx == null) {
       return null;
     }
-    if((flags & QueryBuilder.FLAG_NO_CACHE) == 0) {
-      Metadata.hierarchyOf(relation).addWeakChild(idx);
-    }
+    attach(relation, idx, flags);
     return idx.rangeByObject(distanceQuery, maxrange, flags);
   }
 
   @Override
   public <O> RangeSearcher<DBIDRef> rangeByDBID(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, double maxrange, int flags) {
-    RangeIndex<O> idx = makeCoverTree(relation, distanceQuery.getDistance());
-    if(idx == null) { // Try k-d-tree for squared Euclidean mostly
-      idx = makeKDTree(relation, distanceQuery.getDistance());
-    }
+    RangeIndex<O> idx = chooseIndex(relation, distanceQuery, 0, maxrange, flags);
     if(idx == null && (flags & QueryBuilder.FLAG_PRECOMPUTE) != 0) {
       idx = makeMatrixIndex(relation, distanceQuery.getDistance());
     }
     if(idx == null) {
       return null;
     }
-    if((flags & QueryBuilder.FLAG_NO_CACHE) == 0) {
-      Metadata.hierarchyOf(relation).addWeakChild(idx);
-    }
+    attach(relation, idx, flags);
     return idx.rangeByDBID(distanceQuery, maxrange, flags);
   }
 
   @Override
   public <O> PrioritySearcher<O> priorityByObject(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, double maxrange, int flags) {
-    DistancePriorityIndex<O> idx = makeCoverTree(relation, distanceQuery.getDistance());
-    if(idx == null) { // Try k-d-tree for squared Euclidean mostly
-      idx = makeKDTree(relation, distanceQuery.getDistance());
-    }
+    DistancePriorityIndex<O> idx = chooseIndex(relation, distanceQuery, 0, maxrange, flags);
     if(idx == null) {
       return null;
     }
-    if((flags & QueryBuilder.FLAG_NO_CACHE) == 0) {
-      Metadata.hierarchyOf(relation).addWeakChild(idx);
-    }
+    attach(relation, idx, flags);
     return idx.priorityByObject(distanceQuery, maxrange, flags);
   }
 
   @Override
   public <O> PrioritySearcher<DBIDRef> priorityByDBID(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, double maxrange, int flags) {
-    DistancePriorityIndex<O> idx = makeCoverTree(relation, distanceQuery.getDistance());
-    if(idx == null) { // Try k-d-tree for squared Euclidean mostly
-      idx = makeKDTree(relation, distanceQuery.getDistance());
-    }
+    DistancePriorityIndex<O> idx = chooseIndex(relation, distanceQuery, 0, maxrange, flags);
     if(idx == null && (flags & QueryBuilder.FLAG_PRECOMPUTE) != 0) {
       idx = makeMatrixIndex(relation, distanceQuery.getDistance());
     }
     if(idx == null) {
       return null;
     }
-    if((flags & QueryBuilder.FLAG_NO_CACHE) == 0) {
+    attach(relation, idx, flags);
+    return idx.priorityByDBID(distanceQuery, maxrange, flags);
+  }
+
+  /**
+   * Attach an index to the relation, unless caching is disabled or it is
+   * attached already.
+   *
+   * @param relation Data relation
+   * @param idx Index
+   * @param flags Optimizer flags
+   */
+  private static void attach(Relation<?> relation, Object idx, int flags) {
+    if((flags & QueryBuilder.FLAG_NO_CACHE) == 0 && !Metadata.hierarchyOf(relation).iterChildren().filter(c -> c == idx).valid()) {
       Metadata.hierarchyOf(relation).addWeakChild(idx);
     }
-    return idx.priorityByDBID(distanceQuery, maxrange, flags);
+  }
+
+  /**
+   * Choose the index to use for a query, based on the measured costs.
+   * <p>
+   * The calibration runs only once per decision key, concurrent requests for
+   * the same key wait for its result.
+   *
+   * @param <O> Object type
+   * @param relation Data relation
+   * @param distanceQuery Distance query
+   * @param maxk Maximum k of kNN queries, 0 for range queries
+   * @param maxrange Maximum radius of range queries
+   * @param flags Optimizer flags
+   * @return Index, or {@code null} if a linear scan is expected to be faster
+   */
+  private <O> DistancePriorityIndex<O> chooseIndex(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, int maxk, double maxrange, int flags) {
+    final Distance<? super O> distance = distanceQuery.getDistance();
+    if(!isCoverTreeApplicable(distance) && !isKDTreeApplicable(relation, distance)) {
+      return null;
+    }
+    final Cache cache;
+    synchronized(caches) {
+      cache = caches.computeIfAbsent(relation, x -> new Cache());
+    }
+    final Decision decision;
+    synchronized(cache.decisions) {
+      decision = cache.decisions.computeIfAbsent(new DecisionKey(distance, maxk, maxrange), x -> new Decision());
+    }
+    synchronized(decision) {
+      if(decision.choice != null) {
+        return LINEAR.equals(decision.choice) ? null : getIndex(cache, decision.choice, relation, distance);
+      }
+      return calibrate(cache, decision, relation, distanceQuery, maxk, maxrange, flags);
+    }
+  }
+
+  /**
+   * Measure the costs of the candidate indexes and a linear scan, and build
+   * the chosen index.
+   * <p>
+   * Relations larger than twice {@link #CALIBRATION_SIZE} are calibrated on
+   * random subsamples of size {@link #CALIBRATION_SIZE} and a quarter of it:
+   * the construction cost is extrapolated as n log n, the query cost with the
+   * growth rate observed between the two subsamples, and a candidate is not
+   * built on the subsample once its projected construction cost exceeds the
+   * best total cost so far.
+   *
+   * @param <O> Object type
+   * @param cache Cache of the relation
+   * @param decision Decision to store the result in
+   * @param relation Data relation
+   * @param distanceQuery Distance query
+   * @param maxk Maximum k of kNN queries, 0 for range queries
+   * @param maxrange Maximum radius of range queries
+   * @param flags Optimizer flags
+   * @return Index, or {@code null} if a linear scan is expected to be faster
+   */
+  private <O> DistancePriorityIndex<O> calibrate(Cache cache, Decision decision, Relation<? extends O> relation, DistanceQuery<O> distanceQuery, int maxk, double maxrange, int flags) {
+    final Distance<? super O> distance = distanceQuery.getDistance();
+    final int size = relation.size();
+    if(size < 2) {
+      decision.choice = LINEAR;
+      return null;
+    }
+    // Range queries with a known radius, kNN queries otherwise:
+    final boolean byRange = maxk <= 0 && maxrange < Double.POSITIVE_INFINITY;
+    final int k = maxk > 0 && maxk < Integer.MAX_VALUE ? maxk : SAMPLE_K;
+    final String prefix = this.getClass().getName() + "." + (byRange ? "range" : "knn");
+    // Large relations are calibrated on subsamples:
+    final int m = size > 2 * CALIBRATION_SIZE ? CALIBRATION_SIZE : size;
+    final Relation<? extends O> sub = m < size ? subsample(relation, m) : relation;
+    final Relation<? extends O> sub4 = m < size ? subsample(sub, m >> 2) : null;
+    final double nlogn = size * Math.log(size) / (m * Math.log(m));
+
+    // Cost of a linear scan, linear in the relation size:
+    double bestCost = size * linearCost(sub, distance, k, maxrange, byRange) * size / m;
+    if(LOG.isStatistics()) {
+      LOG.statistics(new DoubleStatistic(prefix + "." + LINEAR + ".query-ms", bestCost / size * 1e-6));
+      LOG.statistics(new DoubleStatistic(prefix + "." + LINEAR + ".total-ms", bestCost * 1e-6));
+    }
+    String choice = LINEAR;
+    for(String candidate : new String[] { KD_TREE, COVER_TREE }) {
+      // If the tree is cached already, its construction is free:
+      DistancePriorityIndex<O> idx = getCachedIndex(cache, candidate, distance);
+      double buildCost = 0, queryCost;
+      if(idx != null || m == size) {
+        final long start = System.nanoTime();
+        idx = idx != null ? idx : getIndex(cache, candidate, relation, distance);
+        buildCost = System.nanoTime() - start;
+        queryCost = idx != null ? treeCost(idx, distanceQuery, k, maxrange, byRange, flags) : Double.NaN;
+      }
+      else {
+        double[] small = measureTree(candidate, sub4, distance, k, maxrange, byRange, flags);
+        if(small == null || small[0] * size * Math.log(size) / (sub4.size() * Math.log(sub4.size())) >= bestCost) {
+          continue; // Not applicable, or too expensive to build.
+        }
+        double[] large = measureTree(candidate, sub, distance, k, maxrange, byRange, flags);
+        if(large == null) {
+          continue;
+        }
+        buildCost = large[0] * nlogn;
+        final double growth = Math.log(large[1] / small[1]) / Math.log(4.);
+        queryCost = large[1] * Math.pow(size / (double) m, growth > 0 ? growth < 1 ? growth : 1 : 0);
+      }
+      if(!(queryCost >= 0)) {
+        continue; // Not supported
+      }
+      final double cost = buildCost + size * queryCost;
+      if(LOG.isStatistics()) {
+        LOG.statistics(new DoubleStatistic(prefix + "." + candidate + ".build-ms", buildCost * 1e-6));
+        LOG.statistics(new DoubleStatistic(prefix + "." + candidate + ".query-ms", queryCost * 1e-6));
+        LOG.statistics(new DoubleStatistic(prefix + "." + candidate + ".total-ms", cost * 1e-6));
+      }
+      if(cost < bestCost) {
+        bestCost = cost;
+        choice = candidate;
+      }
+    }
+    if(LOG.isStatistics()) {
+      LOG.statistics(new StringStatistic(prefix + ".choice", choice));
+    }
+    decision.choice = choice;
+    // Only the chosen tree is built on the full data:
+    return LINEAR.equals(choice) ? null : getIndex(cache, choice, relation, distance);
+  }
+
+  /**
+   * Get a cached tree index, without building it.
+   *
+   * @param <O> Object type
+   * @param cache Cache of the relation
+   * @param type Index type, {@link #COVER_TREE} or {@link #KD_TREE}
+   * @param distance Distance function
+   * @return Index, or {@code null} if not cached
+   */
+  @SuppressWarnings("unchecked")
+  private static <O> DistancePriorityIndex<O> getCachedIndex(Cache cache, String type, Distance<? super O> distance) {
+    final Map<Distance<?>, WeakReference<DistancePriorityIndex<?>>> trees = COVER_TREE.equals(type) ? cache.coverTrees : cache.kdTrees;
+    synchronized(trees) {
+      final WeakReference<DistancePriorityIndex<?>> ref = trees.get(distance);
+      return ref != null ? (DistancePriorityIndex<O>) ref.get() : null;
+    }
+  }
+
+  /**
+   * Get a cached tree index, or build a new one.
+   *
+   * @param <O> Object type
+   * @param cache Cache of the relation
+   * @param type Index type, {@link #COVER_TREE} or {@link #KD_TREE}
+   * @param relation Data relation
+   * @param distance Distance function
+   * @return Index, or {@code null} if not available
+   */
+  @SuppressWarnings("unchecked")
+  private <O> DistancePriorityIndex<O> getIndex(Cache cache, String type, Relation<? extends O> relation, Distance<? super O> distance) {
+    final Map<Distance<?>, WeakReference<DistancePriorityIndex<?>>> trees = COVER_TREE.equals(type) ? cache.coverTrees : cache.kdTrees;
+    synchronized(trees) {
+      final WeakReference<DistancePriorityIndex<?>> ref = trees.get(distance);
+      DistancePriorityIndex<?> idx = ref != null ? ref.get() : null;
+      if(idx == null) {
+        idx = COVER_TREE.equals(type) ? makeCoverTree(relation, distance) : makeKDTree(relation, distance);
+        if(idx != null) {
+          LOG.verbose("Optimizer: automatically adding a " + (COVER_TREE.equals(type) ? "cover tree" : "k-d-tree") + " index.");
+          trees.put(distance, new WeakReference<>(idx));
+        }
+      }
+      return (DistancePriorityIndex<O>) idx;
+    }
+  }
+
+  /**
+   * Draw a random subsample of a relation.
+   *
+   * @param <O> Object type
+   * @param relation Data relation
+   * @param size Sample size
+   * @return View of the subsample
+   */
+  private static <O> Relation<O> subsample(Relation<O> relation, int size) {
+    return new ProxyView<>(DBIDUtil.newHashSet(DBIDUtil.randomSample(relation.getDBIDs(), size, RandomFactory.get(0L))), relation);
+  }
+
+  /**
+   * Measure the average cost of a linear scan query, in nanoseconds.
+   *
+   * @param <O> Object type
+   * @param relation Data relation
+   * @param distance Distance function
+   * @param k Number of neighbors
+   * @param maxrange Query radius
+   * @param byRange Use range queries instead of kNN queries
+   * @return Average cost per query
+   */
+  private static <O> double linearCost(Relation<O> relation, Distance<? super O> distance, int k, double maxrange, boolean byRange) {
+    QueryBuilder<O> linear = new QueryBuilder<>(relation, distance).linearOnly().noCache();
+    final int kk = Math.min(k, relation.size());
+    return queryCost(sample(relation), byRange ? rangeQuery(linear.rangeByDBID(maxrange), maxrange) : knnQuery(linear.kNNByDBID(kk), kk));
+  }
+
+  /**
+   * Build a tree on a (subsample) relation, and measure its costs.
+   *
+   * @param <O> Object type
+   * @param type Index type, {@link #COVER_TREE} or {@link #KD_TREE}
+   * @param relation Data relation
+   * @param distance Distance function
+   * @param k Number of neighbors
+   * @param maxrange Query radius
+   * @param byRange Use range queries instead of kNN queries
+   * @param flags Optimizer flags
+   * @return Construction cost and average cost per query, in nanoseconds, or
+   *         {@code null} if not available
+   */
+  private <O> double[] measureTree(String type, Relation<O> relation, Distance<? super O> distance, int k, double maxrange, boolean byRange, int flags) {
+    final long start = System.nanoTime();
+    DistancePriorityIndex<O> idx = COVER_TREE.equals(type) ? makeCoverTree(relation, distance) : makeKDTree(relation, distance);
+    final double buildCost = System.nanoTime() - start;
+    if(idx == null) {
+      return null;
+    }
+    final double queryCost = treeCost(idx, distance.instantiate(relation), k, maxrange, byRange, flags);
+    return queryCost >= 0 ? new double[] { buildCost, queryCost } : null;
+  }
+
+  /**
+   * Measure the average cost of an index query, in nanoseconds.
+   *
+   * @param <O> Object type
+   * @param idx Index
+   * @param distanceQuery Distance query
+   * @param k Number of neighbors
+   * @param maxrange Query radius
+   * @param byRange Use range queries instead of kNN queries
+   * @param flags Optimizer flags
+   * @return Average cost per query, {@code NaN} if not supported
+   */
+  private static <O> double treeCost(DistancePriorityIndex<O> idx, DistanceQuery<O> distanceQuery, int k, double maxrange, boolean byRange, int flags) {
+    final Relation<? extends O> relation = distanceQuery.getRelation();
+    final int kk = Math.min(k, relation.size());
+    Consumer<DBIDRef> query = null;
+    if(byRange) {
+      RangeSearcher<DBIDRef> q = idx.rangeByDBID(distanceQuery, maxrange, flags);
+      query = q != null ? rangeQuery(q, maxrange) : null;
+    }
+    else {
+      KNNSearcher<DBIDRef> q = idx.kNNByDBID(distanceQuery, kk, flags);
+      query = q != null ? knnQuery(q, kk) : null;
+    }
+    return query != null ? queryCost(sample(relation), query) : Double.NaN;
+  }
+
+  /**
+   * Draw the query points for calibration.
+   *
+   * @param relation Data relation
+   * @return Sample of query points
+   */
+  private static DBIDs sample(Relation<?> relation) {
+    return DBIDUtil.randomSample(relation.getDBIDs(), Math.min(SAMPLE_SIZE, relation.size()), RandomFactory.get(0L));
+  }
+
+  /**
+   * Measure the average cost of a query, in nanoseconds.
+   *
+   * @param sample Sample of query points
+   * @param query Query to run
+   * @return Average cost per query
+   */
+  private static double queryCost(DBIDs sample, Consumer<DBIDRef> query) {
+    DBIDIter it = sample.iter();
+    query.accept(it); // Warm-up, not measured
+    int count = 0;
+    final long start = System.nanoTime();
+    for(it.advance(); it.valid(); it.advance(), count++) {
+      query.accept(it);
+    }
+    return (System.nanoTime() - start) / (double) Math.max(count, 1);
+  }
+
+  /**
+   * Wrap a kNN searcher for cost measurement.
+   *
+   * @param searcher kNN searcher
+   * @param k Number of neighbors
+   * @return Query
+   */
+  private static Consumer<DBIDRef> knnQuery(KNNSearcher<DBIDRef> searcher, int k) {
+    return id -> searcher.getKNN(id, k);
+  }
+
+  /**
+   * Wrap a range searcher for cost measurement.
+   *
+   * @param searcher Range searcher
+   * @param range Query radius
+   * @return Query
+   */
+  private static Consumer<DBIDRef> rangeQuery(RangeSearcher<DBIDRef> searcher, double range) {
+    return id -> searcher.getRange(id, range);
   }
 
   private <O> DistancePriorityIndex<O> makeMatrixIndex(Relation<? extends O> relation, Distance<? super O> distance) {
@@ -335,14 +669,13 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
 
   private <O> DistancePriorityIndex<O> makeCoverTree(Relation<? extends O> relation, Distance<? super O> distance) {
     // TODO: make sure there is no such cover tree already!
-    if(coverIndex == null || !distance.isMetric()) {
+    if(!isCoverTreeApplicable(distance)) {
       return null;
     }
     // TODO: auto-tune parameters based on dimensionality or sample?
     try {
       @SuppressWarnings("unchecked")
       DistancePriorityIndex<O> idx = (DistancePriorityIndex<O>) coverIndex.newInstance(relation, distance);
-      LOG.verbose("Optimizer: automatically adding a cover tree index.");
       idx.initialize();
       return idx;
     }
@@ -355,17 +688,12 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
 
   private <O> DistancePriorityIndex<O> makeKDTree(Relation<? extends O> relation, Distance<? super O> distance) {
     // TODO: make sure there is no such k-d-tree already!
-    TypeInformation type = relation.getDataTypeInformation();
-    if(kdIndex == null // not available
-        || !TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(type) //
-        || !(distance instanceof LPNormDistance || distance instanceof SquaredEuclideanDistance) //
-        || ((FieldTypeInformation) type).getDimensionality() > 20) {
+    if(!isKDTreeApplicable(relation, distance)) {
       return null;
     }
     try {
       @SuppressWarnings("unchecked")
       DistancePriorityIndex<O> idx = (DistancePriorityIndex<O>) kdIndex.newInstance(relation, 5);
-      LOG.verbose("Optimizer: automatically adding a k-d-tree index.");
       idx.initialize();
       return idx;
     }
@@ -376,6 +704,31 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
     return null;
   }
 
+  /**
+   * Test whether a cover tree can be used.
+   *
+   * @param distance Distance function
+   * @return {@code true} if a cover tree can be built
+   */
+  private boolean isCoverTreeApplicable(Distance<?> distance) {
+    return coverIndex != null && distance.isMetric();
+  }
+
+  /**
+   * Test whether a k-d-tree can be used. The dimensionality is not restricted
+   * here, as the cost model will reject the tree if it does not pay off.
+   *
+   * @param relation Data relation
+   * @param distance Distance function
+   * @return {@code true} if a k-d-tree can be built
+   */
+  private boolean isKDTreeApplicable(Relation<?> relation, Distance<?> distance) {
+    TypeInformation type = relation.getDataTypeInformation();
+    return kdIndex != null // available
+        && TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(type) //
+        && (distance instanceof LPNormDistance || distance instanceof SquaredEuclideanDistance);
+  }
+
   /**
    * Get the currently free amount of memory.
    *
@@ -396,4 +749,91 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
     return mem < 2500 * MEGA ? ((int) (mem * 10. / MEGA)) / 10. + "M" : //
         ((int) (mem / 102.4 / MEGA)) / 10. + "G";
   }
+
+  /**
+   * Cached decisions and tree indexes of a relation.
+   *
+   * @author Erich Schubert
+   */
+  private static class Cache {
+    /**
+     * Decisions, by query parameters.
+     */
+    private final Map<DecisionKey, Decision> decisions = new HashMap<>();
+
+    /**
+     * Cover trees, by distance function.
+     */
+    private final Map<Distance<?>, WeakReference<DistancePriorityIndex<?>>> coverTrees = new HashMap<>();
+
+    /**
+     * k-d-trees, by distance function.
+     */
+    private final Map<Distance<?>, WeakReference<DistancePriorityIndex<?>>> kdTrees = new HashMap<>();
+  }
+
+  /**
+   * Decision for one set of query parameters, also used as lock during the
+   * calibration.
+   *
+   * @author Erich Schubert
+   */
+  private static class Decision {
+    /**
+     * Chosen option, {@code null} until calibrated.
+     */
+    private String choice;
+  }
+
+  /**
+   * Key for caching decisions.
+   *
+   * @author Erich Schubert
+   */
+  private static class DecisionKey {
+    /**
+     * Distance function
+     */
+    private final Distance<?> distance;
+
+    /**
+     * Maximum k
+     */
+    private final int maxk;
+
+    /**
+     * Maximum radius
+     */
+    private final double maxrange;
+
+    /**
+     * Constructor.
+     *
+     * @param distance Distance function
+     * @param maxk Maximum k
+     * @param maxrange Maximum radius
+     */
+    private DecisionKey(Distance<?> distance, int maxk, double maxrange) {
+      this.distance = distance;
+      this.maxk = maxk;
+      this.maxrange = maxrange;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if(this == obj) {
+        return true;
+      }
+      if(obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      DecisionKey other = (DecisionKey) obj;
+      return maxk == other.maxk && Double.compare(maxrange, other.maxrange) == 0 && distance.equals(other.distance);
+    }
+
+    @Override
+    public int hashCode() {
+      return (distance.hashCode() * 31 + maxk) * 31 + Double.hashCode(maxrange);
+    }
+  }
 }
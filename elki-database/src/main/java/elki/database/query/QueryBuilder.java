@@ -20,10 +20,18 @@
  */
 package elki.database.query;
 
+import java.util.ArrayDeque;
+import java.util.HashMap;
 import java.util.Objects;
 
 import elki.data.NumberVector;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
+import elki.database.ids.DBIDIter;
 import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDs;
+import elki.database.ids.KNNList;
 import elki.database.query.distance.DistanceQuery;
 import elki.database.query.distance.LinearScanEuclideanPrioritySearcher;
 import elki.database.query.distance.LinearScanPrioritySearcher;
@@ -41,6 +49,8 @@ import elki.distance.Distance;
 import elki.distance.minkowski.EuclideanDistance;
 import elki.index.*;
 import elki.logging.Logging;
+import elki.parallel.ParallelCore;
+import elki.parallel.processor.KNNProcessor;
 import elki.result.Metadata;
 import elki.similarity.DBIDSimilarity;
 import elki.similarity.Similarity;
@@ -166,6 +176,21 @@ public class QueryBuilder<O> {
     this.distance = distQuery.getDistance();
   }
 
+  /**
+   * Copy constructor.
+   *
+   * @param other Builder to copy
+   * @param flags Query flags of the copy
+   */
+  private QueryBuilder(QueryBuilder<O> other, int flags) {
+    this.relation = other.relation;
+    this.distance = other.distance;
+    this.similarity = other.similarity;
+    this.distQuery = other.distQuery;
+    this.simQuery = other.simQuery;
+    this.flags = flags;
+  }
+
   /**
    * Constructor.
    *
@@ -390,8 +415,20 @@ public class QueryBuilder<O> {
    * @param maxk Maximum k that will be used later.
    * @return knn query
    */
-  @SuppressWarnings("unchecked")
   public KNNSearcher<DBIDRef> kNNByDBID(int maxk) {
+    KNNSearcher<DBIDRef> q = buildKNNByDBID(maxk);
+    QueryResultCache cache = q != null && !(q instanceof PrecomputedQuery) ? getResultCache() : null;
+    return cache != null ? cache.kNNByDBID(distance, (flags & FLAG_EXACT_ONLY) != 0, q) : q;
+  }
+
+  /**
+   * Build a k-nearest-neighbors query, without the result cache.
+   * 
+   * @param maxk Maximum k that will be used later.
+   * @return knn query
+   */
+  @SuppressWarnings("unchecked")
+  private KNNSearcher<DBIDRef> buildKNNByDBID(int maxk) {
     int precompute = flags & FLAG_PRECOMPUTE;
     flags ^= precompute; // Mask
     DistanceQuery<O> distanceQuery = distanceQuery();
@@ -426,6 +463,96 @@ public class QueryBuilder<O> {
     return new LinearScanKNNByDBID<>(distanceQuery);
   }
 
+  /**
+   * Compute the k nearest neighbors of all given objects at once, using all
+   * available processors.
+   *
+   * @param ids Objects to query
+   * @param k Number of neighbors
+   * @return kNN lists, or {@code null} if no optimized query is available and
+   *         only optimized queries were allowed
+   */
+  public WritableDataStore<KNNList> kNNForAll(DBIDs ids, int k) {
+    return kNNForAll(ParallelCore.getCore(), ids, k);
+  }
+
+  /**
+   * Compute the k nearest neighbors of all given objects at once.
+   * <p>
+   * If an index can accelerate kNN queries, each thread uses its own searcher
+   * obtained from the index. Otherwise, a blocked linear scan is used for
+   * primitive distances, which compares each data object to a block of queries
+   * at once.
+   *
+   * @param core Parallel core to use
+   * @param ids Objects to query
+   * @param k Number of neighbors
+   * @return kNN lists, or {@code null} if no optimized query is available and
+   *         only optimized queries were allowed
+   */
+  public WritableDataStore<KNNList> kNNForAll(ParallelCore core, DBIDs ids, int k) {
+    if((flags & FLAG_LINEAR_ONLY) == 0) {
+      // Use a copy, to not modify the flags of this builder:
+      QueryBuilder<O> qb = new QueryBuilder<>(this, flags | FLAG_OPTIMIZED_ONLY);
+      KNNSearcher<DBIDRef> q = qb.kNNByDBID(k);
+      if(q != null) {
+        // Do not precompute again for the other threads:
+        qb.flags &= ~FLAG_PRECOMPUTE;
+        final int p = core.getParallelism();
+        ArrayDeque<KNNSearcher<DBIDRef>> searchers = new ArrayDeque<>(p);
+        searchers.add(q);
+        while(searchers.size() < p) {
+          KNNSearcher<DBIDRef> q2 = qb.kNNByDBID(k);
+          if(q2 == null) {
+            break; // Only available when precomputed.
+          }
+          searchers.add(q2);
+        }
+        if(searchers.size() < p) {
+          return materializeKNN(q, ids, k);
+        }
+        // Assign each thread its own searcher:
+        HashMap<Thread, KNNSearcher<DBIDRef>> assigned = new HashMap<>(p);
+        return KNNProcessor.materialize(core, ids, k, () -> {
+          synchronized(assigned) {
+            KNNSearcher<DBIDRef> s = assigned.get(Thread.currentThread());
+            if(s == null) {
+              // More threads than expected, e.g., the calling thread helping:
+              s = !searchers.isEmpty() ? searchers.pop() : qb.kNNByDBID(k);
+              assigned.put(Thread.currentThread(), s);
+            }
+            return s;
+          }
+        });
+      }
+    }
+    if((flags & FLAG_OPTIMIZED_ONLY) != 0) {
+      return null;
+    }
+    logNotAccelerated("knn join");
+    DistanceQuery<O> distanceQuery = distanceQuery();
+    if(distanceQuery instanceof PrimitiveDistanceQuery) {
+      return LinearScanBlockedKNNJoin.run(core, (PrimitiveDistanceQuery<O>) distanceQuery, ids, k);
+    }
+    return KNNProcessor.materialize(core, ids, k, () -> new LinearScanKNNByDBID<>(distanceQuery));
+  }
+
+  /**
+   * Materialize the kNN of all objects with a single searcher.
+   *
+   * @param q kNN searcher
+   * @param ids Objects to query
+   * @param k Number of neighbors
+   * @return kNN lists
+   */
+  private static WritableDataStore<KNNList> materializeKNN(KNNSearcher<DBIDRef> q, DBIDs ids, int k) {
+    WritableDataStore<KNNList> knns = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, KNNList.class);
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      knns.put(iter, q.getKNN(iter, k));
+    }
+    return knns;
+  }
+
   /**
    * Build a range query; if possible also give a maximum query radius.
    *
@@ -495,8 +622,20 @@ public class QueryBuilder<O> {
    * @param maxrange Maximum radius that will be used.
    * @return range query
    */
-  @SuppressWarnings("unchecked")
   public RangeSearcher<DBIDRef> rangeByDBID(double maxrange) {
+    RangeSearcher<DBIDRef> q = buildRangeByDBID(maxrange);
+    QueryResultCache cache = q != null && !(q instanceof PrecomputedQuery) ? getResultCache() : null;
+    return cache != null ? cache.rangeByDBID(distance, (flags & FLAG_EXACT_ONLY) != 0, q) : q;
+  }
+
+  /**
+   * Build a range query, without the result cache.
+   * 
+   * @param maxrange Maximum radius that will be used.
+   * @return range query
+   */
+  @SuppressWarnings("unchecked")
+  private RangeSearcher<DBIDRef> buildRangeByDBID(double maxrange) {
     int precompute = flags & FLAG_PRECOMPUTE;
     flags ^= precompute; // Mask
     DistanceQuery<O> distanceQuery = distanceQuery();
@@ -818,6 +957,19 @@ public class QueryBuilder<O> {
     return new LinearScanPrioritySearcher.ByDBID<>(distanceQuery);
   }
 
+  /**
+   * Find the query result cache of the relation, if any.
+   *
+   * @return Result cache, or {@code null}
+   */
+  private QueryResultCache getResultCache() {
+    if((flags & (FLAG_LINEAR_ONLY | FLAG_NO_CACHE)) != 0) {
+      return null;
+    }
+    It<QueryResultCache> it = Metadata.hierarchyOf(relation).iterChildren().filter(QueryResultCache.class);
+    return it.valid() ? it.get() : null;
+  }
+
   /**
    * Log if we use a particular index.
    *
@@ -0,0 +1,539 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.query;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.ids.*;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.index.Index;
+import elki.index.IndexFactory;
+import elki.logging.Logging;
+import elki.logging.statistics.LongStatistic;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.LongParameter;
+
+/**
+ * Cache for the results of kNN and range queries by DBID, shared by all
+ * queries on the same relation.
+ * <p>
+ * If this index is attached to a relation, the {@link QueryBuilder} wraps all
+ * kNN and range searchers by DBID with this cache. A cached kNN list answers
+ * all queries with the same or a smaller k, and a cached range result answers
+ * all queries with the same or a smaller radius. Results are evicted in least
+ * recently used order when the estimated memory use exceeds the budget.
+ * <p>
+ * To not serialize parallel queries, large caches are split into independent
+ * segments by query object, each with its own lock and share of the budget.
+ * The least recently used order is then maintained per segment.
+ * <p>
+ * Searchers answered from precomputed results, marked with
+ * {@link PrecomputedQuery}, are not wrapped.
+ * <p>
+ * Results are cached separately for each distance function, and results of
+ * queries that requested exact results are kept apart from the others, as the
+ * latter may have been computed with an approximate index. Because the cache
+ * is not notified of changes to the data, it must only be used with static
+ * relations.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class QueryResultCache implements Index {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(QueryResultCache.class);
+
+  /**
+   * Estimated memory use of a cache entry, excluding the results.
+   */
+  private static final long ENTRY_OVERHEAD = 128;
+
+  /**
+   * Estimated memory use per result, a DBID and a distance.
+   */
+  private static final long RESULT_SIZE = 12;
+
+  /**
+   * Maximum number of segments.
+   */
+  private static final int MAX_SEGMENTS = 16;
+
+  /**
+   * Minimum budget of a segment, in bytes.
+   */
+  private static final long MIN_SEGMENT_BUDGET = 1L << 20;
+
+  /**
+   * Cache segments, a power of two.
+   */
+  private final Segment[] segments;
+
+  /**
+   * Number of cache hits and misses.
+   */
+  private final LongAdder hits = new LongAdder(), misses = new LongAdder();
+
+  /**
+   * Constructor.
+   *
+   * @param budget Memory budget in bytes
+   */
+  public QueryResultCache(long budget) {
+    super();
+    int n = 1;
+    while(n < MAX_SEGMENTS && budget / (n << 1) >= MIN_SEGMENT_BUDGET) {
+      n <<= 1;
+    }
+    this.segments = new Segment[n];
+    for(int i = 0; i < n; i++) {
+      segments[i] = new Segment(budget / n);
+    }
+  }
+
+  @Override
+  public void initialize() {
+    // Nothing to do, the cache is filled on demand.
+  }
+
+  /**
+   * Wrap a kNN searcher with the cache.
+   *
+   * @param distance Distance function
+   * @param exact Whether exact results were requested
+   * @param searcher kNN searcher to use on cache misses
+   * @return Caching searcher
+   */
+  public KNNSearcher<DBIDRef> kNNByDBID(Distance<?> distance, boolean exact, KNNSearcher<DBIDRef> searcher) {
+    return new CachedKNNSearcher(new QueryKey(distance, exact), searcher);
+  }
+
+  /**
+   * Wrap a range searcher with the cache.
+   *
+   * @param distance Distance function
+   * @param exact Whether exact results were requested
+   * @param searcher Range searcher to use on cache misses
+   * @return Caching searcher
+   */
+  public RangeSearcher<DBIDRef> rangeByDBID(Distance<?> distance, boolean exact, RangeSearcher<DBIDRef> searcher) {
+    return new CachedRangeSearcher(new QueryKey(distance, exact), searcher);
+  }
+
+  /**
+   * Get the segment of a query object.
+   *
+   * @param id Query object
+   * @return Segment
+   */
+  private Segment segment(int id) {
+    return segments[(id ^ (id >>> 16)) & (segments.length - 1)];
+  }
+
+  /**
+   * Count a cache hit or miss.
+   *
+   * @param hit Whether the cache was hit
+   */
+  private void count(boolean hit) {
+    (hit ? hits : misses).increment();
+  }
+
+  /**
+   * Estimate the memory use of a cached result.
+   *
+   * @param value Cached result
+   * @return Estimated size in bytes
+   */
+  private static long estimateSize(Object value) {
+    return ENTRY_OVERHEAD + RESULT_SIZE * ((DoubleDBIDList) (value instanceof CachedRange ? ((CachedRange) value).list : value)).size();
+  }
+
+  @Override
+  public void logStatistics() {
+    long entries = 0, used = 0;
+    for(Segment seg : segments) {
+      synchronized(seg) {
+        entries += seg.cache.size();
+        used += seg.used;
+      }
+    }
+    LOG.statistics(new LongStatistic(this.getClass().getName() + ".hits", hits.sum()));
+    LOG.statistics(new LongStatistic(this.getClass().getName() + ".misses", misses.sum()));
+    LOG.statistics(new LongStatistic(this.getClass().getName() + ".entries", entries));
+    LOG.statistics(new LongStatistic(this.getClass().getName() + ".bytes", used));
+  }
+
+  /**
+   * Segment of the cache, with its own lock.
+   *
+   * @author Erich Schubert
+   */
+  private static class Segment {
+    /**
+     * Memory budget in bytes.
+     */
+    private final long budget;
+
+    /**
+     * Cached results, in least recently used order.
+     */
+    private final LinkedHashMap<Key, Object> cache = new LinkedHashMap<>(16, .75f, true);
+
+    /**
+     * Estimated memory use.
+     */
+    private long used;
+
+    /**
+     * Constructor.
+     *
+     * @param budget Memory budget in bytes
+     */
+    Segment(long budget) {
+      this.budget = budget;
+    }
+
+    /**
+     * Get a cached result.
+     *
+     * @param key Cache key
+     * @return Cached result, or {@code null}
+     */
+    synchronized Object get(Key key) {
+      return cache.get(key);
+    }
+
+    /**
+     * Store a result in the cache, and evict old results if necessary.
+     *
+     * @param key Cache key
+     * @param value Result to store
+     * @param size Number of results
+     */
+    synchronized void put(Key key, Object value, int size) {
+      final long bytes = ENTRY_OVERHEAD + RESULT_SIZE * size;
+      if(bytes > budget) {
+        return;
+      }
+      Object old = cache.put(key, value);
+      used += bytes - (old != null ? estimateSize(old) : 0);
+      for(Iterator<Object> it = cache.values().iterator(); used > budget && it.hasNext();) {
+        used -= estimateSize(it.next());
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * kNN searcher using the cache.
+   *
+   * @author Erich Schubert
+   */
+  private class CachedKNNSearcher implements KNNSearcher<DBIDRef> {
+    /**
+     * Query key.
+     */
+    private final QueryKey query;
+
+    /**
+     * Searcher for cache misses.
+     */
+    private final KNNSearcher<DBIDRef> inner;
+
+    /**
+     * Constructor.
+     *
+     * @param query Query key
+     * @param inner Searcher for cache misses
+     */
+    CachedKNNSearcher(QueryKey query, KNNSearcher<DBIDRef> inner) {
+      this.query = query;
+      this.inner = inner;
+    }
+
+    @Override
+    public KNNList getKNN(DBIDRef id, int k) {
+      final Key key = new Key(query, DBIDUtil.asInteger(id), false);
+      final Segment segment = segment(key.id);
+      final KNNList cached = (KNNList) segment.get(key);
+      if(cached != null && cached.getK() >= k) {
+        count(true);
+        return cached.getK() == k ? cached : cached.subList(k);
+      }
+      count(false);
+      final KNNList result = inner.getKNN(id, k);
+      segment.put(key, result, result.size());
+      return result;
+    }
+  }
+
+  /**
+   * Range searcher using the cache.
+   *
+   * @author Erich Schubert
+   */
+  private class CachedRangeSearcher implements RangeSearcher<DBIDRef> {
+    /**
+     * Query key.
+     */
+    private final QueryKey query;
+
+    /**
+     * Searcher for cache misses.
+     */
+    private final RangeSearcher<DBIDRef> inner;
+
+    /**
+     * Constructor.
+     *
+     * @param query Query key
+     * @param inner Searcher for cache misses
+     */
+    CachedRangeSearcher(QueryKey query, RangeSearcher<DBIDRef> inner) {
+      this.query = query;
+      this.inner = inner;
+    }
+
+    @Override
+    public ModifiableDoubleDBIDList getRange(DBIDRef id, double range, ModifiableDoubleDBIDList result) {
+      final Key key = new Key(query, DBIDUtil.asInteger(id), true);
+      final Segment segment = segment(key.id);
+      CachedRange cached = (CachedRange) segment.get(key);
+      if(cached != null && cached.range >= range) {
+        count(true);
+      }
+      else {
+        count(false);
+        ModifiableDoubleDBIDList list = inner.getRange(id, range, DBIDUtil.newDistanceDBIDList());
+        list.sort();
+        segment.put(key, cached = new CachedRange(range, list), list.size());
+      }
+      for(DoubleDBIDListIter it = cached.list.iter(); it.valid() && it.doubleValue() <= range; it.advance()) {
+        result.add(it.doubleValue(), it);
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Cached range query result.
+   *
+   * @author Erich Schubert
+   */
+  private static class CachedRange {
+    /**
+     * Query radius.
+     */
+    final double range;
+
+    /**
+     * Results, sorted by distance.
+     */
+    final DoubleDBIDList list;
+
+    /**
+     * Constructor.
+     *
+     * @param range Query radius
+     * @param list Results, sorted by distance
+     */
+    CachedRange(double range, DoubleDBIDList list) {
+      this.range = range;
+      this.list = list;
+    }
+  }
+
+  /**
+   * Key of a query configuration.
+   *
+   * @author Erich Schubert
+   */
+  private static class QueryKey {
+    /**
+     * Distance function.
+     */
+    private final Distance<?> distance;
+
+    /**
+     * Whether exact results were requested.
+     */
+    private final boolean exact;
+
+    /**
+     * Constructor.
+     *
+     * @param distance Distance function
+     * @param exact Whether exact results were requested
+     */
+    QueryKey(Distance<?> distance, boolean exact) {
+      this.distance = distance;
+      this.exact = exact;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if(this == obj) {
+        return true;
+      }
+      if(obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      QueryKey other = (QueryKey) obj;
+      return exact == other.exact && distance.equals(other.distance);
+    }
+
+    @Override
+    public int hashCode() {
+      return distance.hashCode() * 2 + (exact ? 1 : 0);
+    }
+  }
+
+  /**
+   * Key of a cached result.
+   *
+   * @author Erich Schubert
+   */
+  private static class Key {
+    /**
+     * Query configuration.
+     */
+    private final QueryKey query;
+
+    /**
+     * Query object.
+     */
+    private final int id;
+
+    /**
+     * Range query (or kNN query).
+     */
+    private final boolean range;
+
+    /**
+     * Constructor.
+     *
+     * @param query Query configuration
+     * @param id Query object
+     * @param range Range query (or kNN query)
+     */
+    Key(QueryKey query, int id, boolean range) {
+      this.query = query;
+      this.id = id;
+      this.range = range;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if(this == obj) {
+        return true;
+      }
+      if(obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return id == other.id && range == other.range && query.equals(other.query);
+    }
+
+    @Override
+    public int hashCode() {
+      return (query.hashCode() * 31 + id) * 2 + (range ? 1 : 0);
+    }
+  }
+
+  /**
+   * Factory for a query result cache.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   */
+  public static class Factory<O> implements IndexFactory<O> {
+    /**
+     * Memory budget in bytes.
+     */
+    private final long budget;
+
+    /**
+     * Constructor.
+     *
+     * @param budget Memory budget in bytes
+     */
+    public Factory(long budget) {
+      super();
+      this.budget = budget;
+    }
+
+    @Override
+    public QueryResultCache instantiate(Relation<O> relation) {
+      return new QueryResultCache(budget);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return TypeUtil.ANY;
+    }
+
+    /**
+     * Parameterizer.
+     *
+     * @author Erich Schubert
+     *
+     * @hidden
+     *
+     * @param <O> Object type
+     */
+    public static class Par<O> implements Parameterizer {
+      /**
+       * Memory budget of the cache.
+       */
+      public static final OptionID BUDGET_ID = new OptionID("cache.budget", "Memory budget of the query result cache, in bytes.");
+
+      /**
+       * Memory budget in bytes.
+       */
+      protected long budget;
+
+      @Override
+      public void configure(Parameterization config) {
+        new LongParameter(BUDGET_ID, 256L << 20) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT) //
+            .grab(config, x -> budget = x);
+      }
+
+      @Override
+      public Factory<O> make() {
+        return new Factory<>(budget);
+      }
+    }
+  }
+}
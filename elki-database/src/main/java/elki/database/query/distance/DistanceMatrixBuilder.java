@@ -0,0 +1,272 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.query.distance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import elki.data.NumberVector;
+import elki.data.SparseNumberVector;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.relation.Relation;
+import elki.distance.ArrayKernels;
+import elki.distance.NumberVectorDistance;
+import elki.distance.PrimitiveDistance;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.parallel.ParallelCore;
+
+/**
+ * Compute the lower triangular part of a symmetric distance matrix, as used by
+ * the matrix-based clustering algorithms and the precomputed distance matrix.
+ * <p>
+ * The matrix is stored in a linear array, with the distance of objects
+ * {@code x > y} at position {@code x * (x - 1) / 2 + y}.
+ * <p>
+ * For primitive distances, the objects are retrieved from the relation only
+ * once, and the matrix is computed in square tiles, such that the objects of a
+ * tile remain in the CPU cache. For the common vector distances, the tiles are
+ * computed directly on the arrays using {@link ArrayKernels}, and if a
+ * parallel core is given, the tile rows are processed in parallel. Other
+ * distance functions are always used single-threaded, as they are not
+ * necessarily thread-safe. The results are identical to computing each
+ * distance with the distance query.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public final class DistanceMatrixBuilder {
+  /**
+   * Target memory size of the objects of one tile, to fit the L2 cache.
+   */
+  private static final int TILE_BYTES = 1 << 17;
+
+  /**
+   * Tile size for objects of unknown size.
+   */
+  private static final int DEFAULT_TILE = 64;
+
+  /**
+   * Private constructor. Static methods only.
+   */
+  private DistanceMatrixBuilder() {
+    // Do not use.
+  }
+
+  /**
+   * Compute the size of a complete x by x triangle (minus diagonal)
+   *
+   * @param x Offset
+   * @return Size of complete triangle
+   */
+  public static int triangleSize(int x) {
+    return (x * (x - 1)) >>> 1;
+  }
+
+  /**
+   * Compute the lower triangular distance matrix.
+   *
+   * @param dq Distance query
+   * @param ids Objects, in matrix order
+   * @param matrix Output matrix, of size {@code triangleSize(ids.size())}
+   */
+  public static void build(DistanceQuery<?> dq, ArrayDBIDs ids, double[] matrix) {
+    build(dq, ids, matrix, null, null, null);
+  }
+
+  /**
+   * Compute the lower triangular distance matrix.
+   *
+   * @param dq Distance query
+   * @param ids Objects, in matrix order
+   * @param matrix Output matrix, of size {@code triangleSize(ids.size())}
+   * @param core Parallel core to use for the array kernels, {@code null} to
+   *        run single-threaded
+   * @param prog Progress, counting the rows of the matrix, may be {@code null}
+   * @param log Logger for the progress
+   */
+  public static void build(DistanceQuery<?> dq, ArrayDBIDs ids, double[] matrix, ParallelCore core, FiniteProgress prog, Logging log) {
+    assert matrix.length >= triangleSize(ids.size());
+    if(dq instanceof PrimitiveDistanceQuery) {
+      buildPrimitive((PrimitiveDistanceQuery<?>) dq, ids, matrix, core, prog, log);
+      return;
+    }
+    final DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+    int pos = 0;
+    for(ix.seek(0); ix.valid(); ix.advance()) {
+      for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
+        matrix[pos++] = dq.distance(ix, iy);
+      }
+      if(prog != null) {
+        prog.incrementProcessed(log);
+      }
+    }
+  }
+
+  /**
+   * Compute the distance matrix of a primitive distance.
+   *
+   * @param dq Distance query
+   * @param ids Objects, in matrix order
+   * @param matrix Output matrix
+   * @param core Parallel core to use for the array kernels, may be
+   *        {@code null}
+   * @param prog Progress, may be {@code null}
+   * @param log Logger for the progress
+   * @param <O> Object type
+   */
+  private static <O> void buildPrimitive(PrimitiveDistanceQuery<O> dq, ArrayDBIDs ids, double[] matrix, ParallelCore core, FiniteProgress prog, Logging log) {
+    final PrimitiveDistance<? super O> df = dq.getDistance();
+    final Relation<? extends O> relation = dq.getRelation();
+    if(df instanceof NumberVectorDistance) {
+      final ArrayKernels.Kernel kernel = ArrayKernels.kernel((NumberVectorDistance<?>) df);
+      final double[][] data = kernel != null ? toArrays(relation, ids) : null;
+      if(data != null) {
+        final int tile = data.length > 0 ? Math.max(4, TILE_BYTES / (Double.BYTES * Math.max(1, data[0].length))) : DEFAULT_TILE;
+        run(data.length, tile, (x, y) -> kernel.distance(data[x], data[y]), matrix, core, prog, log);
+        return;
+      }
+    }
+    @SuppressWarnings("unchecked")
+    final O[] objs = (O[]) new Object[ids.size()];
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      objs[it.getOffset()] = relation.get(it);
+    }
+    run(objs.length, DEFAULT_TILE, (x, y) -> df.distance(objs[x], objs[y]), matrix, null, prog, log);
+  }
+
+  /**
+   * Get the vectors as arrays, if all are dense and of the same
+   * dimensionality.
+   *
+   * @param relation Relation
+   * @param ids Objects
+   * @return Arrays, or {@code null}
+   */
+  private static double[][] toArrays(Relation<?> relation, ArrayDBIDs ids) {
+    final double[][] data = new double[ids.size()][];
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      final Object o = relation.get(it);
+      if(!(o instanceof NumberVector) || o instanceof SparseNumberVector) {
+        return null;
+      }
+      final double[] v = ((NumberVector) o).toArray();
+      if(it.getOffset() > 0 && v.length != data[0].length) {
+        return null;
+      }
+      data[it.getOffset()] = v;
+    }
+    return data;
+  }
+
+  /**
+   * Compute the matrix in tiles, processing tile rows in parallel if a core is
+   * given.
+   *
+   * @param size Number of objects
+   * @param tile Tile size
+   * @param dist Distance of two objects, by offset
+   * @param matrix Output matrix
+   * @param core Parallel core to use, may be {@code null}
+   * @param prog Progress, may be {@code null}
+   * @param log Logger for the progress
+   */
+  private static void run(int size, int tile, PairDistance dist, double[] matrix, ParallelCore core, FiniteProgress prog, Logging log) {
+    final int rows = (size + tile - 1) / tile;
+    if(rows <= 1 || core == null || core.getParallelism() <= 1) {
+      for(int start = 0; start < size; start += tile) {
+        computeTileRow(start, Math.min(start + tile, size), tile, dist, matrix, prog, log);
+      }
+      return;
+    }
+    core.connect();
+    try {
+      List<Future<Void>> parts = new ArrayList<>(rows);
+      // Start with the largest tile rows, for better load balancing.
+      for(int r = rows - 1; r >= 0; r--) {
+        final int start = r * tile, end = Math.min(start + tile, size);
+        parts.add(core.submit(() -> {
+          computeTileRow(start, end, tile, dist, matrix, prog, log);
+          return null;
+        }));
+      }
+      for(Future<Void> fut : parts) {
+        fut.get();
+      }
+    }
+    catch(ExecutionException e) {
+      throw new RuntimeException("Distance matrix computation failed.", e);
+    }
+    catch(InterruptedException e) {
+      throw new RuntimeException("Parallel execution interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Compute one row of tiles.
+   *
+   * @param start First row
+   * @param end End row (exclusive)
+   * @param tile Tile size
+   * @param dist Distance of two objects, by offset
+   * @param matrix Output matrix
+   * @param prog Progress, may be {@code null}
+   * @param log Logger for the progress
+   */
+  private static void computeTileRow(int start, int end, int tile, PairDistance dist, double[] matrix, FiniteProgress prog, Logging log) {
+    for(int cstart = 0; cstart < end; cstart += tile) {
+      for(int x = start; x < end; x++) {
+        final int cend = Math.min(cstart + tile, x);
+        for(int y = cstart, pos = triangleSize(x) + cstart; y < cend; y++, pos++) {
+          matrix[pos] = dist.distance(x, y);
+        }
+      }
+    }
+    if(prog != null) {
+      for(int x = start; x < end; x++) {
+        prog.incrementProcessed(log);
+      }
+    }
+  }
+
+  /**
+   * Distance of two objects, referenced by offset.
+   *
+   * @author Erich Schubert
+   */
+  @FunctionalInterface
+  private interface PairDistance {
+    /**
+     * Distance of two objects.
+     *
+     * @param x First offset
+     * @param y Second offset
+     * @return Distance
+     */
+    double distance(int x, int y);
+  }
+}
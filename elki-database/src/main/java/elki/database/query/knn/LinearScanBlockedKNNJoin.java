@@ -0,0 +1,252 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.query.knn;
+
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
+import elki.database.ids.*;
+import elki.database.query.distance.PrimitiveDistanceQuery;
+import elki.database.relation.DenseVectorRelation;
+import elki.database.relation.Relation;
+import elki.distance.PrimitiveDistance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.parallel.Executor;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
+
+/**
+ * Compute the k nearest neighbors of many objects with a blocked linear scan.
+ * <p>
+ * Instead of scanning the data once for every query, each thread collects a
+ * block of query objects, and then scans the data once for the entire block.
+ * Every data object is then retrieved once per block, and compared to all
+ * queries of the block while it is still in the cache. For Euclidean
+ * distance, the squared distances are used, and the square root is only
+ * computed for the results.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - Instance
+ * @assoc - - - PrimitiveDistanceQuery
+ *
+ * @param <O> relation object type
+ */
+public class LinearScanBlockedKNNJoin<O> implements Processor {
+  /**
+   * Number of queries processed together.
+   */
+  private static final int BLOCKSIZE = 64;
+
+  /**
+   * Relation to scan.
+   */
+  private Relation<? extends O> relation;
+
+  /**
+   * Distance function to use.
+   */
+  private PrimitiveDistance<? super O> distance;
+
+  /**
+   * Use squared Euclidean distances.
+   */
+  private boolean squared;
+
+  /**
+   * Dense relation, for Euclidean distance on contiguous storage, or null.
+   */
+  private DenseVectorRelation dense;
+
+  /**
+   * Number of neighbors.
+   */
+  private int k;
+
+  /**
+   * Output storage.
+   */
+  private WritableDataStore<KNNList> out;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceQuery Distance query
+   * @param k Number of neighbors
+   * @param out Output storage
+   */
+  @SuppressWarnings("unchecked")
+  public LinearScanBlockedKNNJoin(PrimitiveDistanceQuery<O> distanceQuery, int k, WritableDataStore<KNNList> out) {
+    super();
+    this.relation = distanceQuery.getRelation();
+    this.squared = EuclideanDistance.STATIC.equals(distanceQuery.getDistance());
+    // Only possible if O is a NumberVector type:
+    this.distance = squared ? (PrimitiveDistance<? super O>) SquaredEuclideanDistance.STATIC : distanceQuery.getDistance();
+    this.dense = squared && relation instanceof DenseVectorRelation ? (DenseVectorRelation) relation : null;
+    this.k = k;
+    this.out = out;
+  }
+
+  /**
+   * Compute the k nearest neighbors of all given objects in parallel.
+   *
+   * @param core Parallel core to use
+   * @param distanceQuery Distance query
+   * @param ids Objects to query
+   * @param k Number of neighbors
+   * @param <O> Object type
+   * @return kNN lists
+   */
+  public static <O> WritableDataStore<KNNList> run(ParallelCore core, PrimitiveDistanceQuery<O> distanceQuery, DBIDs ids, int k) {
+    WritableDataStore<KNNList> knns = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, KNNList.class);
+    ParallelExecutor.run(core, ids, new LinearScanBlockedKNNJoin<>(distanceQuery, k, knns));
+    return knns;
+  }
+
+  @Override
+  public Instance<O> instantiate(Executor executor) {
+    return new Instance<>(this);
+  }
+
+  @Override
+  public void cleanup(Processor.Instance inst) {
+    ((Instance<?>) inst).flush();
+  }
+
+  /**
+   * Instance collecting a block of queries.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> relation object type
+   */
+  protected static class Instance<O> implements Processor.Instance {
+    /**
+     * Join to process.
+     */
+    private LinearScanBlockedKNNJoin<O> join;
+
+    /**
+     * Query ids of the current block.
+     */
+    private ArrayModifiableDBIDs queries = DBIDUtil.newArray(BLOCKSIZE);
+
+    /**
+     * Query objects of the current block.
+     */
+    private Object[] objs = new Object[BLOCKSIZE];
+
+    /**
+     * Heaps of the current block.
+     */
+    private KNNHeap[] heaps = new KNNHeap[BLOCKSIZE];
+
+    /**
+     * Current k-distances of the heaps.
+     */
+    private double[] max = new double[BLOCKSIZE];
+
+    /**
+     * Constructor.
+     *
+     * @param join Join to process
+     */
+    protected Instance(LinearScanBlockedKNNJoin<O> join) {
+      this.join = join;
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      objs[queries.size()] = join.dense != null ? join.dense.get(id).toArray() : join.relation.get(id);
+      queries.add(id);
+      if(queries.size() == BLOCKSIZE) {
+        flush();
+      }
+    }
+
+    /**
+     * Process the current block of queries.
+     */
+    protected void flush() {
+      final int size = queries.size();
+      if(size == 0) {
+        return;
+      }
+      for(int i = 0; i < size; i++) {
+        heaps[i] = DBIDUtil.newHeap(join.k);
+        max[i] = Double.POSITIVE_INFINITY;
+      }
+      if(join.dense != null) {
+        scanDense(size);
+      }
+      else {
+        scan(size);
+      }
+      DBIDArrayIter it = queries.iter();
+      for(int i = 0; i < size; i++, it.advance()) {
+        join.out.put(it, join.squared ? heaps[i].toKNNListSqrt() : heaps[i].toKNNList());
+        heaps[i] = null;
+        objs[i] = null;
+      }
+      queries.clear();
+    }
+
+    /**
+     * Scan the relation for the current block.
+     *
+     * @param size Block size
+     */
+    @SuppressWarnings("unchecked")
+    private void scan(int size) {
+      final Relation<? extends O> relation = join.relation;
+      final PrimitiveDistance<? super O> distance = join.distance;
+      for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+        final O o = relation.get(iter);
+        for(int i = 0; i < size; i++) {
+          final double dist = distance.distance((O) objs[i], o);
+          if(dist <= max[i]) {
+            max[i] = heaps[i].insert(dist, iter);
+          }
+        }
+      }
+    }
+
+    /**
+     * Scan the backing arrays of a dense relation for the current block.
+     *
+     * @param size Block size
+     */
+    private void scanDense(int size) {
+      final DenseVectorRelation dense = join.dense;
+      for(DBIDIter iter = dense.iterDBIDs(); iter.valid(); iter.advance()) {
+        for(int i = 0; i < size; i++) {
+          final double dist = dense.squaredEuclidean(iter, (double[]) objs[i]);
+          if(dist <= max[i]) {
+            max[i] = heaps[i].insert(dist, iter);
+          }
+        }
+      }
+    }
+  }
+}
@@ -23,6 +23,7 @@ package elki.database.query.knn;
 import elki.data.NumberVector;
 import elki.database.ids.*;
 import elki.database.query.distance.PrimitiveDistanceQuery;
+import elki.database.relation.DenseVectorRelation;
 import elki.database.relation.Relation;
 import elki.distance.minkowski.EuclideanDistance;
 import elki.distance.minkowski.SquaredEuclideanDistance;
@@ -59,10 +60,25 @@ public class LinearScanEuclideanKNNByObject<O extends NumberVector> extends Line
   public KNNList getKNN(O obj, int k) {
     final SquaredEuclideanDistance squared = SquaredEuclideanDistance.STATIC;
     final Relation<? extends O> relation = this.relation;
+    if(relation instanceof DenseVectorRelation && obj.getDimensionality() == ((DenseVectorRelation) relation).getDimensionality()) {
+      return getKNN((DenseVectorRelation) relation, obj.toArray(), k);
+    }
+    return scanBlocks(squared, obj, relation, k).toKNNListSqrt();
+  }
+
+  /**
+   * Scan a dense relation, without materializing vector objects.
+   *
+   * @param relation Relation
+   * @param obj Query vector
+   * @param k Number of neighbors
+   * @return kNN list
+   */
+  private static KNNList getKNN(DenseVectorRelation relation, double[] obj, int k) {
     final KNNHeap heap = DBIDUtil.newHeap(k);
     double max = Double.POSITIVE_INFINITY;
     for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
-      final double dist = squared.distance(obj, relation.get(iter));
+      final double dist = relation.squaredEuclidean(iter, obj);
       max = dist <= max ? heap.insert(dist, iter) : max;
     }
     return heap.toKNNListSqrt();
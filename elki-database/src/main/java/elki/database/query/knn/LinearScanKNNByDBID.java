@@ -56,7 +56,7 @@ public class LinearScanKNNByDBID<O> implements KNNSearcher<DBIDRef>, LinearScanQ
     KNNHeap heap = DBIDUtil.newHeap(k);
     double max = Double.POSITIVE_INFINITY;
     for(DBIDIter iter = dq.getRelation().iterDBIDs(); iter.valid(); iter.advance()) {
-      final double dist = dq.distance(id, iter);
+      final double dist = dq.distance(id, iter, max);
       max = dist <= max ? heap.insert(dist, iter) : max;
     }
     return heap.toKNNList();
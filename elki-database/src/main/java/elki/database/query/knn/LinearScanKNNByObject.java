@@ -56,7 +56,7 @@ public class LinearScanKNNByObject<O> implements KNNSearcher<O>, LinearScanQuery
     KNNHeap heap = DBIDUtil.newHeap(k);
     double max = Double.POSITIVE_INFINITY;
     for(DBIDIter iter = dq.getRelation().iterDBIDs(); iter.valid(); iter.advance()) {
-      final double dist = dq.distance(obj, iter);
+      final double dist = dq.distance(obj, iter, max);
       max = dist <= max ? heap.insert(dist, iter) : max;
     }
     return heap.toKNNList();
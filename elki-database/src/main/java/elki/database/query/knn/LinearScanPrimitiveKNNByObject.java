@@ -20,17 +20,24 @@
  */
 package elki.database.query.knn;
 
+import elki.data.NumberVector;
 import elki.database.ids.*;
 import elki.database.query.LinearScanQuery;
 import elki.database.query.distance.PrimitiveDistanceQuery;
 import elki.database.relation.Relation;
+import elki.distance.BoundedDistance;
+import elki.distance.NumberVectorDistance;
 import elki.distance.PrimitiveDistance;
 
 /**
  * Instance of this query for a particular database.
  * <p>
  * This is a subtle optimization: for primitive queries, it is clearly faster to
- * retrieve the query object from the relation only once!
+ * retrieve the query object from the relation only once! For distances on
+ * number vectors, the candidates are processed in blocks, using the batch
+ * distance computation of {@link NumberVectorDistance#distances}. For a
+ * {@link BoundedDistance}, the distance computations can stop early when
+ * exceeding the current k nearest neighbor distance.
  * 
  * @author Erich Schubert
  * @since 0.4.0
@@ -41,6 +48,11 @@ import elki.distance.PrimitiveDistance;
  * @param <O> relation object type
  */
 public class LinearScanPrimitiveKNNByObject<O> implements KNNSearcher<O>, LinearScanQuery {
+  /**
+   * Number of candidates per batch distance computation.
+   */
+  protected static final int BLOCKSIZE = 256;
+
   /**
    * Unboxed distance function.
    */
@@ -66,6 +78,22 @@ public class LinearScanPrimitiveKNNByObject<O> implements KNNSearcher<O>, Linear
   public KNNList getKNN(O obj, int k) {
     final PrimitiveDistance<? super O> rawdist = this.rawdist;
     final Relation<? extends O> relation = this.relation;
+    if(rawdist instanceof BoundedDistance) {
+      @SuppressWarnings("unchecked")
+      final BoundedDistance<? super O> bounded = (BoundedDistance<? super O>) rawdist;
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      double max = Double.POSITIVE_INFINITY;
+      for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+        final double dist = bounded.distance(obj, relation.get(iter), max);
+        max = dist <= max ? heap.insert(dist, iter) : max;
+      }
+      return heap.toKNNList();
+    }
+    if(rawdist instanceof NumberVectorDistance && obj instanceof NumberVector) {
+      @SuppressWarnings("unchecked")
+      final Relation<? extends NumberVector> vrel = (Relation<? extends NumberVector>) relation;
+      return scanBlocks((NumberVectorDistance<?>) rawdist, (NumberVector) obj, vrel, k).toKNNList();
+    }
     KNNHeap heap = DBIDUtil.newHeap(k);
     double max = Double.POSITIVE_INFINITY;
     for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
@@ -74,4 +102,33 @@ public class LinearScanPrimitiveKNNByObject<O> implements KNNSearcher<O>, Linear
     }
     return heap.toKNNList();
   }
+
+  /**
+   * Scan the relation in blocks, using batch distance computations.
+   *
+   * @param df Distance function
+   * @param obj Query vector
+   * @param relation Relation to scan
+   * @param k Number of neighbors
+   * @return kNN heap
+   */
+  protected static KNNHeap scanBlocks(NumberVectorDistance<?> df, NumberVector obj, Relation<? extends NumberVector> relation, int k) {
+    final KNNHeap heap = DBIDUtil.newHeap(k);
+    final ArrayModifiableDBIDs block = DBIDUtil.newArray(BLOCKSIZE);
+    final double[] dists = new double[BLOCKSIZE];
+    double max = Double.POSITIVE_INFINITY;
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid();) {
+      block.clear();
+      for(; iter.valid() && block.size() < BLOCKSIZE; iter.advance()) {
+        block.add(iter);
+      }
+      df.distances(obj, relation, block, dists);
+      int i = 0;
+      for(DBIDIter it = block.iter(); it.valid(); it.advance(), i++) {
+        final double dist = dists[i];
+        max = dist <= max ? heap.insert(dist, it) : max;
+      }
+    }
+    return heap;
+  }
 }
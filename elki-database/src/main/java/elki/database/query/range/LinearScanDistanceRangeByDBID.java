@@ -54,7 +54,7 @@ public class LinearScanDistanceRangeByDBID<O> implements RangeSearcher<DBIDRef>,
   public ModifiableDoubleDBIDList getRange(DBIDRef id, double range, ModifiableDoubleDBIDList result) {
     final DistanceQuery<O> dq = distanceQuery;
     for(DBIDIter iter = dq.getRelation().iterDBIDs(); iter.valid(); iter.advance()) {
-      final double currentDistance = dq.distance(id, iter);
+      final double currentDistance = dq.distance(id, iter, range);
       if(currentDistance <= range) {
         result.add(currentDistance, iter);
       }
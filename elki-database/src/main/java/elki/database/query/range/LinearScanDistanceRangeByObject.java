@@ -54,7 +54,7 @@ public class LinearScanDistanceRangeByObject<O> implements RangeSearcher<O>, Lin
   public ModifiableDoubleDBIDList getRange(O obj, double range, ModifiableDoubleDBIDList result) {
     final DistanceQuery<O> dq = distanceQuery;
     for(DBIDIter iter = dq.getRelation().iterDBIDs(); iter.valid(); iter.advance()) {
-      final double currentDistance = dq.distance(obj, iter);
+      final double currentDistance = dq.distance(obj, iter, range);
       if(currentDistance <= range) {
         result.add(currentDistance, iter);
       }
@@ -25,6 +25,7 @@ import elki.database.ids.DBIDIter;
 import elki.database.ids.ModifiableDoubleDBIDList;
 import elki.database.query.LinearScanQuery;
 import elki.database.query.distance.DistanceQuery;
+import elki.database.relation.DenseVectorRelation;
 import elki.database.relation.Relation;
 import elki.distance.minkowski.SquaredEuclideanDistance;
 
@@ -62,8 +63,20 @@ public class LinearScanEuclideanRangeByObject<O extends NumberVector> implements
     final SquaredEuclideanDistance squared = SquaredEuclideanDistance.STATIC;
     float frange = Math.nextUp((float) range);
     final double sqrange = frange * frange;
+    if(relation instanceof DenseVectorRelation && obj.getDimensionality() == ((DenseVectorRelation) relation).getDimensionality()) {
+      // Scan the backing arrays directly:
+      final DenseVectorRelation dense = (DenseVectorRelation) relation;
+      final double[] vec = obj.toArray();
+      for(DBIDIter iter = dense.iterDBIDs(); iter.valid(); iter.advance()) {
+        final double sqdistance = dense.squaredEuclidean(iter, vec);
+        if(sqdistance <= sqrange) {
+          result.add(FastMath.sqrt(sqdistance), iter);
+        }
+      }
+      return result;
+    }
     for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
-      final double sqdistance = squared.distance(obj, relation.get(iter));
+      final double sqdistance = squared.distance(obj, relation.get(iter), sqrange);
       if(sqdistance <= sqrange) {
         result.add(FastMath.sqrt(sqdistance), iter);
       }
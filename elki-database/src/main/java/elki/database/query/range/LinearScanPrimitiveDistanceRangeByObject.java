@@ -24,13 +24,15 @@ import elki.database.ids.*;
 import elki.database.query.LinearScanQuery;
 import elki.database.query.distance.PrimitiveDistanceQuery;
 import elki.database.relation.Relation;
+import elki.distance.BoundedDistance;
 import elki.distance.PrimitiveDistance;
 
 /**
  * Default linear scan range query class.
  * <p>
  * Subtle optimization: for primitive distances, retrieve the query object only
- * once from the relation.
+ * once from the relation. For a {@link BoundedDistance}, the distance
+ * computations can stop early when exceeding the query radius.
  * 
  * @author Erich Schubert
  * @since 0.4.0
@@ -59,6 +61,17 @@ public class LinearScanPrimitiveDistanceRangeByObject<O> implements RangeSearche
   public ModifiableDoubleDBIDList getRange(O obj, double range, ModifiableDoubleDBIDList result) {
     final PrimitiveDistance<? super O> rawdist = this.distance.getDistance();
     final Relation<? extends O> relation = this.distance.getRelation();
+    if(rawdist instanceof BoundedDistance) {
+      @SuppressWarnings("unchecked")
+      final BoundedDistance<? super O> bounded = (BoundedDistance<? super O>) rawdist;
+      for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+        final double distance = bounded.distance(obj, relation.get(iter), range);
+        if(distance <= range) {
+          result.add(distance, iter);
+        }
+      }
+      return result;
+    }
     for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
       final double distance = rawdist.distance(obj, relation.get(iter));
       if(distance <= range) {
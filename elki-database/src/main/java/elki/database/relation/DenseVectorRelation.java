@@ -0,0 +1,625 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.relation;
+
+import java.util.List;
+
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.data.type.SimpleTypeInformation;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRange;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDs;
+
+/**
+ * Relation storing dense vectors of fixed dimensionality in large primitive
+ * arrays, instead of one object per vector.
+ * <p>
+ * The vectors are stored row-major, in blocks of a power-of-two number of
+ * rows each. {@link #get} returns a lightweight view into these arrays, so
+ * callers should not rely on object identity of the returned vectors.
+ * Performance critical code can use {@link #squaredEuclidean} to operate on the
+ * backing arrays directly. In double precision, the views also expose their
+ * block and offset via {@link DoubleVector#getRawValues()} and
+ * {@link DoubleVector#getRawOffset()}, for the distance kernels.
+ * <p>
+ * The values can be stored with reduced {@link Precision}, as 32 bit floats or
+ * as 8 bit integers quantized linearly in the value range of each dimension.
+ * The views then return the stored (rounded) values, so all distance
+ * functions consistently see the same data.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - View
+ */
+public abstract class DenseVectorRelation implements Relation<DoubleVector> {
+  /**
+   * Storage precision.
+   *
+   * @author Erich Schubert
+   */
+  public enum Precision {
+    /**
+     * Double precision, 64 bit.
+     */
+    DOUBLE,
+    /**
+     * Single precision, 32 bit.
+     */
+    FLOAT,
+    /**
+     * Quantized to 8 bit, in the value range of each dimension.
+     */
+    BYTE
+  }
+
+  /**
+   * Maximum number of values in a single block.
+   */
+  private static final int MAX_BLOCK = 1 << 24;
+
+  /**
+   * Type information.
+   */
+  private final SimpleTypeInformation<DoubleVector> type;
+
+  /**
+   * The DBIDs of this relation.
+   */
+  protected final DBIDRange ids;
+
+  /**
+   * Dimensionality.
+   */
+  protected final int dim;
+
+  /**
+   * Number of rows per block, as power of two.
+   */
+  protected final int shift;
+
+  /**
+   * The relation name.
+   */
+  private String name;
+
+  /**
+   * Constructor.
+   *
+   * @param name Relation name
+   * @param type Type information
+   * @param ids DBIDs
+   * @param dim Dimensionality
+   */
+  protected DenseVectorRelation(String name, SimpleTypeInformation<DoubleVector> type, DBIDRange ids, int dim) {
+    super();
+    this.name = name;
+    this.type = type;
+    this.ids = ids;
+    this.dim = dim;
+    int s = 0;
+    while(s < 30 && ((long) dim << (s + 1)) <= MAX_BLOCK) {
+      ++s;
+    }
+    this.shift = s;
+  }
+
+  /**
+   * Number of blocks needed.
+   *
+   * @return Number of blocks
+   */
+  protected int numBlocks() {
+    return (ids.size() + (1 << shift) - 1) >>> shift;
+  }
+
+  /**
+   * Number of values stored in a block.
+   *
+   * @param b Block number
+   * @return Block length
+   */
+  protected int blockLength(int b) {
+    return Math.min(1 << shift, ids.size() - (b << shift)) * dim;
+  }
+
+  /**
+   * Store a data column in a dense vector relation, if possible.
+   *
+   * @param name Relation name
+   * @param type Type information
+   * @param ids DBIDs
+   * @param data Data column, in the order of the DBIDs
+   * @return Relation, or {@code null} if the data is not suitable
+   */
+  public static DenseVectorRelation make(String name, SimpleTypeInformation<?> type, DBIDs ids, List<?> data) {
+    return make(name, type, ids, data, Precision.DOUBLE);
+  }
+
+  /**
+   * Store a data column in a dense vector relation, if possible.
+   * <p>
+   * This requires the DBIDs to be a range, and the data to be of type
+   * {@link DoubleVector} with fixed dimensionality.
+   *
+   * @param name Relation name
+   * @param type Type information
+   * @param ids DBIDs
+   * @param data Data column, in the order of the DBIDs
+   * @param precision Storage precision
+   * @return Relation, or {@code null} if the data is not suitable
+   */
+  @SuppressWarnings("unchecked")
+  public static DenseVectorRelation make(String name, SimpleTypeInformation<?> type, DBIDs ids, List<?> data, Precision precision) {
+    if(!(ids instanceof DBIDRange) || !(type instanceof VectorFieldTypeInformation) || type.getRestrictionClass() != DoubleVector.class) {
+      return null;
+    }
+    VectorFieldTypeInformation<?> vtype = (VectorFieldTypeInformation<?>) type;
+    if(vtype.mindim() != vtype.maxdim() || data.size() != ids.size()) {
+      return null;
+    }
+    final int dim = vtype.getDimensionality();
+    for(Object o : data) {
+      if(!(o instanceof NumberVector) || ((NumberVector) o).getDimensionality() != dim) {
+        return null;
+      }
+    }
+    final SimpleTypeInformation<DoubleVector> dtype = (SimpleTypeInformation<DoubleVector>) type;
+    final DenseVectorRelation rel;
+    switch(precision){
+    case FLOAT:
+      rel = new FloatStorage(name, dtype, (DBIDRange) ids, dim);
+      break;
+    case BYTE:
+      rel = new ByteStorage(name, dtype, (DBIDRange) ids, dim, (List<? extends NumberVector>) data);
+      break;
+    default:
+      rel = new DoubleStorage(name, dtype, (DBIDRange) ids, dim);
+    }
+    for(int i = 0; i < data.size(); i++) {
+      rel.set(i, (NumberVector) data.get(i));
+    }
+    return rel;
+  }
+
+  /**
+   * Set the vector of an object.
+   *
+   * @param id Object
+   * @param vec New vector
+   */
+  public void set(DBIDRef id, NumberVector vec) {
+    assert vec.getDimensionality() == dim : "Dimensionality does not match.";
+    set(ids.getOffset(id), vec);
+  }
+
+  /**
+   * Set the vector at the given offset.
+   *
+   * @param off Offset
+   * @param vec New vector
+   */
+  protected abstract void set(int off, NumberVector vec);
+
+  /**
+   * Compute the squared Euclidean distance of a stored vector to a query
+   * vector, reading the backing array directly.
+   *
+   * @param id Object
+   * @param query Query vector, of the same dimensionality
+   * @return Squared Euclidean distance
+   */
+  public abstract double squaredEuclidean(DBIDRef id, double[] query);
+
+  /**
+   * Get the dimensionality of the stored vectors.
+   *
+   * @return Dimensionality
+   */
+  public int getDimensionality() {
+    return dim;
+  }
+
+  @Override
+  public SimpleTypeInformation<DoubleVector> getDataTypeInformation() {
+    return type;
+  }
+
+  @Override
+  public DBIDRange getDBIDs() {
+    return ids;
+  }
+
+  @Override
+  public DBIDIter iterDBIDs() {
+    return ids.iter();
+  }
+
+  @Override
+  public int size() {
+    return ids.size();
+  }
+
+  @Override
+  public String getLongName() {
+    return name != null ? name : type.toString();
+  }
+
+  /**
+   * Storage in double precision.
+   *
+   * @author Erich Schubert
+   */
+  private static class DoubleStorage extends DenseVectorRelation {
+    /**
+     * The data blocks.
+     */
+    private final double[][] blocks;
+
+    /**
+     * Constructor.
+     *
+     * @param name Relation name
+     * @param type Type information
+     * @param ids DBIDs
+     * @param dim Dimensionality
+     */
+    private DoubleStorage(String name, SimpleTypeInformation<DoubleVector> type, DBIDRange ids, int dim) {
+      super(name, type, ids, dim);
+      this.blocks = new double[numBlocks()][];
+      for(int i = 0; i < blocks.length; i++) {
+        blocks[i] = new double[blockLength(i)];
+      }
+    }
+
+    @Override
+    protected void set(int off, NumberVector vec) {
+      final double[] block = blocks[off >>> shift];
+      for(int d = 0, j = (off & ((1 << shift) - 1)) * dim; d < dim; d++, j++) {
+        block[j] = vec.doubleValue(d);
+      }
+    }
+
+    @Override
+    public DoubleVector get(DBIDRef id) {
+      final int off = ids.getOffset(id);
+      return new DoubleView(blocks[off >>> shift], (off & ((1 << shift) - 1)) * dim, dim);
+    }
+
+    @Override
+    public double squaredEuclidean(DBIDRef id, double[] query) {
+      final int off = ids.getOffset(id);
+      final double[] block = blocks[off >>> shift];
+      double agg = 0.;
+      for(int d = 0, j = (off & ((1 << shift) - 1)) * dim; d < dim; d++, j++) {
+        final double delta = block[j] - query[d];
+        agg += delta * delta;
+      }
+      return agg;
+    }
+  }
+
+  /**
+   * Storage in single precision.
+   *
+   * @author Erich Schubert
+   */
+  private static class FloatStorage extends DenseVectorRelation {
+    /**
+     * The data blocks.
+     */
+    private final float[][] blocks;
+
+    /**
+     * Constructor.
+     *
+     * @param name Relation name
+     * @param type Type information
+     * @param ids DBIDs
+     * @param dim Dimensionality
+     */
+    private FloatStorage(String name, SimpleTypeInformation<DoubleVector> type, DBIDRange ids, int dim) {
+      super(name, type, ids, dim);
+      this.blocks = new float[numBlocks()][];
+      for(int i = 0; i < blocks.length; i++) {
+        blocks[i] = new float[blockLength(i)];
+      }
+    }
+
+    @Override
+    protected void set(int off, NumberVector vec) {
+      final float[] block = blocks[off >>> shift];
+      for(int d = 0, j = (off & ((1 << shift) - 1)) * dim; d < dim; d++, j++) {
+        block[j] = vec.floatValue(d);
+      }
+    }
+
+    @Override
+    public DoubleVector get(DBIDRef id) {
+      final int off = ids.getOffset(id);
+      return new FloatView(blocks[off >>> shift], (off & ((1 << shift) - 1)) * dim, dim);
+    }
+
+    @Override
+    public double squaredEuclidean(DBIDRef id, double[] query) {
+      final int off = ids.getOffset(id);
+      final float[] block = blocks[off >>> shift];
+      double agg = 0.;
+      for(int d = 0, j = (off & ((1 << shift) - 1)) * dim; d < dim; d++, j++) {
+        final double delta = block[j] - query[d];
+        agg += delta * delta;
+      }
+      return agg;
+    }
+  }
+
+  /**
+   * Storage quantized to 8 bit, using a linear scale for each dimension.
+   *
+   * @author Erich Schubert
+   */
+  private static class ByteStorage extends DenseVectorRelation {
+    /**
+     * The data blocks.
+     */
+    private final byte[][] blocks;
+
+    /**
+     * Minimum and step size of each dimension.
+     */
+    private final double[] min, scale;
+
+    /**
+     * Constructor.
+     *
+     * @param name Relation name
+     * @param type Type information
+     * @param ids DBIDs
+     * @param dim Dimensionality
+     * @param data Data, to choose the quantization
+     */
+    private ByteStorage(String name, SimpleTypeInformation<DoubleVector> type, DBIDRange ids, int dim, List<? extends NumberVector> data) {
+      super(name, type, ids, dim);
+      this.blocks = new byte[numBlocks()][];
+      for(int i = 0; i < blocks.length; i++) {
+        blocks[i] = new byte[blockLength(i)];
+      }
+      this.min = new double[dim];
+      this.scale = new double[dim];
+      for(int d = 0; d < dim; d++) {
+        double mi = Double.POSITIVE_INFINITY, ma = Double.NEGATIVE_INFINITY;
+        for(NumberVector vec : data) {
+          final double v = vec.doubleValue(d);
+          mi = v < mi ? v : mi;
+          ma = v > ma ? v : ma;
+        }
+        min[d] = mi < Double.POSITIVE_INFINITY ? mi : 0.;
+        scale[d] = ma > mi ? (ma - mi) / 255. : 0.;
+      }
+    }
+
+    @Override
+    protected void set(int off, NumberVector vec) {
+      final byte[] block = blocks[off >>> shift];
+      for(int d = 0, j = (off & ((1 << shift) - 1)) * dim; d < dim; d++, j++) {
+        final long q = scale[d] > 0 ? Math.round((vec.doubleValue(d) - min[d]) / scale[d]) : 0;
+        block[j] = (byte) (q < 0 ? 0 : q > 255 ? 255 : q);
+      }
+    }
+
+    @Override
+    public DoubleVector get(DBIDRef id) {
+      final int off = ids.getOffset(id);
+      return new ByteView(blocks[off >>> shift], (off & ((1 << shift) - 1)) * dim, min, scale);
+    }
+
+    @Override
+    public double squaredEuclidean(DBIDRef id, double[] query) {
+      final int off = ids.getOffset(id);
+      final byte[] block = blocks[off >>> shift];
+      double agg = 0.;
+      for(int d = 0, j = (off & ((1 << shift) - 1)) * dim; d < dim; d++, j++) {
+        final double delta = min[d] + scale[d] * (block[j] & 0xFF) - query[d];
+        agg += delta * delta;
+      }
+      return agg;
+    }
+  }
+
+  /**
+   * View of a single vector in the backing array.
+   *
+   * @author Erich Schubert
+   */
+  private abstract static class View extends DoubleVector {
+    /**
+     * Start offset and dimensionality.
+     */
+    protected final int start, dim;
+
+    /**
+     * Constructor.
+     *
+     * @param start Start offset
+     * @param dim Dimensionality
+     */
+    protected View(int start, int dim) {
+      super();
+      this.start = start;
+      this.dim = dim;
+    }
+
+    @Override
+    public int getDimensionality() {
+      return dim;
+    }
+
+    @Override
+    public long longValue(int dimension) {
+      return (long) doubleValue(dimension);
+    }
+
+    @Override
+    public double[] toArray() {
+      double[] ret = new double[dim];
+      for(int i = 0; i < dim; i++) {
+        ret[i] = doubleValue(i);
+      }
+      return ret;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder featureLine = new StringBuilder();
+      for(int i = 0; i < dim; i++) {
+        featureLine.append(doubleValue(i));
+        if(i + 1 < dim) {
+          featureLine.append(ATTRIBUTE_SEPARATOR);
+        }
+      }
+      return featureLine.toString();
+    }
+  }
+
+  /**
+   * View of a vector stored in double precision.
+   *
+   * @author Erich Schubert
+   */
+  private static class DoubleView extends View {
+    /**
+     * Backing array.
+     */
+    private final double[] data;
+
+    /**
+     * Constructor.
+     *
+     * @param data Backing array
+     * @param start Start offset
+     * @param dim Dimensionality
+     */
+    private DoubleView(double[] data, int start, int dim) {
+      super(start, dim);
+      this.data = data;
+    }
+
+    @Override
+    public double doubleValue(int dimension) {
+      assert dimension < dim;
+      return data[start + dimension];
+    }
+
+    @Override
+    public double[] toArray() {
+      double[] ret = new double[dim];
+      System.arraycopy(data, start, ret, 0, dim);
+      return ret;
+    }
+
+    @Override
+    public double[] getRawValues() {
+      return data;
+    }
+
+    @Override
+    public int getRawOffset() {
+      return start;
+    }
+  }
+
+  /**
+   * View of a vector stored in single precision.
+   *
+   * @author Erich Schubert
+   */
+  private static class FloatView extends View {
+    /**
+     * Backing array.
+     */
+    private final float[] data;
+
+    /**
+     * Constructor.
+     *
+     * @param data Backing array
+     * @param start Start offset
+     * @param dim Dimensionality
+     */
+    private FloatView(float[] data, int start, int dim) {
+      super(start, dim);
+      this.data = data;
+    }
+
+    @Override
+    public double doubleValue(int dimension) {
+      assert dimension < dim;
+      return data[start + dimension];
+    }
+
+    @Override
+    public float floatValue(int dimension) {
+      assert dimension < dim;
+      return data[start + dimension];
+    }
+  }
+
+  /**
+   * View of a quantized vector.
+   *
+   * @author Erich Schubert
+   */
+  private static class ByteView extends View {
+    /**
+     * Backing array.
+     */
+    private final byte[] data;
+
+    /**
+     * Minimum and step size of each dimension.
+     */
+    private final double[] min, scale;
+
+    /**
+     * Constructor.
+     *
+     * @param data Backing array
+     * @param start Start offset
+     * @param min Minimum of each dimension
+     * @param scale Step size of each dimension
+     */
+    private ByteView(byte[] data, int start, double[] min, double[] scale) {
+      super(start, min.length);
+      this.data = data;
+      this.min = min;
+      this.scale = scale;
+    }
+
+    @Override
+    public double doubleValue(int dimension) {
+      assert dimension < dim;
+      return min[dimension] + scale[dimension] * (data[start + dimension] & 0xFF);
+    }
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.database.ids.*;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.MaterializedRelation;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.result.Metadata;
+
+/**
+ * Unit test for the {@link QueryResultCache}.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class QueryResultCacheTest {
+  @Test
+  public void testKNN() {
+    MaterializedRelation<DoubleVector> relation = randomRelation(500, 3);
+    KNNSearcher<DBIDRef> lin = new QueryBuilder<>(relation, EuclideanDistance.STATIC).linearOnly().kNNByDBID(20);
+    int[] calls = new int[1];
+    KNNSearcher<DBIDRef> q = new QueryResultCache(1L << 20).kNNByDBID(EuclideanDistance.STATIC, false, (id, k) -> {
+      calls[0]++;
+      return lin.getKNN(id, k);
+    });
+    DBIDIter it = relation.iterDBIDs();
+    KNNList first = q.getKNN(it, 10);
+    assertSame("Not cached", first, q.getKNN(it, 10));
+    assertSameDistances(lin.getKNN(it, 5), q.getKNN(it, 5));
+    assertEquals("Smaller k not served from cache", 1, calls[0]);
+    assertSameDistances(lin.getKNN(it, 20), q.getKNN(it, 20));
+    assertEquals("Larger k served from cache", 2, calls[0]);
+    assertSameDistances(lin.getKNN(it, 15), q.getKNN(it, 15));
+    assertEquals("Smaller k not served from cache", 2, calls[0]);
+  }
+
+  @Test
+  public void testRange() {
+    MaterializedRelation<DoubleVector> relation = randomRelation(500, 3);
+    RangeSearcher<DBIDRef> lin = new QueryBuilder<>(relation, EuclideanDistance.STATIC).linearOnly().rangeByDBID(0.3);
+    int[] calls = new int[1];
+    RangeSearcher<DBIDRef> q = new QueryResultCache(1L << 20).rangeByDBID(EuclideanDistance.STATIC, false, (id, range, result) -> {
+      calls[0]++;
+      return lin.getRange(id, range, result);
+    });
+    DBIDIter it = relation.iterDBIDs();
+    for(double range : new double[] { 0.2, 0.2, 0.1, 0.3, 0.25 }) {
+      ModifiableDoubleDBIDList expect = lin.getRange(it, range, DBIDUtil.newDistanceDBIDList());
+      expect.sort();
+      assertSameDistances(expect, q.getRange(it, range, DBIDUtil.newDistanceDBIDList()));
+    }
+    assertEquals("Number of cache misses", 2, calls[0]);
+  }
+
+  @Test
+  public void testEviction() {
+    MaterializedRelation<DoubleVector> relation = randomRelation(500, 3);
+    KNNSearcher<DBIDRef> lin = new QueryBuilder<>(relation, EuclideanDistance.STATIC).linearOnly().kNNByDBID(10);
+    int[] calls = new int[1];
+    // Budget for only a few results:
+    KNNSearcher<DBIDRef> q = new QueryResultCache(1000).kNNByDBID(EuclideanDistance.STATIC, false, (id, k) -> {
+      calls[0]++;
+      return lin.getKNN(id, k);
+    });
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      assertSameDistances(lin.getKNN(it, 10), q.getKNN(it, 10));
+    }
+    DBIDIter it = relation.iterDBIDs();
+    q.getKNN(it, 10);
+    assertEquals("Least recently used entry not evicted", relation.size() + 1, calls[0]);
+  }
+
+  @Test
+  public void testQueryBuilder() {
+    MaterializedRelation<DoubleVector> relation = randomRelation(500, 3);
+    KNNSearcher<DBIDRef> lin = new QueryBuilder<>(relation, EuclideanDistance.STATIC).linearOnly().kNNByDBID(10);
+    Metadata.hierarchyOf(relation).addChild(new QueryResultCache(1L << 20));
+    KNNSearcher<DBIDRef> q = new QueryBuilder<>(relation, EuclideanDistance.STATIC).kNNByDBID(10);
+    DBIDIter it = relation.iterDBIDs();
+    KNNList first = q.getKNN(it, 10);
+    assertSameDistances(lin.getKNN(it, 10), first);
+    // Shared by a second query builder:
+    assertSame("Cache not shared", first, new QueryBuilder<>(relation, EuclideanDistance.STATIC).kNNByDBID(10).getKNN(it, 10));
+  }
+
+  @Test
+  public void testSegments() {
+    MaterializedRelation<DoubleVector> relation = randomRelation(500, 3);
+    KNNSearcher<DBIDRef> lin = new QueryBuilder<>(relation, EuclideanDistance.STATIC).linearOnly().kNNByDBID(10);
+    int[] calls = new int[1];
+    // Large enough to be split into segments:
+    KNNSearcher<DBIDRef> q = new QueryResultCache(1L << 26).kNNByDBID(EuclideanDistance.STATIC, false, (id, k) -> {
+      calls[0]++;
+      return lin.getKNN(id, k);
+    });
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      assertSameDistances(lin.getKNN(it, 10), q.getKNN(it, 10));
+    }
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      assertSameDistances(lin.getKNN(it, 5), q.getKNN(it, 5));
+    }
+    assertEquals("Not served from cache", relation.size(), calls[0]);
+  }
+
+  /**
+   * Compare the distances of two result lists.
+   *
+   * @param expect Expected result
+   * @param result Actual result
+   */
+  private static void assertSameDistances(DoubleDBIDList expect, DoubleDBIDList result) {
+    assertEquals("Result size", expect.size(), result.size());
+    for(DoubleDBIDListIter e = expect.iter(), r = result.iter(); e.valid(); e.advance(), r.advance()) {
+      assertEquals("Distance", e.doubleValue(), r.doubleValue(), 0.);
+    }
+  }
+
+  /**
+   * Generate a random relation.
+   *
+   * @param n Size
+   * @param dim Dimensionality
+   * @return Relation
+   */
+  private static MaterializedRelation<DoubleVector> randomRelation(int n, int dim) {
+    Random rnd = new Random(0L);
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(n);
+    MaterializedRelation<DoubleVector> relation = new MaterializedRelation<>(new VectorFieldTypeInformation<>(DoubleVector.FACTORY, dim), ids);
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      double[] v = new double[dim];
+      for(int d = 0; d < dim; d++) {
+        v[d] = rnd.nextDouble();
+      }
+      relation.insert(it, DoubleVector.wrap(v));
+    }
+    return relation;
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.query.distance;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
+import elki.database.ids.*;
+import elki.database.relation.MaterializedRelation;
+import elki.database.relation.Relation;
+import elki.distance.CosineDistance;
+import elki.distance.NumberVectorDistance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.LPNormDistance;
+import elki.distance.minkowski.ManhattanDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.parallel.ParallelCore;
+
+/**
+ * Test the distance matrix computation.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class DistanceMatrixBuilderTest {
+  /**
+   * Distances to test, with and without array kernels.
+   */
+  private static final List<NumberVectorDistance<? super NumberVector>> DISTANCES = Arrays.asList( //
+      EuclideanDistance.STATIC, SquaredEuclideanDistance.STATIC, ManhattanDistance.STATIC, //
+      CosineDistance.STATIC, new LPNormDistance(3));
+
+  @Test
+  public void testMatrix() {
+    Random rnd = new Random(0L);
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(300);
+    WritableDataStore<NumberVector> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, NumberVector.class);
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      double[] v = new double[100];
+      for(int d = 0; d < v.length; d++) {
+        v[d] = rnd.nextGaussian();
+      }
+      store.put(it, new DoubleVector(v));
+    }
+    Relation<NumberVector> rel = new MaterializedRelation<>(null, TypeUtil.NUMBER_VECTOR_FIELD, ids, store);
+    // Use a shuffled order, as used for the matrix paradigm:
+    ArrayModifiableDBIDs order = DBIDUtil.newArray(ids);
+    DBIDUtil.randomShuffle(order, rnd);
+    double[] matrix = new double[DistanceMatrixBuilder.triangleSize(order.size())];
+    for(NumberVectorDistance<? super NumberVector> dist : DISTANCES) {
+      PrimitiveDistanceQuery<NumberVector> dq = new PrimitiveDistanceQuery<>(rel, dist);
+      Arrays.fill(matrix, Double.NaN);
+      DistanceMatrixBuilder.build(dq, order, matrix);
+      DBIDArrayIter ix = order.iter(), iy = order.iter();
+      int pos = 0;
+      for(; ix.valid(); ix.advance()) {
+        for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
+          assertEquals(dist.toString(), dq.distance(ix, iy), matrix[pos++], 0.);
+        }
+      }
+      assertEquals(matrix.length, pos);
+      // The parallel computation must produce the same matrix:
+      double[] pmatrix = new double[matrix.length];
+      DistanceMatrixBuilder.build(dq, order, pmatrix, new ParallelCore(4, false), null, null);
+      assertArrayEquals(dist.toString(), matrix, pmatrix, 0.);
+    }
+  }
+}
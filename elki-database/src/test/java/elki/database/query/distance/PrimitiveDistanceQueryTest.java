@@ -0,0 +1,129 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.query.distance;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.data.FloatVector;
+import elki.data.NumberVector;
+import elki.data.SparseDoubleVector;
+import elki.data.SparseFloatVector;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
+import elki.database.ids.*;
+import elki.database.query.knn.LinearScanPrimitiveKNNByObject;
+import elki.database.relation.MaterializedRelation;
+import elki.database.relation.Relation;
+import elki.distance.CosineDistance;
+import elki.distance.MahalanobisDistance;
+import elki.distance.NumberVectorDistance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.ManhattanDistance;
+import elki.distance.minkowski.MaximumDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+
+/**
+ * Test the batch distance computations of primitive distance queries.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class PrimitiveDistanceQueryTest {
+  /**
+   * Distances to test.
+   */
+  private static final List<NumberVectorDistance<? super NumberVector>> DISTANCES = Arrays.asList( //
+      EuclideanDistance.STATIC, SquaredEuclideanDistance.STATIC, //
+      ManhattanDistance.STATIC, MaximumDistance.STATIC, CosineDistance.STATIC, //
+      new MahalanobisDistance(new double[][] { { 2, 1, 0 }, { 1, 2, 0 }, { 0, 0, 1 } }));
+
+  @Test
+  public void testBatchDistances() {
+    Random rnd = new Random(0L);
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(1000);
+    WritableDataStore<NumberVector> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, NumberVector.class);
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      double[] v = { rnd.nextGaussian(), rnd.nextGaussian(), rnd.nextGaussian() };
+      // Mix array-backed and other vectors, to exercise the fallback.
+      store.put(it, rnd.nextInt(10) > 0 ? new DoubleVector(v) : FloatVector.FACTORY.newNumberVector(v));
+    }
+    Relation<NumberVector> rel = new MaterializedRelation<>(null, TypeUtil.NUMBER_VECTOR_FIELD, ids, store);
+    ArrayModifiableDBIDs cands = DBIDUtil.newArray(ids);
+    DBIDUtil.randomShuffle(cands, rnd);
+    cands.remove(0);
+    double[] out = new double[cands.size()];
+    NumberVector query = new DoubleVector(new double[] { 0.1, -0.2, 0.3 });
+    for(NumberVectorDistance<? super NumberVector> dist : DISTANCES) {
+      PrimitiveDistanceQuery<NumberVector> dq = new PrimitiveDistanceQuery<>(rel, dist);
+      dq.distances(query, cands, out);
+      int i = 0;
+      for(DBIDIter it = cands.iter(); it.valid(); it.advance(), i++) {
+        assertEquals(dist.toString(), dq.distance(query, it), out[i], 0.);
+      }
+      // The blocked linear scan must give the same results as sorting.
+      KNNList knn = new LinearScanPrimitiveKNNByObject<>(dq).getKNN(query, 10);
+      ModifiableDoubleDBIDList all = DBIDUtil.newDistanceDBIDList(ids.size());
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        all.add(dq.distance(query, it), it);
+      }
+      all.sort();
+      DoubleDBIDListIter a = all.iter();
+      for(DoubleDBIDListIter b = knn.iter(); b.valid(); b.advance(), a.advance()) {
+        assertEquals(dist.toString(), a.doubleValue(), b.doubleValue(), 0.);
+      }
+    }
+  }
+
+  @Test
+  public void testBatchSparseCosine() {
+    Random rnd = new Random(0L);
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(100);
+    WritableDataStore<NumberVector> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, NumberVector.class);
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      double[] v = new double[100];
+      for(int j = 0; j < 10; j++) {
+        v[rnd.nextInt(v.length)] = rnd.nextDouble();
+      }
+      // Mix vector types, to exercise the fallback.
+      store.put(it, rnd.nextInt(5) > 0 ? new SparseDoubleVector(v) : SparseFloatVector.FACTORY.newNumberVector(v));
+    }
+    Relation<NumberVector> rel = new MaterializedRelation<>(null, TypeUtil.NUMBER_VECTOR_VARIABLE_LENGTH, ids, store);
+    PrimitiveDistanceQuery<NumberVector> dq = new PrimitiveDistanceQuery<>(rel, CosineDistance.STATIC);
+    double[] out = new double[ids.size()];
+    for(DBIDIter q = ids.iter(); q.valid(); q.advance()) {
+      final NumberVector query = rel.get(q);
+      dq.distances(query, ids, out);
+      int i = 0;
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance(), i++) {
+        assertEquals(dq.distance(query, it), out[i], 0.);
+      }
+    }
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.relation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.StaticArrayDatabase;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DoubleDBIDList;
+import elki.database.ids.DoubleDBIDListIter;
+import elki.database.ids.KNNList;
+import elki.database.query.distance.PrimitiveDistanceQuery;
+import elki.database.query.knn.LinearScanBlockedKNNJoin;
+import elki.database.query.knn.LinearScanEuclideanKNNByObject;
+import elki.database.query.range.LinearScanEuclideanRangeByObject;
+import elki.datasource.ArrayAdapterDatabaseConnection;
+import elki.distance.ArrayKernels;
+import elki.distance.CosineDistance;
+import elki.distance.NumberVectorDistance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.ManhattanDistance;
+import elki.distance.minkowski.MaximumDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.parallel.ParallelCore;
+
+/**
+ * Unit test for the dense vector relation, and the linear scans using it.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class DenseVectorRelationTest {
+  @Test
+  public void testDouble() {
+    testPrecision(DenseVectorRelation.Precision.DOUBLE, 0.);
+  }
+
+  @Test
+  public void testFloat() {
+    testPrecision(DenseVectorRelation.Precision.FLOAT, 1e-6);
+  }
+
+  @Test
+  public void testByte() {
+    testPrecision(DenseVectorRelation.Precision.BYTE, 0.5 * 9 / 255 + 1e-15);
+  }
+
+  @Test
+  public void testKernels() {
+    Random rnd = new Random(0L);
+    double[][] data = new double[100][];
+    for(int i = 0; i < data.length; i++) {
+      data[i] = new double[] { rnd.nextGaussian(), rnd.nextGaussian(), rnd.nextGaussian(), rnd.nextGaussian(), rnd.nextGaussian() };
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    assertTrue("Dense relation not used.", rel instanceof DenseVectorRelation);
+    int i = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance(), i++) {
+      DoubleVector v = rel.get(it);
+      double[] a = ArrayKernels.doubleArray(v);
+      assertNotNull("Array kernels not applicable.", a);
+      for(int d = 0; d < data[i].length; d++) {
+        assertEquals("Value differs", data[i][d], a[ArrayKernels.doubleOffset(v) + d], 0.);
+      }
+    }
+    NumberVectorDistance<?>[] distances = { EuclideanDistance.STATIC, SquaredEuclideanDistance.STATIC, //
+        ManhattanDistance.STATIC, MaximumDistance.STATIC, CosineDistance.STATIC };
+    double[] out = new double[rel.size()];
+    for(NumberVectorDistance<?> dist : distances) {
+      for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+        DoubleVector q = rel.get(it), qref = new DoubleVector(q.toArray());
+        dist.distances(q, rel, DBIDUtil.ensureArray(rel.getDBIDs()), out);
+        i = 0;
+        for(DBIDIter it2 = rel.iterDBIDs(); it2.valid(); it2.advance(), i++) {
+          final double expected = dist.distance(qref, new DoubleVector(data[i]));
+          assertEquals(dist.toString(), expected, dist.distance(q, rel.get(it2)), 0.);
+          assertEquals(dist.toString(), expected, out[i], 0.);
+        }
+      }
+    }
+  }
+
+  /**
+   * Load random data with the given precision, and compare the linear scans.
+   *
+   * @param precision Storage precision
+   * @param tol Tolerance for the stored values
+   */
+  private void testPrecision(DenseVectorRelation.Precision precision, double tol) {
+    Random rnd = new Random(0L);
+    double[][] data = new double[500][];
+    for(int i = 0; i < data.length; i++) {
+      data[i] = new double[] { rnd.nextDouble(), rnd.nextInt(10), rnd.nextDouble() };
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null, precision);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    assertTrue("Dense relation not used.", rel instanceof DenseVectorRelation);
+
+    // Reference relation, with one object per vector:
+    WritableDataStore<DoubleVector> store = DataStoreUtil.makeStorage(rel.getDBIDs(), DataStoreFactory.HINT_DB, DoubleVector.class);
+    int i = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance(), i++) {
+      NumberVector v = rel.get(it);
+      assertEquals("Dimensionality", data[i].length, v.getDimensionality());
+      for(int d = 0; d < data[i].length; d++) {
+        assertEquals("Value differs", data[i][d], v.doubleValue(d), tol);
+      }
+      store.put(it, new DoubleVector(v.toArray()));
+    }
+    Relation<DoubleVector> ref = new MaterializedRelation<>(null, rel.getDataTypeInformation(), rel.getDBIDs(), store);
+
+    PrimitiveDistanceQuery<DoubleVector> dq = new PrimitiveDistanceQuery<>(rel, EuclideanDistance.STATIC);
+    PrimitiveDistanceQuery<DoubleVector> rq = new PrimitiveDistanceQuery<>(ref, EuclideanDistance.STATIC);
+    LinearScanEuclideanKNNByObject<DoubleVector> dknn = new LinearScanEuclideanKNNByObject<>(dq);
+    LinearScanEuclideanKNNByObject<DoubleVector> rknn = new LinearScanEuclideanKNNByObject<>(rq);
+    LinearScanEuclideanRangeByObject<DoubleVector> drange = new LinearScanEuclideanRangeByObject<>(dq);
+    LinearScanEuclideanRangeByObject<DoubleVector> rrange = new LinearScanEuclideanRangeByObject<>(rq);
+    WritableDataStore<KNNList> djoin = LinearScanBlockedKNNJoin.run(ParallelCore.getCore(), dq, rel.getDBIDs(), 10);
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      DoubleVector q = ref.get(it);
+      assertSameList(rknn.getKNN(q, 10), dknn.getKNN(q, 10));
+      assertSameList(rknn.getKNN(q, 10), djoin.get(it));
+      assertSameList(rrange.getRange(q, 0.2), drange.getRange(q, 0.2));
+    }
+  }
+
+  /**
+   * Assert that two result lists are identical.
+   *
+   * @param expected Expected result
+   * @param actual Actual result
+   */
+  private static void assertSameList(DoubleDBIDList expected, DoubleDBIDList actual) {
+    assertEquals("Result size differs", expected.size(), actual.size());
+    for(DoubleDBIDListIter a = expected.iter(), b = actual.iter(); a.valid(); a.advance(), b.advance()) {
+      assertEquals("Distance differs", a.doubleValue(), b.doubleValue(), 0.);
+      assertEquals("Object differs", a.internalGetIndex(), b.internalGetIndex());
+    }
+  }
+}
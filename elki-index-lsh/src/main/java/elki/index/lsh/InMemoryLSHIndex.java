@@ -24,15 +24,15 @@ import java.util.ArrayList;
 
 import elki.data.type.TypeInformation;
 import elki.database.ids.*;
+import elki.database.query.PrioritySearcher;
 import elki.database.query.QueryBuilder;
 import elki.database.query.distance.DistanceQuery;
 import elki.database.query.knn.KNNSearcher;
 import elki.database.query.range.RangeSearcher;
 import elki.database.relation.Relation;
 import elki.index.AbstractRefiningIndex;
+import elki.index.DistancePriorityIndex;
 import elki.index.IndexFactory;
-import elki.index.KNNIndex;
-import elki.index.RangeIndex;
 import elki.index.lsh.hashfamilies.LocalitySensitiveHashFunctionFamily;
 import elki.index.lsh.hashfunctions.LocalitySensitiveHashFunction;
 import elki.logging.Logging;
@@ -110,7 +110,7 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
    *
    * @has - - - LocalitySensitiveHashFunction
    */
-  public class Instance extends AbstractRefiningIndex<V> implements KNNIndex<V>, RangeIndex<V> {
+  public class Instance extends AbstractRefiningIndex<V> implements DistancePriorityIndex<V> {
     /**
      * Hash functions to use.
      */
@@ -207,10 +207,17 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
     @Override
     public RangeSearcher<V> rangeByObject(DistanceQuery<V> distanceQuery, double maxradius, int flags) {
       return (flags & QueryBuilder.FLAG_EXACT_ONLY) == 0 && // approximate
-          !family.isCompatible(distanceQuery.getDistance()) ? // compatible
+          family.isCompatible(distanceQuery.getDistance()) ? // compatible
               new LSHRangeQuery(distanceQuery) : null;
     }
 
+    @Override
+    public PrioritySearcher<V> priorityByObject(DistanceQuery<V> distanceQuery, double maxradius, int flags) {
+      return (flags & QueryBuilder.FLAG_EXACT_ONLY) == 0 && // approximate
+          family.isCompatible(distanceQuery.getDistance()) ? // compatible
+              new LSHPrioritySearcher(distanceQuery) : null;
+    }
+
     /**
      * Get the candidates: points which have at least one hash bucket in common.
      * 
@@ -297,6 +304,108 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
         return result;
       }
     }
+
+    /**
+     * Class for handling priority search against the LSH index.
+     * <p>
+     * Only the objects that share a hash bucket with the query are returned,
+     * in order of their distance. As LSH does not provide distance bounds, all
+     * candidates are refined when the search starts.
+     *
+     * @author Erich Schubert
+     */
+    protected class LSHPrioritySearcher extends AbstractRefiningQuery implements PrioritySearcher<V> {
+      /**
+       * Candidates, with their distance.
+       */
+      private final ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList();
+
+      /**
+       * Current candidate.
+       */
+      private DoubleDBIDListIter iter = candidates.iter();
+
+      /**
+       * Stopping distance threshold.
+       */
+      private double threshold;
+
+      /**
+       * Constructor.
+       *
+       * @param distanceQuery Distance query
+       */
+      public LSHPrioritySearcher(DistanceQuery<V> distanceQuery) {
+        super(distanceQuery);
+      }
+
+      @Override
+      public PrioritySearcher<V> search(V obj) {
+        threshold = Double.POSITIVE_INFINITY;
+        candidates.clear();
+        DBIDs cands = getCandidates(obj);
+        for(DBIDIter it = cands.iter(); it.valid(); it.advance()) {
+          candidates.add(distanceQuery.distance(obj, it), it);
+        }
+        super.incRefinements(cands.size());
+        candidates.sort();
+        iter = candidates.iter();
+        return this;
+      }
+
+      @Override
+      public PrioritySearcher<V> decreaseCutoff(double threshold) {
+        assert threshold <= this.threshold;
+        this.threshold = threshold;
+        return this;
+      }
+
+      @Override
+      public boolean valid() {
+        return iter.valid() && iter.doubleValue() <= threshold;
+      }
+
+      @Override
+      public PrioritySearcher<V> advance() {
+        iter.advance();
+        return this;
+      }
+
+      @Override
+      public int internalGetIndex() {
+        return iter.internalGetIndex();
+      }
+
+      @Override
+      public double computeExactDistance() {
+        return iter.doubleValue();
+      }
+
+      @Override
+      public double getApproximateDistance() {
+        return iter.doubleValue();
+      }
+
+      @Override
+      public double getApproximateAccuracy() {
+        return 0.;
+      }
+
+      @Override
+      public double getLowerBound() {
+        return iter.doubleValue();
+      }
+
+      @Override
+      public double getUpperBound() {
+        return iter.doubleValue();
+      }
+
+      @Override
+      public double allLowerBound() {
+        return iter.valid() ? iter.doubleValue() : Double.POSITIVE_INFINITY;
+      }
+    }
   }
 
   /**
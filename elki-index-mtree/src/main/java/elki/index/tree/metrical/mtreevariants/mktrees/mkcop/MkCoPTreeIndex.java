@@ -27,15 +27,15 @@ import elki.database.ids.DBID;
 import elki.database.ids.DBIDIter;
 import elki.database.ids.DBIDRef;
 import elki.database.ids.DBIDUtil;
+import elki.database.query.PrioritySearcher;
 import elki.database.query.QueryBuilder;
 import elki.database.query.distance.DistanceQuery;
 import elki.database.query.knn.KNNSearcher;
 import elki.database.query.range.RangeSearcher;
 import elki.database.query.rknn.RKNNSearcher;
 import elki.database.relation.Relation;
-import elki.index.KNNIndex;
+import elki.index.DistancePriorityIndex;
 import elki.index.RKNNIndex;
-import elki.index.RangeIndex;
 import elki.index.tree.metrical.mtreevariants.mktrees.MkTreeSettings;
 import elki.index.tree.metrical.mtreevariants.query.*;
 import elki.persistent.PageFile;
@@ -48,7 +48,7 @@ import elki.persistent.PageFile;
  * 
  * @param <O> Object type
  */
-public class MkCoPTreeIndex<O> extends MkCoPTree<O> implements RangeIndex<O>, KNNIndex<O>, RKNNIndex<O> {
+public class MkCoPTreeIndex<O> extends MkCoPTree<O> implements DistancePriorityIndex<O>, RKNNIndex<O> {
   /**
    * Relation indexed
    */
@@ -119,6 +119,20 @@ public class MkCoPTreeIndex<O> extends MkCoPTree<O> implements RangeIndex<O>, KN
             new MTreeRangeByDBID<>(this, distanceQuery) : null;
   }
 
+  @Override
+  public PrioritySearcher<O> priorityByObject(DistanceQuery<O> distanceQuery, double maxradius, int flags) {
+    return (flags & QueryBuilder.FLAG_PRECOMPUTE) == 0 && //
+        distanceQuery.getRelation() == relation && this.getDistance().equals(distanceQuery.getDistance()) ? //
+            new MTreePrioritySearcher.ByObject<>(this, distanceQuery) : null;
+  }
+
+  @Override
+  public PrioritySearcher<DBIDRef> priorityByDBID(DistanceQuery<O> distanceQuery, double maxradius, int flags) {
+    return (flags & QueryBuilder.FLAG_PRECOMPUTE) == 0 && //
+        distanceQuery.getRelation() == relation && this.getDistance().equals(distanceQuery.getDistance()) ? //
+            new MTreePrioritySearcher.ByDBID<>(this, distanceQuery) : null;
+  }
+
   @Override
   public RKNNSearcher<O> rkNNByObject(DistanceQuery<O> distanceQuery, int maxk, int flags) {
     return null;
@@ -24,15 +24,15 @@ import java.util.ArrayList;
 import java.util.List;
 
 import elki.database.ids.*;
+import elki.database.query.PrioritySearcher;
 import elki.database.query.QueryBuilder;
 import elki.database.query.distance.DistanceQuery;
 import elki.database.query.knn.KNNSearcher;
 import elki.database.query.range.RangeSearcher;
 import elki.database.query.rknn.RKNNSearcher;
 import elki.database.relation.Relation;
-import elki.index.KNNIndex;
+import elki.index.DistancePriorityIndex;
 import elki.index.RKNNIndex;
-import elki.index.RangeIndex;
 import elki.index.tree.metrical.mtreevariants.mktrees.MkTreeSettings;
 import elki.index.tree.metrical.mtreevariants.query.*;
 import elki.persistent.PageFile;
@@ -45,7 +45,7 @@ import elki.persistent.PageFile;
  * 
  * @param <O> Object type
  */
-public class MkTabTreeIndex<O> extends MkTabTree<O> implements RangeIndex<O>, KNNIndex<O>, RKNNIndex<O> {
+public class MkTabTreeIndex<O> extends MkTabTree<O> implements DistancePriorityIndex<O>, RKNNIndex<O> {
   /**
    * The relation indexed.
    */
@@ -130,6 +130,20 @@ public class MkTabTreeIndex<O> extends MkTabTree<O> implements RangeIndex<O>, KN
         new MTreeRangeByDBID<>(this, distanceQuery) : null;
   }
 
+  @Override
+  public PrioritySearcher<O> priorityByObject(DistanceQuery<O> distanceQuery, double maxradius, int flags) {
+    return (flags & QueryBuilder.FLAG_PRECOMPUTE) == 0 && //
+        distanceQuery.getRelation() == relation && this.getDistance().equals(distanceQuery.getDistance()) ? //
+        new MTreePrioritySearcher.ByObject<>(this, distanceQuery) : null;
+  }
+
+  @Override
+  public PrioritySearcher<DBIDRef> priorityByDBID(DistanceQuery<O> distanceQuery, double maxradius, int flags) {
+    return (flags & QueryBuilder.FLAG_PRECOMPUTE) == 0 && //
+        distanceQuery.getRelation() == relation && this.getDistance().equals(distanceQuery.getDistance()) ? //
+        new MTreePrioritySearcher.ByDBID<>(this, distanceQuery) : null;
+  }
+
   @Override
   public RKNNSearcher<O> rkNNByObject(DistanceQuery<O> distanceQuery, int maxk, int flags) {
     return null;
@@ -25,20 +25,21 @@ import java.util.List;
 
 import elki.data.spatial.SpatialComparable;
 import elki.database.ids.*;
+import elki.database.query.PrioritySearcher;
 import elki.database.query.QueryBuilder;
 import elki.database.query.distance.DistanceQuery;
 import elki.database.query.knn.KNNSearcher;
 import elki.database.query.range.RangeSearcher;
 import elki.database.relation.Relation;
 import elki.database.relation.RelationUtil;
+import elki.index.DistancePriorityIndex;
 import elki.index.DynamicIndex;
-import elki.index.KNNIndex;
-import elki.index.RangeIndex;
 import elki.index.tree.metrical.mtreevariants.MTreeEntry;
 import elki.index.tree.metrical.mtreevariants.MTreeLeafEntry;
 import elki.index.tree.metrical.mtreevariants.MTreeSettings;
 import elki.index.tree.metrical.mtreevariants.query.MTreeKNNByDBID;
 import elki.index.tree.metrical.mtreevariants.query.MTreeKNNByObject;
+import elki.index.tree.metrical.mtreevariants.query.MTreePrioritySearcher;
 import elki.index.tree.metrical.mtreevariants.query.MTreeRangeByDBID;
 import elki.index.tree.metrical.mtreevariants.query.MTreeRangeByObject;
 import elki.persistent.PageFile;
@@ -53,7 +54,7 @@ import elki.utilities.io.ByteArrayUtil;
  *
  * @param <O> Object type
  */
-public class MTreeIndex<O> extends MTree<O> implements RangeIndex<O>, KNNIndex<O>, DynamicIndex {
+public class MTreeIndex<O> extends MTree<O> implements DistancePriorityIndex<O>, DynamicIndex {
   /**
    * The relation indexed.
    */
@@ -220,4 +221,18 @@ public class MTreeIndex<O> extends MTree<O> implements RangeIndex<O>, KNNIndex<O
         distanceQuery.getRelation() == relation && this.getDistance().equals(distanceQuery.getDistance()) ? //
         new MTreeRangeByDBID<>(this, distanceQuery) : null;
   }
+
+  @Override
+  public PrioritySearcher<O> priorityByObject(DistanceQuery<O> distanceQuery, double maxradius, int flags) {
+    return (flags & QueryBuilder.FLAG_PRECOMPUTE) == 0 && //
+        distanceQuery.getRelation() == relation && this.getDistance().equals(distanceQuery.getDistance()) ? //
+        new MTreePrioritySearcher.ByObject<>(this, distanceQuery) : null;
+  }
+
+  @Override
+  public PrioritySearcher<DBIDRef> priorityByDBID(DistanceQuery<O> distanceQuery, double maxradius, int flags) {
+    return (flags & QueryBuilder.FLAG_PRECOMPUTE) == 0 && //
+        distanceQuery.getRelation() == relation && this.getDistance().equals(distanceQuery.getDistance()) ? //
+        new MTreePrioritySearcher.ByDBID<>(this, distanceQuery) : null;
+  }
 }
@@ -97,7 +97,7 @@ public class MTreeKNNByDBID<O> implements KNNSearcher<DBIDRef> {
           double d2 = id_p != null ? entry.getParentDistance() : 0.;
           if(Math.abs(d1 - d2) <= d_k + r_or) {
             DBID o_r = entry.getRoutingObjectID();
-            double d3 = distanceQuery.distance(o_r, q);
+            double d3 = distanceQuery.distance(o_r, q, d_k + r_or);
             index.statistics.countDistanceCalculation();
             double d_min = Math.max(d3 - r_or, 0.);
             if(d_min <= d_k) {
@@ -113,7 +113,7 @@ public class MTreeKNNByDBID<O> implements KNNSearcher<DBIDRef> {
           double d2 = id_p != null ? entry.getParentDistance() : 0.;
           if(Math.abs(d1 - d2) <= d_k) {
             DBID o_j = entry.getRoutingObjectID();
-            double d3 = distanceQuery.distance(o_j, q);
+            double d3 = distanceQuery.distance(o_j, q, d_k);
             index.statistics.countDistanceCalculation();
             if(d3 <= d_k) {
               knnList.insert(d3, o_j);
@@ -0,0 +1,295 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.tree.metrical.mtreevariants.query;
+
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DBIDVar;
+import elki.database.query.PrioritySearcher;
+import elki.database.query.distance.DistanceQuery;
+import elki.index.tree.DirectoryEntry;
+import elki.index.tree.metrical.mtreevariants.AbstractMTree;
+import elki.index.tree.metrical.mtreevariants.AbstractMTreeNode;
+import elki.index.tree.metrical.mtreevariants.MTreeEntry;
+import elki.utilities.datastructures.heap.ComparableMinHeap;
+
+/**
+ * Incremental priority search in an M-tree.
+ * <p>
+ * Nodes are expanded in order of their minimum distance to the query, and the
+ * entries of a leaf are returned lazily, skipping those that can be pruned by
+ * the distance to their routing object. Distances to the data objects are only
+ * computed on demand.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @assoc - - - AbstractMTree
+ * @assoc - - - MTreeSearchCandidate
+ *
+ * @param <Q> Query type
+ */
+public abstract class MTreePrioritySearcher<Q> implements PrioritySearcher<Q> {
+  /**
+   * The index to use
+   */
+  protected final AbstractMTree<?, ?, ?, ?> index;
+
+  /**
+   * Stopping distance threshold.
+   */
+  private double threshold = Double.POSITIVE_INFINITY;
+
+  /**
+   * Priority queue of nodes.
+   */
+  private final ComparableMinHeap<MTreeSearchCandidate> pq = new ComparableMinHeap<>();
+
+  /**
+   * Current leaf node.
+   */
+  private AbstractMTreeNode<?, ?, ?> node;
+
+  /**
+   * Current entry within the leaf.
+   */
+  private int childnr;
+
+  /**
+   * Distance of the query to the routing object of the current leaf, or
+   * {@code NaN} at the root.
+   */
+  private double routingDist;
+
+  /**
+   * Minimum distance of the current node.
+   */
+  private double mindist;
+
+  /**
+   * Constructor.
+   *
+   * @param index Index to use
+   */
+  public MTreePrioritySearcher(AbstractMTree<?, ?, ?, ?> index) {
+    super();
+    this.index = index;
+  }
+
+  /**
+   * Compute the distance to the query object.
+   *
+   * @param id Object
+   * @param threshold Threshold; if the distance is larger, any larger value
+   *        may be returned
+   * @return Distance
+   */
+  protected abstract double queryDistance(DBIDRef id, double threshold);
+
+  /**
+   * Start the search.
+   *
+   * @return this
+   */
+  protected PrioritySearcher<Q> doSearch() {
+    threshold = Double.POSITIVE_INFINITY;
+    pq.clear();
+    node = null;
+    mindist = 0.;
+    pq.add(new MTreeSearchCandidate(0., index.getRootID(), null, Double.NaN));
+    return advance(); // Find first
+  }
+
+  @Override
+  public PrioritySearcher<Q> decreaseCutoff(double threshold) {
+    assert threshold <= this.threshold;
+    this.threshold = threshold;
+    return this;
+  }
+
+  @Override
+  public boolean valid() {
+    return node != null && childnr < node.getNumEntries();
+  }
+
+  @Override
+  public PrioritySearcher<Q> advance() {
+    if(node != null) {
+      ++childnr;
+    }
+    do {
+      while(node != null && childnr < node.getNumEntries()) {
+        if(getLowerBound() <= threshold) {
+          return this;
+        }
+        ++childnr; // Pruned
+      }
+    }
+    while(advanceQueue());
+    return this;
+  }
+
+  /**
+   * Expand the next node of the priority heap.
+   *
+   * @return {@code false} if the search is finished
+   */
+  protected boolean advanceQueue() {
+    node = null;
+    if(pq.isEmpty()) {
+      return false;
+    }
+    MTreeSearchCandidate cand = pq.poll();
+    if(cand.mindist > threshold) {
+      pq.clear();
+      return false;
+    }
+    mindist = cand.mindist;
+    AbstractMTreeNode<?, ?, ?> cur = index.getNode(cand.nodeID);
+    final double d1 = cand.routingDistance;
+    if(cur.isLeaf()) {
+      node = cur;
+      childnr = 0;
+      routingDist = d1;
+      return true;
+    }
+    for(int i = 0; i < cur.getNumEntries(); i++) {
+      MTreeEntry entry = cur.getEntry(i);
+      final double r_or = entry.getCoveringRadius();
+      if(d1 == d1 && Math.abs(d1 - entry.getParentDistance()) - r_or > threshold) {
+        continue;
+      }
+      final double d3 = queryDistance(entry.getRoutingObjectID(), threshold + r_or);
+      index.statistics.countDistanceCalculation();
+      final double d_min = Math.max(d3 - r_or, 0.);
+      if(d_min <= threshold) {
+        pq.add(new MTreeSearchCandidate(d_min, ((DirectoryEntry) entry).getPageID(), entry.getRoutingObjectID(), d3));
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public double getLowerBound() {
+    return routingDist == routingDist ? //
+        Math.max(mindist, Math.abs(routingDist - node.getEntry(childnr).getParentDistance())) : mindist;
+  }
+
+  @Override
+  public double allLowerBound() {
+    return mindist;
+  }
+
+  @Override
+  public double computeExactDistance() {
+    assert valid();
+    index.statistics.countDistanceCalculation();
+    return queryDistance(node.getEntry(childnr).getRoutingObjectID(), Double.POSITIVE_INFINITY);
+  }
+
+  @Override
+  public int internalGetIndex() {
+    assert valid();
+    return node.getEntry(childnr).getRoutingObjectID().internalGetIndex();
+  }
+
+  /**
+   * Priority search by query object.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   */
+  public static class ByObject<O> extends MTreePrioritySearcher<O> {
+    /**
+     * Distance query.
+     */
+    private final DistanceQuery<O> distanceQuery;
+
+    /**
+     * Current query object.
+     */
+    private O query;
+
+    /**
+     * Constructor.
+     *
+     * @param index Index to use
+     * @param distanceQuery Distance query
+     */
+    public ByObject(AbstractMTree<O, ?, ?, ?> index, DistanceQuery<O> distanceQuery) {
+      super(index);
+      this.distanceQuery = distanceQuery;
+    }
+
+    @Override
+    public PrioritySearcher<O> search(O query) {
+      this.query = query;
+      return doSearch();
+    }
+
+    @Override
+    protected double queryDistance(DBIDRef id, double threshold) {
+      return distanceQuery.distance(id, query, threshold);
+    }
+  }
+
+  /**
+   * Priority search by query DBID.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   */
+  public static class ByDBID<O> extends MTreePrioritySearcher<DBIDRef> {
+    /**
+     * Distance query.
+     */
+    private final DistanceQuery<O> distanceQuery;
+
+    /**
+     * Current query object.
+     */
+    private final DBIDVar query = DBIDUtil.newVar();
+
+    /**
+     * Constructor.
+     *
+     * @param index Index to use
+     * @param distanceQuery Distance query
+     */
+    public ByDBID(AbstractMTree<O, ?, ?, ?> index, DistanceQuery<O> distanceQuery) {
+      super(index);
+      this.distanceQuery = distanceQuery;
+    }
+
+    @Override
+    public PrioritySearcher<DBIDRef> search(DBIDRef query) {
+      this.query.set(query);
+      return doSearch();
+    }
+
+    @Override
+    protected double queryDistance(DBIDRef id, double threshold) {
+      return distanceQuery.distance(id, query, threshold);
+    }
+  }
+}
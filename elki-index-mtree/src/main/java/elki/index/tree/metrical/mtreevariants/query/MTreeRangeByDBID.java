@@ -86,7 +86,7 @@ public class MTreeRangeByDBID<O> implements RangeSearcher<DBIDRef> {
         if(Math.abs(d1 - d2) <= sum) {
           index.statistics.countDistanceCalculation();
           DBID o_r = entry.getRoutingObjectID();
-          if(distanceQuery.distance(o_r, q) <= sum) {
+          if(distanceQuery.distance(o_r, q, sum) <= sum) {
             doRangeQuery(o_r, index.getNode(((DirectoryEntry) entry).getPageID()), q, r_q, result);
           }
         }
@@ -98,7 +98,7 @@ public class MTreeRangeByDBID<O> implements RangeSearcher<DBIDRef> {
         double d2 = o_p != null ? entry.getParentDistance() : 0.;
         if(Math.abs(d1 - d2) <= r_q) {
           DBID o_j = entry.getRoutingObjectID();
-          double d3 = distanceQuery.distance(o_j, q);
+          double d3 = distanceQuery.distance(o_j, q, r_q);
           index.statistics.countDistanceCalculation();
           if(d3 <= r_q) {
             result.add(d3, o_j);
@@ -26,6 +26,7 @@ import elki.data.DoubleVector;
 import elki.index.AbstractIndexStructureTest;
 import elki.index.tree.metrical.mtreevariants.query.MTreeKNNByDBID;
 import elki.index.tree.metrical.mtreevariants.query.MTreeKNNByObject;
+import elki.index.tree.metrical.mtreevariants.query.MTreePrioritySearcher;
 import elki.index.tree.metrical.mtreevariants.query.MTreeRangeByDBID;
 import elki.index.tree.metrical.mtreevariants.query.MTreeRangeByObject;
 import elki.persistent.AbstractPageFileFactory;
@@ -47,5 +48,6 @@ public class MTreeTest extends AbstractIndexStructureTest {
         .with(AbstractPageFileFactory.Par.PAGE_SIZE_ID, 300).build();
     assertExactEuclidean(factory, MTreeKNNByObject.class, MTreeRangeByObject.class);
     assertSinglePoint(factory, MTreeKNNByDBID.class, MTreeRangeByDBID.class);
+    assertPrioritySearchEuclidean(factory, MTreePrioritySearcher.class);
   }
 }
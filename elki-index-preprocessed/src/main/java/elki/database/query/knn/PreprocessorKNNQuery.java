@@ -22,6 +22,7 @@ package elki.database.query.knn;
 
 import elki.database.ids.DBIDRef;
 import elki.database.ids.KNNList;
+import elki.database.query.PrecomputedQuery;
 import elki.database.relation.Relation;
 import elki.index.preprocessed.knn.AbstractMaterializeKNNPreprocessor;
 import elki.logging.Logging;
@@ -32,7 +33,7 @@ import elki.logging.Logging;
  * @author Erich Schubert
  * @since 0.4.0
  */
-public class PreprocessorKNNQuery implements KNNSearcher<DBIDRef> {
+public class PreprocessorKNNQuery implements KNNSearcher<DBIDRef>, PrecomputedQuery {
   /**
    * Class logger
    */
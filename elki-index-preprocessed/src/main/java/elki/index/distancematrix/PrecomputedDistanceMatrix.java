@@ -24,8 +24,10 @@ import java.lang.ref.WeakReference;
 
 import elki.data.type.TypeInformation;
 import elki.database.ids.*;
+import elki.database.query.PrecomputedQuery;
 import elki.database.query.PrioritySearcher;
 import elki.database.query.distance.DatabaseDistanceQuery;
+import elki.database.query.distance.DistanceMatrixBuilder;
 import elki.database.query.distance.DistanceQuery;
 import elki.database.query.knn.KNNSearcher;
 import elki.database.query.range.RangeSearcher;
@@ -36,6 +38,7 @@ import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
 import elki.logging.statistics.Duration;
 import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelCore;
 import elki.utilities.datastructures.QuickSelect;
 import elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
 import elki.utilities.exceptions.AbortException;
@@ -89,6 +92,11 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
    */
   private DBIDRange ids;
 
+  /**
+   * Parallel core to use, may be {@code null}.
+   */
+  private ParallelCore core;
+
   /**
    * Constructor.
    *
@@ -97,10 +105,23 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
    * @param distance Distance function
    */
   public PrecomputedDistanceMatrix(Relation<O> relation, DBIDRange range, Distance<? super O> distance) {
+    this(relation, range, distance, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param range DBID range
+   * @param distance Distance function
+   * @param core Parallel core to use, {@code null} to run single-threaded
+   */
+  public PrecomputedDistanceMatrix(Relation<O> relation, DBIDRange range, Distance<? super O> distance, ParallelCore core) {
     super();
     this.refrelation = new WeakReference<>(relation);
     this.ids = range;
     this.distance = distance;
+    this.core = core;
 
     if(!distance.isSymmetric()) {
       throw new AbortException("Distance matrixes currently only support symmetric distance functions (Patches welcome).");
@@ -116,20 +137,11 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
 
     final int msize = triangleSize(ids.size());
     matrix = new double[msize];
-    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
 
     Duration timer = LOG.newDuration(getClass().getName() + ".precomputation-time").begin();
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Precomputing distance matrix", msize, LOG) : null;
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
-      // y < x -- must match {@link #getOffset}!
-      for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
-        matrix[pos++] = distanceQuery.distance(ix, iy);
-      }
-      if(prog != null) {
-        prog.setProcessed(prog.getProcessed() + ix.getOffset(), LOG);
-      }
-    }
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Precomputing distance matrix", ids.size(), LOG) : null;
+    // y < x -- must match {@link #getOffset}!
+    DistanceMatrixBuilder.build(distanceQuery, ids, matrix, core, prog, LOG);
     LOG.ensureCompleted(prog);
     LOG.statistics(timer.end());
   }
@@ -225,7 +237,7 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
    *
    * @author Erich Schubert
    */
-  public class PrecomputedRangeQuery implements RangeSearcher<DBIDRef> {
+  public class PrecomputedRangeQuery implements RangeSearcher<DBIDRef>, PrecomputedQuery {
     /**
      * Iterator for mapping.
      */
@@ -261,7 +273,7 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
    *
    * @author Erich Schubert
    */
-  public class PrecomputedKNNQuery implements KNNSearcher<DBIDRef> {
+  public class PrecomputedKNNQuery implements KNNSearcher<DBIDRef>, PrecomputedQuery {
     /**
      * Iterator for mapping.
      */
@@ -470,14 +482,30 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
      */
     protected final Distance<? super O> distance;
 
+    /**
+     * Parallel core to use.
+     */
+    protected ParallelCore core;
+
     /**
      * Constructor.
      *
      * @param distance Distance function
      */
     public Factory(Distance<? super O> distance) {
+      this(distance, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param distance Distance function
+     * @param core Parallel core to use, {@code null} to run single-threaded
+     */
+    public Factory(Distance<? super O> distance, ParallelCore core) {
       super();
       this.distance = distance;
+      this.core = core;
     }
 
     @Override
@@ -486,7 +514,7 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
       if(!(rids instanceof DBIDRange)) {
         throw new AbortException("Distance matrixes are currently only supported for DBID ranges (as used by static databases; not on modifiable databases) for performance reasons (Patches welcome).");
       }
-      return new PrecomputedDistanceMatrix<>(relation, (DBIDRange) rids, distance);
+      return new PrecomputedDistanceMatrix<>(relation, (DBIDRange) rids, distance, core);
     }
 
     @Override
@@ -514,15 +542,21 @@ public class PrecomputedDistanceMatrix<O> implements DistanceIndex<O>, RangeInde
        */
       protected Distance<? super O> distanceFunction;
 
+      /**
+       * Parallel core to use.
+       */
+      protected ParallelCore core;
+
       @Override
       public void configure(Parameterization config) {
         new ObjectParameter<Distance<? super O>>(DISTANCE_ID, Distance.class) //
             .grab(config, x -> distanceFunction = x);
+        core = config.tryInstantiate(ParallelCore.class);
       }
 
       @Override
       public Factory<O> make() {
-        return new Factory<>(distanceFunction);
+        return new Factory<>(distanceFunction, core);
       }
     }
   }
@@ -33,6 +33,7 @@ import elki.index.RKNNIndex;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
 import elki.logging.progress.StepProgress;
+import elki.parallel.ParallelCore;
 import elki.utilities.documentation.Description;
 import elki.utilities.documentation.Title;
 
@@ -45,6 +46,9 @@ import elki.utilities.documentation.Title;
  * <p>
  * TODO: for better performance, we would need some
  * ModifiableDoubleDBIDHashSet or TreeSet to store the rkNN.
+ * <p>
+ * When materializing in parallel, the kNN lists are computed in parallel, and
+ * then inverted into the reverse kNN lists.
  *
  * @author Elke Achtert
  * @since 0.4.0
@@ -76,12 +80,40 @@ public class MaterializeKNNAndRKNNPreprocessor<O> extends MaterializeKNNPreproce
     super(relation, distance, k);
   }
 
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to process
+   * @param distance the distance function to use
+   * @param k query k
+   * @param core Parallel core to use, {@code null} to run single-threaded
+   */
+  public MaterializeKNNAndRKNNPreprocessor(Relation<O> relation, Distance<? super O> distance, int k, ParallelCore core) {
+    super(relation, distance, k, core);
+  }
+
   @Override
   protected void preprocess() {
     createStorage();
     storageRkNN = DataStoreUtil.makeStorage(relation.getDBIDs(), DataStoreFactory.HINT_HOT, ModifiableDoubleDBIDList.class);
     FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Materializing k nearest neighbors and reverse k nearest neighbors (k=" + k + ")", relation.size(), getLogger()) : null;
-    materializeKNNAndRKNNs(DBIDUtil.ensureArray(relation.getDBIDs()), progress);
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    if(!isParallel(ids)) {
+      materializeKNNAndRKNNs(ids, progress);
+      return;
+    }
+    storage = queryBuilder.kNNForAll(core, ids, k);
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      storageRkNN.put(iter, DBIDUtil.newDistanceDBIDList());
+    }
+    // inverse rkNN index:
+    for(DBIDIter id = ids.iter(); id.valid(); id.advance()) {
+      for(DoubleDBIDListIter iter = storage.get(id).iter(); iter.valid(); iter.advance()) {
+        storageRkNN.get(iter).add(iter.doubleValue(), id);
+      }
+      LOG.incrementProcessed(progress);
+    }
+    LOG.ensureCompleted(progress);
   }
 
   /**
@@ -317,9 +349,20 @@ public class MaterializeKNNAndRKNNPreprocessor<O> extends MaterializeKNNPreproce
       super(k, distance);
     }
 
+    /**
+     * Constructor.
+     *
+     * @param k k
+     * @param distance distance function
+     * @param core Parallel core to use, {@code null} to run single-threaded
+     */
+    public Factory(int k, Distance<? super O> distance, ParallelCore core) {
+      super(k, distance, core);
+    }
+
     @Override
     public MaterializeKNNAndRKNNPreprocessor<O> instantiate(Relation<O> relation) {
-      return new MaterializeKNNAndRKNNPreprocessor<>(relation, distance, k);
+      return new MaterializeKNNAndRKNNPreprocessor<>(relation, distance, k, core);
     }
 
     /**
@@ -330,7 +373,7 @@ public class MaterializeKNNAndRKNNPreprocessor<O> extends MaterializeKNNPreproce
     public static class Par<O> extends MaterializeKNNPreprocessor.Factory.Par<O> {
       @Override
       public Factory<O> make() {
-        return new Factory<>(k, distance);
+        return new Factory<>(k, distance, core);
       }
     }
   }
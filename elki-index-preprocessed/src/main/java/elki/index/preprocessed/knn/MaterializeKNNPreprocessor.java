@@ -35,14 +35,22 @@ import elki.logging.progress.FiniteProgress;
 import elki.logging.progress.StepProgress;
 import elki.logging.statistics.Duration;
 import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelCore;
+import elki.result.Metadata;
 import elki.utilities.documentation.Description;
 import elki.utilities.documentation.Title;
+import elki.utilities.optionhandling.parameterization.Parameterization;
 
 /**
  * A preprocessor for annotation of the k nearest neighbors (and their
  * distances) to each database object.
  * <p>
  * Automatically added by the query optimizer if memory permits.
+ * <p>
+ * The initial materialization can run in parallel if the objects are stored in
+ * a range of DBIDs (as in static databases), using
+ * {@link QueryBuilder#kNNForAll}. This is only enabled when a parallel core is
+ * given, e.g., via the parameterization of the factory.
  *
  * @author Erich Schubert
  * @since 0.2
@@ -66,6 +74,16 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
    */
   protected final KNNSearcher<DBIDRef> knnQuery;
 
+  /**
+   * Query builder, for parallel materialization.
+   */
+  protected final QueryBuilder<O> queryBuilder;
+
+  /**
+   * Parallel core to use, may be {@code null}.
+   */
+  protected ParallelCore core;
+
   /**
    * Holds the listener.
    */
@@ -79,8 +97,22 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
    * @param k query k
    */
   public MaterializeKNNPreprocessor(Relation<O> relation, Distance<? super O> distance, int k) {
+    this(relation, distance, k, null);
+  }
+
+  /**
+   * Constructor with preprocessing step.
+   *
+   * @param relation Relation to preprocess
+   * @param distance the distance function to use
+   * @param k query k
+   * @param core Parallel core to use, {@code null} to run single-threaded
+   */
+  public MaterializeKNNPreprocessor(Relation<O> relation, Distance<? super O> distance, int k, ParallelCore core) {
     super(relation, distance, k);
-    this.knnQuery = new QueryBuilder<>(distanceQuery).noCache().kNNByDBID(k);
+    this.queryBuilder = new QueryBuilder<>(distanceQuery).noCache();
+    this.knnQuery = queryBuilder.kNNByDBID(k);
+    this.core = core;
     assert !(knnQuery instanceof PreprocessorKNNQuery) : knnQuery.toString();
   }
 
@@ -95,7 +127,8 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
   public MaterializeKNNPreprocessor(Relation<O> relation, DistanceQuery<O> distanceQuery, int k, boolean noopt) {
     super(relation, distanceQuery, k);
     QueryBuilder<O> qb = new QueryBuilder<>(distanceQuery).noCache();
-    this.knnQuery = (noopt ? qb.cheapOnly() : qb).kNNByDBID(k);
+    this.queryBuilder = noopt ? qb.cheapOnly() : qb;
+    this.knnQuery = queryBuilder.kNNByDBID(k);
     assert !(knnQuery instanceof PreprocessorKNNQuery) : knnQuery.toString();
   }
 
@@ -105,37 +138,64 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
   @Override
   protected void preprocess() {
     final Logging log = getLogger(); // Could be subclass
-    createStorage();
-
     ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
 
     if(log.isStatistics()) {
       log.statistics(new LongStatistic(this.getClass().getName() + ".k", k));
     }
     Duration duration = log.isStatistics() ? log.newDuration(this.getClass().getName() + ".precomputation-time").begin() : null;
-    FiniteProgress progress = getLogger().isVerbose() ? new FiniteProgress("Materializing k nearest neighbors (k=" + k + ")", ids.size(), getLogger()) : null;
-    // Try bulk
-    final boolean ismetric = getDistanceQuery().getDistance().isMetric();
-    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-      if(ismetric && storage.get(iter) != null) {
+    if(isParallel(ids)) {
+      storage = queryBuilder.kNNForAll(core, ids, k);
+    }
+    else {
+      createStorage();
+      FiniteProgress progress = log.isVerbose() ? new FiniteProgress("Materializing k nearest neighbors (k=" + k + ")", ids.size(), log) : null;
+      final boolean ismetric = getDistanceQuery().getDistance().isMetric();
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        materialize(knnQuery, iter, ismetric);
         log.incrementProcessed(progress);
-        continue; // Previously computed (duplicate point?)
-      }
-      KNNList knn = knnQuery.getKNN(iter, k);
-      storage.put(iter, knn);
-      if(ismetric) {
-        for(DoubleDBIDListIter it = knn.iter(); it.valid() && it.doubleValue() == 0.; it.advance()) {
-          storage.put(it, knn); // Reuse
-        }
       }
-      log.incrementProcessed(progress);
+      log.ensureCompleted(progress);
     }
-    log.ensureCompleted(progress);
     if(duration != null) {
       log.statistics(duration.end());
     }
   }
 
+  /**
+   * Test whether to materialize in parallel. This needs array-backed storage,
+   * which is only used for DBID ranges. Once this preprocessor has been added
+   * to the relation, the query builder would find it, so then we also use the
+   * sequential materialization.
+   *
+   * @param ids Objects to process
+   * @return {@code true} when using multiple threads
+   */
+  protected boolean isParallel(DBIDs ids) {
+    return core != null && core.getParallelism() > 1 && ids instanceof DBIDRange //
+        && !Metadata.hierarchyOf(relation).iterChildren().filter(c -> c == this).valid();
+  }
+
+  /**
+   * Materialize the kNN of a single object.
+   *
+   * @param knnq kNN searcher
+   * @param id Object
+   * @param ismetric Reuse the result for duplicates
+   */
+  protected void materialize(KNNSearcher<DBIDRef> knnq, DBIDRef id, boolean ismetric) {
+    if(ismetric && storage.get(id) != null) {
+      return; // Previously computed (duplicate point?)
+    }
+    KNNList knn = knnq.getKNN(id, k);
+    storage.put(id, knn);
+    if(ismetric) {
+      for(DoubleDBIDListIter it = knn.iter(); it.valid() && it.doubleValue() == 0.; it.advance()) {
+        storage.put(it, knn); // Reuse
+      }
+    }
+  }
+
   @Override
   public final void insert(DBIDRef id) {
     objectsInserted(DBIDUtil.deref(id));
@@ -351,6 +411,11 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
    * @param <O> The object type
    */
   public static class Factory<O> extends AbstractMaterializeKNNPreprocessor.Factory<O> {
+    /**
+     * Parallel core to use.
+     */
+    protected ParallelCore core;
+
     /**
      * Index factory.
      *
@@ -358,12 +423,24 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
      * @param distance distance function
      */
     public Factory(int k, Distance<? super O> distance) {
+      this(k, distance, null);
+    }
+
+    /**
+     * Index factory.
+     *
+     * @param k k parameter
+     * @param distance distance function
+     * @param core Parallel core to use, {@code null} to run single-threaded
+     */
+    public Factory(int k, Distance<? super O> distance, ParallelCore core) {
       super(k, distance);
+      this.core = core;
     }
 
     @Override
     public MaterializeKNNPreprocessor<O> instantiate(Relation<O> relation) {
-      MaterializeKNNPreprocessor<O> instance = new MaterializeKNNPreprocessor<O>(relation, distance, k);
+      MaterializeKNNPreprocessor<O> instance = new MaterializeKNNPreprocessor<O>(relation, distance, k, core);
       return instance;
     }
 
@@ -373,9 +450,20 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
      * @author Erich Schubert
      */
     public static class Par<O> extends AbstractMaterializeKNNPreprocessor.Factory.Par<O> {
+      /**
+       * Parallel core to use.
+       */
+      protected ParallelCore core;
+
+      @Override
+      public void configure(Parameterization config) {
+        super.configure(config);
+        core = config.tryInstantiate(ParallelCore.class);
+      }
+
       @Override
       public Factory<O> make() {
-        return new Factory<>(k, distance);
+        return new Factory<>(k, distance, core);
       }
     }
   }
@@ -20,21 +20,29 @@
  */
 package elki.index.preprocessed.knn;
 
+import java.util.Arrays;
 import java.util.Random;
 
 import elki.database.datastore.DataStoreFactory;
-import elki.database.datastore.WritableDataStore;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableIntegerDataStore;
 import elki.database.ids.*;
 import elki.database.query.QueryBuilder;
 import elki.database.query.distance.DistanceQuery;
 import elki.database.query.knn.KNNSearcher;
 import elki.database.relation.Relation;
 import elki.distance.Distance;
+import elki.index.DynamicIndex;
 import elki.logging.Logging;
 import elki.logging.progress.IndefiniteProgress;
 import elki.logging.statistics.DoubleStatistic;
 import elki.logging.statistics.LongStatistic;
+import elki.parallel.Executor;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
 import elki.utilities.documentation.Reference;
+import elki.utilities.exceptions.AbortException;
 import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.constraints.CommonConstraints;
 import elki.utilities.optionhandling.parameterization.Parameterization;
@@ -49,6 +57,15 @@ import elki.utilities.random.RandomFactory;
  * algorithm beginning with a random sample, then iteratively refining this
  * sample until.
  * <p>
+ * The neighbor heaps are stored in flat primitive arrays (neighbor offsets,
+ * distances, and the local join can be performed in parallel using the
+ * {@link ParallelCore}, with lock striping on the heaps. By default, a single
+ * thread is used, as parallel results depend on the thread interleaving and
+ * cannot be reproduced with a fixed random seed; the parallel flag enables the
+ * shared parallel core and its options. Objects
+ * inserted later are added to the existing graph, and only the neighborhoods
+ * affected are refined.
+ * <p>
  * Reference:
  * <p>
  * W. Dong and C. Moses and K. Li<br>
@@ -59,6 +76,7 @@ import elki.utilities.random.RandomFactory;
  * TODO: collect and log some query statistics.
  *
  * @author Evelyn Kirner
+ * @author Erich Schubert
  * @since 0.7.5
  *
  * @param <O> Object type
@@ -68,12 +86,17 @@ import elki.utilities.random.RandomFactory;
     booktitle = "Proc. 20th Int. Conf. on World Wide Web (WWW'11)", //
     url = "https://doi.org/10.1145/1963405.1963487", //
     bibkey = "DBLP:conf/www/DongCL11")
-public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
+public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> implements DynamicIndex {
   /**
    * Logger
    */
   private static final Logging LOG = Logging.getLogger(NNDescent.class);
 
+  /**
+   * Number of lock stripes for the neighbor heaps.
+   */
+  private static final int LOCK_STRIPES = 1 << 12;
+
   /**
    * Log prefix.
    */
@@ -105,9 +128,74 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
   private boolean noInitialNeighbors;
 
   /**
-   * store for neighbors
+   * Parallel core to use, {@code null} to run single-threaded.
+   */
+  private ParallelCore core;
+
+  /**
+   * Random generator, kept for incremental updates.
+   */
+  private Random random;
+
+  /**
+   * Object of each offset.
+   */
+  private ArrayModifiableDBIDs ids;
+
+  /**
+   * Offset of each object.
+   */
+  private WritableIntegerDataStore offsets;
+
+  /**
+   * Number of offsets in use, including deleted objects.
+   */
+  private int size;
+
+  /**
+   * Number of objects not deleted.
+   */
+  private int alive;
+
+  /**
+   * Neighbors stored per object (k-1, the object itself is added later).
+   */
+  private int kk;
+
+  /**
+   * Neighbor heaps: offsets of neighbors, {@code kk} per object.
+   */
+  private int[] nids;
+
+  /**
+   * Neighbor heaps: distances of neighbors, max-heap ordered.
+   */
+  private double[] ndists;
+
+  /**
+   * Neighbor heaps: flags for neighbors not yet used in a local join.
+   */
+  private boolean[] nnew;
+
+  /**
+   * Neighbor heap sizes, -1 for deleted objects.
+   */
+  private int[] ncount;
+
+  /**
+   * Objects whose neighbors changed since the last materialization.
    */
-  private WritableDataStore<KNNHeap> store;
+  private boolean[] dirty;
+
+  /**
+   * Lock stripes for the neighbor heaps.
+   */
+  private Object[] locks;
+
+  /**
+   * Distance computations performed.
+   */
+  private long distComputations;
 
   /**
    * Constructor.
@@ -120,338 +208,478 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
    * @param rho Rho threshold
    * @param noInitialNeighbors Do not use initial neighbors
    * @param iterations Maximum number of iterations
+   * @param core Parallel core to use, {@code null} to run single-threaded
    */
-  public NNDescent(Relation<O> relation, Distance<? super O> distance, int k, RandomFactory rnd, double delta, double rho, boolean noInitialNeighbors, int iterations) {
+  public NNDescent(Relation<O> relation, Distance<? super O> distance, int k, RandomFactory rnd, double delta, double rho, boolean noInitialNeighbors, int iterations, ParallelCore core) {
     super(relation, distance, k);
     this.rnd = rnd;
     this.delta = delta;
     this.rho = rho;
     this.noInitialNeighbors = noInitialNeighbors;
     this.iterations = iterations;
+    this.core = core;
   }
 
   @Override
   protected void preprocess() {
-    final DBIDs ids = relation.getDBIDs();
     final long starttime = System.currentTimeMillis();
-    IndefiniteProgress progress = LOG.isVerbose() ? new IndefiniteProgress("KNNGraph iteration", LOG) : null;
-
+    final DBIDs rids = relation.getDBIDs();
+    random = rnd.getSingleThreadedRandom();
     // to add query point itself in the end, internally (k-1) is used
-    final int internal_k = k - 1;
-
-    // kNN store
-    store = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, KNNHeap.class);
-    // store for new reverse neighbors
-    WritableDataStore<HashSetModifiableDBIDs> newReverseNeighbors = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, HashSetModifiableDBIDs.class);
-    // store for new reverse neighbors
-    WritableDataStore<HashSetModifiableDBIDs> oldReverseNeighbors = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, HashSetModifiableDBIDs.class);
-    // Sample of new forward neighbors.
-    WritableDataStore<HashSetModifiableDBIDs> sampleNewNeighbors = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, HashSetModifiableDBIDs.class);
-    // data structures for new and sampled new neighbors
-    WritableDataStore<HashSetModifiableDBIDs> flag = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, HashSetModifiableDBIDs.class);
-
-    // Initialize data structures:
-    for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
-      store.put(iditer, DBIDUtil.newHeap(internal_k));
-      newReverseNeighbors.put(iditer, DBIDUtil.newHashSet(internal_k));
-      oldReverseNeighbors.put(iditer, DBIDUtil.newHashSet(internal_k));
+    kk = k - 1;
+    ids = DBIDUtil.newArray(rids);
+    offsets = DataStoreUtil.makeIntegerStorage(rids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      offsets.putInt(it, it.getOffset());
     }
-
-    // this variable is the sampling size
-    final int items = (int) Math.ceil(rho * internal_k);
-
-    long counter_all = 0;
-
-    Random rand = rnd.getSingleThreadedRandom();
+    size = alive = ids.size();
+    nids = new int[size * kk];
+    ndists = new double[size * kk];
+    nnew = new boolean[size * kk];
+    ncount = new int[size];
+    dirty = new boolean[size];
+    locks = new Object[Math.max(1, Math.min(LOCK_STRIPES, size))];
+    for(int i = 0; i < locks.length; i++) {
+      locks[i] = new Object();
+    }
+    distComputations = 0;
 
     // initialize neighbors (depends on -setInitialNeighbors option)
-    for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
-      // initialize sampled NN
-      ModifiableDBIDs sampleNew = DBIDUtil.randomSampleExcept(ids, iditer, items, rand);
-      sampleNewNeighbors.put(iditer, DBIDUtil.newHashSet(sampleNew));
-      // initialize RNN
-      ModifiableDBIDs sampleRev = DBIDUtil.randomSampleExcept(ids, iditer, items, rand);
-      newReverseNeighbors.put(iditer, DBIDUtil.newHashSet(sampleRev));
-      // initialize new neighbors
-      flag.put(iditer, DBIDUtil.newHashSet());
-      // initialize store
-      if(!noInitialNeighbors) {
-        HashSetModifiableDBIDs flags = flag.get(iditer);
-        for(DBIDIter siter = sampleNew.iter(); siter.valid(); siter.advance()) {
-          if(add(iditer, siter, distanceQuery.distance(iditer, siter))) {
-            flags.add(siter);
-          }
-        }
-        counter_all += sampleNew.size();
+    if(!noInitialNeighbors) {
+      for(int i = 0; i < size; i++) {
+        sampleRandom(i);
       }
+      run(rids, new InitializeProcessor(this));
     }
+    iterate(rids, size, noInitialNeighbors);
 
-    final int size = relation.size();
-    double rate = 0.0;
-    int iter = 0;
-
-    for(; iter < iterations; iter++) {
-      long counter = 0;
-
-      // iterate through dataset
-      for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
-        // determine new and old neighbors
-        HashSetModifiableDBIDs newNeighbors = flag.get(iditer);
-        HashSetModifiableDBIDs oldNeighbors = DBIDUtil.newHashSet();
-        KNNHeap heap = store.get(iditer);
-        for(DoubleDBIDIter heapiter = heap.unorderedIterator(); heapiter.valid(); heapiter.advance()) {
-          if(!newNeighbors.contains(heapiter)) {
-            oldNeighbors.add(heapiter);
-          }
-        }
-
-        // Sampling
-        HashSetModifiableDBIDs sampleNew = sampleNewNeighbors.get(iditer);
-
-        HashSetModifiableDBIDs newRev = newReverseNeighbors.get(iditer);
-        newRev.removeDBIDs(sampleNew);
-        boundSize(newRev, items);
-
-        HashSetModifiableDBIDs oldRev = oldReverseNeighbors.get(iditer);
-        oldRev.removeDBIDs(oldNeighbors);
-        boundSize(oldRev, items);
-        counter += processNewNeighbors(flag, sampleNew, oldNeighbors, newRev, oldRev);
-      }
-      counter_all += counter;
-      if(LOG.isStatistics()) {
-        LOG.statistics(new DoubleStatistic(prefix + ".scan-rate", counter_all * .5 / (size * (size - 1L))));
-      }
-
-      // t is the number of new neighbors
-      int t = sampleNew(ids, sampleNewNeighbors, flag, items);
+    // convert heaps to storage
+    createStorage();
+    materialize();
+    final long end = System.currentTimeMillis();
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(prefix + ".construction-time.ms", end - starttime));
+      LOG.statistics(new LongStatistic(prefix + ".distance-computations", distComputations));
+    }
+  }
 
-      // calculate old and new reverse neighbors
-      clearAll(ids, newReverseNeighbors);
-      clearAll(ids, oldReverseNeighbors);
-      reverse(sampleNewNeighbors, newReverseNeighbors, oldReverseNeighbors);
+  /**
+   * Run a processor, in parallel if a parallel core is available.
+   *
+   * @param ids Objects to process
+   * @param proc Processor
+   */
+  private void run(DBIDs ids, Processor proc) {
+    if(core != null && core.getParallelism() > 1) {
+      ParallelExecutor.run(core, ids, proc);
+      return;
+    }
+    Processor.Instance inst = proc.instantiate(null);
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      inst.map(it);
+    }
+    proc.cleanup(inst);
+  }
 
-      rate = (double) t / (double) (internal_k * size);
+  /**
+   * Perform NN-descent iterations until convergence.
+   *
+   * @param todo Objects to process
+   * @param active Number of objects being refined, for the stopping criterion
+   * @param randomInit Use random candidates in the first iteration
+   */
+  private void iterate(DBIDs todo, int active, boolean randomInit) {
+    IndefiniteProgress progress = LOG.isVerbose() ? new IndefiniteProgress("KNNGraph iteration", LOG) : null;
+    // this variable is the sampling size
+    final int items = (int) Math.ceil(rho * kk);
+    // forward and reverse samples, and all old forward neighbors
+    final int nsample = items << 1, osample = kk + items;
+    if(size * (long) (nsample + osample) > Integer.MAX_VALUE) {
+      throw new AbortException("Too many candidates for NN-descent: " + size + " objects with sample sizes " + nsample + " and " + osample + " exceed the maximum array size. Reduce k or rho.");
+    }
+    final int[] newc = new int[size * nsample], oldc = new int[size * osample];
+    final int[] newcnt = new int[size], oldcnt = new int[size];
+    int iter = 0;
+    for(; iter < iterations; iter++) {
+      sampleCandidates(nsample, newc, newcnt, osample, oldc, oldcnt, randomInit && iter == 0);
+      JoinProcessor join = new JoinProcessor(this, nsample, newc, newcnt, osample, oldc, oldcnt);
+      run(todo, join);
+      final double rate = join.updates / (double) (kk * (long) active);
       if(LOG.isStatistics()) {
         LOG.statistics(new DoubleStatistic(prefix + ".update-rate", rate));
       }
-      if(counter < delta * internal_k * size) {
-        LOG.verbose("KNNGraph terminated because we performaned delta*k*size distance computations.");
-        break;
-      }
+      LOG.incrementProcessed(progress);
       if(rate < delta) {
         LOG.verbose("KNNGraph terminated because update rate got smaller than delta.");
         break;
       }
-      LOG.incrementProcessed(progress);
     }
     if(LOG.isVerbose() && iter == iterations) {
       LOG.verbose("KNNGraph terminated because the maximum number of iterations was reached.");
     }
     LOG.setCompleted(progress);
-    // convert store to storage
-    storage = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_DB, KNNList.class);
-    for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
-      KNNHeap tempHeap = DBIDUtil.newHeap(k);
-      // Add query point and convert heap to list:
-      KNNHeap heap = store.get(iditer);
-      tempHeap.insert(0, iditer);
-      for(DoubleDBIDIter heapiter = heap.unorderedIterator(); heapiter.valid(); heapiter.advance()) {
-        tempHeap.insert(heapiter.doubleValue(), heapiter);
+  }
+
+  /**
+   * Fill the heap of an object with random neighbors; the distances are
+   * computed by {@link #initializeHeap}.
+   *
+   * @param i Object offset
+   */
+  private void sampleRandom(int i) {
+    final int base = i * kk, target = Math.min(kk, alive - 1);
+    int c = ncount[i];
+    while(c < target) {
+      final int j = randomAlive(i);
+      if(!contains(nids, base, c, j)) {
+        nids[base + c] = j;
+        ndists[base + c] = Double.NaN;
+        nnew[base + c] = true;
+        ++c;
       }
-      storage.put(iditer, tempHeap.toKNNList());
-    }
-    final long end = System.currentTimeMillis();
-    if(LOG.isStatistics()) {
-      LOG.statistics(new LongStatistic(prefix + ".construction-time.ms", end - starttime));
     }
+    ncount[i] = c;
   }
 
   /**
-   * Clear (but reuse) all sets in the given storage.
-   * 
-   * @param ids Ids to process
-   * @param sets Sets to clear
+   * Choose a random object that has not been deleted.
+   *
+   * @param i Object to exclude
+   * @return Random object offset
    */
-  private void clearAll(DBIDs ids, WritableDataStore<HashSetModifiableDBIDs> sets) {
-    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
-      sets.get(it).clear();
+  private int randomAlive(int i) {
+    while(true) {
+      final int j = random.nextInt(size);
+      if(j != i && ncount[j] >= 0) {
+        return j;
+      }
     }
   }
 
   /**
-   * Bound the size of a set by random sampling.
-   * 
-   * @param set Set to process
-   * @param items Maximum size
+   * Compute missing distances in a heap, and restore the heap order.
+   *
+   * @param i Object offset
+   * @param iter Iterator to use
+   * @param iter2 Second iterator to use
+   * @return Number of distance computations
    */
-  private void boundSize(HashSetModifiableDBIDs set, int items) {
-    if(set.size() > items) {
-      DBIDs sample = DBIDUtil.randomSample(set, items, rnd);
-      set.clear().addDBIDs(sample);
+  private int initializeHeap(int i, DBIDArrayIter iter, DBIDArrayIter iter2) {
+    final int base = i * kk, c = ncount[i];
+    int dists = 0;
+    iter.seek(i);
+    for(int p = base; p < base + c; p++) {
+      if(ndists[p] != ndists[p]) { // NaN: not computed yet
+        ndists[p] = distanceQuery.distance(iter, iter2.seek(nids[p]));
+        ++dists;
+      }
+    }
+    for(int pos = (c >>> 1) - 1; pos >= 0; pos--) {
+      siftDown(base, c, pos, ndists[base + pos], nids[base + pos], nnew[base + pos]);
     }
+    dirty[i] = true;
+    return dists;
   }
 
   /**
-   * Process new neighbors.
-   * 
-   * This is a complex join, because we do not need to join old neighbors with
-   * old neighbors, and we have forward- and reverse neighbors each.
+   * Sample the new and old candidates (forward and reverse) of each object,
+   * and mark the sampled new neighbors as old.
    *
-   * @param flag Flags to mark new neighbors.
-   * @param newFwd New forward neighbors
-   * @param oldFwd Old forward neighbors
-   * @param newRev New reverse neighbors
-   * @param oldRev Old reverse neighbors
-   * @return Number of new neighbors
-   */
-  private int processNewNeighbors(WritableDataStore<HashSetModifiableDBIDs> flag, HashSetModifiableDBIDs newFwd, HashSetModifiableDBIDs oldFwd, HashSetModifiableDBIDs newRev, HashSetModifiableDBIDs oldRev) {
-    int counter = 0;
-    // nn_new
-    if(!newFwd.isEmpty()) {
-      for(DBIDIter sniter = newFwd.iter(); sniter.valid(); sniter.advance()) {
-        // nn_new X nn_new
-        for(DBIDIter niter2 = newFwd.iter(); niter2.valid(); niter2.advance()) {
-          if(DBIDUtil.compare(sniter, niter2) < 0) { // Only x < y.
-            addpair(flag, sniter, niter2);
-            counter++;
-          }
+   * @param nsample Sample size of new candidates
+   * @param newc New candidates
+   * @param newcnt Number of new candidates seen
+   * @param osample Sample size of old candidates
+   * @param oldc Old candidates
+   * @param oldcnt Number of old candidates seen
+   * @param randomInit Add random candidates
+   */
+  private void sampleCandidates(int nsample, int[] newc, int[] newcnt, int osample, int[] oldc, int[] oldcnt, boolean randomInit) {
+    Arrays.fill(newcnt, 0);
+    Arrays.fill(oldcnt, 0);
+    for(int i = 0; i < size; i++) {
+      final int c = ncount[i];
+      for(int p = i * kk, e = p + c; p < e; p++) {
+        final int j = nids[p];
+        if(nnew[p]) {
+          sample(newc, newcnt, nsample, i, j);
+          sample(newc, newcnt, nsample, j, i);
         }
-        // nn_new X nn_old
-        for(DBIDMIter niter2 = oldFwd.iter(); niter2.valid(); niter2.advance()) {
-          if(DBIDUtil.equal(sniter, niter2)) {
-            continue;
-          }
-          addpair(flag, sniter, niter2);
-          counter++;
+        else {
+          sample(oldc, oldcnt, osample, i, j);
+          sample(oldc, oldcnt, osample, j, i);
         }
       }
-    }
-    // rnn_new
-    if(!newRev.isEmpty()) {
-      for(DBIDIter nriter = newRev.iter(); nriter.valid(); nriter.advance()) {
-        // rnn_new X rnn_new
-        for(DBIDIter niter2 = newRev.iter(); niter2.valid(); niter2.advance()) {
-          if(DBIDUtil.compare(nriter, niter2) < 0) { // Only x < y
-            addpair(flag, nriter, niter2);
-            counter++;
-          }
+      if(randomInit && c >= 0 && alive > 1) {
+        for(int r = nsample >>> 1; r > 0; r--) {
+          final int j = randomAlive(i);
+          sample(newc, newcnt, nsample, i, j);
+          sample(newc, newcnt, nsample, j, i);
         }
-        // rnn_new X rnn_old
-        for(DBIDIter niter2 = oldRev.iter(); niter2.valid(); niter2.advance()) {
-          if(DBIDUtil.equal(nriter, niter2)) {
-            continue;
-          }
-          addpair(flag, nriter, niter2);
-          counter++;
+      }
+    }
+    // Neighbors sampled as new candidates are no longer new:
+    for(int i = 0; i < size; i++) {
+      final int base = i * nsample, nc = Math.min(newcnt[i], nsample);
+      for(int p = i * kk, e = p + ncount[i]; p < e; p++) {
+        if(nnew[p] && contains(newc, base, nc, nids[p])) {
+          nnew[p] = false;
         }
       }
     }
+  }
 
-    // nn_new
-    if(!newFwd.isEmpty()) {
-      for(DBIDIter sniter2 = newFwd.iter(); sniter2.valid(); sniter2.advance()) {
-        // nn_new X rnn_old
-        for(DBIDIter niter2 = oldRev.iter(); niter2.valid(); niter2.advance()) {
-          if(!DBIDUtil.equal(sniter2, niter2)) {
-            addpair(flag, sniter2, niter2);
-            counter++;
-          }
-        }
-        // nn_new X rnn_new
-        for(DBIDIter niter2 = newRev.iter(); niter2.valid(); niter2.advance()) {
-          if(DBIDUtil.compare(sniter2, niter2) < 0) {
-            addpair(flag, sniter2, niter2);
-            counter++;
-          }
-        }
+  /**
+   * Add a candidate by reservoir sampling, ignoring duplicates.
+   *
+   * @param cands Candidates
+   * @param cnt Number of candidates seen
+   * @param items Sample size
+   * @param i Object offset
+   * @param j Candidate offset
+   */
+  private void sample(int[] cands, int[] cnt, int items, int i, int j) {
+    final int base = i * items, c = cnt[i];
+    if(contains(cands, base, Math.min(c, items), j)) {
+      return;
+    }
+    if(c < items) {
+      cands[base + c] = j;
+    }
+    else {
+      final int r = random.nextInt(c + 1);
+      if(r < items) {
+        cands[base + r] = j;
       }
     }
-    // nn_old
-    if(!newRev.isEmpty() && !oldFwd.isEmpty()) {
-      for(DBIDIter niter = oldFwd.iter(); niter.valid(); niter.advance()) {
-        // nn_old X rnn_new
-        for(DBIDIter niter2 = newRev.iter(); niter2.valid(); niter2.advance()) {
-          if(DBIDUtil.equal(niter, niter2)) {
-            continue;
-          }
-          addpair(flag, niter, niter2);
-          counter++;
-        }
+    cnt[i] = c + 1;
+  }
+
+  /**
+   * Test if an array range contains a value.
+   *
+   * @param data Data array
+   * @param base Start of range
+   * @param len Length of range
+   * @param v Value
+   * @return {@code true} if contained
+   */
+  private static boolean contains(int[] data, int base, int len, int v) {
+    for(int p = base, e = base + len; p < e; p++) {
+      if(data[p] == v) {
+        return true;
       }
     }
-    return counter;
+    return false;
   }
 
   /**
-   * Add cand to cur's heap neighbors with distance
+   * Get the largest distance in a heap.
    *
-   * @param cur Current object
-   * @param cand Neighbor candidate
-   * @param distance Distance
+   * @param i Object offset
+   * @return Largest distance, or infinity if the heap is not full
+   */
+  private double kDistance(int i) {
+    return ncount[i] < kk ? Double.POSITIVE_INFINITY : ndists[i * kk];
+  }
+
+  /**
+   * Add a neighbor to a heap. Must be called with the lock of the object held.
+   *
+   * @param i Object offset
+   * @param j Neighbor offset
+   * @param d Distance
    * @return {@code true} if it was a new neighbor.
    */
-  private boolean add(DBIDRef cur, DBIDRef cand, double distance) {
-    KNNHeap neighbors = store.get(cur);
-    if(neighbors.contains(cand)) {
+  private boolean add(int i, int j, double d) {
+    final int base = i * kk, c = ncount[i];
+    if(c < 0 || (c == kk && d >= ndists[base]) || contains(nids, base, c, j)) {
       return false;
     }
-    double newKDistance = neighbors.insert(distance, cand);
-    return (distance <= newKDistance);
+    if(c < kk) {
+      siftUp(base, c, d, j, true);
+      ncount[i] = c + 1;
+    }
+    else {
+      siftDown(base, c, 0, d, j, true);
+    }
+    dirty[i] = true;
+    return true;
   }
 
-  private void addpair(WritableDataStore<HashSetModifiableDBIDs> newNeighbors, DBIDRef o1, DBIDRef o2) {
-    final double distance = distanceQuery.distance(o1, o2);
-    if(add(o1, o2, distance)) {
-      newNeighbors.get(o1).add(o2);
+  /**
+   * Insert into a heap, moving towards the top.
+   *
+   * @param base Heap start
+   * @param pos Insertion position
+   * @param d Distance
+   * @param j Neighbor offset
+   * @param f New flag
+   */
+  private void siftUp(int base, int pos, double d, int j, boolean f) {
+    while(pos > 0) {
+      final int parent = (pos - 1) >>> 1;
+      if(ndists[base + parent] >= d) {
+        break;
+      }
+      move(base + parent, base + pos);
+      pos = parent;
     }
-    if(add(o2, o1, distance)) {
-      newNeighbors.get(o2).add(o1);
+    ndists[base + pos] = d;
+    nids[base + pos] = j;
+    nnew[base + pos] = f;
+  }
+
+  /**
+   * Insert into a heap, moving towards the bottom.
+   *
+   * @param base Heap start
+   * @param len Heap size
+   * @param pos Insertion position
+   * @param d Distance
+   * @param j Neighbor offset
+   * @param f New flag
+   */
+  private void siftDown(int base, int len, int pos, double d, int j, boolean f) {
+    while(true) {
+      int c = (pos << 1) + 1;
+      if(c >= len) {
+        break;
+      }
+      if(c + 1 < len && ndists[base + c + 1] > ndists[base + c]) {
+        ++c;
+      }
+      if(ndists[base + c] <= d) {
+        break;
+      }
+      move(base + c, base + pos);
+      pos = c;
     }
+    ndists[base + pos] = d;
+    nids[base + pos] = j;
+    nnew[base + pos] = f;
   }
 
   /**
-   * samples newNeighbors for every object
+   * Move a heap entry.
    *
-   * @param ids All ids
-   * @param sampleNewNeighbors Output of sampled new neighbors
-   * @param newNeighborHash - new neighbors for every object
-   * @param items Number of items to collect
-   * @return Number of new neighbors
-   */
-  private int sampleNew(DBIDs ids, WritableDataStore<HashSetModifiableDBIDs> sampleNewNeighbors, WritableDataStore<HashSetModifiableDBIDs> newNeighborHash, int items) {
-    int t = 0;
-    for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
-      KNNHeap realNeighbors = store.get(iditer);
-      HashSetModifiableDBIDs newNeighbors = newNeighborHash.get(iditer);
-      HashSetModifiableDBIDs realNewNeighbors = sampleNewNeighbors.get(iditer).clear(); // Reuse
-      for(DoubleDBIDIter heapiter = realNeighbors.unorderedIterator(); heapiter.valid(); heapiter.advance()) {
-        if(newNeighbors.contains(heapiter)) {
-          realNewNeighbors.add(heapiter);
-          t++;
-        }
+   * @param from Source position
+   * @param to Target position
+   */
+  private void move(int from, int to) {
+    ndists[to] = ndists[from];
+    nids[to] = nids[from];
+    nnew[to] = nnew[from];
+  }
+
+  /**
+   * Convert the changed heaps to kNN lists.
+   */
+  private void materialize() {
+    DBIDArrayIter iter = ids.iter(), iter2 = ids.iter();
+    for(int i = 0; i < size; i++) {
+      if(!dirty[i] || ncount[i] < 0) {
+        continue;
       }
-      boundSize(realNewNeighbors, items);
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      // Add query point and convert heap to list:
+      heap.insert(0, iter.seek(i));
+      for(int p = i * kk, e = p + ncount[i]; p < e; p++) {
+        heap.insert(ndists[p], iter2.seek(nids[p]));
+      }
+      storage.put(iter, heap.toKNNList());
+      dirty[i] = false;
+    }
+  }
+
+  @Override
+  public void insert(DBIDRef id) {
+    insertAll(DBIDUtil.deref(id));
+  }
 
-      newNeighbors.removeDBIDs(realNewNeighbors);
-      newNeighborHash.put(iditer, newNeighbors);
+  @Override
+  public void insertAll(DBIDs newids) {
+    if(storage == null) {
+      if(relation.size() > 0) {
+        preprocess();
+      }
+      return;
+    }
+    final int first = size;
+    grow(size + newids.size());
+    for(DBIDIter it = newids.iter(); it.valid(); it.advance()) {
+      ids.add(it);
+      offsets.putInt(it, size++);
     }
-    return t;
+    alive += newids.size();
+    DBIDArrayIter iter = ids.iter(), iter2 = ids.iter();
+    for(int i = first; i < size; i++) {
+      sampleRandom(i);
+      distComputations += initializeHeap(i, iter, iter2);
+    }
+    iterate(relation.getDBIDs(), newids.size(), false);
+    materialize();
   }
 
   /**
-   * calculates new and old neighbors for database
-   * 
-   * @param sampleNewHash new neighbors for every object
-   * @param newReverseNeighbors new reverse neighbors
-   * @param oldReverseNeighbors old reverse neighbors
+   * Grow the arrays.
+   *
+   * @param newsize New number of offsets
    */
-  private void reverse(WritableDataStore<HashSetModifiableDBIDs> sampleNewHash, WritableDataStore<HashSetModifiableDBIDs> newReverseNeighbors, WritableDataStore<HashSetModifiableDBIDs> oldReverseNeighbors) {
-    for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
-      KNNHeap heap = store.get(iditer);
-      HashSetDBIDs newNeighbors = sampleNewHash.get(iditer);
-      for(DoubleDBIDIter heapiter = heap.unorderedIterator(); heapiter.valid(); heapiter.advance()) {
-        (newNeighbors.contains(heapiter) ? newReverseNeighbors : oldReverseNeighbors).get(heapiter).add(iditer);
+  private void grow(int newsize) {
+    nids = Arrays.copyOf(nids, newsize * kk);
+    ndists = Arrays.copyOf(ndists, newsize * kk);
+    nnew = Arrays.copyOf(nnew, newsize * kk);
+    ncount = Arrays.copyOf(ncount, newsize);
+    dirty = Arrays.copyOf(dirty, newsize);
+  }
+
+  @Override
+  public boolean delete(DBIDRef id) {
+    deleteAll(DBIDUtil.deref(id));
+    return true;
+  }
+
+  @Override
+  public void deleteAll(DBIDs delids) {
+    if(storage == null) {
+      return;
+    }
+    for(DBIDIter it = delids.iter(); it.valid(); it.advance()) {
+      final int o = offsets.intValue(it);
+      if(o >= 0 && ncount[o] >= 0) {
+        ncount[o] = -1;
+        --alive;
+      }
+      offsets.delete(it);
+      storage.delete(it);
+    }
+    // Remove deleted neighbors, and refine the affected neighborhoods again:
+    DBIDArrayIter iter = ids.iter(), iter2 = ids.iter();
+    int affected = 0;
+    for(int i = 0; i < size; i++) {
+      final int base = i * kk, c = ncount[i];
+      if(c <= 0) {
+        continue;
+      }
+      int r = 0;
+      for(int p = base; p < base + c; p++) {
+        if(ncount[nids[p]] >= 0) {
+          ndists[base + r] = ndists[p];
+          nids[base + r++] = nids[p];
+        }
       }
+      if(r == c) {
+        continue;
+      }
+      Arrays.fill(nnew, base, base + r, true);
+      ncount[i] = r;
+      sampleRandom(i);
+      distComputations += initializeHeap(i, iter, iter2);
+      ++affected;
+    }
+    if(affected > 0) {
+      iterate(relation.getDBIDs(), affected, false);
+      materialize();
     }
   }
 
@@ -460,12 +688,205 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
     return LOG;
   }
 
+  @Override
+  public void logStatistics() {
+    LOG.statistics(new LongStatistic(prefix + ".distance-computations", distComputations));
+  }
+
   @Override
   public KNNSearcher<O> kNNByObject(DistanceQuery<O> distanceQuery, int maxk, int flags) {
     return (flags & QueryBuilder.FLAG_EXACT_ONLY) != 0 ? null : // approximate
         super.kNNByObject(distanceQuery, maxk, flags);
   }
 
+  /**
+   * Processor to compute the distances of the initial neighbors.
+   *
+   * @author Erich Schubert
+   */
+  private static class InitializeProcessor implements Processor {
+    /**
+     * Index to initialize.
+     */
+    private final NNDescent<?> index;
+
+    /**
+     * Constructor.
+     *
+     * @param index Index to initialize
+     */
+    public InitializeProcessor(NNDescent<?> index) {
+      this.index = index;
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return new Instance();
+    }
+
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      synchronized(index) {
+        index.distComputations += ((Instance) inst).dists;
+      }
+    }
+
+    /**
+     * Instance for a single block.
+     *
+     * @author Erich Schubert
+     */
+    private class Instance implements Processor.Instance {
+      /**
+       * Iterators for distance computations.
+       */
+      private DBIDArrayIter iter = index.ids.iter(), iter2 = index.ids.iter();
+
+      /**
+       * Distance computations.
+       */
+      private long dists;
+
+      @Override
+      public void map(DBIDRef id) {
+        dists += index.initializeHeap(index.offsets.intValue(id), iter, iter2);
+      }
+    }
+  }
+
+  /**
+   * Processor for the local join of the candidates of each object.
+   *
+   * @author Erich Schubert
+   */
+  private static class JoinProcessor implements Processor {
+    /**
+     * Index to refine.
+     */
+    private final NNDescent<?> index;
+
+    /**
+     * Sample sizes.
+     */
+    private final int nsample, osample;
+
+    /**
+     * New candidates, and the number seen.
+     */
+    private final int[] newc, newcnt;
+
+    /**
+     * Old candidates, and the number seen.
+     */
+    private final int[] oldc, oldcnt;
+
+    /**
+     * Number of heap updates.
+     */
+    private long updates;
+
+    /**
+     * Constructor.
+     *
+     * @param index Index to refine
+     * @param nsample Sample size of new candidates
+     * @param newc New candidates
+     * @param newcnt Number of new candidates seen
+     * @param osample Sample size of old candidates
+     * @param oldc Old candidates
+     * @param oldcnt Number of old candidates seen
+     */
+    public JoinProcessor(NNDescent<?> index, int nsample, int[] newc, int[] newcnt, int osample, int[] oldc, int[] oldcnt) {
+      this.index = index;
+      this.nsample = nsample;
+      this.osample = osample;
+      this.newc = newc;
+      this.newcnt = newcnt;
+      this.oldc = oldc;
+      this.oldcnt = oldcnt;
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return new Instance();
+    }
+
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      synchronized(index) {
+        updates += ((Instance) inst).updates;
+        index.distComputations += ((Instance) inst).dists;
+      }
+    }
+
+    /**
+     * Instance for a single block.
+     *
+     * @author Erich Schubert
+     */
+    private class Instance implements Processor.Instance {
+      /**
+       * Iterators for distance computations.
+       */
+      private DBIDArrayIter iter = index.ids.iter(), iter2 = index.ids.iter();
+
+      /**
+       * Number of heap updates.
+       */
+      private long updates;
+
+      /**
+       * Distance computations.
+       */
+      private long dists;
+
+      @Override
+      public void map(DBIDRef id) {
+        final int i = index.offsets.intValue(id), nbase = i * nsample, obase = i * osample;
+        final int nn = Math.min(newcnt[i], nsample), on = Math.min(oldcnt[i], osample);
+        for(int a = 0; a < nn; a++) {
+          final int p = newc[nbase + a];
+          // new x new, only once per pair
+          for(int b = a + 1; b < nn; b++) {
+            join(p, newc[nbase + b]);
+          }
+          // new x old
+          for(int b = 0; b < on; b++) {
+            final int q = oldc[obase + b];
+            if(p != q) {
+              join(p, q);
+            }
+          }
+        }
+      }
+
+      /**
+       * Compare two candidates, and update both heaps.
+       *
+       * @param p First candidate
+       * @param q Second candidate
+       */
+      private void join(int p, int q) {
+        // Unsynchronized reads: the heap bounds only decrease.
+        final double kp = index.kDistance(p), kq = index.kDistance(q);
+        final double threshold = kp > kq ? kp : kq;
+        final double d = index.distanceQuery.distance(iter.seek(p), iter2.seek(q), threshold);
+        ++dists;
+        final Object[] locks = index.locks;
+        if(d < kp) {
+          synchronized(locks[p % locks.length]) {
+            updates += index.add(p, q, d) ? 1 : 0;
+          }
+        }
+        if(d < kq) {
+          synchronized(locks[q % locks.length]) {
+            updates += index.add(q, p, d) ? 1 : 0;
+          }
+        }
+      }
+    }
+  }
+
   /**
    * Index factory.
    *
@@ -499,6 +920,11 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
      */
     private final int iterations;
 
+    /**
+     * Parallel core to use.
+     */
+    private final ParallelCore core;
+
     /**
      * Constructor.
      *
@@ -509,19 +935,21 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
      * @param rho Rho threshold
      * @param noInitialNeighbors Do not use initial neighbors
      * @param iterations Maximum number of iterations
+     * @param core Parallel core to use, {@code null} to run single-threaded
      */
-    public Factory(int k, Distance<? super O> distance, RandomFactory rnd, double delta, double rho, boolean noInitialNeighbors, int iterations) {
+    public Factory(int k, Distance<? super O> distance, RandomFactory rnd, double delta, double rho, boolean noInitialNeighbors, int iterations, ParallelCore core) {
       super(k, distance);
       this.rnd = rnd;
       this.delta = delta;
       this.rho = rho;
       this.noInitialNeighbors = noInitialNeighbors;
       this.iterations = iterations;
+      this.core = core;
     }
 
     @Override
     public NNDescent<O> instantiate(Relation<O> relation) {
-      return new NNDescent<>(relation, distance, k, rnd, delta, rho, noInitialNeighbors, iterations);
+      return new NNDescent<>(relation, distance, k, rnd, delta, rho, noInitialNeighbors, iterations, core);
     }
 
     /**
@@ -559,6 +987,11 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
        */
       public static final OptionID ITER_ID = new OptionID("knngraph.maxiter", "maximum number of iterations");
 
+      /**
+       * Flag to use the parallel core.
+       */
+      public static final OptionID PARALLEL_ID = new OptionID("knngraph.parallel", "Use the parallel core for the local joins. Results are then not reproducible with a fixed seed.");
+
       /**
        * Random generator
        */
@@ -584,6 +1017,11 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
        */
       private int iterations;
 
+      /**
+       * Parallel core to use.
+       */
+      private ParallelCore core;
+
       @Override
       public void configure(Parameterization config) {
         super.configure(config);
@@ -598,11 +1036,16 @@ public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
         new IntParameter(ITER_ID, 100) //
             .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
             .grab(config, x -> iterations = x);
+        new Flag(PARALLEL_ID).grab(config, x -> {
+          if(x) {
+            core = config.tryInstantiate(ParallelCore.class);
+          }
+        });
       }
 
       @Override
       public NNDescent.Factory<O> make() {
-        return new NNDescent.Factory<>(k, distance, rnd, delta, rho, noInitialNeighbors, iterations);
+        return new NNDescent.Factory<>(k, distance, rnd, delta, rho, noInitialNeighbors, iterations, core);
       }
     }
   }
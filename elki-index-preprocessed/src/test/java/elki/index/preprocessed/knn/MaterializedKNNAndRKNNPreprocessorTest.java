@@ -32,7 +32,9 @@ import elki.data.DoubleVector;
 import elki.data.NumberVector;
 import elki.data.VectorUtil;
 import elki.data.type.TypeUtil;
+import elki.database.Database;
 import elki.database.HashmapDatabase;
+import elki.database.StaticArrayDatabase;
 import elki.database.UpdatableDatabase;
 import elki.database.ids.*;
 import elki.database.query.QueryBuilder;
@@ -48,6 +50,7 @@ import elki.database.relation.RelationUtil;
 import elki.datasource.FileBasedDatabaseConnection;
 import elki.datasource.bundle.MultipleObjectsBundle;
 import elki.distance.minkowski.EuclideanDistance;
+import elki.parallel.ParallelCore;
 import elki.result.Metadata;
 import elki.utilities.ELKIBuilder;
 
@@ -127,6 +130,35 @@ public class MaterializedKNNAndRKNNPreprocessorTest {
     testRKNNQueries(relation, lin_rknn_query, preproc_rknn_query, k);
   }
 
+  @Test
+  public void testParallel() {
+    Database db = new ELKIBuilder<>(StaticArrayDatabase.class) //
+        .with(FileBasedDatabaseConnection.Par.INPUT_ID, getClass().getClassLoader().getResource(dataset)) //
+        .build();
+    db.initialize();
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+
+    MaterializeKNNAndRKNNPreprocessor<DoubleVector> seq = new MaterializeKNNAndRKNNPreprocessor<>(relation, EuclideanDistance.STATIC, k, null);
+    MaterializeKNNAndRKNNPreprocessor<DoubleVector> par = //
+        new ELKIBuilder<MaterializeKNNAndRKNNPreprocessor.Factory<DoubleVector>>(MaterializeKNNAndRKNNPreprocessor.Factory.class) //
+            .with(MaterializeKNNPreprocessor.Factory.DISTANCE_FUNCTION_ID, EuclideanDistance.STATIC) //
+            .with(MaterializeKNNPreprocessor.Factory.K_ID, k) //
+            .with(ParallelCore.Par.THREADS_ID, 3) //
+            .build().instantiate(relation);
+    seq.initialize();
+    par.initialize();
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      MaterializedKNNPreprocessorTest.assertSameNeighbors(seq.get(iter), par.get(iter));
+      // Reverse neighbors with tied distances may be in a different order:
+      DoubleDBIDList seqr = seq.getRKNN(iter), parr = par.getRKNN(iter);
+      assertEquals("rkNN sizes do not agree.", seqr.size(), parr.size());
+      assertEquals("rkNNs do not agree.", seqr.size(), DBIDUtil.intersectionSize(seqr, parr));
+      for(DoubleDBIDListIter e = seqr.iter(), a = parr.iter(); e.valid(); e.advance(), a.advance()) {
+        assertEquals("rkNN distances do not agree.", e.doubleValue(), a.doubleValue(), 0.);
+      }
+    }
+  }
+
   public static void testRKNNQueries(Relation<DoubleVector> rep, RKNNSearcher<DBIDRef> lin_rknn_query, RKNNSearcher<DBIDRef> preproc_rknn_query, int k) {
     ArrayDBIDs sample = DBIDUtil.ensureArray(rep.getDBIDs());
     for(DBIDIter it = sample.iter(); it.valid(); it.advance()) {
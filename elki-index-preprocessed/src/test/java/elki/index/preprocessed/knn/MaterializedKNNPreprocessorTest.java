@@ -32,7 +32,9 @@ import elki.data.DoubleVector;
 import elki.data.NumberVector;
 import elki.data.VectorUtil;
 import elki.data.type.TypeUtil;
+import elki.database.Database;
 import elki.database.HashmapDatabase;
+import elki.database.StaticArrayDatabase;
 import elki.database.UpdatableDatabase;
 import elki.database.ids.*;
 import elki.database.query.QueryBuilder;
@@ -44,6 +46,7 @@ import elki.database.relation.RelationUtil;
 import elki.datasource.FileBasedDatabaseConnection;
 import elki.datasource.bundle.MultipleObjectsBundle;
 import elki.distance.minkowski.EuclideanDistance;
+import elki.parallel.ParallelCore;
 import elki.result.Metadata;
 import elki.utilities.ELKIBuilder;
 
@@ -121,6 +124,36 @@ public class MaterializedKNNPreprocessorTest {
     testKNNQueries(relation, lin_knn_query, preproc_knn_query, k);
   }
 
+  @Test
+  public void testParallel() {
+    Database db = new ELKIBuilder<>(StaticArrayDatabase.class) //
+        .with(FileBasedDatabaseConnection.Par.INPUT_ID, getClass().getClassLoader().getResource(dataset)) //
+        .build();
+    db.initialize();
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+
+    MaterializeKNNPreprocessor<DoubleVector> seq = new MaterializeKNNPreprocessor<>(relation, EuclideanDistance.STATIC, k, null);
+    MaterializeKNNPreprocessor<DoubleVector> par = //
+        new ELKIBuilder<MaterializeKNNPreprocessor.Factory<DoubleVector>>(MaterializeKNNPreprocessor.Factory.class) //
+            .with(MaterializeKNNPreprocessor.Factory.DISTANCE_FUNCTION_ID, EuclideanDistance.STATIC) //
+            .with(MaterializeKNNPreprocessor.Factory.K_ID, k) //
+            .with(ParallelCore.Par.THREADS_ID, 3) //
+            .build().instantiate(relation);
+    seq.initialize();
+    par.initialize();
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      assertSameNeighbors(seq.get(iter), par.get(iter));
+    }
+  }
+
+  public static void assertSameNeighbors(DoubleDBIDList expected, DoubleDBIDList actual) {
+    assertEquals("Neighbor list sizes do not agree.", expected.size(), actual.size());
+    for(DoubleDBIDListIter e = expected.iter(), a = actual.iter(); e.valid(); e.advance(), a.advance()) {
+      assertTrue("Neighbors do not agree.", DBIDUtil.equal(e, a));
+      assertEquals("Neighbor distances do not agree.", e.doubleValue(), a.doubleValue(), 0.);
+    }
+  }
+
   public static void testKNNQueries(Relation<DoubleVector> rep, KNNSearcher<DBIDRef> lin_knn_query, KNNSearcher<DBIDRef> preproc_knn_query, int k) {
     assertNotEquals("Preprocessor knn query class incorrect.", lin_knn_query.getClass(), preproc_knn_query.getClass());
     for(DBIDIter iter = rep.iterDBIDs(); iter.valid(); iter.advance()) {
@@ -21,21 +21,39 @@
 package elki.index.preprocessed.knn;
 
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
 import elki.algorithm.AbstractSimpleAlgorithmTest;
 import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.data.VectorUtil;
 import elki.data.type.TypeUtil;
 import elki.database.Database;
+import elki.database.HashmapDatabase;
+import elki.database.UpdatableDatabase;
+import elki.database.ids.DBIDIter;
 import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DBIDs;
+import elki.database.ids.DoubleDBIDListIter;
+import elki.database.ids.KNNList;
 import elki.database.query.QueryBuilder;
 import elki.database.query.distance.DistanceQuery;
 import elki.database.query.knn.KNNSearcher;
 import elki.database.query.knn.LinearScanKNNByDBID;
 import elki.database.query.knn.LinearScanKNNByObject;
 import elki.database.relation.Relation;
+import elki.database.relation.RelationUtil;
+import elki.datasource.FileBasedDatabaseConnection;
+import elki.datasource.bundle.MultipleObjectsBundle;
 import elki.distance.minkowski.EuclideanDistance;
+import elki.parallel.ParallelCore;
 import elki.result.Metadata;
 import elki.utilities.ELKIBuilder;
 
@@ -84,8 +102,95 @@ public class NNDescentTest {
     assertFalse("Preprocessor knn query class incorrect.", preproc_knn_query instanceof LinearScanKNNByObject);
 
     // test queries
-    MaterializedKNNPreprocessorTest.testKNNQueries(relation, lin_knn_query, preproc_knn_query, k, 16);
+    MaterializedKNNPreprocessorTest.testKNNQueries(relation, lin_knn_query, preproc_knn_query, k, 0);
     // also test partial queries, forward only
-    MaterializedKNNPreprocessorTest.testKNNQueries(relation, lin_knn_query, preproc_knn_query, k / 2, 6);
+    MaterializedKNNPreprocessorTest.testKNNQueries(relation, lin_knn_query, preproc_knn_query, k / 2, 0);
+  }
+
+  @Test
+  public void testParallel() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds);
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> distanceQuery = new QueryBuilder<>(relation, EuclideanDistance.STATIC).distanceQuery();
+    KNNSearcher<DBIDRef> lin_knn_query = new LinearScanKNNByDBID<>(distanceQuery);
+
+    NNDescent<DoubleVector> preproc = new ELKIBuilder<NNDescent.Factory<DoubleVector>>(NNDescent.Factory.class) //
+        .with(NNDescent.Factory.DISTANCE_FUNCTION_ID, distanceQuery.getDistance()) //
+        .with(NNDescent.Factory.K_ID, k) //
+        .with(NNDescent.Factory.Par.SEED_ID, 0) //
+        .with(NNDescent.Factory.Par.DELTA_ID, 0.1) //
+        .with(NNDescent.Factory.Par.RHO_ID, 0.5) //
+        .with(NNDescent.Factory.Par.PARALLEL_ID) //
+        .with(ParallelCore.Par.THREADS_ID, 3) //
+        .build().instantiate(relation);
+    preproc.initialize();
+    // The thread interleaving is not deterministic, so only bound the errors.
+    int errors = countErrors(relation, lin_knn_query, preproc.kNNByDBID(distanceQuery, k, 0), k);
+    assertTrue("Too many errors: " + errors, errors <= relation.size() * k / 50);
+  }
+
+  @Test
+  public void testUpdates() {
+    UpdatableDatabase db = new ELKIBuilder<>(HashmapDatabase.class) //
+        .with(FileBasedDatabaseConnection.Par.INPUT_ID, getClass().getClassLoader().getResource(dataset)) //
+        .build();
+    db.initialize();
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> distanceQuery = new QueryBuilder<>(relation, EuclideanDistance.STATIC).distanceQuery();
+    KNNSearcher<DBIDRef> lin_knn_query = new LinearScanKNNByDBID<>(distanceQuery);
+
+    NNDescent<DoubleVector> preproc = new ELKIBuilder<NNDescent.Factory<DoubleVector>>(NNDescent.Factory.class) //
+        .with(NNDescent.Factory.DISTANCE_FUNCTION_ID, distanceQuery.getDistance()) //
+        .with(NNDescent.Factory.K_ID, k) //
+        .with(NNDescent.Factory.Par.SEED_ID, 0) //
+        .with(NNDescent.Factory.Par.DELTA_ID, 0.1) //
+        .with(NNDescent.Factory.Par.RHO_ID, 0.5) //
+        .build().instantiate(relation);
+    KNNSearcher<DBIDRef> preproc_knn_query = preproc.kNNByDBID(distanceQuery, k, 0);
+    Metadata.hierarchyOf(relation).addChild(preproc);
+    // DBIDs, and hence the random initialization, depend on the test order.
+    // A single missed neighbor shifts the remaining list, so allow 2%.
+    int errors = countErrors(relation, lin_knn_query, preproc_knn_query, k);
+    assertTrue("Too many errors: " + errors, errors <= relation.size() * k / 50);
+
+    // insert new objects
+    List<DoubleVector> insertions = new ArrayList<>();
+    NumberVector.Factory<DoubleVector> o = RelationUtil.getNumberVectorFactory(relation);
+    int dim = RelationUtil.dimensionality(relation);
+    Random random = new Random(seed);
+    for(int i = 0; i < updatesize; i++) {
+      insertions.add(VectorUtil.randomVector(o, dim, random));
+    }
+    DBIDs deletions = db.insert(MultipleObjectsBundle.makeSimple(relation.getDataTypeInformation(), insertions));
+    errors = countErrors(relation, lin_knn_query, preproc_knn_query, k);
+    assertTrue("Too many errors after insertion: " + errors, errors <= relation.size() * k / 50);
+
+    // delete objects
+    db.delete(deletions);
+    errors = countErrors(relation, lin_knn_query, preproc_knn_query, k);
+    assertTrue("Too many errors after deletion: " + errors, errors <= relation.size() * k / 50);
+  }
+
+  /**
+   * Count the number of mismatching neighbors.
+   *
+   * @param rep Relation
+   * @param lin_knn_query Exact kNN query
+   * @param preproc_knn_query Approximate kNN query
+   * @param k Number of neighbors
+   * @return Number of errors
+   */
+  private static int countErrors(Relation<DoubleVector> rep, KNNSearcher<DBIDRef> lin_knn_query, KNNSearcher<DBIDRef> preproc_knn_query, int k) {
+    int errors = 0;
+    for(DBIDIter iter = rep.iterDBIDs(); iter.valid(); iter.advance()) {
+      KNNList lin_knn = lin_knn_query.getKNN(iter, k);
+      KNNList pre_knn = preproc_knn_query.getKNN(iter, k);
+      for(DoubleDBIDListIter lin = lin_knn.iter(), pre = pre_knn.iter(); lin.valid() && pre.valid(); lin.advance(), pre.advance()) {
+        if(!DBIDUtil.equal(lin, pre) && lin.doubleValue() != pre.doubleValue()) {
+          ++errors;
+        }
+      }
+    }
+    return errors;
   }
 }
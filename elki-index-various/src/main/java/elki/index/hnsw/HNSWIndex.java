@@ -0,0 +1,1162 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.hnsw;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import elki.data.type.TypeInformation;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.*;
+import elki.database.query.PrioritySearcher;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.index.DistancePriorityIndex;
+import elki.index.IndexFactory;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.logging.statistics.LongStatistic;
+import elki.parallel.Executor;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
+import elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
+import elki.utilities.datastructures.heap.DoubleIntegerHeap;
+import elki.utilities.datastructures.heap.DoubleIntegerMaxHeap;
+import elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.RandomFactory;
+
+import net.jafama.FastMath;
+
+/**
+ * Hierarchical navigable small world graph (HNSW) for approximate nearest
+ * neighbor search.
+ * <p>
+ * Every object is assigned a random level with exponentially decaying
+ * probability, and is linked to (at most) {@code m} neighbors on each layer
+ * up to this level ({@code 2m} on the bottom layer). Searches descend greedily
+ * from the top layer, then perform a best-first search with a candidate list
+ * of size {@code ef} on the bottom layer. Neighbor lists are stored as
+ * primitive int arrays of internal offsets, with the number of neighbors in
+ * the first position.
+ * <p>
+ * The graph is constructed concurrently using the {@link ParallelCore},
+ * with lock striping on the neighbor lists.
+ * <p>
+ * The results are <em>approximate</em>, hence this index is not used for
+ * queries that require exact results.
+ * <p>
+ * Reference:
+ * <p>
+ * Y. A. Malkov, D. A. Yashunin<br>
+ * Efficient and robust approximate nearest neighbor search using Hierarchical
+ * Navigable Small World graphs<br>
+ * IEEE Trans. Pattern Analysis and Machine Intelligence 42(4)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - HNSWSearcher
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "Y. A. Malkov, D. A. Yashunin", //
+    title = "Efficient and robust approximate nearest neighbor search using Hierarchical Navigable Small World graphs", //
+    booktitle = "IEEE Trans. Pattern Analysis and Machine Intelligence 42(4)", //
+    url = "https://doi.org/10.1109/TPAMI.2018.2889473", //
+    bibkey = "DBLP:journals/pami/MalkovY20")
+public class HNSWIndex<O> implements DistancePriorityIndex<O> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(HNSWIndex.class);
+
+  /**
+   * Number of lock stripes used during construction.
+   */
+  private static final int LOCK_STRIPES = 1 << 12;
+
+  /**
+   * The representation we are bound to.
+   */
+  protected final Relation<O> relation;
+
+  /**
+   * Distance function.
+   */
+  protected final Distance<? super O> distance;
+
+  /**
+   * Distance query, on the data relation.
+   */
+  private DistanceQuery<O> distanceQuery;
+
+  /**
+   * Maximum number of neighbors per node on the upper layers.
+   */
+  protected final int m;
+
+  /**
+   * Candidate list size during construction.
+   */
+  protected final int efConstruction;
+
+  /**
+   * Candidate list size for queries.
+   */
+  protected final int ef;
+
+  /**
+   * Random generator for the level assignment.
+   */
+  protected final RandomFactory random;
+
+  /**
+   * Parallel core used for construction.
+   */
+  protected final ParallelCore core;
+
+  /**
+   * Indexed objects, by internal offset.
+   */
+  private ArrayDBIDs ids;
+
+  /**
+   * Map from DBIDs to internal offsets.
+   */
+  private WritableIntegerDataStore offsets;
+
+  /**
+   * Neighbor lists, by offset and layer. The first entry is the number of
+   * neighbors.
+   */
+  private int[][][] links;
+
+  /**
+   * Lock stripes for the neighbor lists, only used during construction.
+   */
+  private Object[] locks;
+
+  /**
+   * Entry point of the search.
+   */
+  private int entry = -1;
+
+  /**
+   * Maximum level.
+   */
+  private int maxLevel = -1;
+
+  /**
+   * Distance computations performed.
+   */
+  private final LongAdder distComputations = new LongAdder();
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distance Distance function
+   * @param m Maximum number of neighbors per node on the upper layers
+   * @param efConstruction Candidate list size during construction
+   * @param ef Candidate list size for queries
+   * @param random Random generator for the level assignment
+   * @param core Parallel core used for construction
+   */
+  public HNSWIndex(Relation<O> relation, Distance<? super O> distance, int m, int efConstruction, int ef, RandomFactory random, ParallelCore core) {
+    super();
+    this.relation = relation;
+    this.distance = distance;
+    this.m = m;
+    this.efConstruction = efConstruction;
+    this.ef = ef;
+    this.random = random;
+    this.core = core;
+  }
+
+  @Override
+  public void initialize() {
+    distanceQuery = distance.instantiate(relation);
+    ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_DB | DataStoreFactory.HINT_HOT, -1);
+    links = new int[size][][];
+    // Assign levels beforehand, to make them independent of thread timing:
+    final Random rnd = random.getSingleThreadedRandom();
+    final double mult = 1. / FastMath.log(m);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      final int i = it.getOffset();
+      offsets.putInt(it, i);
+      final int level = (int) (-FastMath.log(1. - rnd.nextDouble()) * mult);
+      final int[][] l = links[i] = new int[level + 1][];
+      l[0] = new int[1 + (m << 1)];
+      for(int j = 1; j <= level; j++) {
+        l[j] = new int[1 + m];
+      }
+    }
+    if(size == 0) {
+      return;
+    }
+    locks = new Object[Math.min(LOCK_STRIPES, size)];
+    for(int i = 0; i < locks.length; i++) {
+      locks[i] = new Object();
+    }
+    entry = 0;
+    maxLevel = links[0].length - 1;
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("HNSW construction", size, LOG) : null;
+    if(size > 1) {
+      ParallelExecutor.run(core, ids.slice(1, size), new InsertProcessor(prog));
+    }
+    LOG.ensureCompleted(prog);
+    locks = null; // Read-only from now on.
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".max-level", maxLevel));
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".construction-distance-computations", distComputations.sumThenReset()));
+    }
+  }
+
+  /**
+   * Get the lock for a node during construction.
+   *
+   * @param node Node offset
+   * @return Lock object
+   */
+  private Object lock(int node) {
+    return locks[node % locks.length];
+  }
+
+  @Override
+  public void logStatistics() {
+    LOG.statistics(new LongStatistic(this.getClass().getName() + ".distance-computations", distComputations.sum()));
+  }
+
+  @Override
+  public KNNSearcher<O> kNNByObject(DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    return priorityByObject(distanceQuery, Double.POSITIVE_INFINITY, flags);
+  }
+
+  @Override
+  public KNNSearcher<DBIDRef> kNNByDBID(DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    return priorityByDBID(distanceQuery, Double.POSITIVE_INFINITY, flags);
+  }
+
+  @Override
+  public RangeSearcher<O> rangeByObject(DistanceQuery<O> distanceQuery, double maxradius, int flags) {
+    return priorityByObject(distanceQuery, maxradius, flags);
+  }
+
+  @Override
+  public RangeSearcher<DBIDRef> rangeByDBID(DistanceQuery<O> distanceQuery, double maxradius, int flags) {
+    return priorityByDBID(distanceQuery, maxradius, flags);
+  }
+
+  @Override
+  public PrioritySearcher<O> priorityByObject(DistanceQuery<O> distanceQuery, double maxradius, int flags) {
+    return (flags & QueryBuilder.FLAG_EXACT_ONLY) == 0 && //
+        distanceQuery.getRelation() == relation && this.distance.equals(distanceQuery.getDistance()) ? //
+            new HNSWObjectSearcher() : null;
+  }
+
+  @Override
+  public PrioritySearcher<DBIDRef> priorityByDBID(DistanceQuery<O> distanceQuery, double maxradius, int flags) {
+    return (flags & QueryBuilder.FLAG_EXACT_ONLY) == 0 && //
+        distanceQuery.getRelation() == relation && this.distance.equals(distanceQuery.getDistance()) ? //
+            new HNSWDBIDSearcher(false) : null;
+  }
+
+  /**
+   * Searcher for the HNSW graph.
+   * <p>
+   * The kNN and range queries use the usual bounded best-first search on the
+   * bottom layer. The priority search visits the whole graph in best-first
+   * order, which is only approximately ordered by distance. It does not provide
+   * distance bounds other than the trivial bound 0.
+   *
+   * @author Erich Schubert
+   *
+   * @param <Q> query type
+   */
+  public abstract class HNSWSearcher<Q> implements PrioritySearcher<Q> {
+    /**
+     * Iterator for the current result.
+     */
+    protected final DBIDArrayIter iter = ids.iter();
+
+    /**
+     * Iterators for distance computations.
+     */
+    private final DBIDArrayIter diter = ids.iter(), diter2 = ids.iter();
+
+    /**
+     * Visited markers, and the current marker value.
+     */
+    private int[] visited = new int[ids.size()];
+
+    /**
+     * Current visited marker.
+     */
+    private int tag = 0;
+
+    /**
+     * Candidates to expand.
+     */
+    protected final DoubleIntegerMinHeap cand = new DoubleIntegerMinHeap();
+
+    /**
+     * Best results found.
+     */
+    protected final DoubleIntegerMaxHeap res = new DoubleIntegerMaxHeap();
+
+    /**
+     * Copy neighbor lists under a lock (during construction).
+     */
+    private final int[] nbuf;
+
+    /**
+     * Object to exclude from the search (during construction).
+     */
+    protected int self = -1;
+
+    /**
+     * Distance of the current entry point during the greedy descent.
+     */
+    private double epdist;
+
+    /**
+     * Stopping distance threshold of the priority search.
+     */
+    private double threshold = Double.POSITIVE_INFINITY;
+
+    /**
+     * Current object of the priority search, and its distance.
+     */
+    private int cur = -1;
+
+    /**
+     * Current distance of the priority search.
+     */
+    private double curdist;
+
+    /**
+     * Scan position to restart the priority search in unconnected parts.
+     */
+    private int scanpos;
+
+    /**
+     * Constructor.
+     *
+     * @param building Searcher used during construction
+     */
+    public HNSWSearcher(boolean building) {
+      super();
+      this.nbuf = building ? new int[1 + (m << 1)] : null;
+    }
+
+    /**
+     * Compute the distance to the query object.
+     *
+     * @param it Candidate
+     * @param threshold Distance threshold
+     * @return Distance, or a value larger than the threshold
+     */
+    protected abstract double queryDistance(DBIDRef it, double threshold);
+
+    /**
+     * Compute the distance to the query object (and count).
+     *
+     * @param i Candidate offset
+     * @param threshold Distance threshold
+     * @return Distance, or a value larger than the threshold
+     */
+    protected double queryDistance(int i, double threshold) {
+      distComputations.increment();
+      return queryDistance(diter.seek(i), threshold);
+    }
+
+    /**
+     * Compute the distance of two indexed objects (and count).
+     *
+     * @param a First offset
+     * @param b Second offset
+     * @param threshold Distance threshold
+     * @return Distance, or a value larger than the threshold
+     */
+    protected double distance(int a, int b, double threshold) {
+      distComputations.increment();
+      return distanceQuery.distance(diter.seek(a), diter2.seek(b), threshold);
+    }
+
+    /**
+     * Get the neighbors of a node.
+     *
+     * @param node Node offset
+     * @param layer Layer
+     * @return Neighbors, with the number of neighbors in the first position
+     */
+    protected int[] neighbors(int node, int layer) {
+      final int[] l = links[node][layer];
+      if(nbuf == null) {
+        return l;
+      }
+      synchronized(lock(node)) {
+        System.arraycopy(l, 0, nbuf, 0, l[0] + 1);
+      }
+      return nbuf;
+    }
+
+    /**
+     * Start a new set of visited markers.
+     */
+    private void newTag() {
+      if(++tag <= 0) { // Overflow
+        Arrays.fill(visited, 0);
+        tag = 1;
+      }
+      if(self >= 0) {
+        visited[self] = tag;
+      }
+    }
+
+    /**
+     * Greedy search for the closest node on a single layer.
+     *
+     * @param start Starting node, at distance {@link #epdist}
+     * @param layer Layer
+     * @return Closest node found, at distance {@link #epdist}
+     */
+    protected int greedy(int start, int layer) {
+      int best = start;
+      boolean changed = true;
+      while(changed) {
+        changed = false;
+        final int[] nl = neighbors(best, layer);
+        for(int i = 1, e = nl[0]; i <= e; i++) {
+          final int n = nl[i];
+          if(n == self) {
+            continue;
+          }
+          final double d = queryDistance(n, epdist);
+          if(d < epdist) {
+            epdist = d;
+            best = n;
+            changed = true;
+          }
+        }
+      }
+      return best;
+    }
+
+    /**
+     * Descend from the entry point to the bottom layer.
+     *
+     * @param ep Entry point
+     * @param top Top layer
+     * @param bottom Last layer to search greedily
+     * @return Entry point on the layer below
+     */
+    protected int descend(int ep, int top, int bottom) {
+      epdist = queryDistance(ep, Double.POSITIVE_INFINITY);
+      for(int l = top; l > bottom; l--) {
+        ep = greedy(ep, l);
+      }
+      res.clear();
+      res.add(epdist, ep);
+      return ep;
+    }
+
+    /**
+     * Best-first search on a single layer, starting from the current results.
+     *
+     * @param layer Layer
+     * @param ef Number of candidates to keep
+     * @param range Range to collect and search exhaustively
+     * @param collect Output for range results, may be {@code null}
+     */
+    protected void searchLayer(int layer, int ef, double range, ModifiableDoubleDBIDList collect) {
+      newTag();
+      cand.clear();
+      for(DoubleIntegerHeap.UnsortedIter it = res.unsortedIter(); it.valid(); it.advance()) {
+        final double d = it.getKey();
+        final int n = it.getValue();
+        visited[n] = tag;
+        cand.add(d, n);
+        if(collect != null && d <= range) {
+          collect.add(d, iter.seek(n));
+        }
+      }
+      while(!cand.isEmpty()) {
+        final double cd = cand.peekKey();
+        if(cd > range && res.size() >= ef && cd > res.peekKey()) {
+          break;
+        }
+        final int[] nl = neighbors(cand.peekValue(), layer);
+        cand.poll();
+        for(int i = 1, e = nl[0]; i <= e; i++) {
+          final int n = nl[i];
+          if(visited[n] == tag) {
+            continue;
+          }
+          visited[n] = tag;
+          final boolean full = res.size() >= ef;
+          final double d = queryDistance(n, full ? Math.max(res.peekKey(), range) : Double.POSITIVE_INFINITY);
+          if(collect != null && d <= range) {
+            collect.add(d, iter.seek(n));
+          }
+          if(!full) {
+            cand.add(d, n);
+            res.add(d, n);
+          }
+          else if(d < res.peekKey()) {
+            cand.add(d, n);
+            res.replaceTopElement(d, n);
+          }
+          else if(d <= range) {
+            cand.add(d, n);
+          }
+        }
+      }
+    }
+
+    /**
+     * Find the starting point for queries.
+     *
+     * @return {@code false} if the index is empty
+     */
+    protected boolean start() {
+      self = -1;
+      if(entry < 0) {
+        return false;
+      }
+      descend(entry, maxLevel, 0);
+      return true;
+    }
+
+    /**
+     * Perform a kNN search.
+     *
+     * @param k Number of neighbors
+     * @return kNN list
+     */
+    protected KNNList doKNN(int k) {
+      final KNNHeap heap = DBIDUtil.newHeap(k);
+      if(start()) {
+        searchLayer(0, Math.max(ef, k), Double.NEGATIVE_INFINITY, null);
+        while(res.size() > k) {
+          res.poll();
+        }
+        for(DoubleIntegerHeap.UnsortedIter it = res.unsortedIter(); it.valid(); it.advance()) {
+          heap.insert(it.getKey(), iter.seek(it.getValue()));
+        }
+      }
+      return heap.toKNNList();
+    }
+
+    /**
+     * Perform a range search.
+     *
+     * @param range Query radius
+     * @param result Output list
+     * @return Output list
+     */
+    protected ModifiableDoubleDBIDList doRange(double range, ModifiableDoubleDBIDList result) {
+      if(start()) {
+        searchLayer(0, ef, range, result);
+      }
+      return result;
+    }
+
+    /**
+     * Start a priority search.
+     *
+     * @return this
+     */
+    protected PrioritySearcher<Q> doSearch() {
+      threshold = Double.POSITIVE_INFINITY;
+      cur = -1;
+      scanpos = 0;
+      cand.clear();
+      if(start()) {
+        newTag();
+        visited[res.peekValue()] = tag;
+        cand.add(res.peekKey(), res.peekValue());
+      }
+      return advance();
+    }
+
+    @Override
+    public PrioritySearcher<Q> decreaseCutoff(double threshold) {
+      assert threshold <= this.threshold;
+      this.threshold = threshold;
+      return this;
+    }
+
+    @Override
+    public boolean valid() {
+      return cur >= 0;
+    }
+
+    @Override
+    public PrioritySearcher<Q> advance() {
+      if(cur >= 0) { // Expand the previous node
+        final int[] nl = neighbors(cur, 0);
+        for(int i = 1, e = nl[0]; i <= e; i++) {
+          final int n = nl[i];
+          if(visited[n] != tag) {
+            visited[n] = tag;
+            cand.add(queryDistance(n, threshold), n);
+          }
+        }
+        cur = -1;
+      }
+      if(cand.isEmpty() && entry >= 0) {
+        // Continue with objects not reachable in the graph.
+        while(scanpos < visited.length && visited[scanpos] == tag) {
+          ++scanpos;
+        }
+        if(scanpos < visited.length) {
+          visited[scanpos] = tag;
+          cand.add(queryDistance(scanpos, threshold), scanpos);
+        }
+      }
+      if(cand.isEmpty() || cand.peekKey() > threshold) {
+        return this;
+      }
+      curdist = cand.peekKey();
+      iter.seek(cur = cand.peekValue());
+      cand.poll();
+      return this;
+    }
+
+    @Override
+    public int internalGetIndex() {
+      return iter.internalGetIndex();
+    }
+
+    @Override
+    public double computeExactDistance() {
+      return curdist;
+    }
+
+    @Override
+    public double getApproximateDistance() {
+      return curdist;
+    }
+
+    @Override
+    public double getApproximateAccuracy() {
+      return 0.;
+    }
+
+    @Override
+    public double getLowerBound() {
+      return curdist;
+    }
+
+    @Override
+    public double getUpperBound() {
+      return curdist;
+    }
+
+    @Override
+    public double allLowerBound() {
+      return cur >= 0 ? 0. : Double.POSITIVE_INFINITY;
+    }
+  }
+
+  /**
+   * Searcher for query objects.
+   *
+   * @author Erich Schubert
+   */
+  public class HNSWObjectSearcher extends HNSWSearcher<O> {
+    /**
+     * Query object.
+     */
+    private O query;
+
+    /**
+     * Constructor.
+     */
+    public HNSWObjectSearcher() {
+      super(false);
+    }
+
+    @Override
+    public KNNList getKNN(O query, int k) {
+      this.query = query;
+      return doKNN(k);
+    }
+
+    @Override
+    public ModifiableDoubleDBIDList getRange(O query, double range, ModifiableDoubleDBIDList result) {
+      this.query = query;
+      return doRange(range, result);
+    }
+
+    @Override
+    public PrioritySearcher<O> search(O query) {
+      this.query = query;
+      return doSearch();
+    }
+
+    @Override
+    protected double queryDistance(DBIDRef it, double threshold) {
+      return distanceQuery.distance(query, it, threshold);
+    }
+  }
+
+  /**
+   * Searcher for indexed objects, also used for insertion.
+   *
+   * @author Erich Schubert
+   */
+  public class HNSWDBIDSearcher extends HNSWSearcher<DBIDRef> {
+    /**
+     * Query object.
+     */
+    private DBIDRef query;
+
+    /**
+     * Sorted candidates.
+     */
+    private double[] cdists = new double[efConstruction];
+
+    /**
+     * Sorted candidates.
+     */
+    private int[] cids = new int[efConstruction];
+
+    /**
+     * Scratch space for pruning existing neighbor lists.
+     */
+    private double[] sdists;
+
+    /**
+     * Scratch space for pruning existing neighbor lists.
+     */
+    private int[] sids;
+
+    /**
+     * Constructor.
+     *
+     * @param building Searcher used during construction
+     */
+    public HNSWDBIDSearcher(boolean building) {
+      super(building);
+      if(building) {
+        sdists = new double[2 + (m << 1)];
+        sids = new int[2 + (m << 1)];
+      }
+    }
+
+    @Override
+    public KNNList getKNN(DBIDRef query, int k) {
+      this.query = query;
+      return doKNN(k);
+    }
+
+    @Override
+    public ModifiableDoubleDBIDList getRange(DBIDRef query, double range, ModifiableDoubleDBIDList result) {
+      this.query = query;
+      return doRange(range, result);
+    }
+
+    @Override
+    public PrioritySearcher<DBIDRef> search(DBIDRef query) {
+      this.query = query;
+      return doSearch();
+    }
+
+    @Override
+    protected double queryDistance(DBIDRef it, double threshold) {
+      return distanceQuery.distance(query, it, threshold);
+    }
+
+    /**
+     * Insert an object into the graph.
+     *
+     * @param id Object to insert
+     */
+    protected void insert(DBIDRef id) {
+      this.query = id;
+      final int q = self = offsets.intValue(id);
+      final int level = links[q].length - 1;
+      int ep, top;
+      synchronized(HNSWIndex.this) {
+        ep = entry;
+        top = maxLevel;
+      }
+      descend(ep, top, level);
+      for(int l = Math.min(level, top); l >= 0; l--) {
+        searchLayer(l, efConstruction, Double.NEGATIVE_INFINITY, null);
+        // Sort candidates, and keep them as seeds for the next layer:
+        final int c = res.size();
+        for(int i = c - 1; i >= 0; i--) {
+          cdists[i] = res.peekKey();
+          cids[i] = res.peekValue();
+          res.poll();
+        }
+        for(int i = 0; i < c; i++) {
+          res.add(cdists[i], cids[i]);
+        }
+        final int r = prune(cdists, cids, c, m);
+        synchronized(lock(q)) {
+          final int[] nl = links[q][l];
+          System.arraycopy(cids, 0, nl, 1, r);
+          nl[0] = r;
+        }
+        for(int i = 0; i < r; i++) {
+          connect(cids[i], q, cdists[i], l);
+        }
+      }
+      if(level > top) {
+        synchronized(HNSWIndex.this) {
+          if(level > maxLevel) {
+            maxLevel = level;
+            entry = q;
+          }
+        }
+      }
+    }
+
+    /**
+     * Add a reverse link, pruning the neighbor list if necessary.
+     *
+     * @param node Node to add the link to
+     * @param q New neighbor
+     * @param dq Distance to the new neighbor
+     * @param layer Layer
+     */
+    private void connect(int node, int q, double dq, int layer) {
+      synchronized(lock(node)) {
+        final int[] nl = links[node][layer];
+        final int c = nl[0];
+        for(int i = 1; i <= c; i++) {
+          if(nl[i] == q) {
+            return;
+          }
+        }
+        if(c < nl.length - 1) {
+          nl[c + 1] = q;
+          nl[0] = c + 1;
+          return;
+        }
+        // Overflow, select the neighbors to keep:
+        sdists[0] = dq;
+        sids[0] = q;
+        for(int i = 1; i <= c; i++) {
+          sids[i] = nl[i];
+          sdists[i] = distance(node, nl[i], Double.POSITIVE_INFINITY);
+        }
+        DoubleIntegerArrayQuickSort.sort(sdists, sids, c + 1);
+        final int r = prune(sdists, sids, c + 1, nl.length - 1);
+        System.arraycopy(sids, 0, nl, 1, r);
+        nl[0] = r;
+      }
+    }
+
+    /**
+     * Neighbor selection heuristic: keep a candidate only if it is closer to
+     * the query than to all neighbors already selected.
+     *
+     * @param dists Candidate distances, sorted ascending
+     * @param cands Candidates
+     * @param c Number of candidates
+     * @param max Maximum number of neighbors to select
+     * @return Number of neighbors selected, moved to the front of the arrays
+     */
+    private int prune(double[] dists, int[] cands, int c, int max) {
+      if(c <= max) {
+        return c;
+      }
+      int r = 0;
+      for(int i = 0; i < c && r < max; i++) {
+        final int e = cands[i];
+        final double de = dists[i];
+        boolean good = true;
+        for(int j = 0; j < r; j++) {
+          if(distance(cands[j], e, de) < de) {
+            good = false;
+            break;
+          }
+        }
+        if(good) {
+          cands[r] = e;
+          dists[r++] = de;
+        }
+      }
+      return r;
+    }
+  }
+
+  /**
+   * Processor to insert objects in parallel.
+   * <p>
+   * Because processor instances are created per block of objects, searchers
+   * (which hold a marker array over all objects) are pooled for reuse.
+   *
+   * @author Erich Schubert
+   */
+  private class InsertProcessor implements Processor {
+    /**
+     * Pool of searchers.
+     */
+    private final ArrayDeque<Inserter> pool = new ArrayDeque<>();
+
+    /**
+     * Progress, may be {@code null}.
+     */
+    private final FiniteProgress prog;
+
+    /**
+     * Constructor.
+     *
+     * @param prog Progress, may be {@code null}
+     */
+    public InsertProcessor(FiniteProgress prog) {
+      super();
+      this.prog = prog;
+      if(prog != null) {
+        prog.incrementProcessed(LOG); // Entry point
+      }
+    }
+
+    @Override
+    public synchronized Instance instantiate(Executor executor) {
+      final Inserter inst = pool.poll();
+      return inst != null ? inst : new Inserter(new HNSWDBIDSearcher(true), prog);
+    }
+
+    @Override
+    public synchronized void cleanup(Instance inst) {
+      pool.push((Inserter) inst);
+    }
+  }
+
+  /**
+   * Instance of the insertion processor.
+   *
+   * @author Erich Schubert
+   */
+  private static class Inserter implements Processor.Instance {
+    /**
+     * Searcher used for insertion.
+     */
+    private final HNSWIndex<?>.HNSWDBIDSearcher searcher;
+
+    /**
+     * Progress, may be {@code null}.
+     */
+    private final FiniteProgress prog;
+
+    /**
+     * Constructor.
+     *
+     * @param searcher Searcher used for insertion
+     * @param prog Progress, may be {@code null}
+     */
+    public Inserter(HNSWIndex<?>.HNSWDBIDSearcher searcher, FiniteProgress prog) {
+      super();
+      this.searcher = searcher;
+      this.prog = prog;
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      searcher.insert(id);
+      if(prog != null) {
+        prog.incrementProcessed(LOG);
+      }
+    }
+  }
+
+  /**
+   * Index factory for HNSW graphs.
+   *
+   * @author Erich Schubert
+   *
+   * @has - - - HNSWIndex
+   *
+   * @param <O> Object type
+   */
+  public static class Factory<O> implements IndexFactory<O> {
+    /**
+     * Distance function.
+     */
+    protected Distance<? super O> distance;
+
+    /**
+     * Maximum number of neighbors per node on the upper layers.
+     */
+    protected int m;
+
+    /**
+     * Candidate list size during construction.
+     */
+    protected int efConstruction;
+
+    /**
+     * Candidate list size for queries.
+     */
+    protected int ef;
+
+    /**
+     * Random generator for the level assignment.
+     */
+    protected RandomFactory random;
+
+    /**
+     * Parallel core used for construction.
+     */
+    protected ParallelCore core;
+
+    /**
+     * Constructor.
+     *
+     * @param distance Distance function
+     * @param m Maximum number of neighbors per node on the upper layers
+     * @param efConstruction Candidate list size during construction
+     * @param ef Candidate list size for queries
+     * @param random Random generator for the level assignment
+     * @param core Parallel core used for construction
+     */
+    public Factory(Distance<? super O> distance, int m, int efConstruction, int ef, RandomFactory random, ParallelCore core) {
+      super();
+      this.distance = distance;
+      this.m = m;
+      this.efConstruction = efConstruction;
+      this.ef = ef;
+      this.random = random;
+      this.core = core;
+    }
+
+    @Override
+    public HNSWIndex<O> instantiate(Relation<O> relation) {
+      return new HNSWIndex<>(relation, distance, m, efConstruction, ef, random, core);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return distance.getInputTypeRestriction();
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     */
+    public static class Par<O> implements Parameterizer {
+      /**
+       * Distance function to use.
+       */
+      public static final OptionID DISTANCE_FUNCTION_ID = new OptionID("hnsw.distance", "Distance function to build the graph with.");
+
+      /**
+       * Maximum number of neighbors per node.
+       */
+      public static final OptionID M_ID = new OptionID("hnsw.m", "Maximum number of neighbors per node on the upper layers, twice this on the bottom layer.");
+
+      /**
+       * Candidate list size during construction.
+       */
+      public static final OptionID EF_CONSTRUCTION_ID = new OptionID("hnsw.efconstruction", "Candidate list size during construction. Larger values increase the graph quality, but also the construction cost.");
+
+      /**
+       * Candidate list size for queries.
+       */
+      public static final OptionID EF_ID = new OptionID("hnsw.ef", "Candidate list size for queries (at least k). Larger values increase recall, but also the query cost.");
+
+      /**
+       * Random generator for the level assignment.
+       */
+      public static final OptionID SEED_ID = new OptionID("hnsw.seed", "Random generator seed for the level assignment.");
+
+      /**
+       * Distance function.
+       */
+      protected Distance<? super O> distance;
+
+      /**
+       * Maximum number of neighbors per node on the upper layers.
+       */
+      protected int m;
+
+      /**
+       * Candidate list size during construction.
+       */
+      protected int efConstruction;
+
+      /**
+       * Candidate list size for queries.
+       */
+      protected int ef;
+
+      /**
+       * Random generator for the level assignment.
+       */
+      protected RandomFactory random;
+
+      /**
+       * Parallel core used for construction.
+       */
+      protected ParallelCore core;
+
+      @Override
+      public void configure(Parameterization config) {
+        new ObjectParameter<Distance<? super O>>(DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class) //
+            .grab(config, x -> distance = x);
+        new IntParameter(M_ID, 16) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT) //
+            .grab(config, x -> m = x);
+        new IntParameter(EF_CONSTRUCTION_ID, 200) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+            .grab(config, x -> efConstruction = x);
+        new IntParameter(EF_ID, 50) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+            .grab(config, x -> ef = x);
+        new RandomParameter(SEED_ID).grab(config, x -> random = x);
+        core = config.tryInstantiate(ParallelCore.class);
+      }
+
+      @Override
+      public HNSWIndex.Factory<O> make() {
+        return new HNSWIndex.Factory<>(distance, m, efConstruction, ef, random, core);
+      }
+    }
+  }
+}
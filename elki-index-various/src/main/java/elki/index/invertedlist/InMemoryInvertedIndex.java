@@ -135,7 +135,7 @@ public class InMemoryInvertedIndex<V extends NumberVector> implements KNNIndex<V
       len += val * val;
       getOrCreateColumn(dim).add(val, ref);
     }
-    length.put(ref, len);
+    length.put(ref, FastMath.sqrt(len));
   }
 
   /**
@@ -169,6 +169,34 @@ public abstract class AbstractCoverTree<O> implements Index {
     return distanceQuery.distance(a, b);
   }
 
+  /**
+   * Compute a distance (and count), which may stop early once the threshold
+   * is exceeded.
+   * 
+   * @param a Object reference
+   * @param b Object reference
+   * @param threshold Distance threshold
+   * @return Distance, or a value larger than the threshold
+   */
+  protected double distance(DBIDRef a, DBIDRef b, double threshold) {
+    ++distComputations;
+    return distanceQuery.distance(a, b, threshold);
+  }
+
+  /**
+   * Compute a distance (and count), which may stop early once the threshold
+   * is exceeded.
+   * 
+   * @param a Object reference
+   * @param b Object reference
+   * @param threshold Distance threshold
+   * @return Distance, or a value larger than the threshold
+   */
+  protected double distance(O a, DBIDRef b, double threshold) {
+    ++distComputations;
+    return distanceQuery.distance(a, b, threshold);
+  }
+
   /**
    * Retain all elements within the current cover.
    * 
@@ -358,9 +358,11 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
      * Compute distance to query object.
      *
      * @param it Candidate
-     * @return Distance
+     * @param threshold Distance threshold, beyond which the exact distance is
+     *        not needed
+     * @return Distance, or a value larger than the threshold
      */
-    protected abstract double queryDistance(DBIDRef it);
+    protected abstract double queryDistance(DBIDRef it, double threshold);
 
     /**
      * Perform the actual search.
@@ -374,7 +376,7 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
       open.add(root);
       while(!open.isEmpty()) {
         final Node cur = open.remove(open.size() - 1); // pop()
-        final double d = queryDistance(cur.singletons.assignVar(0, tmp));
+        final double d = queryDistance(cur.singletons.assignVar(0, tmp), range + cur.maxDist);
         // Covered area not in range (metric assumption):
         if(d - cur.maxDist > range) {
           continue;
@@ -399,7 +401,7 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
         // For remaining singletons, compute the distances:
         while(it.valid()) {
           if(Math.abs(d - it.doubleValue()) <= range) {
-            final double d2 = queryDistance(it);
+            final double d2 = queryDistance(it, range);
             if(d2 <= range) {
               result.add(d2, it);
             }
@@ -429,8 +431,8 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
     }
 
     @Override
-    protected double queryDistance(DBIDRef it) {
-      return distance(query, it);
+    protected double queryDistance(DBIDRef it, double threshold) {
+      return distance(query, it, threshold);
     }
   }
 
@@ -452,8 +454,8 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
     }
 
     @Override
-    protected double queryDistance(DBIDRef it) {
-      return distance(query, it);
+    protected double queryDistance(DBIDRef it, double threshold) {
+      return distance(query, it, threshold);
     }
   }
 
@@ -483,7 +485,7 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
       KNNHeap knnList = DBIDUtil.newHeap(k);
       double d_k = Double.POSITIVE_INFINITY;
       pq.clear();
-      pq.add(queryDistance(root.singletons.iter()) - root.maxDist, root);
+      pq.add(queryDistance(root.singletons.iter(), Double.POSITIVE_INFINITY) - root.maxDist, root);
 
       // search in tree
       while(!pq.isEmpty()) {
@@ -504,7 +506,7 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
             if(Math.abs(d - c.parentDist) - c.maxDist <= d_k) {
               // Reuse distance if the previous routing object is the same:
               double newprio = (DBIDUtil.equal(c.singletons.assignVar(0, tmp), it) //
-                  ? d : queryDistance(tmp)) //
+                  ? d : queryDistance(tmp, d_k + c.maxDist)) //
                   - c.maxDist; // Minimum distance
               if(newprio <= d_k) {
                 pq.add(newprio, c);
@@ -522,7 +524,7 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
         // For remaining singletons, compute the distances:
         while(it.valid()) {
           if(Math.abs(d - it.doubleValue()) <= d_k) {
-            final double d2 = queryDistance(it);
+            final double d2 = queryDistance(it, d_k);
             if(d2 <= d_k) {
               d_k = knnList.insert(d2, it);
             }
@@ -537,9 +539,11 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
      * Compute distance to query object.
      *
      * @param it Candidate
-     * @return Distance
+     * @param threshold Distance threshold, beyond which the exact distance is
+     *        not needed
+     * @return Distance, or a value larger than the threshold
      */
-    protected abstract double queryDistance(DBIDRef it);
+    protected abstract double queryDistance(DBIDRef it, double threshold);
   }
 
   /**
@@ -560,8 +564,8 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
     }
 
     @Override
-    protected double queryDistance(DBIDRef it) {
-      return distance(query, it);
+    protected double queryDistance(DBIDRef it, double threshold) {
+      return distance(query, it, threshold);
     }
   }
 
@@ -583,8 +587,8 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements DistancePriori
     }
 
     @Override
-    protected double queryDistance(DBIDRef it) {
-      return distance(query, it);
+    protected double queryDistance(DBIDRef it, double threshold) {
+      return distance(query, it, threshold);
     }
   }
 
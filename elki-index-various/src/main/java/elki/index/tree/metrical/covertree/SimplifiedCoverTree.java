@@ -320,9 +320,11 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
      * Compute distance to query object.
      *
      * @param it Candidate
-     * @return Distance
+     * @param threshold Distance threshold, beyond which the exact distance is
+     *        not needed
+     * @return Distance, or a value larger than the threshold
      */
-    protected abstract double queryDistance(DBIDRef it);
+    protected abstract double queryDistance(DBIDRef it, double threshold);
 
     /**
      * Perform the actual search.
@@ -336,7 +338,7 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
       open.add(root);
       while(!open.isEmpty()) {
         final Node cur = open.remove(open.size() - 1); // pop()
-        final double d = queryDistance(cur.singletons.assignVar(0, tmp));
+        final double d = queryDistance(cur.singletons.assignVar(0, tmp), range + cur.maxDist);
         // Covered area not in range (metric assumption):
         if(d - cur.maxDist > range) {
           continue;
@@ -354,7 +356,7 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
         }
         // For remaining singletons, compute the distances:
         for(int i = 1, l = cur.singletons.size(); i < l; i++) {
-          final double d2 = queryDistance(cur.singletons.assignVar(i, tmp));
+          final double d2 = queryDistance(cur.singletons.assignVar(i, tmp), range);
           if(d2 <= range) {
             result.add(d2, tmp);
           }
@@ -382,8 +384,8 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
     }
 
     @Override
-    protected double queryDistance(DBIDRef it) {
-      return distance(query, it);
+    protected double queryDistance(DBIDRef it, double threshold) {
+      return distance(query, it, threshold);
     }
   }
 
@@ -405,8 +407,8 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
     }
 
     @Override
-    protected double queryDistance(DBIDRef it) {
-      return distance(query, it);
+    protected double queryDistance(DBIDRef it, double threshold) {
+      return distance(query, it, threshold);
     }
   }
 
@@ -436,7 +438,7 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
       KNNHeap knnList = DBIDUtil.newHeap(k);
       double d_k = Double.POSITIVE_INFINITY;
       pq.clear();
-      pq.add(queryDistance(root.singletons.iter()) - root.maxDist, root);
+      pq.add(queryDistance(root.singletons.iter(), Double.POSITIVE_INFINITY) - root.maxDist, root);
 
       // search in tree
       while(!pq.isEmpty()) {
@@ -454,7 +456,7 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
           for(Node c : cur.children) {
             // Reuse distance if the previous routing object is the same:
             double newprio = (DBIDUtil.equal(c.singletons.assignVar(0, tmp), it) //
-                ? d : queryDistance(tmp)) //
+                ? d : queryDistance(tmp, d_k + c.maxDist)) //
                 - c.maxDist; // Minimum distance
             if(newprio <= d_k) {
               pq.add(newprio, c);
@@ -470,7 +472,7 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
         it.advance(); // Skip routing object.
         // For remaining singletons, compute the distances:
         while(it.valid()) {
-          final double d2 = queryDistance(it);
+          final double d2 = queryDistance(it, d_k);
           if(d2 <= d_k) {
             d_k = knnList.insert(d2, it);
           }
@@ -484,9 +486,11 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
      * Compute distance to query object.
      *
      * @param it Candidate
-     * @return Distance
+     * @param threshold Distance threshold, beyond which the exact distance is
+     *        not needed
+     * @return Distance, or a value larger than the threshold
      */
-    protected abstract double queryDistance(DBIDRef it);
+    protected abstract double queryDistance(DBIDRef it, double threshold);
   }
 
   /**
@@ -507,8 +511,8 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
     }
 
     @Override
-    protected double queryDistance(DBIDRef it) {
-      return distance(query, it);
+    protected double queryDistance(DBIDRef it, double threshold) {
+      return distance(query, it, threshold);
     }
   }
 
@@ -530,8 +534,8 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
     }
 
     @Override
-    protected double queryDistance(DBIDRef it) {
-      return distance(query, it);
+    protected double queryDistance(DBIDRef it, double threshold) {
+      return distance(query, it, threshold);
     }
   }
 
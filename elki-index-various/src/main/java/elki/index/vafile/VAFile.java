@@ -28,6 +28,7 @@ import elki.data.NumberVector;
 import elki.data.type.TypeInformation;
 import elki.data.type.TypeUtil;
 import elki.database.ids.*;
+import elki.database.query.PrioritySearcher;
 import elki.database.query.distance.DistanceQuery;
 import elki.database.query.knn.KNNSearcher;
 import elki.database.query.range.RangeSearcher;
@@ -36,9 +37,8 @@ import elki.database.relation.RelationUtil;
 import elki.distance.Distance;
 import elki.distance.minkowski.LPNormDistance;
 import elki.index.AbstractRefiningIndex;
+import elki.index.DistancePriorityIndex;
 import elki.index.IndexFactory;
-import elki.index.KNNIndex;
-import elki.index.RangeIndex;
 import elki.logging.Logging;
 import elki.logging.statistics.LongStatistic;
 import elki.persistent.AbstractPageFileFactory;
@@ -83,7 +83,7 @@ import net.jafama.FastMath;
     booktitle = "Report TR1997b, ETH Zentrum, Zurich, Switzerland", //
     url = "http://citeseerx.ist.psu.edu/viewdoc/download?doi=10.1.1.40.480&rep=rep1&type=pdf", //
     bibkey = "tr/ethz/WeberS97")
-public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> implements KNNIndex<V>, RangeIndex<V> {
+public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> implements DistancePriorityIndex<V> {
   /**
    * Logging class.
    */
@@ -239,6 +239,12 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
     return df instanceof LPNormDistance ? new VAFileRangeQuery(distanceQuery, ((LPNormDistance) df).getP()) : null;
   }
 
+  @Override
+  public PrioritySearcher<V> priorityByObject(DistanceQuery<V> distanceQuery, double maxradius, int flags) {
+    Distance<? super V> df = distanceQuery.getDistance();
+    return df instanceof LPNormDistance ? new VAFilePrioritySearcher(distanceQuery, ((LPNormDistance) df).getP()) : null;
+  }
+
   /**
    * Range query for this index.
    * 
@@ -375,6 +381,115 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
     }
   }
 
+  /**
+   * Priority search for this index.
+   * <p>
+   * The approximations are scanned once per query, and the objects are then
+   * returned in order of their approximated minimum distance. The exact
+   * distance is only computed on demand.
+   *
+   * @author Erich Schubert
+   */
+  public class VAFilePrioritySearcher extends AbstractRefiningIndex<V>.AbstractRefiningQuery implements PrioritySearcher<V> {
+    /**
+     * LP Norm p parameter.
+     */
+    final double p;
+
+    /**
+     * Candidates, with their minimum distance.
+     */
+    private final ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList();
+
+    /**
+     * Current candidate.
+     */
+    private DoubleDBIDListIter iter = candidates.iter();
+
+    /**
+     * Current query object.
+     */
+    private V query;
+
+    /**
+     * Stopping distance threshold.
+     */
+    private double threshold;
+
+    /**
+     * Exact distance to the current candidate, if computed.
+     */
+    private double curdist;
+
+    /**
+     * Constructor.
+     * 
+     * @param distanceQuery Distance query object
+     * @param p LP norm p
+     */
+    public VAFilePrioritySearcher(DistanceQuery<V> distanceQuery, double p) {
+      super(distanceQuery);
+      this.p = p;
+    }
+
+    @Override
+    public PrioritySearcher<V> search(V query) {
+      this.query = query;
+      this.threshold = Double.POSITIVE_INFINITY;
+      this.curdist = Double.NaN;
+      VectorApproximation queryApprox = calculateApproximation(null, query);
+      VALPNormDistance vadist = new VALPNormDistance(p, splitPositions, query, queryApprox);
+      scans += 1;
+      candidates.clear();
+      for(int i = 0; i < vectorApprox.size(); i++) {
+        VectorApproximation va = vectorApprox.get(i);
+        candidates.add(vadist.getMinDist(va), va);
+      }
+      candidates.sort();
+      iter = candidates.iter();
+      return this;
+    }
+
+    @Override
+    public PrioritySearcher<V> decreaseCutoff(double threshold) {
+      assert threshold <= this.threshold;
+      this.threshold = threshold;
+      return this;
+    }
+
+    @Override
+    public boolean valid() {
+      return iter.valid() && iter.doubleValue() <= threshold;
+    }
+
+    @Override
+    public PrioritySearcher<V> advance() {
+      iter.advance();
+      curdist = Double.NaN;
+      return this;
+    }
+
+    @Override
+    public int internalGetIndex() {
+      return iter.internalGetIndex();
+    }
+
+    @Override
+    public double computeExactDistance() {
+      return curdist == curdist ? curdist : (curdist = refine(iter, query));
+    }
+
+    @Override
+    public double getLowerBound() {
+      return iter.doubleValue();
+    }
+
+    @Override
+    public double allLowerBound() {
+      return iter.valid() ? iter.doubleValue() : Double.POSITIVE_INFINITY;
+    }
+  }
+
   /**
    * Index factory class.
    * 
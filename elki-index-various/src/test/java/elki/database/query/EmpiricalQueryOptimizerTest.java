@@ -0,0 +1,152 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.database.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.database.ids.*;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.MaterializedRelation;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.ManhattanDistance;
+import elki.index.Index;
+import elki.result.Metadata;
+import elki.utilities.datastructures.iterator.It;
+
+/**
+ * Unit test for the {@link EmpiricalQueryOptimizer}.
+ * <p>
+ * The choice of index depends on the measured run times, hence we only verify
+ * that whatever is chosen gives the same results as a linear scan.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class EmpiricalQueryOptimizerTest {
+  @Test
+  public void testKNN() {
+    MaterializedRelation<DoubleVector> relation = randomRelation(2000, 3);
+    final int k = 10;
+    KNNSearcher<DBIDRef> opt = new QueryBuilder<>(relation, EuclideanDistance.STATIC).kNNByDBID(k);
+    KNNSearcher<DBIDRef> lin = new QueryBuilder<>(relation, EuclideanDistance.STATIC).linearOnly().kNNByDBID(k);
+    for(DBIDIter it = DBIDUtil.randomSample(relation.getDBIDs(), 50, 1L).iter(); it.valid(); it.advance()) {
+      assertSameDistances(lin.getKNN(it, k), opt.getKNN(it, k));
+    }
+    // Decision is cached, and must give the same result:
+    KNNSearcher<DBIDRef> again = new QueryBuilder<>(relation, EuclideanDistance.STATIC).kNNByDBID(k);
+    for(DBIDIter it = DBIDUtil.randomSample(relation.getDBIDs(), 50, 2L).iter(); it.valid(); it.advance()) {
+      assertSameDistances(lin.getKNN(it, k), again.getKNN(it, k));
+    }
+  }
+
+  @Test
+  public void testRange() {
+    MaterializedRelation<DoubleVector> relation = randomRelation(2000, 3);
+    final double range = 0.1;
+    RangeSearcher<DBIDRef> opt = new QueryBuilder<>(relation, ManhattanDistance.STATIC).rangeByDBID(range);
+    RangeSearcher<DBIDRef> lin = new QueryBuilder<>(relation, ManhattanDistance.STATIC).linearOnly().rangeByDBID(range);
+    for(DBIDIter it = DBIDUtil.randomSample(relation.getDBIDs(), 50, 1L).iter(); it.valid(); it.advance()) {
+      ModifiableDoubleDBIDList expect = lin.getRange(it, range, DBIDUtil.newDistanceDBIDList());
+      ModifiableDoubleDBIDList result = opt.getRange(it, range, DBIDUtil.newDistanceDBIDList());
+      expect.sort();
+      result.sort();
+      assertSameDistances(expect, result);
+    }
+  }
+
+  @Test
+  public void testSubsample() {
+    // Large enough to be calibrated on a subsample:
+    MaterializedRelation<DoubleVector> relation = randomRelation(10000, 3);
+    final int k = 10;
+    KNNSearcher<DBIDRef> opt = new QueryBuilder<>(relation, EuclideanDistance.STATIC).kNNByDBID(k);
+    KNNSearcher<DBIDRef> lin = new QueryBuilder<>(relation, EuclideanDistance.STATIC).linearOnly().kNNByDBID(k);
+    for(DBIDIter it = DBIDUtil.randomSample(relation.getDBIDs(), 50, 1L).iter(); it.valid(); it.advance()) {
+      assertSameDistances(lin.getKNN(it, k), opt.getKNN(it, k));
+    }
+    // Only the chosen index must have been built on the full data:
+    int indexes = 0;
+    for(It<Index> it = Metadata.hierarchyOf(relation).iterChildren().filter(Index.class); it.valid(); it.advance()) {
+      ++indexes;
+    }
+    assertTrue("Too many indexes: " + indexes, indexes <= 1);
+  }
+
+  @Test
+  public void testIndexReuse() {
+    MaterializedRelation<DoubleVector> relation = randomRelation(2000, 3);
+    EmpiricalQueryOptimizer optimizer = new EmpiricalQueryOptimizer();
+    DistanceQuery<DoubleVector> dq = new QueryBuilder<>(relation, EuclideanDistance.STATIC).distanceQuery();
+    for(int k = 10; k <= 50; k += 10) {
+      optimizer.kNNByDBID(relation, dq, k, 0);
+      optimizer.kNNByDBID(relation, dq, k, 0);
+    }
+    // At most one cover tree and one k-d-tree must have been added:
+    int indexes = 0;
+    for(It<Index> it = Metadata.hierarchyOf(relation).iterChildren().filter(Index.class); it.valid(); it.advance()) {
+      ++indexes;
+    }
+    assertTrue("Indexes were not reused: " + indexes, indexes <= 2);
+  }
+
+  /**
+   * Compare the distances of two result lists.
+   *
+   * @param expect Expected result
+   * @param result Actual result
+   */
+  private static void assertSameDistances(DoubleDBIDList expect, DoubleDBIDList result) {
+    assertEquals("Result size", expect.size(), result.size());
+    for(DoubleDBIDListIter e = expect.iter(), r = result.iter(); e.valid(); e.advance(), r.advance()) {
+      assertEquals("Distance", e.doubleValue(), r.doubleValue(), 1e-15);
+    }
+  }
+
+  /**
+   * Generate a random relation.
+   *
+   * @param n Size
+   * @param dim Dimensionality
+   * @return Relation
+   */
+  private static MaterializedRelation<DoubleVector> randomRelation(int n, int dim) {
+    Random rnd = new Random(0L);
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(n);
+    MaterializedRelation<DoubleVector> relation = new MaterializedRelation<>(new VectorFieldTypeInformation<>(DoubleVector.FACTORY, dim), ids);
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      double[] v = new double[dim];
+      for(int d = 0; d < dim; d++) {
+        v[d] = rnd.nextDouble();
+      }
+      relation.insert(it, DoubleVector.wrap(v));
+    }
+    return relation;
+  }
+}
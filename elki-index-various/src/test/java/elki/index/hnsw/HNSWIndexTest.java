@@ -0,0 +1,62 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.hnsw;
+
+import org.junit.Test;
+
+import elki.index.AbstractIndexStructureTest;
+import elki.parallel.ParallelCore;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Unit test for the HNSW index.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class HNSWIndexTest extends AbstractIndexStructureTest {
+  /**
+   * Test {@link HNSWIndex} using a file based database connection.
+   */
+  @Test
+  public void testHNSW() {
+    HNSWIndex.Factory<?> factory = new ELKIBuilder<>(HNSWIndex.Factory.class) //
+        .with(HNSWIndex.Factory.Par.M_ID, 8) //
+        .with(HNSWIndex.Factory.Par.SEED_ID, 0) //
+        .with(ParallelCore.Par.THREADS_ID, 1) //
+        .build();
+    assertExactEuclidean(factory, HNSWIndex.HNSWSearcher.class, HNSWIndex.HNSWSearcher.class);
+    assertSinglePoint(factory, HNSWIndex.HNSWSearcher.class, HNSWIndex.HNSWSearcher.class);
+    assertPrioritySearchEuclidean(factory, HNSWIndex.HNSWSearcher.class);
+  }
+
+  /**
+   * Test parallel construction of {@link HNSWIndex}.
+   */
+  @Test
+  public void testParallelHNSW() {
+    HNSWIndex.Factory<?> factory = new ELKIBuilder<>(HNSWIndex.Factory.class) //
+        .with(HNSWIndex.Factory.Par.SEED_ID, 0) //
+        .with(ParallelCore.Par.THREADS_ID, 4) //
+        .build();
+    assertExactEuclidean(factory, HNSWIndex.HNSWSearcher.class, HNSWIndex.HNSWSearcher.class);
+  }
+}
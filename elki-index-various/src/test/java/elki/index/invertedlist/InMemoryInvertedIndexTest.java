@@ -20,8 +20,19 @@
  */
 package elki.index.invertedlist;
 
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
 import org.junit.Test;
 
+import elki.data.SparseDoubleVector;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.database.ids.*;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.LinearScanKNNByObject;
+import elki.database.relation.MaterializedRelation;
+import elki.distance.CosineDistance;
 import elki.index.AbstractIndexStructureTest;
 import elki.utilities.ELKIBuilder;
 
@@ -39,4 +50,41 @@ public class InMemoryInvertedIndexTest extends AbstractIndexStructureTest {
     InMemoryInvertedIndex.Factory<?> factory = new ELKIBuilder<>(InMemoryInvertedIndex.Factory.class).build();
     assertExactCosine(factory, InMemoryInvertedIndex.CosineKNNQuery.class, InMemoryInvertedIndex.CosineRangeQuery.class);
   }
+
+  @Test
+  public void testSparse() {
+    final int dim = 1000, n = 200, nnz = 20, k = 10;
+    Random rnd = new Random(0L);
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(n);
+    MaterializedRelation<SparseDoubleVector> relation = new MaterializedRelation<>(new VectorFieldTypeInformation<>(SparseDoubleVector.FACTORY, dim), ids);
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      relation.insert(it, randomSparse(rnd, dim, nnz));
+    }
+    InMemoryInvertedIndex<SparseDoubleVector> index = new InMemoryInvertedIndex<>(relation);
+    index.initialize();
+    DistanceQuery<SparseDoubleVector> dq = CosineDistance.STATIC.instantiate(relation);
+    SparseDoubleVector query = randomSparse(rnd, dim, nnz * 5);
+    KNNList exact = new LinearScanKNNByObject<>(dq).getKNN(query, k);
+    KNNList result = index.kNNByObject(dq, k, 0).getKNN(query, k);
+    assertEquals("Number of neighbors", exact.size(), result.size());
+    for(DoubleDBIDListIter e = exact.iter(), r = result.iter(); e.valid(); e.advance(), r.advance()) {
+      assertEquals("Neighbor distance", e.doubleValue(), r.doubleValue(), 1e-15);
+    }
+  }
+
+  /**
+   * Generate a random sparse vector.
+   *
+   * @param rnd Random generator
+   * @param dim Dimensionality
+   * @param nnz Maximum number of nonzero values
+   * @return Sparse vector
+   */
+  private static SparseDoubleVector randomSparse(Random rnd, int dim, int nnz) {
+    double[] dense = new double[dim];
+    for(int i = 0; i < nnz; i++) {
+      dense[rnd.nextInt(dim)] = rnd.nextDouble();
+    }
+    return new SparseDoubleVector(dense);
+  }
 }
@@ -43,5 +43,6 @@ public class VAFileTest extends AbstractIndexStructureTest {
         .with(VAFile.Factory.Par.PARTITIONS_ID, 4).build();
     assertExactEuclidean(factory, VAFile.VAFileKNNQuery.class, VAFile.VAFileRangeQuery.class);
     assertSinglePoint(factory, WrappedKNNDBIDByLookup.class, WrappedRangeDBIDByLookup.class);
+    assertPrioritySearchEuclidean(factory, VAFile.VAFilePrioritySearcher.class);
   }
 }
@@ -27,6 +27,7 @@ import java.nio.file.Paths;
 import java.util.List;
 
 import elki.datasource.bundle.BundleReader;
+import elki.datasource.bundle.MappedBundleReader;
 import elki.datasource.bundle.MultipleObjectsBundle;
 import elki.datasource.filter.ObjectFilter;
 import elki.logging.Logging;
@@ -34,6 +35,7 @@ import elki.utilities.exceptions.AbortException;
 import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.parameterization.Parameterization;
 import elki.utilities.optionhandling.parameters.FileParameter;
+import elki.utilities.optionhandling.parameters.Flag;
 
 /**
  * Class to load a database from a bundle file.
@@ -41,11 +43,16 @@ import elki.utilities.optionhandling.parameters.FileParameter;
  * Bundle files are stored in a compact binary format along with metadata, so
  * that parsing should be simpler, albeit the focus was on using it in on-disk
  * indexes.
+ * <p>
+ * Optionally, the file can be memory-mapped, and double vectors are then read
+ * from the mapped file on demand instead of being loaded into the heap. This
+ * requires the file to remain unchanged while it is in use.
  *
  * @author Erich Schubert
  * @since 0.5.5
  *
  * @composed - - - BundleReader
+ * @composed - - - MappedBundleReader
  */
 public class BundleDatabaseConnection extends AbstractDatabaseConnection {
   /**
@@ -58,6 +65,11 @@ public class BundleDatabaseConnection extends AbstractDatabaseConnection {
    */
   private Path infile;
 
+  /**
+   * Read vectors from the mapped file.
+   */
+  private boolean mapped;
+
   /**
    * Constructor.
    *
@@ -65,13 +77,29 @@ public class BundleDatabaseConnection extends AbstractDatabaseConnection {
    * @param infile Input file
    */
   public BundleDatabaseConnection(List<? extends ObjectFilter> filters, Path infile) {
+    this(filters, infile, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param filters Filters
+   * @param infile Input file
+   * @param mapped Read vectors from the mapped file
+   */
+  public BundleDatabaseConnection(List<? extends ObjectFilter> filters, Path infile, boolean mapped) {
     super(filters);
     this.infile = infile;
+    this.mapped = mapped;
   }
 
   @Override
   public MultipleObjectsBundle loadData() {
     try (FileChannel channel = FileChannel.open(infile)) {
+      if(mapped) {
+        // The mapping remains valid after closing the channel.
+        return invokeBundleFilters(new MappedBundleReader(channel).asMultipleObjectsBundle());
+      }
       return invokeStreamFilters(new BundleReader(channel)).asMultipleObjectsBundle();
     }
     catch(IOException e) {
@@ -95,22 +123,33 @@ public class BundleDatabaseConnection extends AbstractDatabaseConnection {
      */
     private static final OptionID BUNDLE_ID = new OptionID("bundle.input", "Bundle file to load the data from.");
 
+    /**
+     * Option ID for memory-mapping the bundle.
+     */
+    private static final OptionID MAPPED_ID = new OptionID("bundle.mmap", "Memory-map the bundle file, and read double vectors directly from the file instead of loading them.");
+
     /**
      * File to load.
      */
     private Path infile;
 
+    /**
+     * Read vectors from the mapped file.
+     */
+    private boolean mapped;
+
     @Override
     public void configure(Parameterization config) {
       super.configure(config);
       configFilters(config);
       new FileParameter(BUNDLE_ID, FileParameter.FileType.INPUT_FILE) //
           .grab(config, x -> infile = Paths.get(x));
+      new Flag(MAPPED_ID).grab(config, x -> mapped = x);
     }
 
     @Override
     public BundleDatabaseConnection make() {
-      return new BundleDatabaseConnection(filters, infile);
+      return new BundleDatabaseConnection(filters, infile, mapped);
     }
   }
 }
@@ -0,0 +1,236 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource.bundle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+
+import elki.data.DoubleVector;
+import elki.data.type.SimpleTypeInformation;
+import elki.data.type.TypeInformationSerializer;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.database.ids.ArrayModifiableDBIDs;
+import elki.database.ids.DBID;
+import elki.database.ids.DBIDUtil;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.io.ByteArrayUtil;
+import elki.utilities.io.ByteBufferSerializer;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+/**
+ * Load an ELKI bundle file by memory-mapping it, without deserializing the
+ * double vector columns.
+ * <p>
+ * Double vector columns are returned as {@link MappedVectorColumn}, which read
+ * the values from the mapped file on demand. All other columns are
+ * deserialized as in {@link BundleReader}. If the file only contains double
+ * vectors of fixed dimensionality, the record positions can be computed, and
+ * the file does not need to be scanned at all. Files larger than 2 GB are
+ * mapped in multiple windows.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @assoc - reads - FileChannel
+ * @has - - - MappedVectorColumn
+ */
+public class MappedBundleReader {
+  /**
+   * Input channel.
+   */
+  private FileChannel input;
+
+  /**
+   * Start a new window once a record begins after this position; this leaves
+   * room for records of up to 1 GB at the end of a window.
+   */
+  private int step;
+
+  /**
+   * Constructor.
+   *
+   * @param input Input channel
+   */
+  public MappedBundleReader(FileChannel input) {
+    this(input, 1 << 30);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param input Input channel
+   * @param step Maximum window start offset of a record
+   */
+  MappedBundleReader(FileChannel input, int step) {
+    super();
+    this.input = input;
+    this.step = step;
+  }
+
+  /**
+   * Load the bundle.
+   *
+   * @return Bundle
+   */
+  public MultipleObjectsBundle asMultipleObjectsBundle() {
+    try {
+      final long size = input.size();
+      ByteBuffer buffer = map(0, size);
+      if(buffer.getInt() != BundleReader.MAGIC) {
+        throw new AbortException("File does not start with expected magic.");
+      }
+      final int nummeta = buffer.getInt();
+      SimpleTypeInformation<?>[] types = new SimpleTypeInformation<?>[nummeta];
+      ByteBufferSerializer<?>[] sers = new ByteBufferSerializer<?>[nummeta];
+      int[] prefix = new int[nummeta];
+      boolean fixed = true;
+      for(int i = 0; i < nummeta; i++) {
+        types[i] = (SimpleTypeInformation<?>) TypeInformationSerializer.STATIC.fromByteBuffer(buffer);
+        sers[i] = types[i].getSerializer();
+        prefix[i] = types[i].getRestrictionClass() == DoubleVector.class ? MappedVectorColumn.prefixType(sers[i]) : -1;
+        fixed &= prefix[i] >= 0 && types[i] instanceof VectorFieldTypeInformation //
+            && ((VectorFieldTypeInformation<?>) types[i]).mindim() == ((VectorFieldTypeInformation<?>) types[i]).maxdim();
+      }
+      final boolean hasids = nummeta > 0 && DBID.class.isAssignableFrom(types[0].getRestrictionClass());
+      MultipleObjectsBundle bundle = fixed ? mapFixed(buffer, size, types, prefix) : null;
+      return bundle != null ? bundle : scan(buffer, size, types, sers, prefix, hasids);
+    }
+    catch(UnsupportedOperationException e) {
+      throw new AbortException("Deserialization failed: " + e.getMessage(), e);
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error loading bundle", e);
+    }
+  }
+
+  /**
+   * Map a window of the file.
+   *
+   * @param start Start position
+   * @param size File size
+   * @return Mapped buffer
+   * @throws IOException on IO errors
+   */
+  private ByteBuffer map(long start, long size) throws IOException {
+    return input.map(MapMode.READ_ONLY, start, Math.min(size - start, Integer.MAX_VALUE));
+  }
+
+  /**
+   * Map a file containing only double vectors of fixed dimensionality.
+   *
+   * @param buffer Buffer, positioned after the header
+   * @param size File size
+   * @param types Column types
+   * @param prefix Encoding of the dimensionality of each column
+   * @return Bundle, or {@code null} if the file does not match the header
+   * @throws IOException on IO errors
+   */
+  private MultipleObjectsBundle mapFixed(ByteBuffer buffer, long size, SimpleTypeInformation<?>[] types, int[] prefix) throws IOException {
+    final long start = buffer.position();
+    int[] coloff = new int[types.length];
+    int stride = 0;
+    for(int i = 0; i < types.length; i++) {
+      final int dim = ((VectorFieldTypeInformation<?>) types[i]).getDimensionality();
+      coloff[i] = stride;
+      final int pos = (int) start + stride;
+      if(size > start && (buffer.limit() - pos < MappedVectorColumn.prefixSize(prefix[i], dim) || MappedVectorColumn.readPrefix(buffer, pos, prefix[i]) != dim)) {
+        return null;
+      }
+      stride += MappedVectorColumn.prefixSize(prefix[i], dim) + ByteArrayUtil.SIZE_DOUBLE * dim;
+    }
+    final long num = (size - start) / stride;
+    if(stride == 0 || num * stride != size - start || num > Integer.MAX_VALUE) {
+      return null;
+    }
+    final int perWindow = Math.max(1, step / stride);
+    ByteBuffer[] windows = new ByteBuffer[(int) ((num + perWindow - 1) / perWindow)];
+    for(int w = 0; w < windows.length; w++) {
+      final long wstart = start + w * (long) perWindow * stride;
+      windows[w] = input.map(MapMode.READ_ONLY, wstart, Math.min(size - wstart, perWindow * (long) stride));
+    }
+    MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+    for(int i = 0; i < types.length; i++) {
+      bundle.appendColumn(types[i], new MappedVectorColumn(windows, (int) num, stride, perWindow, coloff[i], prefix[i]));
+    }
+    return bundle;
+  }
+
+  /**
+   * Scan the file for the record positions, and deserialize all columns that
+   * are not double vectors.
+   *
+   * @param buffer Buffer, positioned after the header
+   * @param size File size
+   * @param types Column types
+   * @param sers Column serializers
+   * @param prefix Encoding of the dimensionality, -1 for other columns
+   * @param hasids First column contains DBIDs
+   * @return Bundle
+   * @throws IOException on IO errors
+   */
+  private MultipleObjectsBundle scan(ByteBuffer buffer, long size, SimpleTypeInformation<?>[] types, ByteBufferSerializer<?>[] sers, int[] prefix, boolean hasids) throws IOException {
+    final int first = hasids ? 1 : 0;
+    ArrayModifiableDBIDs ids = hasids ? DBIDUtil.newArray() : null;
+    List<ByteBuffer> windows = new ArrayList<>();
+    windows.add(buffer);
+    Object[] cols = new Object[types.length];
+    for(int i = first; i < types.length; i++) {
+      cols[i] = prefix[i] >= 0 ? new LongArrayList() : new ArrayList<>();
+    }
+    long base = 0;
+    while(base + buffer.position() < size) {
+      if(buffer.position() >= step) {
+        base += buffer.position();
+        buffer = map(base, size);
+        windows.add(buffer);
+      }
+      if(hasids) {
+        ids.add((DBID) sers[0].fromByteBuffer(buffer));
+      }
+      for(int i = first; i < types.length; i++) {
+        if(prefix[i] < 0) {
+          @SuppressWarnings("unchecked")
+          List<Object> col = (List<Object>) cols[i];
+          col.add(sers[i].fromByteBuffer(buffer));
+          continue;
+        }
+        final int pos = buffer.position();
+        ((LongArrayList) cols[i]).add(((long) (windows.size() - 1) << 32) | pos);
+        final int dim = MappedVectorColumn.readPrefix(buffer, pos, prefix[i]);
+        buffer.position(pos + MappedVectorColumn.prefixSize(prefix[i], dim) + ByteArrayUtil.SIZE_DOUBLE * dim);
+      }
+    }
+    ByteBuffer[] wins = windows.toArray(new ByteBuffer[windows.size()]);
+    MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+    for(int i = first; i < types.length; i++) {
+      bundle.appendColumn(types[i], prefix[i] >= 0 ? new MappedVectorColumn(wins, ((LongArrayList) cols[i]).toLongArray(), prefix[i]) : (List<?>) cols[i]);
+    }
+    if(hasids) {
+      bundle.setDBIDs(ids);
+    }
+    return bundle;
+  }
+}
@@ -0,0 +1,252 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource.bundle;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import elki.data.DoubleVector;
+import elki.utilities.io.ByteArrayUtil;
+import elki.utilities.io.ByteBufferSerializer;
+
+/**
+ * Column of a memory-mapped bundle file, containing double vectors.
+ * <p>
+ * The vectors are not deserialized: {@link #get} returns a lightweight view
+ * that reads the values from the mapped buffer on access. Callers should not
+ * rely on object identity of the returned vectors.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - MappedVector
+ */
+public class MappedVectorColumn extends AbstractList<DoubleVector> implements RandomAccess {
+  /**
+   * Dimensionality stored as byte, short, or as variable length integer.
+   */
+  static final int PREFIX_BYTE = 1, PREFIX_SHORT = 2, PREFIX_VARINT = 0;
+
+  /**
+   * Mapped windows of the file.
+   */
+  private final ByteBuffer[] windows;
+
+  /**
+   * Window and position of each vector, or {@code null} for fixed-size
+   * records.
+   */
+  private final long[] offsets;
+
+  /**
+   * Number of vectors.
+   */
+  private final int size;
+
+  /**
+   * For fixed-size records: record size, records per window, and offset of
+   * this column within the record.
+   */
+  private final int stride, perWindow, coloff;
+
+  /**
+   * Encoding of the dimensionality.
+   */
+  private final int prefix;
+
+  /**
+   * Constructor for fixed-size records.
+   *
+   * @param windows Mapped windows, each starting at a record
+   * @param size Number of records
+   * @param stride Record size
+   * @param perWindow Records per window
+   * @param coloff Offset of the column within each record
+   * @param prefix Encoding of the dimensionality
+   */
+  MappedVectorColumn(ByteBuffer[] windows, int size, int stride, int perWindow, int coloff, int prefix) {
+    super();
+    this.windows = windows;
+    this.offsets = null;
+    this.size = size;
+    this.stride = stride;
+    this.perWindow = perWindow;
+    this.coloff = coloff;
+    this.prefix = prefix;
+  }
+
+  /**
+   * Constructor for variable-size records.
+   *
+   * @param windows Mapped windows
+   * @param offsets Window number (high 32 bit) and position (low 32 bit) of
+   *        each vector
+   * @param prefix Encoding of the dimensionality
+   */
+  MappedVectorColumn(ByteBuffer[] windows, long[] offsets, int prefix) {
+    super();
+    this.windows = windows;
+    this.offsets = offsets;
+    this.size = offsets.length;
+    this.stride = this.perWindow = this.coloff = 0;
+    this.prefix = prefix;
+  }
+
+  /**
+   * Get the encoding of the dimensionality used by a serializer.
+   *
+   * @param ser Serializer
+   * @return Encoding, or -1 if not supported
+   */
+  static int prefixType(ByteBufferSerializer<?> ser) {
+    return ser instanceof DoubleVector.SmallSerializer ? PREFIX_BYTE : //
+        ser instanceof DoubleVector.ShortSerializer ? PREFIX_SHORT : //
+            ser instanceof DoubleVector.VariableSerializer ? PREFIX_VARINT : -1;
+  }
+
+  /**
+   * Size of the dimensionality prefix.
+   *
+   * @param prefix Encoding
+   * @param dim Dimensionality
+   * @return Size in bytes
+   */
+  static int prefixSize(int prefix, int dim) {
+    return prefix == PREFIX_BYTE ? ByteArrayUtil.SIZE_BYTE : //
+        prefix == PREFIX_SHORT ? ByteArrayUtil.SIZE_SHORT : ByteArrayUtil.getUnsignedVarintSize(dim);
+  }
+
+  /**
+   * Read the dimensionality prefix.
+   *
+   * @param buffer Buffer
+   * @param pos Position
+   * @param prefix Encoding
+   * @return Dimensionality
+   */
+  static int readPrefix(ByteBuffer buffer, int pos, int prefix) {
+    if(prefix == PREFIX_BYTE) {
+      return buffer.get(pos);
+    }
+    if(prefix == PREFIX_SHORT) {
+      return buffer.getShort(pos);
+    }
+    int val = 0;
+    for(int bits = 0;; bits += 7) {
+      final int data = buffer.get(pos++);
+      val |= (data & 0x7F) << bits;
+      if((data & 0x80) == 0) {
+        return val;
+      }
+    }
+  }
+
+  @Override
+  public DoubleVector get(int index) {
+    final ByteBuffer buffer;
+    final int pos;
+    if(offsets != null) {
+      final long code = offsets[index];
+      buffer = windows[(int) (code >>> 32)];
+      pos = (int) code;
+    }
+    else {
+      buffer = windows[index / perWindow];
+      pos = (index % perWindow) * stride + coloff;
+    }
+    final int dim = readPrefix(buffer, pos, prefix);
+    return new MappedVector(buffer, pos + prefixSize(prefix, dim), dim);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Vector reading its values from a mapped buffer.
+   *
+   * @author Erich Schubert
+   */
+  private static class MappedVector extends DoubleVector {
+    /**
+     * Buffer.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Start position and dimensionality.
+     */
+    private final int start, dim;
+
+    /**
+     * Constructor.
+     *
+     * @param buffer Buffer
+     * @param start Start position
+     * @param dim Dimensionality
+     */
+    private MappedVector(ByteBuffer buffer, int start, int dim) {
+      super();
+      this.buffer = buffer;
+      this.start = start;
+      this.dim = dim;
+    }
+
+    @Override
+    public int getDimensionality() {
+      return dim;
+    }
+
+    @Override
+    public double doubleValue(int dimension) {
+      assert dimension < dim;
+      return buffer.getDouble(start + (dimension << 3));
+    }
+
+    @Override
+    public long longValue(int dimension) {
+      return (long) doubleValue(dimension);
+    }
+
+    @Override
+    public double[] toArray() {
+      double[] ret = new double[dim];
+      for(int i = 0, p = start; i < dim; i++, p += ByteArrayUtil.SIZE_DOUBLE) {
+        ret[i] = buffer.getDouble(p);
+      }
+      return ret;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder featureLine = new StringBuilder();
+      for(int i = 0; i < dim; i++) {
+        featureLine.append(doubleValue(i));
+        if(i + 1 < dim) {
+          featureLine.append(ATTRIBUTE_SEPARATOR);
+        }
+      }
+      return featureLine.toString();
+    }
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.datasource.bundle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.data.LabelList;
+import elki.data.type.TypeUtil;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.database.ids.DBIDUtil;
+
+/**
+ * Unit test for reading memory-mapped bundles.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class MappedBundleReaderTest {
+  @Test
+  public void testFixed() throws IOException {
+    MultipleObjectsBundle bundle = makeBundle(5, false, false);
+    MultipleObjectsBundle read = writeAndMap(bundle);
+    assertTrue("Fixed size records not detected.", read.getColumn(0) instanceof MappedVectorColumn);
+    assertSameBundle(bundle, read);
+  }
+
+  @Test
+  public void testVariable() throws IOException {
+    MultipleObjectsBundle bundle = makeBundle(3, true, false);
+    assertSameBundle(bundle, writeAndMap(bundle));
+  }
+
+  @Test
+  public void testDBIDs() throws IOException {
+    MultipleObjectsBundle bundle = makeBundle(4, true, true);
+    MultipleObjectsBundle read = writeAndMap(bundle);
+    assertEquals("DBIDs not read.", bundle.dataLength(), read.getDBIDs().size());
+    assertSameBundle(bundle, read);
+  }
+
+  /**
+   * Generate a random bundle.
+   *
+   * @param dim Dimensionality
+   * @param labels Include a label column
+   * @param ids Include DBIDs
+   * @return Bundle
+   */
+  private static MultipleObjectsBundle makeBundle(int dim, boolean labels, boolean ids) {
+    Random rnd = new Random(0L);
+    List<DoubleVector> vecs = new ArrayList<>();
+    List<LabelList> lbls = new ArrayList<>();
+    for(int i = 0; i < 1000; i++) {
+      double[] v = new double[dim];
+      for(int d = 0; d < dim; d++) {
+        v[d] = rnd.nextGaussian();
+      }
+      vecs.add(new DoubleVector(v));
+      lbls.add(LabelList.make(Collections.singletonList("Object " + i)));
+    }
+    MultipleObjectsBundle bundle = MultipleObjectsBundle.makeSimple(new VectorFieldTypeInformation<>(DoubleVector.FACTORY, dim), vecs);
+    if(labels) {
+      bundle.appendColumn(TypeUtil.LABELLIST, lbls);
+    }
+    if(ids) {
+      bundle.setDBIDs(DBIDUtil.generateStaticDBIDRange(vecs.size()));
+    }
+    return bundle;
+  }
+
+  /**
+   * Write a bundle to a temporary file, and map it again, with small windows.
+   *
+   * @param bundle Bundle
+   * @return Mapped bundle
+   * @throws IOException on IO errors
+   */
+  private static MultipleObjectsBundle writeAndMap(MultipleObjectsBundle bundle) throws IOException {
+    File file = File.createTempFile("elki-test-", ".bundle");
+    try {
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+        new BundleWriter().writeBundleStream(bundle.asStream(), channel);
+      }
+      try (FileChannel channel = FileChannel.open(file.toPath())) {
+        return new MappedBundleReader(channel, 1000).asMultipleObjectsBundle();
+      }
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Compare two bundles.
+   *
+   * @param expected Expected bundle
+   * @param actual Actual bundle
+   */
+  private static void assertSameBundle(MultipleObjectsBundle expected, MultipleObjectsBundle actual) {
+    assertEquals("Number of columns", expected.metaLength(), actual.metaLength());
+    assertEquals("Number of objects", expected.dataLength(), actual.dataLength());
+    for(int i = 0; i < expected.dataLength(); i++) {
+      DoubleVector e = (DoubleVector) expected.data(i, 0), a = (DoubleVector) actual.data(i, 0);
+      assertEquals("Dimensionality", e.getDimensionality(), a.getDimensionality());
+      for(int d = 0; d < e.getDimensionality(); d++) {
+        assertEquals("Value", e.doubleValue(d), a.doubleValue(d), 0.);
+      }
+      for(int c = 1; c < expected.metaLength(); c++) {
+        assertEquals("Other column", expected.data(i, c).toString(), actual.data(i, c).toString());
+      }
+    }
+  }
+}
@@ -171,7 +171,7 @@ public class SOS<O> implements OutlierAlgorithm {
    * @param p Probabilities
    * @return Sum.
    */
-  public static double sumOfProbabilities(DBIDIter ignore, DBIDArrayIter di, double[] p) {
+  public static double sumOfProbabilities(DBIDRef ignore, DBIDArrayIter di, double[] p) {
     double s = 0;
     for(di.seek(0); di.valid(); di.advance()) {
       if(DBIDUtil.equal(ignore, di)) {
@@ -195,7 +195,7 @@ public class SOS<O> implements OutlierAlgorithm {
    * @param norm Normalization factor (1/sum)
    * @param scores Output score storage
    */
-  public static void nominateNeighbors(DBIDIter ignore, DBIDArrayIter di, double[] p, double norm, WritableDoubleDataStore scores) {
+  public static void nominateNeighbors(DBIDRef ignore, DBIDArrayIter di, double[] p, double norm, WritableDoubleDataStore scores) {
     for(di.seek(0); di.valid(); di.advance()) {
       if(DBIDUtil.equal(ignore, di)) {
         continue;
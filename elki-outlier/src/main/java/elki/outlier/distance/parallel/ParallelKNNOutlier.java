@@ -37,6 +37,7 @@ import elki.distance.minkowski.EuclideanDistance;
 import elki.math.DoubleMinMax;
 import elki.outlier.OutlierAlgorithm;
 import elki.outlier.distance.KNNOutlier;
+import elki.parallel.ParallelCore;
 import elki.parallel.ParallelExecutor;
 import elki.parallel.processor.DoubleMinMaxProcessor;
 import elki.parallel.processor.KDistanceProcessor;
@@ -94,6 +95,11 @@ public class ParallelKNNOutlier<O> implements OutlierAlgorithm {
    */
   protected int kplus;
 
+  /**
+   * Parallel core to use.
+   */
+  protected ParallelCore core;
+
   /**
    * Constructor.
    * 
@@ -101,9 +107,21 @@ public class ParallelKNNOutlier<O> implements OutlierAlgorithm {
    * @param k K parameter
    */
   public ParallelKNNOutlier(Distance<? super O> distance, int k) {
+    this(distance, k, ParallelCore.getCore());
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param distance Distance function
+   * @param k K parameter
+   * @param core Parallel core to use
+   */
+  public ParallelKNNOutlier(Distance<? super O> distance, int k, ParallelCore core) {
     super();
     this.distance = distance;
     this.kplus = k + 1;
+    this.core = core;
   }
 
   @Override
@@ -137,7 +155,7 @@ public class ParallelKNNOutlier<O> implements OutlierAlgorithm {
     DoubleMinMaxProcessor mmm = new DoubleMinMaxProcessor();
     mmm.connectInput(kdistv);
 
-    ParallelExecutor.run(ids, knnm, kdistm, storem, mmm);
+    ParallelExecutor.run(core, ids, knnm, kdistm, storem, mmm);
 
     DoubleMinMax minmax = mmm.getMinMax();
     DoubleRelation scoreres = new MaterializedDoubleRelation("kNN Outlier Score", ids, store);
@@ -165,17 +183,23 @@ public class ParallelKNNOutlier<O> implements OutlierAlgorithm {
      */
     protected int k;
 
+    /**
+     * Parallel core to use.
+     */
+    protected ParallelCore core;
+
     @Override
     public void configure(Parameterization config) {
       new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class) //
           .grab(config, x -> distance = x);
       new IntParameter(KNNOutlier.Par.K_ID) //
           .grab(config, x -> k = x);
+      core = config.tryInstantiate(ParallelCore.class);
     }
 
     @Override
     public ParallelKNNOutlier<O> make() {
-      return new ParallelKNNOutlier<>(distance, k);
+      return new ParallelKNNOutlier<>(distance, k, core);
     }
   }
 }
@@ -0,0 +1,128 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.distance.parallel;
+
+import elki.database.datastore.DataStore;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DBIDs;
+import elki.database.ids.KNNList;
+import elki.database.query.QueryBuilder;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.math.DoubleMinMax;
+import elki.outlier.distance.ODIN;
+import elki.parallel.ParallelCore;
+import elki.parallel.processor.KNNProcessor;
+import elki.result.outlier.InvertedOutlierScoreMeta;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+
+/**
+ * Parallel implementation of ODIN using processors.
+ * <p>
+ * The expensive part, the kNN graph, is materialized in parallel. Counting
+ * the in-degrees is a cheap sequential pass over the materialized kNN.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @composed - - - KNNProcessor
+ *
+ * @param <O> Object type
+ */
+public class ParallelODIN<O> extends ODIN<O> {
+  /**
+   * Parallel core to use.
+   */
+  protected ParallelCore core;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param k k parameter
+   * @param core Parallel core to use
+   */
+  public ParallelODIN(Distance<? super O> distance, int k, ParallelCore core) {
+    super(distance, k);
+    this.core = core;
+  }
+
+  @Override
+  public OutlierResult run(Relation<O> relation) {
+    DBIDs ids = relation.getDBIDs();
+    QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
+    DataStore<KNNList> knns = KNNProcessor.materialize(core, ids, kplus, () -> qb.kNNByDBID(kplus));
+
+    WritableDoubleDataStore scores = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_DB, 0.);
+    double inc = 1. / (kplus - 1);
+    DoubleMinMax minmax = new DoubleMinMax();
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      // For each neighbor, except ourselves, increase the in-degree:
+      for(DBIDIter nei = knns.get(iter).iter(); nei.valid(); nei.advance()) {
+        if(DBIDUtil.equal(iter, nei)) {
+          continue;
+        }
+        final double value = scores.doubleValue(nei) + inc;
+        scores.put(nei, value);
+        minmax.put(value);
+      }
+    }
+
+    OutlierScoreMeta meta = new InvertedOutlierScoreMeta(minmax.getMin(), minmax.getMax(), 0., inc * (ids.size() - 1), 1);
+    DoubleRelation rel = new MaterializedDoubleRelation("ODIN In-Degree", ids, scores);
+    return new OutlierResult(meta, rel);
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O> extends ODIN.Par<O> {
+    /**
+     * Parallel core to use.
+     */
+    protected ParallelCore core;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      core = config.tryInstantiate(ParallelCore.class);
+    }
+
+    @Override
+    public ParallelODIN<O> make() {
+      return new ParallelODIN<>(distance, k, core);
+    }
+  }
+}
@@ -0,0 +1,266 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.distance.parallel;
+
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.math.DoubleMinMax;
+import elki.outlier.distance.SOS;
+import elki.parallel.Executor;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.result.outlier.ProbabilisticOutlierScore;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+
+import net.jafama.FastMath;
+
+/**
+ * Parallel implementation of Stochastic Outlier Selection using processors.
+ * <p>
+ * SOS is not kNN-based, but uses the affinities to all other objects. Each
+ * block of objects nominates its neighbors into a private score store, which
+ * is multiplied into the shared scores when the block is finished. Because
+ * the order of these multiplications depends on the thread schedule, results
+ * may differ from the serial version in the last bits.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <O> Object type
+ */
+public class ParallelSOS<O> extends SOS<O> {
+  /**
+   * Parallel core to use.
+   */
+  protected ParallelCore core;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param h Perplexity
+   * @param core Parallel core to use
+   */
+  public ParallelSOS(Distance<? super O> distance, double h, ParallelCore core) {
+    super(distance, h);
+    this.core = core;
+  }
+
+  @Override
+  public OutlierResult run(Relation<O> relation) {
+    DBIDs ids = relation.getDBIDs();
+    QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
+    WritableDoubleDataStore scores = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_DB, 1.);
+    ParallelExecutor.run(core, ids, new NominateProcessor<>(qb, ids, perplexity, scores));
+    // Find minimum and maximum.
+    DoubleMinMax minmax = new DoubleMinMax();
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      minmax.put(scores.doubleValue(it));
+    }
+    DoubleRelation scoreres = new MaterializedDoubleRelation("Stoachastic Outlier Selection", ids, scores);
+    OutlierScoreMeta meta = new ProbabilisticOutlierScore(minmax.getMin(), minmax.getMax(), 0.);
+    return new OutlierResult(meta, scoreres);
+  }
+
+  /**
+   * Processor to compute the affinities and nominate neighbors.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   */
+  protected static class NominateProcessor<O> implements Processor {
+    /**
+     * Query builder, for the distance queries.
+     */
+    QueryBuilder<O> qb;
+
+    /**
+     * Objects to process.
+     */
+    DBIDs ids;
+
+    /**
+     * Perplexity.
+     */
+    double perplexity;
+
+    /**
+     * Shared output scores.
+     */
+    WritableDoubleDataStore scores;
+
+    /**
+     * Constructor.
+     *
+     * @param qb Query builder
+     * @param ids Objects to process
+     * @param perplexity Perplexity
+     * @param scores Output scores
+     */
+    protected NominateProcessor(QueryBuilder<O> qb, DBIDs ids, double perplexity, WritableDoubleDataStore scores) {
+      this.qb = qb;
+      this.ids = ids;
+      this.perplexity = perplexity;
+      this.scores = scores;
+    }
+
+    @Override
+    public Instance<O> instantiate(Executor executor) {
+      return new Instance<>(qb.distanceQuery(), ids, perplexity);
+    }
+
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      WritableDoubleDataStore local = ((Instance<?>) inst).scores;
+      synchronized(scores) {
+        for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+          scores.putDouble(it, scores.doubleValue(it) * local.doubleValue(it));
+        }
+      }
+      local.destroy();
+    }
+
+    /**
+     * Instance for a block of objects.
+     *
+     * @author Erich Schubert
+     *
+     * @param <O> Object type
+     */
+    protected static class Instance<O> implements Processor.Instance {
+      /**
+       * Distance query.
+       */
+      DistanceQuery<O> dq;
+
+      /**
+       * Objects to process.
+       */
+      DBIDs ids;
+
+      /**
+       * Perplexity.
+       */
+      double perplexity;
+
+      /**
+       * Neighbors list buffer.
+       */
+      ModifiableDoubleDBIDList dlist;
+
+      /**
+       * Iterator over the neighbors.
+       */
+      DoubleDBIDListMIter di;
+
+      /**
+       * Probabilities buffer.
+       */
+      double[] p;
+
+      /**
+       * Private scores of this block.
+       */
+      WritableDoubleDataStore scores;
+
+      /**
+       * Log of the perplexity.
+       */
+      double logPerp;
+
+      /**
+       * Constructor.
+       *
+       * @param dq Distance query
+       * @param ids Objects to process
+       * @param perplexity Perplexity
+       */
+      protected Instance(DistanceQuery<O> dq, DBIDs ids, double perplexity) {
+        this.dq = dq;
+        this.ids = ids;
+        this.perplexity = perplexity;
+        this.logPerp = FastMath.log(perplexity);
+        this.dlist = DBIDUtil.newDistanceDBIDList(ids.size() - 1);
+        this.di = dlist.iter();
+        this.p = new double[ids.size() - 1];
+        this.scores = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, 1.);
+      }
+
+      @Override
+      public void map(DBIDRef id) {
+        // Build sorted neighbors list.
+        dlist.clear();
+        for(DBIDIter i2 = ids.iter(); i2.valid(); i2.advance()) {
+          if(DBIDUtil.equal(id, i2)) {
+            continue;
+          }
+          dlist.add(dq.distance(id, i2), i2);
+        }
+        dlist.sort(); // Used via "di" below!
+        computePi(id, di, p, perplexity, logPerp);
+        // Normalization factor:
+        double s = sumOfProbabilities(id, di, p);
+        if(s > 0) {
+          nominateNeighbors(id, di, p, 1. / s, scores);
+        }
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O> extends SOS.Par<O> {
+    /**
+     * Parallel core to use.
+     */
+    protected ParallelCore core;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      core = config.tryInstantiate(ParallelCore.class);
+    }
+
+    @Override
+    public ParallelSOS<O> make() {
+      return new ParallelSOS<>(distance, perplexity, core);
+    }
+  }
+}
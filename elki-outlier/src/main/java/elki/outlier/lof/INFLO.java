@@ -99,17 +99,17 @@ public class INFLO<O> implements OutlierAlgorithm {
   /**
    * Distance function used.
    */
-  private Distance<? super O> distance;
+  protected Distance<? super O> distance;
 
   /**
    * Pruning threshold m.
    */
-  private double m;
+  protected double m;
 
   /**
    * Number of neighbors to use.
    */
-  private int kplus;
+  protected int kplus;
 
   /**
    * Constructor with parameters.
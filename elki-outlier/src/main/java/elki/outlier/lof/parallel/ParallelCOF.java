@@ -0,0 +1,215 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.lof.parallel;
+
+import elki.database.datastore.DataStore;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.DoubleDataStore;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.math.DoubleMinMax;
+import elki.outlier.lof.COF;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.DoubleFunctionProcessor;
+import elki.parallel.processor.DoubleMinMaxProcessor;
+import elki.parallel.processor.KNNProcessor;
+import elki.parallel.processor.WriteDoubleDataStoreProcessor;
+import elki.parallel.variables.SharedDouble;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.result.outlier.QuotientOutlierScoreMeta;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+
+/**
+ * Parallel implementation of the Connectivity-based Outlier Factor (COF)
+ * using processors.
+ * <p>
+ * The kNN are materialized in parallel, then the average chaining distances
+ * and the COF scores are computed in two parallel passes.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <O> Object type
+ */
+public class ParallelCOF<O> extends COF<O> {
+  /**
+   * Parallel core to use.
+   */
+  protected ParallelCore core;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param k k Parameter
+   * @param core Parallel core to use
+   */
+  public ParallelCOF(Distance<? super O> distance, int k, ParallelCore core) {
+    super(distance, k);
+    this.core = core;
+  }
+
+  @Override
+  public OutlierResult run(Relation<O> relation) {
+    DBIDs ids = relation.getDBIDs();
+    QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
+    // Phase one: materialize kNN (k already includes the query point)
+    DataStore<KNNList> knns = KNNProcessor.materialize(core, ids, k, () -> qb.kNNByDBID(k));
+
+    // Phase two: average chaining distances
+    WritableDoubleDataStore acds = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+    {
+      DoubleFunctionProcessor acdm = new DoubleFunctionProcessor(() -> {
+        DistanceQuery<O> dq = qb.distanceQuery();
+        return id -> acd(id, knns.get(id), dq);
+      });
+      SharedDouble acdv = new SharedDouble();
+      WriteDoubleDataStoreProcessor storem = new WriteDoubleDataStoreProcessor(acds);
+      acdm.connectOutput(acdv);
+      storem.connectInput(acdv);
+      ParallelExecutor.run(core, ids, acdm, storem);
+    }
+
+    // Phase three: COF scores
+    WritableDoubleDataStore cofs = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_DB);
+    DoubleMinMax minmax;
+    {
+      DoubleFunctionProcessor cofm = new DoubleFunctionProcessor(() -> id -> cof(id, knns.get(id), acds));
+      SharedDouble cofv = new SharedDouble();
+      WriteDoubleDataStoreProcessor storem = new WriteDoubleDataStoreProcessor(cofs);
+      DoubleMinMaxProcessor mmm = new DoubleMinMaxProcessor();
+      cofm.connectOutput(cofv);
+      storem.connectInput(cofv);
+      mmm.connectInput(cofv);
+      ParallelExecutor.run(core, ids, cofm, storem, mmm);
+      minmax = mmm.getMinMax();
+    }
+
+    DoubleRelation scoreResult = new MaterializedDoubleRelation("Connectivity-Based Outlier Factor", ids, cofs);
+    OutlierScoreMeta scoreMeta = new QuotientOutlierScoreMeta(minmax.getMin(), minmax.getMax(), 0.0, Double.POSITIVE_INFINITY, 1.0);
+    return new OutlierResult(scoreMeta, scoreResult);
+  }
+
+  /**
+   * Compute the average chaining distance of a single object.
+   *
+   * @param id Object
+   * @param neighbors Neighbors (including the query point)
+   * @param dq Distance query
+   * @return Average chaining distance
+   */
+  protected double acd(DBIDRef id, KNNList neighbors, DistanceQuery<O> dq) {
+    final int r = neighbors.size();
+    DoubleDBIDListIter it1 = neighbors.iter(), it2 = neighbors.iter();
+    // Store the current lowest reachability.
+    final double[] mindists = new double[r];
+    for(int i = 0; it1.valid(); it1.advance(), ++i) {
+      mindists[i] = DBIDUtil.equal(it1, id) ? Double.NaN : it1.doubleValue();
+    }
+    double acsum = 0.;
+    for(int j = ((r < k) ? r : k) - 1; j > 0; --j) {
+      // Find the minimum:
+      int minpos = -1;
+      double mindist = Double.NaN;
+      for(int i = 0; i < mindists.length; ++i) {
+        double curdist = mindists[i];
+        // Both values could be NaN, deliberately.
+        if(curdist == curdist && !(curdist > mindist)) {
+          minpos = i;
+          mindist = curdist;
+        }
+      }
+      acsum += mindist * j; // Weighted sum, decreasing weights
+      mindists[minpos] = Double.NaN;
+      it1.seek(minpos);
+      // Update distances
+      it2.seek(0);
+      for(int i = 0; it2.valid(); it2.advance(), ++i) {
+        final double curdist = mindists[i];
+        if(curdist != curdist) {
+          continue; // NaN = processed!
+        }
+        double newdist = dq.distance(it1, it2);
+        if(newdist < curdist) {
+          mindists[i] = newdist;
+        }
+      }
+    }
+    return acsum / (r * 0.5 * (r - 1.));
+  }
+
+  /**
+   * Compute the connectivity outlier factor of a single object.
+   *
+   * @param id Object
+   * @param neighbors Neighbors (including the query point)
+   * @param acds Average chaining distances
+   * @return COF score
+   */
+  protected double cof(DBIDRef id, KNNList neighbors, DoubleDataStore acds) {
+    double sum = 0.;
+    for(DBIDIter neighbor = neighbors.iter(); neighbor.valid(); neighbor.advance()) {
+      // skip the point itself
+      if(DBIDUtil.equal(neighbor, id)) {
+        continue;
+      }
+      sum += acds.doubleValue(neighbor);
+    }
+    final double acd = acds.doubleValue(id);
+    return (sum > 0.) ? (acd * k / sum) : (acd > 0. ? Double.POSITIVE_INFINITY : 1.);
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O> extends COF.Par<O> {
+    /**
+     * Parallel core to use.
+     */
+    protected ParallelCore core;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      core = config.tryInstantiate(ParallelCore.class);
+    }
+
+    @Override
+    public ParallelCOF<O> make() {
+      return new ParallelCOF<>(distance, k, core);
+    }
+  }
+}
@@ -0,0 +1,237 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.lof.parallel;
+
+import elki.database.datastore.DataStore;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.DoubleDataStore;
+import elki.database.datastore.WritableDataStore;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.logging.Logging;
+import elki.logging.statistics.LongStatistic;
+import elki.math.DoubleMinMax;
+import elki.outlier.lof.INFLO;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.*;
+import elki.parallel.variables.SharedObject;
+import elki.parallel.variables.SharedDouble;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.result.outlier.QuotientOutlierScoreMeta;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+
+/**
+ * Parallel implementation of INFLO using processors.
+ * <p>
+ * The kNN and k-distances are materialized in parallel, and the final scores
+ * are computed in parallel. The reverse neighborhoods are collected in a
+ * sequential pass over the materialized kNN, which is cheap in comparison.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <O> Object type
+ */
+public class ParallelINFLO<O> extends INFLO<O> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelINFLO.class);
+
+  /**
+   * Parallel core to use.
+   */
+  protected ParallelCore core;
+
+  /**
+   * Constructor with parameters.
+   *
+   * @param distance Distance function in use
+   * @param m m Parameter
+   * @param k k Parameter
+   * @param core Parallel core to use
+   */
+  public ParallelINFLO(Distance<? super O> distance, double m, int k, ParallelCore core) {
+    super(distance, m, k);
+    this.core = core;
+  }
+
+  @Override
+  public OutlierResult run(Relation<O> relation) {
+    DBIDs ids = relation.getDBIDs();
+    QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
+
+    // Phase one: kNN and k-distances
+    WritableDataStore<KNNList> knns = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, KNNList.class);
+    WritableDoubleDataStore kdists = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+    {
+      KNNProcessor knnm = new KNNProcessor(kplus, () -> qb.kNNByDBID(kplus));
+      SharedObject<KNNList> knnv = new SharedObject<>();
+      WriteDataStoreProcessor<KNNList> storek = new WriteDataStoreProcessor<>(knns);
+      knnm.connectKNNOutput(knnv);
+      storek.connectInput(knnv);
+      KDistanceProcessor kdistm = new KDistanceProcessor(kplus);
+      SharedDouble kdistv = new SharedDouble();
+      WriteDoubleDataStoreProcessor storem = new WriteDoubleDataStoreProcessor(kdists);
+      kdistm.connectKNNInput(knnv);
+      kdistm.connectOutput(kdistv);
+      storem.connectInput(kdistv);
+      ParallelExecutor.run(core, ids, knnm, storek, kdistm, storem);
+    }
+
+    // Phase two: reverse kNN minus kNN, and pruning
+    ModifiableDBIDs pruned = DBIDUtil.newHashSet();
+    WritableDataStore<ModifiableDBIDs> rnnMinusKNNs = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, ModifiableDBIDs.class);
+    computeNeighborhoods(ids, knns, pruned, rnnMinusKNNs);
+
+    // Phase three: INFLO scores
+    WritableDoubleDataStore inflos = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
+    DoubleMinMax minmax;
+    {
+      DoubleFunctionProcessor inflom = new DoubleFunctionProcessor(() -> {
+        HashSetModifiableDBIDs set = DBIDUtil.newHashSet();
+        return id -> pruned.contains(id) ? 1. : inflo(id, knns.get(id), rnnMinusKNNs.get(id), kdists, set);
+      });
+      SharedDouble inflov = new SharedDouble();
+      WriteDoubleDataStoreProcessor storem = new WriteDoubleDataStoreProcessor(inflos);
+      DoubleMinMaxProcessor mmm = new DoubleMinMaxProcessor();
+      inflom.connectOutput(inflov);
+      storem.connectInput(inflov);
+      mmm.connectInput(inflov);
+      ParallelExecutor.run(core, ids, inflom, storem, mmm);
+      minmax = mmm.getMinMax();
+    }
+    LOG.statistics(new LongStatistic(ParallelINFLO.class.getName() + ".pruned", pruned.size()));
+
+    DoubleRelation scoreResult = new MaterializedDoubleRelation("Influence Outlier Score", ids, inflos);
+    OutlierScoreMeta scoreMeta = new QuotientOutlierScoreMeta(minmax.getMin(), minmax.getMax(), 0., Double.POSITIVE_INFINITY, 1.);
+    return new OutlierResult(scoreMeta, scoreResult);
+  }
+
+  /**
+   * Compute the reverse kNN minus the kNN, and the objects to prune.
+   *
+   * @param ids Object IDs
+   * @param knns Materialized nearest neighbors
+   * @param pruned Pruned objects: with too many neighbors
+   * @param rNNminuskNNs reverse kNN storage
+   */
+  private void computeNeighborhoods(DBIDs ids, DataStore<KNNList> knns, ModifiableDBIDs pruned, WritableDataStore<ModifiableDBIDs> rNNminuskNNs) {
+    // Convert the kNN into sets, for fast containment tests below.
+    WritableDataStore<SetDBIDs> knnsets = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, SetDBIDs.class);
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      knnsets.put(iter, DBIDUtil.ensureSet(knns.get(iter)));
+      rNNminuskNNs.put(iter, DBIDUtil.newArray());
+    }
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      DBIDs knn = knnsets.get(iter);
+      int count = 1; // The point itself.
+      for(DBIDIter niter = knn.iter(); niter.valid(); niter.advance()) {
+        if(DBIDUtil.equal(iter, niter)) {
+          continue;
+        }
+        if(knnsets.get(niter).contains(iter)) {
+          count++;
+        }
+        else {
+          rNNminuskNNs.get(niter).add(iter);
+        }
+      }
+      // INFLO pruning rule
+      if(count >= knn.size() * m) {
+        pruned.add(iter);
+      }
+    }
+    knnsets.destroy();
+  }
+
+  /**
+   * Compute the INFLO score of a single object.
+   *
+   * @param id Object
+   * @param knn kNN of the object
+   * @param rnnMinusKNN Reverse kNN minus kNN of the object
+   * @param kdists k-distances
+   * @param set Scratch set
+   * @return INFLO score
+   */
+  protected static double inflo(DBIDRef id, KNNList knn, DBIDs rnnMinusKNN, DoubleDataStore kdists, HashSetModifiableDBIDs set) {
+    final double kdist = knn.getKNNDistance();
+    if(kdist == 0.) {
+      return 1.;
+    }
+    set.clear().addDBIDs(knn);
+    set.addDBIDs(rnnMinusKNN);
+    // Compute mean density of NN \cup RNN
+    double sum = 0.;
+    int c = 0;
+    for(DBIDIter niter = set.iter(); niter.valid(); niter.advance()) {
+      if(DBIDUtil.equal(id, niter)) {
+        continue;
+      }
+      final double nkdist = kdists.doubleValue(niter);
+      if(nkdist <= 0) {
+        sum = Double.POSITIVE_INFINITY;
+        c++;
+        break;
+      }
+      sum += 1. / nkdist;
+      c++;
+    }
+    sum *= kdist;
+    return sum == 0 ? 1. : sum / c;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O> extends INFLO.Par<O> {
+    /**
+     * Parallel core to use.
+     */
+    protected ParallelCore core;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      core = config.tryInstantiate(ParallelCore.class);
+    }
+
+    @Override
+    public ParallelINFLO<O> make() {
+      return new ParallelINFLO<>(distance, m, k, core);
+    }
+  }
+}
@@ -0,0 +1,257 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.lof.parallel;
+
+import elki.database.datastore.DataStore;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.math.DoubleMinMax;
+import elki.math.MathUtil;
+import elki.math.MeanVariance;
+import elki.math.statistics.distribution.NormalDistribution;
+import elki.math.statistics.kernelfunctions.KernelDensityFunction;
+import elki.outlier.lof.KDEOS;
+import elki.parallel.Executor;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.DoubleFunctionProcessor;
+import elki.parallel.processor.DoubleMinMaxProcessor;
+import elki.parallel.processor.KNNProcessor;
+import elki.parallel.processor.Processor;
+import elki.parallel.processor.WriteDoubleDataStoreProcessor;
+import elki.parallel.variables.SharedDouble;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.result.outlier.ProbabilisticOutlierScore;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+
+/**
+ * Parallel implementation of KDEOS using processors.
+ * <p>
+ * The kNN are materialized in parallel. The kernel densities are then
+ * distributed to the neighbors in parallel, synchronizing on the density
+ * array of each receiving object, and the final scores are computed in a
+ * parallel pass. Because the order of the density accumulation depends on the
+ * thread schedule, results may differ from the serial version in the last
+ * bits.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <O> Object type
+ */
+public class ParallelKDEOS<O> extends KDEOS<O> {
+  /**
+   * Parallel core to use.
+   */
+  protected ParallelCore core;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param kmin Minimum number of neighbors
+   * @param kmax Maximum number of neighbors
+   * @param kernel Kernel function
+   * @param minBandwidth Minimum bandwidth
+   * @param scale Kernel scaling parameter
+   * @param idim Intrinsic dimensionality (use 0 to use real dimensionality)
+   * @param core Parallel core to use
+   */
+  public ParallelKDEOS(Distance<? super O> distance, int kmin, int kmax, KernelDensityFunction kernel, double minBandwidth, double scale, int idim, ParallelCore core) {
+    super(distance, kmin, kmax, kernel, minBandwidth, scale, idim);
+    this.core = core;
+  }
+
+  @Override
+  public OutlierResult run(Relation<O> rel) {
+    final DBIDs ids = rel.getDBIDs();
+    final int dim = dimensionality(rel), knum = kmax + 1 - kmin;
+    QueryBuilder<O> qb = new QueryBuilder<>(rel, distance);
+    // Phase one: materialize kNN
+    DataStore<KNNList> knns = KNNProcessor.materialize(core, ids, kmax + 1, () -> qb.kNNByDBID(kmax + 1));
+
+    // Phase two: distribute densities
+    WritableDataStore<double[]> densities = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, double[].class);
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      densities.put(iter, new double[knum]);
+    }
+    ParallelExecutor.run(core, ids, new DensityProcessor(knns, densities, dim));
+
+    // Phase three: scores
+    WritableDoubleDataStore kofs = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_DB);
+    DoubleMinMax minmax;
+    {
+      DoubleFunctionProcessor kdeosm = new DoubleFunctionProcessor(() -> {
+        MeanVariance mv = new MeanVariance();
+        return id -> score(densities.get(id), knns.get(id), densities, mv);
+      });
+      SharedDouble kdeosv = new SharedDouble();
+      WriteDoubleDataStoreProcessor storem = new WriteDoubleDataStoreProcessor(kofs);
+      DoubleMinMaxProcessor mmm = new DoubleMinMaxProcessor();
+      kdeosm.connectOutput(kdeosv);
+      storem.connectInput(kdeosv);
+      mmm.connectInput(kdeosv);
+      ParallelExecutor.run(core, ids, kdeosm, storem, mmm);
+      minmax = mmm.getMinMax();
+    }
+
+    DoubleRelation scoreres = new MaterializedDoubleRelation("Kernel Density Estimation Outlier Scores", ids, kofs);
+    OutlierScoreMeta meta = new ProbabilisticOutlierScore(minmax.getMin(), minmax.getMax());
+    return new OutlierResult(meta, scoreres);
+  }
+
+  /**
+   * Compute the KDEOS score of a single object.
+   *
+   * @param dens Density estimates of the object
+   * @param neighbors Neighbors (including the query point)
+   * @param densities Density estimates
+   * @param mv Scratch buffer
+   * @return KDEOS score
+   */
+  protected double score(double[] dens, KNNList neighbors, DataStore<double[]> densities, MeanVariance mv) {
+    final int knum = kmax + 1 - kmin;
+    double score = 0.;
+    for(int i = 0; i < knum; i++) {
+      mv.reset();
+      for(DBIDIter neighbor = neighbors.iter(); neighbor.valid(); neighbor.advance()) {
+        mv.put(densities.get(neighbor)[i]);
+      }
+      final double mean = mv.getMean(), stddev = mv.getSampleStddev();
+      if(stddev > 0.) {
+        score += (mean - dens[i]) / stddev;
+      }
+    }
+    score /= knum; // average
+    return NormalDistribution.standardNormalCDF(score);
+  }
+
+  /**
+   * Processor to distribute the kernel densities to the neighbors.
+   *
+   * @author Erich Schubert
+   */
+  protected class DensityProcessor implements Processor {
+    /**
+     * Materialized neighbors.
+     */
+    DataStore<KNNList> knns;
+
+    /**
+     * Density storage.
+     */
+    DataStore<double[]> densities;
+
+    /**
+     * Dimensionality for the kernel scaling.
+     */
+    int dim;
+
+    /**
+     * Constructor.
+     *
+     * @param knns Materialized neighbors
+     * @param densities Density storage
+     * @param dim Dimensionality
+     */
+    protected DensityProcessor(DataStore<KNNList> knns, DataStore<double[]> densities, int dim) {
+      this.knns = knns;
+      this.densities = densities;
+      this.dim = dim;
+    }
+
+    @Override
+    public Processor.Instance instantiate(Executor executor) {
+      final double iminbw = (minBandwidth > 0.) ? 1. / (minBandwidth * scale) : Double.POSITIVE_INFINITY;
+      return id -> {
+        KNNList neighbors = knns.get(id);
+        int k = 1, idx = 0;
+        double sum = 0.;
+        for(DoubleDBIDListIter kneighbor = neighbors.iter(); k <= kmax && kneighbor.valid(); kneighbor.advance(), k++) {
+          sum += kneighbor.doubleValue();
+          if(k < kmin) {
+            continue;
+          }
+          final double ibw = Math.min(k / (sum * scale), iminbw);
+          final double sca = MathUtil.powi(ibw, dim);
+          for(DoubleDBIDListIter neighbor = neighbors.iter(); neighbor.valid(); neighbor.advance()) {
+            final double dens;
+            if(sca < Double.POSITIVE_INFINITY) { // NaNs with duplicate points!
+              dens = sca * kernel.density(neighbor.doubleValue() * ibw);
+            }
+            else {
+              dens = neighbor.doubleValue() == 0. ? 1. : 0.;
+            }
+            final double[] ndens = densities.get(neighbor);
+            synchronized(ndens) {
+              ndens[idx] += dens;
+            }
+            if(dens < CUTOFF) {
+              break;
+            }
+          }
+          ++idx; // Only if k >= kmin
+        }
+      };
+    }
+
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      // Nothing to do.
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O> extends KDEOS.Par<O> {
+    /**
+     * Parallel core to use.
+     */
+    protected ParallelCore core;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      core = config.tryInstantiate(ParallelCore.class);
+    }
+
+    @Override
+    public ParallelKDEOS<O> make() {
+      return new ParallelKDEOS<>(distance, kmin, kmax, kernel, minBandwidth, scale, idim, core);
+    }
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.lof.parallel;
+
+import elki.data.NumberVector;
+import elki.database.datastore.DataStore;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.DoubleDataStore;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.database.relation.RelationUtil;
+import elki.distance.Distance;
+import elki.math.DoubleMinMax;
+import elki.math.MathUtil;
+import elki.math.statistics.kernelfunctions.KernelDensityFunction;
+import elki.outlier.lof.LDF;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.DoubleFunctionProcessor;
+import elki.parallel.processor.DoubleMinMaxProcessor;
+import elki.parallel.processor.KNNProcessor;
+import elki.parallel.processor.WriteDoubleDataStoreProcessor;
+import elki.parallel.variables.SharedDouble;
+import elki.result.outlier.BasicOutlierScoreMeta;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+
+/**
+ * Parallel implementation of the Local Density Factor (LDF) using processors.
+ * <p>
+ * The kNN are materialized in parallel, then the local density estimates and
+ * the LDF scores are computed in two parallel passes.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <O> Object type
+ */
+public class ParallelLDF<O extends NumberVector> extends LDF<O> {
+  /**
+   * Parallel core to use.
+   */
+  protected ParallelCore core;
+
+  /**
+   * Constructor.
+   *
+   * @param k the value of k
+   * @param distance Distance function
+   * @param kernel Kernel function
+   * @param h Kernel bandwidth scaling
+   * @param c Score scaling parameter
+   * @param core Parallel core to use
+   */
+  public ParallelLDF(int k, Distance<? super O> distance, KernelDensityFunction kernel, double h, double c, ParallelCore core) {
+    super(k, distance, kernel, h, c);
+    this.core = core;
+  }
+
+  @Override
+  public OutlierResult run(Relation<O> relation) {
+    final int dim = RelationUtil.dimensionality(relation);
+    DBIDs ids = relation.getDBIDs();
+    QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
+    // Phase one: materialize kNN
+    DataStore<KNNList> knns = KNNProcessor.materialize(core, ids, kplus, () -> qb.kNNByDBID(kplus));
+
+    // Phase two: local density estimates
+    WritableDoubleDataStore ldes = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+    {
+      DoubleFunctionProcessor ldem = new DoubleFunctionProcessor(() -> id -> lde(id, knns, dim));
+      SharedDouble ldev = new SharedDouble();
+      WriteDoubleDataStoreProcessor storem = new WriteDoubleDataStoreProcessor(ldes);
+      ldem.connectOutput(ldev);
+      storem.connectInput(ldev);
+      ParallelExecutor.run(core, ids, ldem, storem);
+    }
+
+    // Phase three: local density factors
+    WritableDoubleDataStore ldfs = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
+    DoubleMinMax minmax;
+    {
+      DoubleFunctionProcessor ldfm = new DoubleFunctionProcessor(() -> id -> ldf(id, knns.get(id), ldes));
+      SharedDouble ldfv = new SharedDouble();
+      WriteDoubleDataStoreProcessor storem = new WriteDoubleDataStoreProcessor(ldfs);
+      DoubleMinMaxProcessor mmm = new DoubleMinMaxProcessor();
+      ldfm.connectOutput(ldfv);
+      storem.connectInput(ldfv);
+      mmm.connectInput(ldfv);
+      ParallelExecutor.run(core, ids, ldfm, storem, mmm);
+      minmax = mmm.getMinMax();
+    }
+
+    DoubleRelation scoreResult = new MaterializedDoubleRelation("Local Density Factor", ids, ldfs);
+    OutlierScoreMeta scoreMeta = new BasicOutlierScoreMeta(minmax.getMin(), minmax.getMax(), 0.0, 1. / c, 1 / (1 + c));
+    return new OutlierResult(scoreMeta, scoreResult);
+  }
+
+  /**
+   * Compute the local density estimate of a single object.
+   *
+   * @param id Object
+   * @param knns Materialized neighbors
+   * @param dim Data dimensionality
+   * @return Local density estimate
+   */
+  protected double lde(DBIDRef id, DataStore<KNNList> knns, int dim) {
+    double sum = 0.0;
+    int count = 0;
+    for(DoubleDBIDListIter neighbor = knns.get(id).iter(); neighbor.valid(); neighbor.advance()) {
+      if(DBIDUtil.equal(neighbor, id)) {
+        continue;
+      }
+      final double nkdist = knns.get(neighbor).getKNNDistance();
+      if(!(nkdist > 0.) || nkdist == Double.POSITIVE_INFINITY) {
+        sum = Double.POSITIVE_INFINITY;
+        count++;
+        break;
+      }
+      final double v = MathUtil.max(nkdist, neighbor.doubleValue()) / (h * nkdist);
+      sum += kernel.density(v) / MathUtil.powi(h * nkdist, dim);
+      count++;
+    }
+    return sum / count;
+  }
+
+  /**
+   * Compute the local density factor of a single object.
+   *
+   * @param id Object
+   * @param neighbors Neighbors (including the query point)
+   * @param ldes Local density estimates
+   * @return LDF score
+   */
+  protected double ldf(DBIDRef id, KNNList neighbors, DoubleDataStore ldes) {
+    double sum = 0.0;
+    int count = 0;
+    for(DBIDIter neighbor = neighbors.iter(); neighbor.valid(); neighbor.advance()) {
+      // skip the point itself
+      if(DBIDUtil.equal(neighbor, id)) {
+        continue;
+      }
+      sum += ldes.doubleValue(neighbor);
+      count++;
+    }
+    sum /= count;
+    final double div = ldes.doubleValue(id) + c * sum;
+    return div == Double.POSITIVE_INFINITY ? (sum < Double.POSITIVE_INFINITY ? 0. : 1) : (div > 0) ? sum / div : 0;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O extends NumberVector> extends LDF.Par<O> {
+    /**
+     * Parallel core to use.
+     */
+    protected ParallelCore core;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      core = config.tryInstantiate(ParallelCore.class);
+    }
+
+    @Override
+    public ParallelLDF<O> make() {
+      return new ParallelLDF<>(k, distance, kernel, h, c, core);
+    }
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.lof.parallel;
+
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.math.DoubleMinMax;
+import elki.math.Mean;
+import elki.outlier.lof.LDOF;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.DoubleFunctionProcessor;
+import elki.parallel.processor.DoubleMinMaxProcessor;
+import elki.parallel.processor.WriteDoubleDataStoreProcessor;
+import elki.parallel.variables.SharedDouble;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.result.outlier.QuotientOutlierScoreMeta;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+
+/**
+ * Parallel implementation of the Local Distance-Based Outlier Factor (LDOF)
+ * using processors.
+ * <p>
+ * Because every kNN set is used exactly once, the kNN are not materialized,
+ * but each thread runs its own kNN queries while scoring.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <O> Object type
+ */
+public class ParallelLDOF<O> extends LDOF<O> {
+  /**
+   * Parallel core to use.
+   */
+  protected ParallelCore core;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param k k Parameter
+   * @param core Parallel core to use
+   */
+  public ParallelLDOF(Distance<? super O> distance, int k, ParallelCore core) {
+    super(distance, k);
+    this.core = core;
+  }
+
+  @Override
+  public OutlierResult run(Relation<O> relation) {
+    DBIDs ids = relation.getDBIDs();
+    QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
+    WritableDoubleDataStore ldofs = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+    DoubleFunctionProcessor ldofm = new DoubleFunctionProcessor(() -> {
+      KNNSearcher<DBIDRef> knnq = qb.kNNByDBID(kplus);
+      DistanceQuery<O> dq = qb.distanceQuery();
+      Mean dxp = new Mean(), Dxp = new Mean();
+      return id -> ldof(id, knnq.getKNN(id, kplus), dq, dxp, Dxp);
+    });
+    SharedDouble ldofv = new SharedDouble();
+    WriteDoubleDataStoreProcessor storem = new WriteDoubleDataStoreProcessor(ldofs);
+    DoubleMinMaxProcessor mmm = new DoubleMinMaxProcessor();
+    ldofm.connectOutput(ldofv);
+    storem.connectInput(ldofv);
+    mmm.connectInput(ldofv);
+    ParallelExecutor.run(core, ids, ldofm, storem, mmm);
+    DoubleMinMax minmax = mmm.getMinMax();
+
+    DoubleRelation scoreResult = new MaterializedDoubleRelation("LDOF Outlier Score", ids, ldofs);
+    OutlierScoreMeta scoreMeta = new QuotientOutlierScoreMeta(minmax.getMin(), minmax.getMax(), 0.0, Double.POSITIVE_INFINITY, LDOF_BASELINE);
+    return new OutlierResult(scoreMeta, scoreResult);
+  }
+
+  /**
+   * Compute the LDOF score of a single object.
+   *
+   * @param id Object
+   * @param neighbors Neighbors (including the query point)
+   * @param dq Distance query
+   * @param dxp Scratch mean for the kNN distances
+   * @param Dxp Scratch mean for the inner distances
+   * @return LDOF score
+   */
+  protected static double ldof(DBIDRef id, KNNList neighbors, DistanceQuery<?> dq, Mean dxp, Mean Dxp) {
+    dxp.reset();
+    Dxp.reset();
+    DoubleDBIDListIter neighbor1 = neighbors.iter(), neighbor2 = neighbors.iter();
+    for(; neighbor1.valid(); neighbor1.advance()) {
+      // skip the point itself
+      if(DBIDUtil.equal(neighbor1, id)) {
+        continue;
+      }
+      dxp.put(neighbor1.doubleValue());
+      for(neighbor2.seek(neighbor1.getOffset() + 1); neighbor2.valid(); neighbor2.advance()) {
+        // skip the point itself
+        if(DBIDUtil.equal(neighbor2, id)) {
+          continue;
+        }
+        Dxp.put(dq.distance(neighbor1, neighbor2));
+      }
+    }
+    double ldof = dxp.getMean() / Dxp.getMean();
+    return Double.isNaN(ldof) || Double.isInfinite(ldof) ? 1.0 : ldof;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O> extends LDOF.Par<O> {
+    /**
+     * Parallel core to use.
+     */
+    protected ParallelCore core;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      core = config.tryInstantiate(ParallelCore.class);
+    }
+
+    @Override
+    public ParallelLDOF<O> make() {
+      return new ParallelLDOF<>(distance, k, core);
+    }
+  }
+}
@@ -38,6 +38,7 @@ import elki.distance.minkowski.EuclideanDistance;
 import elki.math.DoubleMinMax;
 import elki.outlier.OutlierAlgorithm;
 import elki.outlier.lof.LOF;
+import elki.parallel.ParallelCore;
 import elki.parallel.ParallelExecutor;
 import elki.parallel.processor.*;
 import elki.parallel.variables.SharedDouble;
@@ -86,6 +87,11 @@ public class ParallelLOF<O> implements OutlierAlgorithm {
    */
   protected int kplus;
 
+  /**
+   * Parallel core to use.
+   */
+  protected ParallelCore core;
+
   /**
    * Constructor.
    * 
@@ -93,9 +99,21 @@ public class ParallelLOF<O> implements OutlierAlgorithm {
    * @param k K parameter
    */
   public ParallelLOF(Distance<? super O> distance, int k) {
+    this(distance, k, ParallelCore.getCore());
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param distance Distance function
+   * @param k K parameter
+   * @param core Parallel core to use
+   */
+  public ParallelLOF(Distance<? super O> distance, int k, ParallelCore core) {
     super();
     this.distance = distance;
     this.kplus = k + 1;
+    this.core = core;
   }
 
   @Override
@@ -131,7 +149,7 @@ public class ParallelLOF<O> implements OutlierAlgorithm {
       kdistm.connectOutput(kdistv);
       storem.connectInput(kdistv);
 
-      ParallelExecutor.run(ids, knnm, storek, kdistm, storem);
+      ParallelExecutor.run(core, ids, knnm, storek, kdistm, storem);
     }
 
     // Phase two: lrd
@@ -143,7 +161,7 @@ public class ParallelLOF<O> implements OutlierAlgorithm {
 
       lrdm.connectOutput(lrdv);
       storelrd.connectInput(lrdv);
-      ParallelExecutor.run(ids, lrdm, storelrd);
+      ParallelExecutor.run(core, ids, lrdm, storelrd);
     }
     kdists.destroy(); // No longer needed.
     kdists = null;
@@ -160,7 +178,7 @@ public class ParallelLOF<O> implements OutlierAlgorithm {
       lofm.connectOutput(lofv);
       mmm.connectInput(lofv);
       storelof.connectInput(lofv);
-      ParallelExecutor.run(ids, lofm, storelof, mmm);
+      ParallelExecutor.run(core, ids, lofm, storelof, mmm);
 
       minmax = mmm.getMinMax();
     }
@@ -190,17 +208,23 @@ public class ParallelLOF<O> implements OutlierAlgorithm {
      */
     protected int k;
 
+    /**
+     * Parallel core to use.
+     */
+    protected ParallelCore core;
+
     @Override
     public void configure(Parameterization config) {
       new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class) //
           .grab(config, x -> distance = x);
       new IntParameter(LOF.Par.K_ID) //
           .grab(config, x -> k = x);
+      core = config.tryInstantiate(ParallelCore.class);
     }
 
     @Override
     public ParallelLOF<O> make() {
-      return new ParallelLOF<>(distance, k);
+      return new ParallelLOF<>(distance, k, core);
     }
   }
 }
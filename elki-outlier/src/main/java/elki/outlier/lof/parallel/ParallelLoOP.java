@@ -0,0 +1,224 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.lof.parallel;
+
+import elki.database.datastore.DataStore;
+import elki.database.datastore.DoubleDataStore;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.math.DoubleMinMax;
+import elki.math.MathUtil;
+import elki.math.MeanVariance;
+import elki.math.statistics.distribution.NormalDistribution;
+import elki.outlier.lof.LoOP;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.DoubleFunctionProcessor;
+import elki.parallel.processor.DoubleMinMaxProcessor;
+import elki.parallel.processor.KNNProcessor;
+import elki.parallel.processor.WriteDoubleDataStoreProcessor;
+import elki.parallel.variables.DoubleStatisticsProcessor;
+import elki.parallel.variables.SharedDouble;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.result.outlier.ProbabilisticOutlierScore;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+
+import net.jafama.FastMath;
+
+/**
+ * Parallel implementation of LoOP: Local Outlier Probabilities, using
+ * processors.
+ * <p>
+ * The kNN are materialized in parallel first, then the probabilistic
+ * distances, PLOF and LoOP scores are each computed in a parallel pass.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <O> Object type
+ */
+public class ParallelLoOP<O> extends LoOP<O> {
+  /**
+   * Parallel core to use.
+   */
+  protected ParallelCore core;
+
+  /**
+   * Constructor.
+   *
+   * @param kreach k for reachability
+   * @param kcomp k for comparison
+   * @param reachabilityDistance distance function for reachability
+   * @param comparisonDistance distance function for comparison
+   * @param lambda Lambda parameter
+   * @param core Parallel core to use
+   */
+  public ParallelLoOP(int kreach, int kcomp, Distance<? super O> reachabilityDistance, Distance<? super O> comparisonDistance, double lambda, ParallelCore core) {
+    super(kreach, kcomp, reachabilityDistance, comparisonDistance, lambda);
+    this.core = core;
+  }
+
+  @Override
+  public OutlierResult run(Relation<O> relation) {
+    DBIDs ids = relation.getDBIDs();
+    // Phase one: materialize kNN
+    DataStore<KNNList> knnComp, knnReach;
+    if(comparisonDistance == reachabilityDistance || comparisonDistance.equals(reachabilityDistance)) {
+      final int kmax = MathUtil.max(kcomp, kreach) + 1;
+      QueryBuilder<O> qb = new QueryBuilder<>(relation, comparisonDistance);
+      knnReach = knnComp = KNNProcessor.materialize(core, ids, kmax, () -> qb.kNNByDBID(kmax));
+    }
+    else {
+      QueryBuilder<O> qbc = new QueryBuilder<>(relation, comparisonDistance);
+      QueryBuilder<O> qbr = new QueryBuilder<>(relation, reachabilityDistance);
+      knnComp = KNNProcessor.materialize(core, ids, kcomp + 1, () -> qbc.kNNByDBID(kcomp + 1));
+      knnReach = KNNProcessor.materialize(core, ids, kreach + 1, () -> qbr.kNNByDBID(kreach + 1));
+    }
+
+    // Phase two: probabilistic distances
+    WritableDoubleDataStore pdists = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_DB);
+    {
+      DoubleFunctionProcessor pdistm = new DoubleFunctionProcessor(() -> id -> pdist(id, knnReach.get(id)));
+      SharedDouble pdistv = new SharedDouble();
+      WriteDoubleDataStoreProcessor storem = new WriteDoubleDataStoreProcessor(pdists);
+      pdistm.connectOutput(pdistv);
+      storem.connectInput(pdistv);
+      ParallelExecutor.run(core, ids, pdistm, storem);
+    }
+
+    // Phase three: PLOF
+    WritableDoubleDataStore plofs = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+    MeanVariance plofmv;
+    {
+      DoubleFunctionProcessor plofm = new DoubleFunctionProcessor(() -> id -> plof(id, knnComp.get(id), pdists));
+      SharedDouble plofv = new SharedDouble();
+      WriteDoubleDataStoreProcessor storem = new WriteDoubleDataStoreProcessor(plofs);
+      DoubleStatisticsProcessor statm = new DoubleStatisticsProcessor();
+      plofm.connectOutput(plofv);
+      storem.connectInput(plofv);
+      statm.connectInput(plofv);
+      ParallelExecutor.run(core, ids, plofm, storem, statm);
+      plofmv = statm.getMeanVariance();
+    }
+    // Mean of (plof - 1)^2, from the variance and the mean:
+    final double dmean = plofmv.getMean() - 1.;
+    double nplof = lambda * FastMath.sqrt(plofmv.getPopulationVariance() + dmean * dmean);
+    nplof = nplof > 0. ? nplof : 1.;
+
+    // Phase four: normalize to LoOP scores
+    DoubleMinMax minmax;
+    {
+      final double norm = 1. / (nplof * MathUtil.SQRT2);
+      DoubleFunctionProcessor loopm = new DoubleFunctionProcessor(() -> id -> NormalDistribution.erf((plofs.doubleValue(id) - 1.) * norm));
+      SharedDouble loopv = new SharedDouble();
+      WriteDoubleDataStoreProcessor storem = new WriteDoubleDataStoreProcessor(plofs);
+      DoubleMinMaxProcessor mmm = new DoubleMinMaxProcessor();
+      loopm.connectOutput(loopv);
+      storem.connectInput(loopv);
+      mmm.connectInput(loopv);
+      ParallelExecutor.run(core, ids, loopm, storem, mmm);
+      minmax = mmm.getMinMax();
+    }
+
+    DoubleRelation scoreResult = new MaterializedDoubleRelation("Local Outlier Probabilities", ids, plofs);
+    OutlierScoreMeta scoreMeta = new ProbabilisticOutlierScore(minmax.getMin(), minmax.getMax(), 0.);
+    return new OutlierResult(scoreMeta, scoreResult);
+  }
+
+  /**
+   * Compute the probabilistic distance of a single object.
+   *
+   * @param id Object
+   * @param neighbors Neighbors (including the query point)
+   * @return Probabilistic distance
+   */
+  protected double pdist(DBIDRef id, KNNList neighbors) {
+    int ks = 0;
+    double ssum = 0.;
+    for(DoubleDBIDListIter neighbor = neighbors.iter(); neighbor.valid() && ks < kreach; neighbor.advance()) {
+      if(DBIDUtil.equal(neighbor, id)) {
+        continue;
+      }
+      final double d = neighbor.doubleValue();
+      ssum += d * d;
+      ks++;
+    }
+    return ks > 0 ? FastMath.sqrt(ssum / ks) : 0.;
+  }
+
+  /**
+   * Compute the PLOF of a single object.
+   *
+   * @param id Object
+   * @param neighbors Neighbors (including the query point)
+   * @param pdists Probabilistic distances
+   * @return PLOF value
+   */
+  protected double plof(DBIDRef id, KNNList neighbors, DoubleDataStore pdists) {
+    int ks = 0;
+    double sum = 0.;
+    for(DBIDIter neighbor = neighbors.iter(); neighbor.valid() && ks < kcomp; neighbor.advance()) {
+      if(DBIDUtil.equal(neighbor, id)) {
+        continue;
+      }
+      sum += pdists.doubleValue(neighbor);
+      ks++;
+    }
+    double plof = MathUtil.max(pdists.doubleValue(id) * ks / sum, 1.0);
+    return Double.isNaN(plof) || Double.isInfinite(plof) ? 1.0 : plof;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O> extends LoOP.Par<O> {
+    /**
+     * Parallel core to use.
+     */
+    protected ParallelCore core;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      core = config.tryInstantiate(ParallelCore.class);
+    }
+
+    @Override
+    public ParallelLoOP<O> make() {
+      Distance<O> realreach = (reachabilityDistance != null) ? reachabilityDistance : comparisonDistance;
+      return new ParallelLoOP<>(kreach, kcomp, realreach, comparisonDistance, lambda, core);
+    }
+  }
+}
@@ -38,6 +38,7 @@ import elki.distance.minkowski.EuclideanDistance;
 import elki.math.DoubleMinMax;
 import elki.outlier.OutlierAlgorithm;
 import elki.outlier.lof.LOF;
+import elki.parallel.ParallelCore;
 import elki.parallel.ParallelExecutor;
 import elki.parallel.processor.DoubleMinMaxProcessor;
 import elki.parallel.processor.KNNProcessor;
@@ -89,6 +90,11 @@ public class ParallelSimplifiedLOF<O> implements OutlierAlgorithm {
    */
   protected int kplus;
 
+  /**
+   * Parallel core to use.
+   */
+  protected ParallelCore core;
+
   /**
    * Constructor.
    * 
@@ -96,9 +102,21 @@ public class ParallelSimplifiedLOF<O> implements OutlierAlgorithm {
    * @param k K parameter
    */
   public ParallelSimplifiedLOF(Distance<? super O> distance, int k) {
+    this(distance, k, ParallelCore.getCore());
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param distance Distance function
+   * @param k K parameter
+   * @param core Parallel core to use
+   */
+  public ParallelSimplifiedLOF(Distance<? super O> distance, int k, ParallelCore core) {
     super();
     this.distance = distance;
     this.kplus = k + 1;
+    this.core = core;
   }
 
   @Override
@@ -126,7 +144,7 @@ public class ParallelSimplifiedLOF<O> implements OutlierAlgorithm {
       knnm.connectKNNOutput(knnv);
       storek.connectInput(knnv);
 
-      ParallelExecutor.run(ids, knnm, storek);
+      ParallelExecutor.run(core, ids, knnm, storek);
     }
 
     // Phase two: simplified-lrd
@@ -138,7 +156,7 @@ public class ParallelSimplifiedLOF<O> implements OutlierAlgorithm {
 
       lrdm.connectOutput(lrdv);
       storelrd.connectInput(lrdv);
-      ParallelExecutor.run(ids, lrdm, storelrd);
+      ParallelExecutor.run(core, ids, lrdm, storelrd);
     }
 
     // Phase three: Simplified-LOF
@@ -153,7 +171,7 @@ public class ParallelSimplifiedLOF<O> implements OutlierAlgorithm {
       lofm.connectOutput(lofv);
       mmm.connectInput(lofv);
       storelof.connectInput(lofv);
-      ParallelExecutor.run(ids, lofm, storelof, mmm);
+      ParallelExecutor.run(core, ids, lofm, storelof, mmm);
 
       minmax = mmm.getMinMax();
     }
@@ -183,17 +201,23 @@ public class ParallelSimplifiedLOF<O> implements OutlierAlgorithm {
      */
     protected int k;
 
+    /**
+     * Parallel core to use.
+     */
+    protected ParallelCore core;
+
     @Override
     public void configure(Parameterization config) {
       new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class) //
           .grab(config, x -> distance = x);
       new IntParameter(LOF.Par.K_ID) //
           .grab(config, x -> k = x);
+      core = config.tryInstantiate(ParallelCore.class);
     }
 
     @Override
     public ParallelSimplifiedLOF<O> make() {
-      return new ParallelSimplifiedLOF<>(distance, k);
+      return new ParallelSimplifiedLOF<>(distance, k, core);
     }
   }
 }
@@ -26,6 +26,7 @@ import elki.outlier.AbstractOutlierAlgorithmTest;
 import elki.outlier.distance.KNNOutlier;
 import elki.data.DoubleVector;
 import elki.database.Database;
+import elki.parallel.ParallelCore;
 import elki.result.outlier.OutlierResult;
 import elki.utilities.ELKIBuilder;
 
@@ -44,4 +45,14 @@ public class ParallelKNNOutlierTest extends AbstractOutlierAlgorithmTest {
     assertSingleScore(result, 945, 0.4793554700168577);
     assertAUC(db, "Noise", result, 0.991462962962963);
   }
+
+  @Test
+  public void testKNNOutlierWorkStealing() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-3d-3clusters.ascii", 960);
+    OutlierResult result = new ELKIBuilder<ParallelKNNOutlier<DoubleVector>>(ParallelKNNOutlier.class) //
+        .with(KNNOutlier.Par.K_ID, 1) //
+        .with(ParallelCore.Par.WORKSTEALING_ID).build().autorun(db);
+    assertSingleScore(result, 945, 0.4793554700168577);
+    assertAUC(db, "Noise", result, 0.991462962962963);
+  }
 }
@@ -0,0 +1,63 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.lof.parallel;
+
+import org.junit.Test;
+
+import elki.outlier.AbstractOutlierAlgorithmTest;
+import elki.outlier.lof.INFLO;
+import elki.data.DoubleVector;
+import elki.database.Database;
+import elki.result.outlier.OutlierResult;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Regression tests the ParallelINFLO algorithm.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ParallelINFLOTest extends AbstractOutlierAlgorithmTest {
+  @Test
+  public void testParallelINFLO() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-3d-3clusters.ascii", 960);
+    OutlierResult result = new ELKIBuilder<ParallelINFLO<DoubleVector>>(ParallelINFLO.class) //
+        .with(INFLO.Par.K_ID, 30).build().autorun(db);
+    assertAUC(db, "Noise", result, 0.9606111);
+    assertSingleScore(result, 945, 1.3285178);
+  }
+
+  @Test
+  public void testParallelINFLOPruning() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-3d-3clusters.ascii", 960);
+    OutlierResult result = new ELKIBuilder<ParallelINFLO<DoubleVector>>(ParallelINFLO.class) //
+        .with(INFLO.Par.M_ID, 0.5) //
+        .with(INFLO.Par.K_ID, 30).build().autorun(db);
+    assertAUC(db, "Noise", result, 0.94130555);
+    assertSingleScore(result, 945, 1.3285178); // Not pruned.
+
+    result = new ELKIBuilder<ParallelINFLO<DoubleVector>>(ParallelINFLO.class) //
+        .with(INFLO.Par.M_ID, 0.2) //
+        .with(INFLO.Par.K_ID, 30).build().autorun(db);
+    assertAUC(db, "Noise", result, 0.8198611111);
+    assertSingleScore(result, 945, 1.0); // Pruned.
+  }
+}
@@ -228,6 +228,8 @@ public abstract class AbstractIndexStructureTest {
         assertNeighbors(relation, dist, knnq.getKNN(DoubleVector.wrap(querypoint), k), shouldd, shouldc);
       }
       assertNeighbors(knnq2.getKNN(second, k), shouldd2, shouldc2);
+      // Batch query of all objects:
+      assertNeighbors(qb.kNNForAll(relation.getDBIDs(), k).get(second), shouldd2, shouldc2);
     }
     if(expectRangeQuery != null) {
       RangeSearcher<DoubleVector> rangeq = qb.rangeByObject(eps);
@@ -281,6 +283,8 @@ public abstract class AbstractIndexStructureTest {
         assertNeighbors(relation, dist, knnq.getKNN(DoubleVector.wrap(querypoint), k), cosshouldd, cosshouldc);
       }
       assertNeighbors(knnq2.getKNN(second, k), cosshouldd2, cosshouldc2);
+      // Batch query of all objects:
+      assertNeighbors(qb.kNNForAll(relation.getDBIDs(), k).get(second), cosshouldd2, cosshouldc2);
     }
     if(expectRangeQuery != null) {
       RangeSearcher<DoubleVector> rangeq = qb.cheapOnly().rangeByObject(coseps);
@@ -0,0 +1,152 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.distance.timeseries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
+import elki.database.ids.*;
+import elki.database.query.distance.PrimitiveDistanceQuery;
+import elki.database.query.knn.LinearScanPrimitiveKNNByObject;
+import elki.database.relation.MaterializedRelation;
+import elki.database.relation.Relation;
+import elki.distance.BoundedDistance;
+
+/**
+ * Unit test for the early abandoning of time series distances.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class BoundedTimeSeriesDistanceTest {
+  @Test
+  public void testDTW() {
+    testBounded(new DTWDistance());
+    testBounded(new DTWDistance(.1));
+    testBounded(new DTWDistance(3));
+  }
+
+  @Test
+  public void testDerivativeDTW() {
+    testBounded(new DerivativeDTWDistance());
+    testBounded(new DerivativeDTWDistance(.1));
+  }
+
+  @Test
+  public void testERP() {
+    testBounded(new ERPDistance(Double.POSITIVE_INFINITY, 0.));
+    testBounded(new ERPDistance(.1, 0.5));
+  }
+
+  @Test
+  public void testEDR() {
+    testBounded(new EDRDistance(Double.POSITIVE_INFINITY, .5));
+    testBounded(new EDRDistance(.1, .5));
+  }
+
+  @Test
+  public void testLCSS() {
+    testBounded(new LCSSDistance(.1, .05));
+    testBounded(new LCSSDistance(1., .1));
+  }
+
+  @Test
+  public void testEnvelope() {
+    double[] v = { 1., 3., 2., 5., 4., 0., 2. }, lower = new double[v.length], upper = new double[v.length];
+    DTWDistance.envelope(v, 1, lower, upper);
+    assertArrayEquals(new double[] { 1., 1., 2., 2., 0., 0., 0. }, lower);
+    assertArrayEquals(new double[] { 3., 3., 5., 5., 5., 4., 2. }, upper);
+    DTWDistance.envelope(v, 100, lower, upper);
+    for(int i = 0; i < v.length; i++) {
+      assertEquals(0., lower[i], 0.);
+      assertEquals(5., upper[i], 0.);
+    }
+  }
+
+  /**
+   * Compare two arrays.
+   *
+   * @param expected Expected values
+   * @param actual Actual values
+   */
+  private static void assertArrayEquals(double[] expected, double[] actual) {
+    org.junit.Assert.assertArrayEquals(expected, actual, 0.);
+  }
+
+  /**
+   * Test the bounded distance against the full distance, and the linear scan
+   * kNN query against sorting all distances.
+   *
+   * @param dist Distance function
+   */
+  private void testBounded(BoundedDistance<NumberVector> dist) {
+    Random rnd = new Random(0L);
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(200);
+    WritableDataStore<NumberVector> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, NumberVector.class);
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      // Random walks, some of different length:
+      double[] v = new double[rnd.nextInt(5) > 0 ? 50 : 45];
+      v[0] = rnd.nextGaussian();
+      for(int i = 1; i < v.length; i++) {
+        v[i] = v[i - 1] + rnd.nextGaussian();
+      }
+      store.put(it, DoubleVector.wrap(v));
+    }
+    Relation<NumberVector> rel = new MaterializedRelation<>(null, TypeUtil.NUMBER_VECTOR_VARIABLE_LENGTH, ids, store);
+    DBIDArrayIter a = ids.iter(), b = ids.iter();
+    for(int i = 0; i < 500; i++) {
+      a.seek(rnd.nextInt(ids.size()));
+      b.seek(rnd.nextInt(ids.size()));
+      NumberVector va = rel.get(a), vb = rel.get(b);
+      final double d = dist.distance(va, vb);
+      assertEquals(dist.toString(), d, dist.distance(va, vb, Double.POSITIVE_INFINITY), 0.);
+      assertEquals(dist.toString(), d, dist.distance(va, vb, d), 0.);
+      assertEquals(dist.toString(), d, dist.distance(va, vb, d * 1.5), 0.);
+      if(d > 0 && d < Double.POSITIVE_INFINITY) {
+        assertTrue(dist.toString(), dist.distance(va, vb, d * .5) > d * .5);
+      }
+    }
+    PrimitiveDistanceQuery<NumberVector> dq = new PrimitiveDistanceQuery<>(rel, dist);
+    LinearScanPrimitiveKNNByObject<NumberVector> knnq = new LinearScanPrimitiveKNNByObject<>(dq);
+    for(DBIDArrayIter q = ids.iter(); q.getOffset() < 10; q.advance()) {
+      KNNList knn = knnq.getKNN(rel.get(q), 10);
+      ModifiableDoubleDBIDList all = DBIDUtil.newDistanceDBIDList(ids.size());
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        all.add(dq.distance(q, it), it);
+      }
+      all.sort();
+      DoubleDBIDListIter e = all.iter();
+      for(DoubleDBIDListIter f = knn.iter(); f.valid(); f.advance(), e.advance()) {
+        assertEquals(dist.toString(), e.doubleValue(), f.doubleValue(), 0.);
+      }
+    }
+  }
+}
@@ -25,19 +25,20 @@ import java.util.Arrays;
 import elki.clustering.kmedoids.initialization.KMedoidsInitialization;
 import elki.data.type.TypeInformation;
 import elki.database.ids.*;
+import elki.database.query.PrioritySearcher;
 import elki.database.query.distance.DistanceQuery;
 import elki.database.query.knn.KNNSearcher;
 import elki.database.query.range.RangeSearcher;
 import elki.database.relation.Relation;
 import elki.distance.Distance;
 import elki.index.AbstractRefiningIndex;
+import elki.index.DistancePriorityIndex;
 import elki.index.IndexFactory;
-import elki.index.KNNIndex;
-import elki.index.RangeIndex;
 import elki.logging.Logging;
 import elki.logging.statistics.DoubleStatistic;
 import elki.logging.statistics.LongStatistic;
 import elki.math.MeanVarianceMinMax;
+import elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
 import elki.utilities.documentation.Reference;
 import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.Parameterizer;
@@ -91,7 +92,7 @@ import elki.utilities.pairs.DoubleIntPair;
     booktitle = "ACM Transactions on Database Systems (TODS), 30(2)", //
     url = "https://doi.org/10.1145/1071610.1071612", //
     bibkey = "DBLP:journals/tods/JagadishOTYZ05")
-public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implements RangeIndex<O>, KNNIndex<O> {
+public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implements DistancePriorityIndex<O> {
   /**
    * Class logger.
    */
@@ -184,6 +185,12 @@ public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implemen
         new IDistanceRangeSearcher(distanceQuery) : null;
   }
 
+  @Override
+  public PrioritySearcher<O> priorityByObject(DistanceQuery<O> distanceQuery, double maxradius, int flags) {
+    return distanceQuery.getRelation() == relation && this.getDistance().equals(distanceQuery.getDistance()) ? //
+        new IDistancePrioritySearcher(distanceQuery) : null;
+  }
+
   /**
    * Distance function.
    * 
@@ -398,6 +405,179 @@ public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implemen
     }
   }
 
+  /**
+   * Priority search implementation.
+   * <p>
+   * Every partition is scanned outwards from the position of the query, in
+   * both directions. The next candidate is always taken from the scan with the
+   * smallest lower bound, so objects are returned in order of their lower
+   * bounds over all partitions.
+   * 
+   * @author Erich Schubert
+   */
+  protected class IDistancePrioritySearcher extends AbstractRefiningIndex<O>.AbstractRefiningQuery implements PrioritySearcher<O> {
+    /**
+     * Iterators into the partitions.
+     */
+    private final DoubleDBIDListIter[] iters;
+
+    /**
+     * Positions of the forward and backward scans.
+     */
+    private final int[] fwd, bwd;
+
+    /**
+     * Distances of the query to the reference points.
+     */
+    private final double[] refd;
+
+    /**
+     * Heap of scans, the value is twice the partition number, plus one for
+     * backward scans.
+     */
+    private final DoubleIntegerMinHeap heap;
+
+    /**
+     * Current query object.
+     */
+    private O query;
+
+    /**
+     * Stopping distance threshold.
+     */
+    private double threshold;
+
+    /**
+     * Current scan, or -1.
+     */
+    private int cur = -1;
+
+    /**
+     * Lower bound of the current candidate.
+     */
+    private double lb;
+
+    /**
+     * Exact distance to the current candidate, if computed.
+     */
+    private double curdist;
+
+    /**
+     * Constructor.
+     * 
+     * @param distanceQuery Distance query
+     */
+    public IDistancePrioritySearcher(DistanceQuery<O> distanceQuery) {
+      super(distanceQuery);
+      final int k = index.length;
+      this.iters = new DoubleDBIDListIter[k];
+      for(int i = 0; i < k; i++) {
+        iters[i] = index[i].iter();
+      }
+      this.fwd = new int[k];
+      this.bwd = new int[k];
+      this.refd = new double[k];
+      this.heap = new DoubleIntegerMinHeap(k << 1);
+    }
+
+    @Override
+    public PrioritySearcher<O> search(O query) {
+      this.query = query;
+      this.threshold = Double.POSITIVE_INFINITY;
+      heap.clear();
+      for(DBIDArrayIter riter = referencepoints.iter(); riter.valid(); riter.advance()) {
+        final int i = riter.getOffset();
+        final double d = refd[i] = distanceQuery.distance(query, riter);
+        // Forward scan from the first object not closer to the reference:
+        binarySearch(index[i], iters[i], d);
+        int pos = iters[i].getOffset();
+        if(pos >= 0 && iters[i].doubleValue() < d) {
+          ++pos;
+        }
+        fwd[i] = pos;
+        bwd[i] = pos - 1;
+        push(i << 1);
+        push((i << 1) + 1);
+      }
+      cur = -1;
+      return advance();
+    }
+
+    /**
+     * Add a scan to the heap, unless it is exhausted.
+     *
+     * @param scan Scan number
+     */
+    private void push(int scan) {
+      final int i = scan >>> 1, pos = (scan & 1) == 0 ? fwd[i] : bwd[i];
+      if(pos >= 0 && pos < index[i].size()) {
+        final double bound = Math.abs(iters[i].seek(pos).doubleValue() - refd[i]);
+        if(bound <= threshold) {
+          heap.add(bound, scan);
+        }
+      }
+    }
+
+    @Override
+    public PrioritySearcher<O> decreaseCutoff(double threshold) {
+      assert threshold <= this.threshold;
+      this.threshold = threshold;
+      return this;
+    }
+
+    @Override
+    public boolean valid() {
+      return cur >= 0;
+    }
+
+    @Override
+    public PrioritySearcher<O> advance() {
+      // Continue the current scan:
+      if(cur >= 0) {
+        final int i = cur >>> 1;
+        if((cur & 1) == 0) {
+          ++fwd[i];
+        }
+        else {
+          --bwd[i];
+        }
+        push(cur);
+      }
+      curdist = Double.NaN;
+      if(heap.isEmpty() || heap.peekKey() > threshold) {
+        heap.clear();
+        cur = -1;
+        return this;
+      }
+      lb = heap.peekKey();
+      cur = heap.peekValue();
+      heap.poll();
+      final int i = cur >>> 1;
+      iters[i].seek((cur & 1) == 0 ? fwd[i] : bwd[i]);
+      return this;
+    }
+
+    @Override
+    public int internalGetIndex() {
+      return iters[cur >>> 1].internalGetIndex();
+    }
+
+    @Override
+    public double computeExactDistance() {
+      return curdist == curdist ? curdist : (curdist = refine(iters[cur >>> 1], query));
+    }
+
+    @Override
+    public double getLowerBound() {
+      return lb;
+    }
+
+    @Override
+    public double allLowerBound() {
+      return cur >= 0 ? lb : Double.POSITIVE_INFINITY;
+    }
+  }
+
   /**
    * Index factory for iDistance indexes.
    * 
@@ -46,5 +46,6 @@ public class IDistanceTest extends AbstractIndexStructureTest {
         .build();
     assertExactEuclidean(factory, InMemoryIDistanceIndex.IDistanceKNNSearcher.class, InMemoryIDistanceIndex.IDistanceRangeSearcher.class);
     assertSinglePoint(factory, WrappedKNNDBIDByLookup.class, WrappedRangeDBIDByLookup.class);
+    assertPrioritySearchEuclidean(factory, InMemoryIDistanceIndex.IDistancePrioritySearcher.class);
   }
 }